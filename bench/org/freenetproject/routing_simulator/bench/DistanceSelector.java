@@ -0,0 +1,23 @@
+package org.freenetproject.routing_simulator.bench;
+
+import org.apache.commons.math3.random.RandomGenerator;
+import org.freenetproject.routing_simulator.FoldingPolicy;
+import org.freenetproject.routing_simulator.graph.node.SimpleNode;
+import org.freenetproject.routing_simulator.graph.node.peer.Greedy;
+import org.freenetproject.routing_simulator.util.DistanceEntry;
+
+import java.util.ArrayList;
+
+/**
+ * Exposes the look-ahead distances a peer selector computes.
+ */
+class DistanceSelector extends Greedy {
+    DistanceSelector(FoldingPolicy foldingPolicy, RandomGenerator random) {
+        super(foldingPolicy, random, 0);
+    }
+
+    ArrayList<DistanceEntry> distances(SimpleNode node, double target,
+            int nLookAhead) {
+        return getDistances(node, target, nLookAhead);
+    }
+}
@@ -0,0 +1,41 @@
+package org.freenetproject.routing_simulator.bench;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.freenetproject.routing_simulator.graph.Graph;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+/**
+ * Writes and reads the graph in the binary format of --graph-save and
+ * --graph-load, in memory so that only encoding and decoding is measured.
+ */
+@State(Scope.Thread)
+public class GraphIOBench {
+    private byte[] saved;
+
+    @Setup
+    public void setup(SeededGraph seeded) throws Exception {
+        saved = write(seeded);
+    }
+
+    @Benchmark
+    public byte[] write(SeededGraph seeded) throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+                saved == null ? 1 << 16 : saved.length);
+        seeded.graph.write(new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public Graph read() throws Exception {
+        return Graph.read(new DataInputStream(new ByteArrayInputStream(saved)),
+                new MersenneTwister(SeededGraph.SEED));
+    }
+}
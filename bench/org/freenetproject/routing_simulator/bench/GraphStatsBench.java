@@ -0,0 +1,28 @@
+package org.freenetproject.routing_simulator.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * Graph statistics computed for every output of graph statistics.
+ */
+public class GraphStatsBench {
+    @Benchmark
+    public int nEdges(SeededGraph seeded) {
+        return seeded.graph.nEdges();
+    }
+
+    @Benchmark
+    public double meanLocalClusterCoeff(SeededGraph seeded) {
+        return seeded.graph.meanLocalClusterCoeff();
+    }
+
+    @Benchmark
+    public double globalClusterCoeff(SeededGraph seeded) {
+        return seeded.graph.globalClusterCoeff();
+    }
+
+    @Benchmark
+    public int[] degrees(SeededGraph seeded) {
+        return seeded.graph.degrees();
+    }
+}
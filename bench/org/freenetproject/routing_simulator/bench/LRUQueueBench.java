@@ -0,0 +1,79 @@
+package org.freenetproject.routing_simulator.bench;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.freenetproject.routing_simulator.graph.Graph;
+import org.freenetproject.routing_simulator.graph.node.SimpleNode;
+import org.freenetproject.routing_simulator.util.lru.LRUQueue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Operations on an LRU queue of nodes the size of a node's connections, which
+ * is how nodes order their peers for path folding.
+ */
+@State(Scope.Thread)
+public class LRUQueueBench {
+    @Param({ "10", "40", "200" })
+    public int peers;
+
+    private SimpleNode[] nodes;
+    private LRUQueue<SimpleNode> queue;
+    private RandomGenerator random;
+
+    @Setup
+    public void setup() {
+        random = new MersenneTwister(SeededGraph.SEED);
+        final Graph graph = SeededGraph.generate(2 * peers, SeededGraph.SEED);
+        nodes = new SimpleNode[peers];
+        queue = new LRUQueue<SimpleNode>();
+        for (int i = 0; i < peers; i++) {
+            nodes[i] = graph.getNode(i);
+            queue.push(nodes[i]);
+        }
+    }
+
+    /**
+     * Move a peer to the most recently used position, as a successful
+     * request through it does.
+     */
+    @Benchmark
+    public void push() {
+        queue.push(nodes[random.nextInt(peers)]);
+    }
+
+    @Benchmark
+    public boolean contains() {
+        return queue.contains(nodes[random.nextInt(peers)]);
+    }
+
+    /**
+     * Drop the least recently used peer and add it back, as path folding
+     * replaces a connection.
+     */
+    @Benchmark
+    public SimpleNode popPush() {
+        final SimpleNode dropped = queue.pop();
+        queue.push(dropped);
+        return dropped;
+    }
+
+    /**
+     * Remove a peer and add it back, as a disconnection and reconnection do.
+     */
+    @Benchmark
+    public boolean removePush() {
+        final SimpleNode node = nodes[random.nextInt(peers)];
+        final boolean removed = queue.remove(node);
+        queue.push(node);
+        return removed;
+    }
+
+    @Benchmark
+    public Object[] toArrayOrdered() {
+        return queue.toArrayOrdered();
+    }
+}
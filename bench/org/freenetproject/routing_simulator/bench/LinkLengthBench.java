@@ -0,0 +1,49 @@
+package org.freenetproject.routing_simulator.bench;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.freenetproject.routing_simulator.graph.linklength.KleinbergLinkSource;
+import org.freenetproject.routing_simulator.graph.node.SimpleNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+
+/**
+ * Picks link endpoints with the ideal Kleinberg distribution, as graph
+ * generation does. The source builds a distribution for each origin the
+ * first time it is used, so this measures both picking from an existing
+ * distribution and building a new one.
+ */
+@State(Scope.Thread)
+public class LinkLengthBench {
+    @Param({ "1000", "2000", "4000" })
+    public int size;
+
+    private ArrayList<SimpleNode> nodes;
+    private RandomGenerator random;
+    private KleinbergLinkSource source;
+
+    @Setup
+    public void setup() {
+        random = new MersenneTwister(SeededGraph.SEED);
+        nodes = SeededGraph.nodes(size, random);
+        source = new KleinbergLinkSource(random, nodes);
+        for (SimpleNode node : nodes)
+            source.getPeer(node);
+    }
+
+    @Benchmark
+    public SimpleNode getPeer() {
+        return source.getPeer(nodes.get(random.nextInt(size)));
+    }
+
+    @Benchmark
+    public SimpleNode getFirstPeer() {
+        return new KleinbergLinkSource(random, nodes).getPeer(nodes.get(random
+                .nextInt(size)));
+    }
+}
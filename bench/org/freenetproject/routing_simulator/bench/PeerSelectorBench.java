@@ -0,0 +1,46 @@
+package org.freenetproject.routing_simulator.bench;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.freenetproject.routing_simulator.FoldingPolicy;
+import org.freenetproject.routing_simulator.graph.Graph;
+import org.freenetproject.routing_simulator.util.DistanceEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+
+/**
+ * Sorts the peers of a random node by distance to a random target with
+ * look-ahead. With no path folding the selector caches each node's peers, as
+ * routing does; otherwise they are gathered every time.
+ */
+@State(Scope.Thread)
+public class PeerSelectorBench {
+    @Param({ "1", "2", "3" })
+    public int lookAhead;
+
+    @Param({ "NONE", "FREENET" })
+    public FoldingPolicy folding;
+
+    private Graph graph;
+    private RandomGenerator random;
+    private DistanceSelector selector;
+
+    @Setup
+    public void setup(SeededGraph seeded) throws Exception {
+        // The cache is kept on the nodes.
+        graph = seeded.graph.copy();
+        random = new MersenneTwister(SeededGraph.SEED + 1);
+        selector = new DistanceSelector(folding, random);
+    }
+
+    @Benchmark
+    public ArrayList<DistanceEntry> getDistances() {
+        return selector.distances(graph.getNode(random.nextInt(graph.size())),
+                random.nextDouble(), lookAhead);
+    }
+}
@@ -0,0 +1,47 @@
+package org.freenetproject.routing_simulator.bench;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.freenetproject.routing_simulator.graph.Graph;
+import org.freenetproject.routing_simulator.graph.node.SimpleNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Random walks from a random node, as probes take, either uniform or with
+ * the Metropolis-Hastings correction for degree.
+ */
+@State(Scope.Thread)
+public class RandomWalkBench {
+    @Param({ "18", "50" })
+    public int hops;
+
+    @Param({ "true", "false" })
+    public boolean uniform;
+
+    private Graph graph;
+    private RandomGenerator random;
+    private int[] trace;
+
+    @Setup
+    public void setup(SeededGraph seeded) {
+        graph = seeded.graph;
+        random = new MersenneTwister(SeededGraph.SEED + 1);
+        trace = new int[hops + 1];
+    }
+
+    @Benchmark
+    public SimpleNode randomWalk() {
+        return graph.getNode(random.nextInt(graph.size())).randomWalk(hops,
+                uniform, random);
+    }
+
+    @Benchmark
+    public SimpleNode randomWalkTrace() {
+        return graph.getNode(random.nextInt(graph.size())).randomWalk(hops,
+                uniform, random, trace);
+    }
+}
@@ -0,0 +1,51 @@
+package org.freenetproject.routing_simulator.bench;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.freenetproject.routing_simulator.FoldingPolicy;
+import org.freenetproject.routing_simulator.RouteResult;
+import org.freenetproject.routing_simulator.RoutingPolicy;
+import org.freenetproject.routing_simulator.graph.Graph;
+import org.freenetproject.routing_simulator.graph.node.SimpleNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Routes a request between random nodes, as the routing simulation does, for
+ * each routing policy and look-ahead level. Path folding changes the graph,
+ * so each iteration starts from a fresh copy of it.
+ */
+@State(Scope.Thread)
+public class RoutingBench {
+    private static final int MAX_HTL = 50;
+
+    @Param({ "GREEDY", "LOOP_DETECTION", "BACKTRACKING", "PRECISION_LOSS" })
+    public RoutingPolicy policy;
+
+    @Param({ "1", "2", "3" })
+    public int lookAhead;
+
+    @Param({ "NONE", "FREENET" })
+    public FoldingPolicy folding;
+
+    private Graph graph;
+    private RandomGenerator random;
+
+    @Setup(Level.Iteration)
+    public void copy(SeededGraph seeded) throws Exception {
+        graph = seeded.graph.copy();
+        random = new MersenneTwister(SeededGraph.SEED + 1);
+    }
+
+    @Benchmark
+    public RouteResult route() {
+        final SimpleNode origin = graph.getNode(random.nextInt(graph.size()));
+        final SimpleNode target = graph.getNode(random.nextInt(graph.size()));
+        return origin.route(target, MAX_HTL, MAX_HTL, policy, folding,
+                lookAhead, -1, true, 0, 0);
+    }
+}
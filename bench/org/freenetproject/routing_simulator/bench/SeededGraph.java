@@ -0,0 +1,55 @@
+package org.freenetproject.routing_simulator.bench;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.freenetproject.routing_simulator.graph.Graph;
+import org.freenetproject.routing_simulator.graph.degree.FixedDegreeSource;
+import org.freenetproject.routing_simulator.graph.linklength.KleinbergLinkSource;
+import org.freenetproject.routing_simulator.graph.node.SimpleNode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+
+/**
+ * Graph shared by the benchmarks of a trial, generated from a fixed seed so
+ * that every run measures the same graph: nodes of fixed degree, a lattice,
+ * and links with the ideal Kleinberg distribution. Benchmarks which change
+ * the graph work on a copy.
+ * <p>
+ * The Kleinberg link source keeps a distribution over every node for each
+ * node, so sizes are kept small enough for its quadratic memory use.
+ */
+@State(Scope.Benchmark)
+public class SeededGraph {
+    public static final long SEED = 0;
+    public static final int DEGREE = 10;
+
+    @Param({ "1000", "2000", "4000" })
+    public int size;
+
+    public Graph graph;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        graph = generate(size, SEED);
+    }
+
+    /**
+     * @return the nodes of a graph of the given size, not yet connected.
+     */
+    public static ArrayList<SimpleNode> nodes(int size, RandomGenerator random) {
+        return Graph.generateNodes(size, random, false, new FixedDegreeSource(
+                DEGREE));
+    }
+
+    public static Graph generate(int size, long seed) {
+        final RandomGenerator random = new MersenneTwister(seed);
+        final ArrayList<SimpleNode> nodes = nodes(size, random);
+        return Graph.connectGraph(nodes, random, new KleinbergLinkSource(
+                random, nodes), true);
+    }
+}
@@ -10,6 +10,16 @@ import org.apache.commons.math3.random.RandomGenerator;
 import org.freenetproject.routing_simulator.graph.degree.ConformingDegreeSource;
 import org.freenetproject.routing_simulator.graph.degree.DegreeSource;
 import org.freenetproject.routing_simulator.graph.degree.FixedDegreeSource;
+import org.freenetproject.routing_simulator.event.LatencyModel;
+import org.freenetproject.routing_simulator.event.LinkLatencyModel;
+import org.freenetproject.routing_simulator.graph.churn.ExponentialSessionSource;
+import org.freenetproject.routing_simulator.graph.churn.FixedSessionSource;
+import org.freenetproject.routing_simulator.graph.churn.SessionSource;
+import org.freenetproject.routing_simulator.graph.churn.WeibullSessionSource;
+import org.freenetproject.routing_simulator.graph.GraphCache;
+import org.freenetproject.routing_simulator.graph.store.KeyStore;
+import org.freenetproject.routing_simulator.graph.store.LRUStore;
+import org.freenetproject.routing_simulator.graph.store.SaltedHashStore;
 import org.freenetproject.routing_simulator.graph.degree.PoissonDegreeSource;
 import org.freenetproject.routing_simulator.graph.linklength.ConformingLinkSource;
 import org.freenetproject.routing_simulator.graph.linklength.KleinbergLinkSource;
@@ -17,13 +27,19 @@ import org.freenetproject.routing_simulator.graph.linklength.LinkLengthSource;
 import org.freenetproject.routing_simulator.graph.linklength.UniformLinkSource;
 import org.freenetproject.routing_simulator.graph.node.SimpleNode;
 import org.freenetproject.routing_simulator.util.logging.SimLogger;
+import org.freenetproject.routing_simulator.util.metrics.Metrics;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.logging.Logger;
 
 import static org.freenetproject.routing_simulator.util.File.readableFile;
@@ -47,6 +63,10 @@ public final class Arguments {
      * Build a lattice before constructing graph (a circle).
      */
     public final boolean lattice;
+    /**
+     * Directory generated graphs are cached in, or null.
+     */
+    public final String graphCache;
     /**
      * Use fast generation for graph generation.
      */
@@ -59,6 +79,40 @@ public final class Arguments {
      * Use Metropolis Hastings when running the probe.
      */
     public final boolean metropolisHastings;
+    /**
+     * Number of threads to run probe trials on.
+     */
+    public final int probeThreads;
+    /**
+     * Take corrected probe hops by sampling per-node alias tables.
+     */
+    public final boolean probeAlias;
+    /**
+     * Propagate exact probe distributions instead of sampling walks.
+     */
+    public final boolean probeExact;
+    /**
+     * Number of probe trials, each from a random source.
+     */
+    public final int probeTrials;
+    /**
+     * Probes in each trial per node in the network.
+     */
+    public final int probesPerNode;
+    /**
+     * Stop probe trials once the Kolmogorov-Smirnov distance from the
+     * reference changes by less than this; zero to run all trials.
+     */
+    public final double probeTolerance;
+    /**
+     * Format of sampled probe distributions.
+     */
+    public final ProbeFormat probeFormat;
+    /**
+     * Stop routing once the success rate's confidence interval half-width in
+     * percentage points is at most this; zero to route all requests.
+     */
+    public final double routeTolerance;
     /**
      * Run the route simulation.
      */
@@ -67,6 +121,10 @@ public final class Arguments {
      * Exclude lattice links from link length output.
      */
     public final boolean excludeLattice;
+    /**
+     * Write every link length rather than their cumulative distribution.
+     */
+    public final boolean linkRaw;
     /**
      * Reconnect any disconnected nodes during routing simulation.
      */
@@ -151,6 +209,38 @@ public final class Arguments {
      * Routing simulation output stream.
      */
     public final DataOutputStream routingSimOutput;
+    /**
+     * Number of requests in each row of the windowed routing output.
+     */
+    public final int routeWindow;
+    /**
+     * Windowed routing output stream, or null.
+     */
+    public final DataOutputStream routeWindowOutput;
+    /**
+     * Add graph statistics to each row of the windowed routing output.
+     */
+    public final boolean routeWindowGraph;
+    /**
+     * Binary output stream of every routed request, or null.
+     */
+    public final DataOutputStream routeTraceOutput;
+    /**
+     * Deflate the blocks of the route trace.
+     */
+    public final boolean routeTraceCompress;
+    /**
+     * File to periodically write routing simulation checkpoints to, or null.
+     */
+    public final String checkpointFile;
+    /**
+     * Number of requests between routing simulation checkpoints.
+     */
+    public final int checkpointInterval;
+    /**
+     * Checkpoint to resume the routing simulation from, or null.
+     */
+    public final String resumeFile;
     /**
      * Probe output directory.
      */
@@ -175,6 +265,158 @@ public final class Arguments {
      * Probability to randomly route a request.
      */
     public final double routingRandomChance;
+    /**
+     * Model the latency of routed requests.
+     */
+    public final boolean modelLatency;
+    /**
+     * Mean base link latency in milliseconds.
+     */
+    public final double latencyMean;
+    /**
+     * Relative spread of base link latencies around the mean.
+     */
+    public final double latencySpread;
+    /**
+     * Mean additional latency in milliseconds per link crossing.
+     */
+    public final double latencyJitter;
+    /**
+     * Run the churn simulation.
+     */
+    public final boolean runChurn;
+    /**
+     * Number of simulated hours to run the churn simulation for.
+     */
+    public final double churnHours;
+    /**
+     * Mean length of time in hours a node stays online.
+     */
+    public final double churnSession;
+    /**
+     * Mean length of time in hours a node stays offline.
+     */
+    public final double churnDowntime;
+    /**
+     * Shape of Weibull session and downtime distributions.
+     */
+    public final double churnWeibullShape;
+    /**
+     * Number of routing requests made per simulated hour during churn.
+     */
+    public final int churnRequestRate;
+    /**
+     * Distribution session and downtime lengths are drawn from.
+     */
+    public final SessionDistribution sessionDistribution;
+    /**
+     * Churn time series output stream.
+     */
+    public final DataOutputStream churnOutput;
+    /**
+     * Run the load simulation.
+     */
+    public final boolean runLoad;
+    /**
+     * Offered loads in requests per second to run the load simulation at.
+     */
+    public final double[] loadRates;
+    /**
+     * Number of requests made at each offered load.
+     */
+    public final int loadRequests;
+    /**
+     * Number of requests each node serves at once.
+     */
+    public final int loadCapacity;
+    /**
+     * Number of requests each node queues while its slots are taken.
+     */
+    public final int loadQueue;
+    /**
+     * Mean time in milliseconds a node spends on a request.
+     */
+    public final double loadServiceTime;
+    /**
+     * Milliseconds a node is first backed off for after rejecting a request.
+     */
+    public final double loadBackoff;
+    /**
+     * Load simulation output stream.
+     */
+    public final DataOutputStream loadOutput;
+    /**
+     * Run the datastore simulation.
+     */
+    public final boolean runStore;
+    /**
+     * Number of fetches made in the datastore simulation.
+     */
+    public final int storeFetches;
+    /**
+     * Number of keys inserted before fetching.
+     */
+    public final int storeKeys;
+    /**
+     * Number of keys each node's store holds.
+     */
+    public final int storeSize;
+    /**
+     * Number of keys each node's cache holds.
+     */
+    public final int storeCacheSize;
+    /**
+     * Zipf exponent of key popularity when fetching.
+     */
+    public final double storeZipf;
+    /**
+     * Replacement policy of stores and caches.
+     */
+    public final StorePolicy storePolicy;
+    /**
+     * Datastore simulation output stream.
+     */
+    public final DataOutputStream storeOutput;
+    /**
+     * Number of location swap attempts made before simulating, or zero.
+     */
+    public final long swapAttempts;
+    /**
+     * Hops of the random walk which selects a swap partner.
+     */
+    public final int swapWalk;
+    /**
+     * Number of threads to attempt location swaps on.
+     */
+    public final int swapThreads;
+    /**
+     * Randomly permute node locations before swapping.
+     */
+    public final boolean swapShuffle;
+    /**
+     * Grid file of option values to sweep, or null.
+     */
+    public final String sweepGrid;
+    /**
+     * Sweep result table output stream.
+     */
+    public final DataOutputStream sweepOutput;
+    /**
+     * Format of the results, sweep and windowed routing outputs.
+     */
+    public final ResultsFormat resultsFormat;
+    /**
+     * Output stream for a record of the results of the run, or null.
+     */
+    public final DataOutputStream resultsOutput;
+    /**
+     * Seconds between logging the hot-path counters, or 0 to not log them.
+     */
+    public final int metricsInterval;
+    /**
+     * Number of sweep runs to simulate at once.
+     */
+    public final int sweepThreads;
 
     /*
      * Private attributes of the arguments class
@@ -192,6 +434,16 @@ public final class Arguments {
      * Default path folding policy to use.
      */
     private static final FoldingPolicy FOLDING_DEFAULT = FoldingPolicy.FREENET;
+    /**
+     * Default session length distribution.
+     */
+    private static final SessionDistribution SESSION_DEFAULT = SessionDistribution.EXPONENTIAL;
+    /**
+     * Default store replacement policy.
+     */
+    private static final StorePolicy STORE_DEFAULT = StorePolicy.SALTED_HASH;
+    private static final ProbeFormat PROBE_FORMAT_DEFAULT = ProbeFormat.TEXT;
+    private static final ResultsFormat RESULTS_FORMAT_DEFAULT = ResultsFormat.TEXT;
     /**
      * Default logging level to use.
      */
@@ -218,6 +470,12 @@ public final class Arguments {
             "pause",
             false,
             "Pause the program before execution. (Allows external programs to be attached).");
+    private static final Option OPT_METRICS_INTERVAL = new Option(
+            "mi",
+            "metrics-interval",
+            true,
+            "Log counters of requests routed, hops, backtracks, look-ahead candidates, routing cache hits, folds and bootstrap retries every given number of seconds. They are always available over JMX as "
+                    + Metrics.NAME + ". Default = 0, which does not log them.");
     private static final Option OPT_SCRIPT_OUTPUT = new Option("so",
             "script-output", false,
             "Format script output such that it can be read by script.");
@@ -253,6 +511,11 @@ public final class Arguments {
             "graph-lattice",
             false,
             "Generate a graph with undirected lattice links, the given degree distribution, and the given link length distribution. e.g. Topology starts out as a circle.");
+    private static final Option OPT_GRAPH_CACHE = new Option(
+            "gc",
+            "graph-cache",
+            true,
+            "Directory to cache generated graphs in. A graph generated with the same arguments and seed is loaded from it instead of generated again.");
     private static final Option OPT_GRAPH_FAST_LOCATION = new Option(
             "gfl",
             "graph-fast-location",
@@ -281,6 +544,11 @@ public final class Arguments {
      */
     private static final Option OPT_LINK_OUTPUT = new Option("lo",
             "link-output", true, "Output file for link length distribution.");
+    private static final Option OPT_LINK_RAW = new Option(
+            "lr",
+            "link-raw",
+            false,
+            "Write every link length to --link-output as \"[length] [1 / links]\" for gnuplot's cumulative smoothing, instead of the cumulative distribution of lengths in log-scale bins.");
     private static final Option OPT_LINK_EXCLUDE_LATTICE = new Option(
             "lel",
             "link-exclude-lattice",
@@ -337,6 +605,148 @@ public final class Arguments {
     private static final Option OPT_ROUTE_LOOK_BACK = new Option("rlb",
             "route-look-back", true,
             "The number of hops to look back for loop detection. Negative means all hops.");
+    private static final Option OPT_ROUTE_LATENCY = new Option(
+            "rl",
+            "route-latency",
+            true,
+            "Model request latency with the given mean link latency in milliseconds. Each link has a fixed latency spread around the mean.");
+    private static final Option OPT_ROUTE_LATENCY_SPREAD = new Option("rls",
+            "route-latency-spread", true,
+            "Relative spread of link latencies around the mean, in [0, 1]. Default = 0.5.");
+    private static final Option OPT_ROUTE_WINDOW = new Option("rw",
+            "route-window", true,
+            "Number of requests in each row of the windowed routing output. Default = 10000.");
+    private static final Option OPT_ROUTE_WINDOW_OUTPUT = new Option("rwo",
+            "route-window-output", true,
+            "The CSV file to which routing statistics are output for every window of requests. With --resume rows after the checkpoint are appended to those before it.");
+    private static final Option OPT_ROUTE_WINDOW_GRAPH = new Option("rwg",
+            "route-window-graph", false,
+            "Add degree and link length statistics to each row of the windowed routing output.");
+    private static final Option OPT_ROUTE_TRACE = new Option(
+            "rtr",
+            "route-trace",
+            true,
+            "The binary file to which the origin, target, outcome and every hop of each routed request is output. With --resume only requests after the checkpoint are output.");
+    private static final Option OPT_ROUTE_TRACE_COMPRESS = new Option("rtc",
+            "route-trace-compress", false,
+            "Deflate the route trace in blocks.");
+    private static final Option OPT_ROUTE_TOLERANCE = new Option(
+            "rt",
+            "route-tolerance",
+            true,
+            "Stop routing before --route requests once the half-width of the 95% confidence interval of the success rate is at most this many percentage points.");
+    private static final Option OPT_CHECKPOINT = new Option("ck",
+            "checkpoint", true,
+            "File to periodically write the complete routing simulation state to.");
+    private static final Option OPT_CHECKPOINT_INTERVAL = new Option("cki",
+            "checkpoint-interval", true,
+            "Number of requests between checkpoints. Default = 1000000.");
+    private static final Option OPT_RESUME = new Option(
+            "rs",
+            "resume",
+            true,
+            "Resume the routing simulation from a checkpoint instead of generating a graph. The arguments which affect routing results must be those of the original run.");
+    private static final Option OPT_ROUTE_LATENCY_JITTER = new Option("rlj",
+            "route-latency-jitter", true,
+            "Mean exponentially distributed latency in milliseconds added to every link crossing. Default = 0.");
+
+    /*
+     * Churn options
+     */
+    private static final Option OPT_CHURN = new Option(
+            "c",
+            "churn",
+            true,
+            "Simulate nodes leaving and rejoining the network for the given number of hours while routing requests. Requires that --route-hops be specified.");
+    private static final Option OPT_CHURN_SESSION = new Option("cs",
+            "churn-session", true,
+            "Mean number of hours a node stays online. Default = 5.");
+    private static final Option OPT_CHURN_DOWNTIME = new Option("cd",
+            "churn-downtime", true,
+            "Mean number of hours a node stays offline. Default = the mean session length.");
+    private static final Option OPT_CHURN_DISTRIBUTION = new Option("cD",
+            "churn-distribution", true,
+            "Session length distribution:");
+    private static final Option OPT_CHURN_WEIBULL_SHAPE = new Option("cws",
+            "churn-weibull-shape", true,
+            "Shape of the WEIBULL session length distribution. Default = 0.5.");
+    private static final Option OPT_CHURN_REQUEST_RATE = new Option("crr",
+            "churn-request-rate", true,
+            "Number of routing requests made per simulated hour. Default = 1000.");
+    private static final Option OPT_CHURN_OUTPUT = new Option("co",
+            "churn-output", true,
+            "The file to which the hourly churn time series is output.");
+
+    /*
+     * Load options
+     */
+    private static final Option OPT_LOAD = new Option(
+            "L",
+            "load",
+            true,
+            "Simulate routing requests concurrently at each of the given comma-separated offered loads in requests per second. Requires that --route-hops be specified.");
+    private static final Option OPT_LOAD_REQUESTS = new Option("Lr",
+            "load-requests", true,
+            "Number of requests made at each offered load. Default = 10000.");
+    private static final Option OPT_LOAD_CAPACITY = new Option("Lc",
+            "load-capacity", true,
+            "Number of requests each node serves at once. Default = 4.");
+    private static final Option OPT_LOAD_QUEUE = new Option("Lq",
+            "load-queue", true,
+            "Number of requests each node queues while all its slots are taken. Further requests are rejected. Default = 8.");
+    private static final Option OPT_LOAD_SERVICE = new Option("Ls",
+            "load-service", true,
+            "Mean exponentially distributed time in milliseconds a node spends on a request. Default = 20.");
+    private static final Option OPT_LOAD_BACKOFF = new Option("Lb",
+            "load-backoff", true,
+            "Milliseconds a node is backed off for after rejecting a request. Doubles with each further rejection. Default = 1000.");
+    private static final Option OPT_LOAD_OUTPUT = new Option("Lo",
+            "load-output", true,
+            "The file to which a line of results for each offered load is output.");
+
+    /*
+     * Datastore options
+     */
+    private static final Option OPT_STORE = new Option(
+            "S",
+            "store",
+            true,
+            "Simulate inserting keys into node datastores and then making the given number of fetches for them. Requires that --route-hops be specified.");
+    private static final Option OPT_STORE_KEYS = new Option("Sk",
+            "store-keys", true,
+            "Number of keys inserted before fetching. Default = 10000.");
+    private static final Option OPT_STORE_SIZE = new Option("Ss",
+            "store-size", true,
+            "Number of keys each node's store holds. Default = 1000.");
+    private static final Option OPT_STORE_CACHE_SIZE = new Option("Sc",
+            "store-cache-size", true,
+            "Number of keys each node's cache holds. Default = the store size.");
+    private static final Option OPT_STORE_ZIPF = new Option("Sz",
+            "store-zipf", true,
+            "Zipf exponent of key popularity when fetching. Zero is uniform. Default = 1.");
+    private static final Option OPT_STORE_POLICY = new Option("Sp",
+            "store-policy", true, "Store replacement policy:");
+    private static final Option OPT_STORE_OUTPUT = new Option("So",
+            "store-output", true,
+            "The file to which datastore simulation results are output.");
+
+    /*
+     * Location swapping options
+     */
+    private static final Option OPT_SWAP = new Option(
+            "sw",
+            "swap",
+            true,
+            "Make the given number of darknet location swap attempts before running any simulation.");
+    private static final Option OPT_SWAP_WALK = new Option("sww",
+            "swap-walk", true,
+            "Hops of the random walk which selects a swap partner. Default = 10.");
+    private static final Option OPT_SWAP_THREADS = new Option("swt",
+            "swap-threads", true,
+            "Number of threads to attempt swaps on. Results depend only on the seed with one thread. Default = the number of processors.");
+    private static final Option OPT_SWAP_SHUFFLE = new Option("sws",
+            "swap-shuffle", false,
+            "Randomly permute node locations before swapping, so that links are unrelated to locations.");
 
     /*
      * Probing options
@@ -356,6 +766,86 @@ public final class Arguments {
             "probe-output",
             true,
             "Directory to which probe distribution is output as \"[node ID] [times seen]\\n\" for a reference of random selection from the whole and at each hop up to the specified maximum hops.");
+    private static final Option OPT_PROBE_ALIAS = new Option(
+            "pa",
+            "probe-alias",
+            false,
+            "Take Metropolis-Hastings probe hops by sampling a per-node alias table of transition probabilities rather than by rejecting peers. Same distribution; different walks for a given seed. Requires --probe-metropolis-hastings.");
+    private static final Option OPT_PROBE_EXACT = new Option(
+            "px",
+            "probe-exact",
+            false,
+            "Instead of sampling probes, propagate the exact probability of reaching each node from each source through the walk's transition matrix. Outputs \"exact-[hops].dat\" as expected occurrences and \"exact-distance.dat\" as \"[hops] [mean] [max]\" total variation distance from uniform over sources.");
+    private static final Option OPT_PROBE_TRIALS = new Option("ptr",
+            "probe-trials", true,
+            "Number of probe trials, each from a random source. Default = 100.");
+    private static final Option OPT_PROBE_PER_NODE = new Option("ppn",
+            "probe-per-node", true,
+            "Probes in each trial per node in the network. Default = 30.");
+    private static final Option OPT_PROBE_TOLERANCE = new Option(
+            "ptl",
+            "probe-tolerance",
+            true,
+            "Stop probe trials early once the Kolmogorov-Smirnov distance between the probe and reference distributions at the maximum hops changes by less than this between batches of 10 trials.");
+    private static final Option OPT_PROBE_FORMAT = new Option("pf",
+            "probe-format", true, "Probe distribution output format:");
+    private static final Option OPT_PROBE_THREADS = new Option("pt",
+            "probe-threads", true,
+            "Number of threads to run probe trials on. Results depend only on the seed. Default = the number of processors.");
+
+    /*
+     * Sweep options
+     */
+    private static final Option OPT_SWEEP = new Option(
+            "sp",
+            "sweep",
+            true,
+            "Simulate routing for every combination of option values in the given grid file within this process, and write a line of results for each to --sweep-output. Each line of the file is a long option followed by the values to try, such as \"--route-policy GREEDY BACKTRACKING\"; options without a value take true or false. The other arguments apply to every run. Runs with the same graph options start from copies of one generated graph.");
+    private static final Option OPT_SWEEP_OUTPUT = new Option("spo",
+            "sweep-output", true,
+            "The file to which the sweep result table is output.");
+    private static final Option OPT_SWEEP_THREADS = new Option("spt",
+            "sweep-threads", true,
+            "Number of sweep runs to simulate at once. Results do not depend on it. Default = the number of processors.");
+
+    /*
+     * Results options
+     */
+    private static final Option OPT_RESULTS_FORMAT = new Option("rsf",
+            "results-format", true, "Format of results:");
+    private static final Option OPT_RESULTS_OUTPUT = new Option("rso",
+            "results-output", true,
+            "The file to which a record of the configuration, graph statistics and routing results of the run is output.");
+
+    /**
+     * Options which determine a generated or loaded graph, apart from the
+     * seed.
+     */
+    private static final Option[] GENERATION_OPTIONS = { OPT_GRAPH_SIZE,
+            OPT_GRAPH_FAST_LOCATION, OPT_GRAPH_LOAD, OPT_GRAPH_LOAD_DOT,
+            OPT_GRAPH_LOAD_GML, OPT_GRAPH_SANDBERG, OPT_GRAPH_LATTICE,
+            OPT_GRAPH_SUPER_NODE, OPT_LINK_IDEAL, OPT_LINK_FLAT,
+            OPT_LINK_CONFORMING, OPT_DEGREE_FIXED, OPT_DEGREE_CONFORMING,
+            OPT_DEGREE_POISSON };
+
+    /**
+     * Options which change the graph after it is generated or loaded.
+     */
+    private static final Option[] SWAP_OPTIONS = { OPT_SWAP, OPT_SWAP_WALK,
+            OPT_SWAP_THREADS, OPT_SWAP_SHUFFLE };
+
+    /**
+     * Options which cannot be used in a sweep: other simulations, and
+     * outputs which every run would overwrite.
+     */
+    private static final Option[] SWEEP_EXCLUDED = { OPT_PAUSE,
+            OPT_SCRIPT_OUTPUT, OPT_PROBE, OPT_CHURN, OPT_LOAD, OPT_STORE,
+            OPT_CHECKPOINT, OPT_RESUME, OPT_DEGREE_OUTPUT, OPT_LINK_OUTPUT,
+            OPT_GRAPH_SAVE, OPT_GRAPH_SAVE_DOT, OPT_ROUTE_OUTPUT,
+            OPT_ROUTE_WINDOW_OUTPUT, OPT_ROUTE_TRACE, OPT_CHURN_OUTPUT,
+            OPT_LOAD_OUTPUT,
+            OPT_STORE_OUTPUT, OPT_PROBE_OUTPUT, OPT_RESULTS_OUTPUT, OPT_SWEEP,
+            OPT_SWEEP_OUTPUT, OPT_SWEEP_THREADS };
 
     private Arguments(final boolean lattice, final boolean fastGeneration,
             final boolean runProbe, final boolean metropolisHastings,
@@ -376,6 +866,37 @@ public final class Arguments {
             final RoutingPolicy routingPolicy, final int nLookAhead,
             final String logLevel, final boolean pause,
             final boolean scriptOutput, final boolean oldPathFolding,
+            final boolean runChurn, final double churnHours,
+            final double churnSession, final double churnDowntime,
+            final double churnWeibullShape, final int churnRequestRate,
+            final SessionDistribution sessionDistribution,
+            final DataOutputStream churnOutput, final boolean modelLatency,
+            final double latencyMean, final double latencySpread,
+            final double latencyJitter, final boolean runLoad,
+            final double[] loadRates, final int loadRequests,
+            final int loadCapacity, final int loadQueue,
+            final double loadServiceTime, final double loadBackoff,
+            final DataOutputStream loadOutput, final boolean runStore,
+            final int storeFetches, final int storeKeys, final int storeSize,
+            final int storeCacheSize, final double storeZipf,
+            final StorePolicy storePolicy,
+            final DataOutputStream storeOutput, final long swapAttempts,
+            final int swapWalk, final int swapThreads,
+            final boolean swapShuffle, final int routeWindow,
+            final DataOutputStream routeWindowOutput,
+            final boolean routeWindowGraph, final String checkpointFile,
+            final int checkpointInterval, final String resumeFile,
+            final int probeThreads, final boolean probeAlias,
+            final boolean probeExact, final int probeTrials,
+            final int probesPerNode, final double probeTolerance,
+            final double routeTolerance, final ProbeFormat probeFormat,
+            final boolean linkRaw, final String sweepGrid,
+            final DataOutputStream sweepOutput, final int sweepThreads,
+            final String graphCache,
+            final DataOutputStream routeTraceOutput,
+            final boolean routeTraceCompress,
+            final ResultsFormat resultsFormat,
+            final DataOutputStream resultsOutput, final int metricsInterval,
             final CommandLine cmd) {
         this.lattice = lattice;
         this.fastGeneration = fastGeneration;
@@ -410,9 +931,105 @@ public final class Arguments {
         this.pause = pause;
         this.scriptOutput = scriptOutput;
         this.oldPathFolding = oldPathFolding;
+        this.runChurn = runChurn;
+        this.churnHours = churnHours;
+        this.churnSession = churnSession;
+        this.churnDowntime = churnDowntime;
+        this.churnWeibullShape = churnWeibullShape;
+        this.churnRequestRate = churnRequestRate;
+        this.sessionDistribution = sessionDistribution;
+        this.churnOutput = churnOutput;
+        this.modelLatency = modelLatency;
+        this.latencyMean = latencyMean;
+        this.latencySpread = latencySpread;
+        this.latencyJitter = latencyJitter;
+        this.runLoad = runLoad;
+        this.loadRates = loadRates;
+        this.loadRequests = loadRequests;
+        this.loadCapacity = loadCapacity;
+        this.loadQueue = loadQueue;
+        this.loadServiceTime = loadServiceTime;
+        this.loadBackoff = loadBackoff;
+        this.loadOutput = loadOutput;
+        this.runStore = runStore;
+        this.storeFetches = storeFetches;
+        this.storeKeys = storeKeys;
+        this.storeSize = storeSize;
+        this.storeCacheSize = storeCacheSize;
+        this.storeZipf = storeZipf;
+        this.storePolicy = storePolicy;
+        this.storeOutput = storeOutput;
+        this.swapAttempts = swapAttempts;
+        this.swapWalk = swapWalk;
+        this.swapThreads = swapThreads;
+        this.swapShuffle = swapShuffle;
+        this.routeWindow = routeWindow;
+        this.routeWindowOutput = routeWindowOutput;
+        this.routeWindowGraph = routeWindowGraph;
+        this.checkpointFile = checkpointFile;
+        this.checkpointInterval = checkpointInterval;
+        this.resumeFile = resumeFile;
+        this.probeThreads = probeThreads;
+        this.probeAlias = probeAlias;
+        this.probeExact = probeExact;
+        this.probeTrials = probeTrials;
+        this.probesPerNode = probesPerNode;
+        this.probeTolerance = probeTolerance;
+        this.routeTolerance = routeTolerance;
+        this.probeFormat = probeFormat;
+        this.linkRaw = linkRaw;
+        this.sweepGrid = sweepGrid;
+        this.sweepOutput = sweepOutput;
+        this.sweepThreads = sweepThreads;
+        this.graphCache = graphCache;
+        this.routeTraceOutput = routeTraceOutput;
+        this.routeTraceCompress = routeTraceCompress;
+        this.resultsFormat = resultsFormat;
+        this.resultsOutput = resultsOutput;
+        this.metricsInterval = metricsInterval;
         this.cmd = cmd;
     }
 
+    /**
+     * @return the value of every public field which is a number, boolean,
+     *         string, enum or array of numbers, by field name, and under
+     *         "options" every option by long name: its value, or null if not
+     *         given, and true or false for flags. Options include the degree,
+     *         link length and graph inputs, which are not fields. Keys are
+     *         sorted, and every run has the same ones.
+     */
+    public Map<String, Object> toResults() {
+        final Map<String, Object> record = new TreeMap<String, Object>();
+        for (Field f : getClass().getFields()) {
+            if (Modifier.isStatic(f.getModifiers()))
+                continue;
+            final Class<?> type = f.getType();
+            if (type.isPrimitive() || type == String.class || type.isEnum()
+                    || type.isArray()
+                    && type.getComponentType().isPrimitive()) {
+                try {
+                    record.put(f.getName(), f.get(this));
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+
+        final Map<String, Object> options = new TreeMap<String, Object>();
+        for (Object o : generateOptions().getOptions()) {
+            final String name = ((Option) o).getLongOpt();
+            if (name.equals(OPT_HELP.getLongOpt())
+                    || name.equals(OPT_VERSION.getLongOpt()))
+                continue;
+            if (((Option) o).hasArg())
+                options.put(name, cmd.getOptionValue(name));
+            else
+                options.put(name, cmd.hasOption(name));
+        }
+        record.put("options", options);
+        return record;
+    }
+
     @Override
     public String toString() {
         StringBuilder b = new StringBuilder();
@@ -436,8 +1053,11 @@ public final class Arguments {
      * @param random
      *            Random generator.
      * @return degree source.
+     * @throws IOException
+     *             Error reading the conforming degree distribution.
      */
-    public DegreeSource getDegreeSource(final RandomGenerator random) {
+    public DegreeSource getDegreeSource(final RandomGenerator random)
+            throws IOException {
         final DegreeSource degreeSource;
 
         if (cmd.hasOption(OPT_DEGREE_CONFORMING.getLongOpt())) {
@@ -466,9 +1086,11 @@ public final class Arguments {
      * @param nodes
      *            List of graph nodes.
      * @return Link length source.
+     * @throws IOException
+     *             Error reading the conforming link lengths.
      */
     public LinkLengthSource getLinkLengthSource(final RandomGenerator random,
-            final ArrayList<SimpleNode> nodes) {
+            final ArrayList<SimpleNode> nodes) throws IOException {
         final LinkLengthSource linkLengthSource;
 
         if (cmd.hasOption(OPT_LINK_CONFORMING.getLongOpt())) {
@@ -485,6 +1107,254 @@ public final class Arguments {
         return linkLengthSource;
     }
 
+    /**
+     * Get a session length source from the CLI.
+     * 
+     * @param random
+     *            Random generator.
+     * @param mean
+     *            Mean length in hours.
+     * @return session length source.
+     */
+    public SessionSource getSessionSource(final RandomGenerator random,
+            final double mean) {
+        switch (sessionDistribution) {
+        case EXPONENTIAL:
+            return new ExponentialSessionSource(mean, random);
+        case WEIBULL:
+            return new WeibullSessionSource(mean, churnWeibullShape, random);
+        case FIXED:
+            return new FixedSessionSource(mean);
+        default:
+            throw new IllegalStateException(
+                    "Missing implementation for session distribution "
+                            + sessionDistribution.name());
+        }
+    }
+
+    /**
+     * Create an empty store with the replacement policy from the CLI.
+     * 
+     * @param capacity
+     *            Number of keys the store holds.
+     * @param salt
+     *            Salt of a salted hash store. Should differ between stores.
+     * @return empty store.
+     */
+    public KeyStore newStore(final int capacity, final long salt) {
+        switch (storePolicy) {
+        case LRU:
+            return new LRUStore(capacity);
+        case SALTED_HASH:
+            return new SaltedHashStore(capacity, salt);
+        default:
+            throw new IllegalStateException(
+                    "Missing implementation for store policy "
+                            + storePolicy.name());
+        }
+    }
+
+    /**
+     * Get the link latency model from the CLI.
+     * 
+     * @param random
+     *            Random generator for jitter.
+     * @return latency model, or null if latency is not being modelled.
+     */
+    public LatencyModel getLatencyModel(final RandomGenerator random) {
+        if (!modelLatency) {
+            return null;
+        }
+        return new LinkLatencyModel(latencyMean, latencySpread,
+                latencyJitter, seed, random);
+    }
+
+    /**
+     * @return the seed and the options which determine the graph a simulation
+     *         starts from, such that runs with equal keys start from identical
+     *         graphs.
+     */
+    public String graphKey() {
+        StringBuilder b = new StringBuilder("--");
+        b.append(OPT_SEED.getLongOpt()).append(' ').append(seed);
+        appendOptions(b, GENERATION_OPTIONS);
+        appendOptions(b, SWAP_OPTIONS);
+        return b.toString();
+    }
+
+    /**
+     * @return the seed, the options which determine a generated graph, and
+     *         the hashes of the contents of any files it conforms to, such
+     *         that generating with equal keys gives identical graphs.
+     * @throws IOException
+     *             Error reading a file to hash.
+     */
+    public String generationKey() throws IOException {
+        StringBuilder b = new StringBuilder("--");
+        b.append(OPT_SEED.getLongOpt()).append(' ').append(seed);
+        appendOptions(b, GENERATION_OPTIONS);
+        for (Option option : new Option[] { OPT_DEGREE_CONFORMING,
+                OPT_LINK_CONFORMING }) {
+            if (cmd.hasOption(option.getLongOpt())) {
+                b.append(' ').append(
+                        GraphCache.hash(new java.io.File(cmd
+                                .getOptionValue(option.getLongOpt()))));
+            }
+        }
+        return b.toString();
+    }
+
+    private void appendOptions(final StringBuilder b, final Option[] options) {
+        for (Option option : options) {
+            if (cmd.hasOption(option.getLongOpt())) {
+                b.append(" --").append(option.getLongOpt());
+                if (option.hasArg()) {
+                    b.append(' ').append(
+                            cmd.getOptionValue(option.getLongOpt()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Check whether an option can be given values in a sweep grid.
+     *
+     * @param longOpt
+     *            Long name of the option.
+     * @return true if the option exists and can vary between sweep runs.
+     */
+    static boolean sweepable(final String longOpt) {
+        if (!generateOptions().hasOption(longOpt)) {
+            return false;
+        }
+        for (Option option : SWEEP_EXCLUDED) {
+            if (option.getLongOpt().equals(longOpt)) {
+                return false;
+            }
+        }
+        return !OPT_HELP.getLongOpt().equals(longOpt)
+                && !OPT_VERSION.getLongOpt().equals(longOpt);
+    }
+
+    /**
+     * @param longOpt
+     *            Long name of an existing option.
+     * @return true if the option takes a value, false if it is a flag.
+     */
+    static boolean takesValue(final String longOpt) {
+        return generateOptions().getOption(longOpt).hasArg();
+    }
+
+    /**
+     * Parse the arguments of one sweep run: these arguments without the sweep
+     * options, with the given options replacing any given here. The seed is
+     * always included so that runs do not each pick their own.
+     *
+     * @param names
+     *            Long names of the swept options.
+     * @param values
+     *            Value of each option; true or false for flags.
+     * @return arguments of the run, or null if they are invalid.
+     * @throws Exception
+     *             Error parsing the arguments.
+     */
+    Arguments forSweepRun(final String[] names, final String[] values)
+            throws Exception {
+        final ArrayList<String> args = new ArrayList<String>();
+        final HashSet<String> swept = new HashSet<String>();
+        for (int i = 0; i < names.length; i++) {
+            swept.add(names[i]);
+            if (takesValue(names[i])) {
+                args.add("--" + names[i]);
+                args.add(values[i]);
+            } else if (Boolean.parseBoolean(values[i])) {
+                args.add("--" + names[i]);
+            }
+        }
+        for (Option option : cmd.getOptions()) {
+            final String name = option.getLongOpt();
+            if (swept.contains(name) || name.equals(OPT_SWEEP.getLongOpt())
+                    || name.equals(OPT_SWEEP_OUTPUT.getLongOpt())
+                    || name.equals(OPT_SWEEP_THREADS.getLongOpt())) {
+                continue;
+            }
+            args.add("--" + name);
+            if (option.hasArg()) {
+                args.add(option.getValue());
+            }
+        }
+        if (!swept.contains(OPT_SEED.getLongOpt())
+                && !cmd.hasOption(OPT_SEED.getLongOpt())) {
+            args.add("--" + OPT_SEED.getLongOpt());
+            args.add(Integer.toString(seed));
+        }
+        return parse(args.toArray(new String[args.size()]));
+    }
+
+    /**
+     * @return path of the windowed routing output, or null if there is none.
+     */
+    String routeWindowPath() {
+        return cmd.getOptionValue(OPT_ROUTE_WINDOW_OUTPUT.getLongOpt());
+    }
+
+    /**
+     * @return the value of every option which affects the results of
+     *         routing, by long name, for checking that a resumed run
+     *         continues the same simulation.
+     */
+    Map<String, String> routingSettings() {
+        final Map<String, String> settings = new TreeMap<String, String>();
+        settings.put(OPT_SEED.getLongOpt(), Integer.toString(seed));
+        settings.put(OPT_ROUTE.getLongOpt(), Integer.toString(nRouteRequests));
+        settings.put(OPT_ROUTE_HOPS.getLongOpt(),
+                Integer.toString(maxHopsRoute));
+        settings.put(OPT_ROUTE_POLICY.getLongOpt(), routingPolicy.name());
+        settings.put(OPT_ROUTE_FOLDING_POLICY.getLongOpt(),
+                foldingPolicy.name());
+        settings.put(OPT_ROUTE_LOOK_AHEAD.getLongOpt(),
+                Integer.toString(nLookAhead));
+        settings.put(OPT_ROUTE_LOOK_BACK.getLongOpt(),
+                Integer.toString(lookBack));
+        settings.put(OPT_ROUTE_LOOK_PREC.getLongOpt(),
+                Integer.toString(significantBitsLookAhead));
+        settings.put(OPT_ROUTE_RANDOM_CHANCE.getLongOpt(),
+                Double.toString(routingRandomChance));
+        settings.put(OPT_ROUTE_BOOTSTRAP.getLongOpt(),
+                Boolean.toString(bootstrap));
+        settings.put(OPT_ROUTE_OLD_FOLDING.getLongOpt(),
+                Boolean.toString(oldPathFolding));
+        settings.put(OPT_ROUTE_LATENCY.getLongOpt(),
+                modelLatency ? Double.toString(latencyMean) : "none");
+        settings.put(OPT_ROUTE_LATENCY_SPREAD.getLongOpt(),
+                Double.toString(latencySpread));
+        settings.put(OPT_ROUTE_LATENCY_JITTER.getLongOpt(),
+                Double.toString(latencyJitter));
+        settings.put(OPT_ROUTE_TOLERANCE.getLongOpt(),
+                Double.toString(routeTolerance));
+        settings.put(OPT_ROUTE_WINDOW.getLongOpt(),
+                Integer.toString(routeWindow));
+        settings.put(OPT_ROUTE_WINDOW_GRAPH.getLongOpt(),
+                Boolean.toString(routeWindowGraph));
+        return settings;
+    }
+
+    /**
+     * Close the degree, link and graph inputs, for arguments whose graph is
+     * not generated from them.
+     *
+     * @throws IOException
+     *             Error closing an input.
+     */
+    void closeInputs() throws IOException {
+        for (DataInputStream input : new DataInputStream[] { degreeInput,
+                linkInput, graphInput }) {
+            if (input != null) {
+                input.close();
+            }
+        }
+    }
+
     /**
      * Generate the list of CLI options.
      * 
@@ -496,10 +1366,12 @@ public final class Arguments {
         options.addOption(OPT_DEGREE_OUTPUT);
         options.addOption(OPT_LINK_OUTPUT);
         options.addOption(OPT_LINK_EXCLUDE_LATTICE);
+        options.addOption(OPT_LINK_RAW);
         options.addOption(OPT_HELP);
         options.addOption(OPT_VERSION);
         options.addOption(OPT_SEED);
         options.addOption(OPT_PAUSE);
+        options.addOption(OPT_METRICS_INTERVAL);
         options.addOption(OPT_SCRIPT_OUTPUT);
         // Graphs: General generation options
         options.addOption(OPT_GRAPH_SIZE);
@@ -513,6 +1385,7 @@ public final class Arguments {
         options.addOption(OPT_GRAPH_SANDBERG);
         options.addOption(OPT_GRAPH_LATTICE);
         options.addOption(OPT_GRAPH_SUPER_NODE);
+        options.addOption(OPT_GRAPH_CACHE);
 
         // Graphs: link length distribution
         options.addOption(OPT_LINK_IDEAL);
@@ -554,11 +1427,103 @@ public final class Arguments {
         options.addOption(OPT_ROUTE_LOOK_PREC);
         options.addOption(OPT_ROUTE_RANDOM_CHANCE);
         options.addOption(OPT_ROUTE_LOOK_BACK);
+        options.addOption(OPT_ROUTE_LATENCY);
+        options.addOption(OPT_ROUTE_LATENCY_SPREAD);
+        options.addOption(OPT_ROUTE_LATENCY_JITTER);
+        options.addOption(OPT_ROUTE_WINDOW);
+        options.addOption(OPT_ROUTE_WINDOW_OUTPUT);
+        options.addOption(OPT_ROUTE_WINDOW_GRAPH);
+        options.addOption(OPT_ROUTE_TRACE);
+        options.addOption(OPT_ROUTE_TRACE_COMPRESS);
+        options.addOption(OPT_ROUTE_TOLERANCE);
+        options.addOption(OPT_CHECKPOINT);
+        options.addOption(OPT_CHECKPOINT_INTERVAL);
+        options.addOption(OPT_RESUME);
+
+        // Simulations: Churn
+        options.addOption(OPT_CHURN);
+        options.addOption(OPT_CHURN_SESSION);
+        options.addOption(OPT_CHURN_DOWNTIME);
+        description = new StringBuilder(
+                "Session length distribution used. Default is "
+                        + SESSION_DEFAULT.name() + ". Possible distributions:");
+        for (SessionDistribution distribution : SessionDistribution.values()) {
+            description.append(" ").append(distribution.name());
+        }
+        OPT_CHURN_DISTRIBUTION.setDescription(description.toString());
+        options.addOption(OPT_CHURN_DISTRIBUTION);
+        options.addOption(OPT_CHURN_WEIBULL_SHAPE);
+        options.addOption(OPT_CHURN_REQUEST_RATE);
+        options.addOption(OPT_CHURN_OUTPUT);
+
+        // Simulations: Load
+        options.addOption(OPT_LOAD);
+        options.addOption(OPT_LOAD_REQUESTS);
+        options.addOption(OPT_LOAD_CAPACITY);
+        options.addOption(OPT_LOAD_QUEUE);
+        options.addOption(OPT_LOAD_SERVICE);
+        options.addOption(OPT_LOAD_BACKOFF);
+        options.addOption(OPT_LOAD_OUTPUT);
+
+        // Simulations: Datastore
+        options.addOption(OPT_STORE);
+        options.addOption(OPT_STORE_KEYS);
+        options.addOption(OPT_STORE_SIZE);
+        options.addOption(OPT_STORE_CACHE_SIZE);
+        options.addOption(OPT_STORE_ZIPF);
+        description = new StringBuilder(
+                "Store replacement policy used. Default is "
+                        + STORE_DEFAULT.name() + ". Possible policies:");
+        for (StorePolicy policy : StorePolicy.values()) {
+            description.append(" ").append(policy.name());
+        }
+        OPT_STORE_POLICY.setDescription(description.toString());
+        options.addOption(OPT_STORE_POLICY);
+        options.addOption(OPT_STORE_OUTPUT);
+
+        // Location swapping
+        options.addOption(OPT_SWAP);
+        options.addOption(OPT_SWAP_WALK);
+        options.addOption(OPT_SWAP_THREADS);
+        options.addOption(OPT_SWAP_SHUFFLE);
 
         // Simulations: Probe distribution
         options.addOption(OPT_PROBE);
         options.addOption(OPT_PROBE_METROPOLIS_HASTINGS);
         options.addOption(OPT_PROBE_OUTPUT);
+        options.addOption(OPT_PROBE_THREADS);
+        options.addOption(OPT_PROBE_ALIAS);
+        options.addOption(OPT_PROBE_EXACT);
+        options.addOption(OPT_PROBE_TRIALS);
+        options.addOption(OPT_PROBE_PER_NODE);
+        options.addOption(OPT_PROBE_TOLERANCE);
+        description = new StringBuilder(
+                "Format of sampled probe distributions. BINARY and COMPRESSED write a single "
+                        + "probes.bin, which ProbeOutput exports as text. Default is "
+                        + PROBE_FORMAT_DEFAULT.name() + ". Possible formats:");
+        for (ProbeFormat format : ProbeFormat.values()) {
+            description.append(" ").append(format.name());
+        }
+        OPT_PROBE_FORMAT.setDescription(description.toString());
+        options.addOption(OPT_PROBE_FORMAT);
+
+        // Sweeps
+        options.addOption(OPT_SWEEP);
+        options.addOption(OPT_SWEEP_OUTPUT);
+        options.addOption(OPT_SWEEP_THREADS);
+
+        // Results
+        description = new StringBuilder(
+                "Format of --results-output, --sweep-output and --route-window-output. TEXT keeps "
+                        + "their plain formats; CSV and JSON records include the configuration. "
+                        + "Default is " + RESULTS_FORMAT_DEFAULT.name()
+                        + ". Possible formats:");
+        for (ResultsFormat format : ResultsFormat.values()) {
+            description.append(" ").append(format.name());
+        }
+        OPT_RESULTS_FORMAT.setDescription(description.toString());
+        options.addOption(OPT_RESULTS_FORMAT);
+        options.addOption(OPT_RESULTS_OUTPUT);
 
         description = new StringBuilder("Log level used. Default is "
                 + LOGGING_DEFAULT.name() + ". Possible levels:");
@@ -700,6 +1665,71 @@ public final class Arguments {
             return null;
         }
 
+        if ((cmd.hasOption(OPT_ROUTE_TRACE.getLongOpt()) || cmd
+                .hasOption(OPT_ROUTE_TRACE_COMPRESS.getLongOpt()))
+                && !cmd.hasOption(OPT_ROUTE.getLongOpt())) {
+            LOGGER.severe("--" + OPT_ROUTE_TRACE.getLongOpt() + " and --"
+                    + OPT_ROUTE_TRACE_COMPRESS.getLongOpt() + " require --"
+                    + OPT_ROUTE.getLongOpt() + ".");
+            return null;
+        }
+
+        if (cmd.hasOption(OPT_CHURN.getLongOpt())
+                && !cmd.hasOption(OPT_ROUTE_HOPS.getLongOpt())) {
+            LOGGER.severe("--" + OPT_CHURN.getLongOpt()
+                    + " was specified, but not --"
+                    + OPT_ROUTE_HOPS.getLongOpt() + ".");
+            return null;
+        }
+
+        if (cmd.hasOption(OPT_LOAD.getLongOpt())
+                && !cmd.hasOption(OPT_ROUTE_HOPS.getLongOpt())) {
+            LOGGER.severe("--" + OPT_LOAD.getLongOpt()
+                    + " was specified, but not --"
+                    + OPT_ROUTE_HOPS.getLongOpt() + ".");
+            return null;
+        }
+
+        if ((cmd.hasOption(OPT_CHECKPOINT.getLongOpt()) || cmd
+                .hasOption(OPT_RESUME.getLongOpt()))
+                && !cmd.hasOption(OPT_ROUTE.getLongOpt())) {
+            LOGGER.severe("--" + OPT_CHECKPOINT.getLongOpt() + " and --"
+                    + OPT_RESUME.getLongOpt() + " require --"
+                    + OPT_ROUTE.getLongOpt() + ".");
+            return null;
+        }
+
+        if (cmd.hasOption(OPT_RESUME.getLongOpt())
+                && !new java.io.File(cmd.getOptionValue(OPT_RESUME
+                        .getLongOpt())).isFile()) {
+            LOGGER.severe("Checkpoint to resume from does not exist: "
+                    + cmd.getOptionValue(OPT_RESUME.getLongOpt()));
+            return null;
+        }
+
+        if (cmd.hasOption(OPT_STORE.getLongOpt())
+                && !cmd.hasOption(OPT_ROUTE_HOPS.getLongOpt())) {
+            LOGGER.severe("--" + OPT_STORE.getLongOpt()
+                    + " was specified, but not --"
+                    + OPT_ROUTE_HOPS.getLongOpt() + ".");
+            return null;
+        }
+
+        double[] loadRates = new double[0];
+        if (cmd.hasOption(OPT_LOAD.getLongOpt())) {
+            final String[] rates = cmd.getOptionValue(OPT_LOAD.getLongOpt())
+                    .split(",");
+            loadRates = new double[rates.length];
+            for (int i = 0; i < rates.length; i++) {
+                loadRates[i] = Double.valueOf(rates[i].trim());
+                if (!(loadRates[i] > 0)) {
+                    LOGGER.severe("--" + OPT_LOAD.getLongOpt()
+                            + " offered loads must be positive.");
+                    return null;
+                }
+            }
+        }
+
         if (cmd.hasOption(OPT_PROBE.getLongOpt())
                 && !cmd.hasOption(OPT_PROBE_OUTPUT.getLongOpt())) {
             LOGGER.severe("--" + OPT_PROBE.getLongOpt()
@@ -708,6 +1738,56 @@ public final class Arguments {
             return null;
         }
 
+        if (cmd.hasOption(OPT_PROBE_ALIAS.getLongOpt())
+                && !cmd.hasOption(OPT_PROBE_METROPOLIS_HASTINGS.getLongOpt())) {
+            LOGGER.severe("--" + OPT_PROBE_ALIAS.getLongOpt()
+                    + " was specified, but not --"
+                    + OPT_PROBE_METROPOLIS_HASTINGS.getLongOpt() + ".");
+            return null;
+        }
+
+        if (cmd.hasOption(OPT_PROBE_TOLERANCE.getLongOpt())
+                && cmd.hasOption(OPT_PROBE_EXACT.getLongOpt())) {
+            LOGGER.severe("--" + OPT_PROBE_TOLERANCE.getLongOpt() + " and --"
+                    + OPT_PROBE_EXACT.getLongOpt()
+                    + " cannot be used together.");
+            return null;
+        }
+
+        if (cmd.hasOption(OPT_PROBE_ALIAS.getLongOpt())
+                && cmd.hasOption(OPT_PROBE_EXACT.getLongOpt())) {
+            LOGGER.severe("--" + OPT_PROBE_ALIAS.getLongOpt() + " and --"
+                    + OPT_PROBE_EXACT.getLongOpt()
+                    + " cannot be used together.");
+            return null;
+        }
+
+        if (cmd.hasOption(OPT_SWEEP.getLongOpt())) {
+            if (!cmd.hasOption(OPT_ROUTE.getLongOpt())
+                    || !cmd.hasOption(OPT_SWEEP_OUTPUT.getLongOpt())) {
+                LOGGER.severe("--" + OPT_SWEEP.getLongOpt() + " requires --"
+                        + OPT_ROUTE.getLongOpt() + " and --"
+                        + OPT_SWEEP_OUTPUT.getLongOpt() + ".");
+                return null;
+            }
+            for (Option option : SWEEP_EXCLUDED) {
+                if (option != OPT_SWEEP && option != OPT_SWEEP_OUTPUT
+                        && option != OPT_SWEEP_THREADS
+                        && cmd.hasOption(option.getLongOpt())) {
+                    LOGGER.severe("--" + option.getLongOpt()
+                            + " cannot be used with --"
+                            + OPT_SWEEP.getLongOpt() + ".");
+                    return null;
+                }
+            }
+            if (!new java.io.File(cmd.getOptionValue(OPT_SWEEP.getLongOpt()))
+                    .isFile()) {
+                LOGGER.severe("Sweep grid does not exist: "
+                        + cmd.getOptionValue(OPT_SWEEP.getLongOpt()));
+                return null;
+            }
+        }
+
         final FoldingPolicy foldingPolicy;
         if (cmd.hasOption(OPT_ROUTE_FOLDING_POLICY.getLongOpt())) {
             try {
@@ -750,6 +1830,90 @@ public final class Arguments {
             routingPolicy = ROUTING_DEFAULT;
         }
 
+        final SessionDistribution sessionDistribution;
+        if (cmd.hasOption(OPT_CHURN_DISTRIBUTION.getLongOpt())) {
+            final String distribution = cmd
+                    .getOptionValue(OPT_CHURN_DISTRIBUTION.getLongOpt());
+            try {
+                sessionDistribution = SessionDistribution.valueOf(distribution);
+            } catch (IllegalArgumentException e) {
+                StringBuilder b = new StringBuilder();
+                b.append("The session distribution \"");
+                b.append(distribution);
+                b.append("\" is invalid.\n");
+                b.append("Possible values are:");
+                for (SessionDistribution name : SessionDistribution.values()) {
+                    b.append(" ").append(name.toString());
+                }
+                throw new Exception(b.toString());
+            }
+        } else {
+            sessionDistribution = SESSION_DEFAULT;
+        }
+
+        final StorePolicy storePolicy;
+        if (cmd.hasOption(OPT_STORE_POLICY.getLongOpt())) {
+            final String policy = cmd.getOptionValue(OPT_STORE_POLICY
+                    .getLongOpt());
+            try {
+                storePolicy = StorePolicy.valueOf(policy);
+            } catch (IllegalArgumentException e) {
+                StringBuilder b = new StringBuilder();
+                b.append("The store policy \"");
+                b.append(policy);
+                b.append("\" is invalid.\n");
+                b.append("Possible values are:");
+                for (StorePolicy name : StorePolicy.values()) {
+                    b.append(" ").append(name.toString());
+                }
+                throw new Exception(b.toString());
+            }
+        } else {
+            storePolicy = STORE_DEFAULT;
+        }
+
+        final ProbeFormat probeFormat;
+        if (cmd.hasOption(OPT_PROBE_FORMAT.getLongOpt())) {
+            final String format = cmd.getOptionValue(OPT_PROBE_FORMAT
+                    .getLongOpt());
+            try {
+                probeFormat = ProbeFormat.valueOf(format);
+            } catch (IllegalArgumentException e) {
+                StringBuilder b = new StringBuilder();
+                b.append("The probe format \"");
+                b.append(format);
+                b.append("\" is invalid.\n");
+                b.append("Possible values are:");
+                for (ProbeFormat name : ProbeFormat.values()) {
+                    b.append(" ").append(name.toString());
+                }
+                throw new Exception(b.toString());
+            }
+        } else {
+            probeFormat = PROBE_FORMAT_DEFAULT;
+        }
+
+        final ResultsFormat resultsFormat;
+        if (cmd.hasOption(OPT_RESULTS_FORMAT.getLongOpt())) {
+            final String format = cmd.getOptionValue(OPT_RESULTS_FORMAT
+                    .getLongOpt());
+            try {
+                resultsFormat = ResultsFormat.valueOf(format);
+            } catch (IllegalArgumentException e) {
+                StringBuilder b = new StringBuilder();
+                b.append("The results format \"");
+                b.append(format);
+                b.append("\" is invalid.\n");
+                b.append("Possible values are:");
+                for (ResultsFormat name : ResultsFormat.values()) {
+                    b.append(" ").append(name.toString());
+                }
+                throw new Exception(b.toString());
+            }
+        } else {
+            resultsFormat = RESULTS_FORMAT_DEFAULT;
+        }
+
         if (routingPolicy == RoutingPolicy.PRECISION_LOSS
                 && !cmd.hasOption(OPT_ROUTE_LOOK_PREC.getLongOpt())) {
             LOGGER.severe(routingPolicy.name() + " was specified, but not --"
@@ -792,6 +1956,12 @@ public final class Arguments {
 
         // Check if output paths are directories that can be written to, and
         // create them if they do not exist.
+        if (cmd.hasOption(OPT_GRAPH_CACHE.getLongOpt())
+                && writableDirectory(cmd.getOptionValue(OPT_GRAPH_CACHE
+                        .getLongOpt())) == null) {
+            return null;
+        }
+
         if (cmd.hasOption(OPT_PROBE_OUTPUT.getLongOpt())
                 && (writableDirectory(cmd.getOptionValue(OPT_PROBE_OUTPUT
                         .getLongOpt()))) == null) {
@@ -800,7 +1970,9 @@ public final class Arguments {
 
         // Check that output files exist and are writable or can be created.
         final DataOutputStream degreeOutput, linkOutput, graphOutput;
-        final DataOutputStream routingSimOutput;
+        final DataOutputStream routingSimOutput, churnOutput, loadOutput;
+        final DataOutputStream storeOutput, routeWindowOutput, sweepOutput;
+        final DataOutputStream routeTraceOutput, resultsOutput;
         final FileOutputStream graphOutputText;
         try {
             degreeOutput = writableFile(OPT_DEGREE_OUTPUT.getLongOpt(), cmd);
@@ -808,6 +1980,16 @@ public final class Arguments {
             graphOutput = writableFile(OPT_GRAPH_SAVE.getLongOpt(), cmd);
             graphOutputText = writableFile2(OPT_GRAPH_SAVE_DOT.getLongOpt(), cmd);
             routingSimOutput = writableFile(OPT_ROUTE_OUTPUT.getLongOpt(), cmd);
+            churnOutput = writableFile(OPT_CHURN_OUTPUT.getLongOpt(), cmd);
+            loadOutput = writableFile(OPT_LOAD_OUTPUT.getLongOpt(), cmd);
+            storeOutput = writableFile(OPT_STORE_OUTPUT.getLongOpt(), cmd);
+            // Rows from before the checkpoint are kept when resuming.
+            routeWindowOutput = writableFile(
+                    OPT_ROUTE_WINDOW_OUTPUT.getLongOpt(), cmd,
+                    cmd.hasOption(OPT_RESUME.getLongOpt()));
+            sweepOutput = writableFile(OPT_SWEEP_OUTPUT.getLongOpt(), cmd);
+            routeTraceOutput = writableFile(OPT_ROUTE_TRACE.getLongOpt(), cmd);
+            resultsOutput = writableFile(OPT_RESULTS_OUTPUT.getLongOpt(), cmd);
         } catch (FileNotFoundException e) {
             return null;
         }
@@ -846,6 +2028,109 @@ public final class Arguments {
         final double randomRouteChance = cmd.hasOption(OPT_ROUTE_RANDOM_CHANCE
                 .getLongOpt()) ? Double.valueOf(cmd
                 .getOptionValue(OPT_ROUTE_RANDOM_CHANCE.getLongOpt())) : 0;
+        final double churnHours = cmd.hasOption(OPT_CHURN.getLongOpt()) ? Double
+                .valueOf(cmd.getOptionValue(OPT_CHURN.getLongOpt())) : 0;
+        final double churnSession = cmd.hasOption(OPT_CHURN_SESSION
+                .getLongOpt()) ? Double.valueOf(cmd
+                .getOptionValue(OPT_CHURN_SESSION.getLongOpt())) : 5;
+        final double churnDowntime = cmd.hasOption(OPT_CHURN_DOWNTIME
+                .getLongOpt()) ? Double.valueOf(cmd
+                .getOptionValue(OPT_CHURN_DOWNTIME.getLongOpt()))
+                : churnSession;
+        final double churnWeibullShape = cmd.hasOption(OPT_CHURN_WEIBULL_SHAPE
+                .getLongOpt()) ? Double.valueOf(cmd
+                .getOptionValue(OPT_CHURN_WEIBULL_SHAPE.getLongOpt())) : 0.5;
+        final int churnRequestRate = cmd.hasOption(OPT_CHURN_REQUEST_RATE
+                .getLongOpt()) ? Integer.valueOf(cmd
+                .getOptionValue(OPT_CHURN_REQUEST_RATE.getLongOpt())) : 1000;
+        final double latencyMean = cmd.hasOption(OPT_ROUTE_LATENCY
+                .getLongOpt()) ? Double.valueOf(cmd
+                .getOptionValue(OPT_ROUTE_LATENCY.getLongOpt())) : 0;
+        final double latencySpread = cmd.hasOption(OPT_ROUTE_LATENCY_SPREAD
+                .getLongOpt()) ? Double.valueOf(cmd
+                .getOptionValue(OPT_ROUTE_LATENCY_SPREAD.getLongOpt())) : 0.5;
+        final double latencyJitter = cmd.hasOption(OPT_ROUTE_LATENCY_JITTER
+                .getLongOpt()) ? Double.valueOf(cmd
+                .getOptionValue(OPT_ROUTE_LATENCY_JITTER.getLongOpt())) : 0;
+        final int loadRequests = cmd.hasOption(OPT_LOAD_REQUESTS.getLongOpt()) ? Integer
+                .valueOf(cmd.getOptionValue(OPT_LOAD_REQUESTS.getLongOpt()))
+                : 10000;
+        final int loadCapacity = cmd.hasOption(OPT_LOAD_CAPACITY.getLongOpt()) ? Integer
+                .valueOf(cmd.getOptionValue(OPT_LOAD_CAPACITY.getLongOpt()))
+                : 4;
+        final int loadQueue = cmd.hasOption(OPT_LOAD_QUEUE.getLongOpt()) ? Integer
+                .valueOf(cmd.getOptionValue(OPT_LOAD_QUEUE.getLongOpt())) : 8;
+        final double loadServiceTime = cmd.hasOption(OPT_LOAD_SERVICE
+                .getLongOpt()) ? Double.valueOf(cmd
+                .getOptionValue(OPT_LOAD_SERVICE.getLongOpt())) : 20;
+        final double loadBackoff = cmd.hasOption(OPT_LOAD_BACKOFF.getLongOpt()) ? Double
+                .valueOf(cmd.getOptionValue(OPT_LOAD_BACKOFF.getLongOpt()))
+                : 1000;
+        final int storeFetches = cmd.hasOption(OPT_STORE.getLongOpt()) ? Integer
+                .valueOf(cmd.getOptionValue(OPT_STORE.getLongOpt())) : 0;
+        final int storeKeys = cmd.hasOption(OPT_STORE_KEYS.getLongOpt()) ? Integer
+                .valueOf(cmd.getOptionValue(OPT_STORE_KEYS.getLongOpt()))
+                : 10000;
+        final int storeSize = cmd.hasOption(OPT_STORE_SIZE.getLongOpt()) ? Integer
+                .valueOf(cmd.getOptionValue(OPT_STORE_SIZE.getLongOpt()))
+                : 1000;
+        final int storeCacheSize = cmd.hasOption(OPT_STORE_CACHE_SIZE
+                .getLongOpt()) ? Integer.valueOf(cmd
+                .getOptionValue(OPT_STORE_CACHE_SIZE.getLongOpt()))
+                : storeSize;
+        final double storeZipf = cmd.hasOption(OPT_STORE_ZIPF.getLongOpt()) ? Double
+                .valueOf(cmd.getOptionValue(OPT_STORE_ZIPF.getLongOpt()))
+                : 1.0;
+        final long swapAttempts = cmd.hasOption(OPT_SWAP.getLongOpt()) ? Long
+                .valueOf(cmd.getOptionValue(OPT_SWAP.getLongOpt())) : 0;
+        final int swapWalk = cmd.hasOption(OPT_SWAP_WALK.getLongOpt()) ? Integer
+                .valueOf(cmd.getOptionValue(OPT_SWAP_WALK.getLongOpt())) : 10;
+        final int swapThreads = cmd.hasOption(OPT_SWAP_THREADS.getLongOpt()) ? Integer
+                .valueOf(cmd.getOptionValue(OPT_SWAP_THREADS.getLongOpt()))
+                : Runtime.getRuntime().availableProcessors();
+        final int probeTrials = cmd.hasOption(OPT_PROBE_TRIALS.getLongOpt()) ? Integer
+                .valueOf(cmd.getOptionValue(OPT_PROBE_TRIALS.getLongOpt()))
+                : 100;
+        final int probesPerNode = cmd.hasOption(OPT_PROBE_PER_NODE.getLongOpt()) ? Integer
+                .valueOf(cmd.getOptionValue(OPT_PROBE_PER_NODE.getLongOpt()))
+                : 30;
+        final double probeTolerance = cmd.hasOption(OPT_PROBE_TOLERANCE
+                .getLongOpt()) ? Double.valueOf(cmd
+                .getOptionValue(OPT_PROBE_TOLERANCE.getLongOpt())) : 0;
+        final double routeTolerance = cmd.hasOption(OPT_ROUTE_TOLERANCE
+                .getLongOpt()) ? Double.valueOf(cmd
+                .getOptionValue(OPT_ROUTE_TOLERANCE.getLongOpt())) : 0;
+        if (probeTrials < 1 || probesPerNode < 1 || probeTolerance < 0
+                || routeTolerance < 0) {
+            LOGGER.severe("Probe trials and probes per node must be positive, and tolerances must not be negative.");
+            return null;
+        }
+        final int routeWindow = cmd.hasOption(OPT_ROUTE_WINDOW.getLongOpt()) ? Integer
+                .valueOf(cmd.getOptionValue(OPT_ROUTE_WINDOW.getLongOpt()))
+                : 10000;
+        final int checkpointInterval = cmd.hasOption(OPT_CHECKPOINT_INTERVAL
+                .getLongOpt()) ? Integer.valueOf(cmd
+                .getOptionValue(OPT_CHECKPOINT_INTERVAL.getLongOpt()))
+                : 1000000;
+        final int probeThreads = cmd.hasOption(OPT_PROBE_THREADS.getLongOpt()) ? Integer
+                .valueOf(cmd.getOptionValue(OPT_PROBE_THREADS.getLongOpt()))
+                : Runtime.getRuntime().availableProcessors();
+        final int sweepThreads = cmd.hasOption(OPT_SWEEP_THREADS.getLongOpt()) ? Integer
+                .valueOf(cmd.getOptionValue(OPT_SWEEP_THREADS.getLongOpt()))
+                : Runtime.getRuntime().availableProcessors();
+        if (sweepThreads < 1) {
+            LOGGER.severe("--" + OPT_SWEEP_THREADS.getLongOpt()
+                    + " must be positive.");
+            return null;
+        }
+        final int metricsInterval = cmd.hasOption(OPT_METRICS_INTERVAL
+                .getLongOpt()) ? Integer.valueOf(cmd
+                .getOptionValue(OPT_METRICS_INTERVAL.getLongOpt())) : 0;
+        if (metricsInterval < 0) {
+            LOGGER.severe("--" + OPT_METRICS_INTERVAL.getLongOpt()
+                    + " must not be negative.");
+            return null;
+        }
         final String logLevel = cmd.hasOption(OPT_LOG_LEVEL.getLongOpt()) ? cmd
                 .getOptionValue(OPT_LOG_LEVEL.getLongOpt()) : LOGGING_DEFAULT
                 .name();
@@ -861,6 +2146,32 @@ public final class Arguments {
                 degreeOutput, linkOutput, graphOutput, graphOutputText,
                 cmd.getOptionValue(OPT_PROBE_OUTPUT.getLongOpt()),
                 routingSimOutput, foldingPolicy, routingPolicy, nLookAhead,
-                logLevel, pause, scriptOutput, oldPathFolding, cmd);
+                logLevel, pause, scriptOutput, oldPathFolding,
+                cmd.hasOption(OPT_CHURN.getLongOpt()), churnHours,
+                churnSession, churnDowntime, churnWeibullShape,
+                churnRequestRate, sessionDistribution, churnOutput,
+                cmd.hasOption(OPT_ROUTE_LATENCY.getLongOpt()), latencyMean,
+                latencySpread, latencyJitter,
+                cmd.hasOption(OPT_LOAD.getLongOpt()), loadRates, loadRequests,
+                loadCapacity, loadQueue, loadServiceTime, loadBackoff,
+                loadOutput, cmd.hasOption(OPT_STORE.getLongOpt()),
+                storeFetches, storeKeys, storeSize, storeCacheSize, storeZipf,
+                storePolicy, storeOutput, swapAttempts, swapWalk,
+                swapThreads, cmd.hasOption(OPT_SWAP_SHUFFLE.getLongOpt()),
+                routeWindow, routeWindowOutput,
+                cmd.hasOption(OPT_ROUTE_WINDOW_GRAPH.getLongOpt()),
+                cmd.getOptionValue(OPT_CHECKPOINT.getLongOpt()),
+                checkpointInterval,
+                cmd.getOptionValue(OPT_RESUME.getLongOpt()), probeThreads,
+                cmd.hasOption(OPT_PROBE_ALIAS.getLongOpt()),
+                cmd.hasOption(OPT_PROBE_EXACT.getLongOpt()), probeTrials,
+                probesPerNode, probeTolerance, routeTolerance, probeFormat,
+                cmd.hasOption(OPT_LINK_RAW.getLongOpt()),
+                cmd.getOptionValue(OPT_SWEEP.getLongOpt()), sweepOutput,
+                sweepThreads,
+                cmd.getOptionValue(OPT_GRAPH_CACHE.getLongOpt()),
+                routeTraceOutput,
+                cmd.hasOption(OPT_ROUTE_TRACE_COMPRESS.getLongOpt()),
+                resultsFormat, resultsOutput, metricsInterval, cmd);
     }
 }
@@ -0,0 +1,20 @@
+package org.freenetproject.routing_simulator;
+
+/**
+ * Formats for sampled probe distributions.
+ */
+public enum ProbeFormat {
+    /**
+     * reference.dat and a probe-[hops].dat for each hop, each of lines
+     * "[node ID] [times seen]".
+     */
+    TEXT,
+    /**
+     * A single binary file of int columns.
+     */
+    BINARY,
+    /**
+     * A single binary file of delta and variable-length encoded columns.
+     */
+    COMPRESSED
+}
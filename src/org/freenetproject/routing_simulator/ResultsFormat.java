@@ -0,0 +1,21 @@
+package org.freenetproject.routing_simulator;
+
+/**
+ * Formats for the results of runs and windows of requests.
+ */
+public enum ResultsFormat {
+    /**
+     * Space-separated headers and values as with --script-output, and CSV
+     * rows of windows without configuration.
+     */
+    TEXT,
+    /**
+     * A header line of column names, then a line for each record with its
+     * nested fields flattened to dotted columns.
+     */
+    CSV,
+    /**
+     * A JSON object on each line for each record.
+     */
+    JSON
+}
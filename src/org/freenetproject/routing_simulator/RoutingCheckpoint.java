@@ -0,0 +1,247 @@
+package org.freenetproject.routing_simulator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.math3.random.RandomGenerator;
+import org.freenetproject.routing_simulator.experiment.RoutingExp;
+import org.freenetproject.routing_simulator.experiment.WindowRecorder;
+import org.freenetproject.routing_simulator.graph.Graph;
+import org.freenetproject.routing_simulator.graph.node.SimpleNode;
+
+/**
+ * Complete state of a routing simulation between two requests: the graph
+ * with every node's connections, LRU order, counters and routing cache, the
+ * request counter, the random generators, and the accumulated results. A
+ * simulation resumed from a checkpoint continues exactly as the original
+ * would have.
+ * 
+ * Random generators are saved with Java serialization, which does not keep
+ * the second value cached by nextGaussian(); the simulator does not use
+ * Gaussian values.
+ */
+public class RoutingCheckpoint {
+    private static final int MAGIC = 0x46525343;
+    private static final int VERSION = 1;
+
+    /**
+     * Index of the first request not yet routed.
+     */
+    public final int nextRequest;
+    public final Graph graph;
+    public final RandomGenerator routeRandom;
+    /**
+     * Source of latency jitter, or null if latency was not modelled.
+     */
+    public final RandomGenerator latencyRandom;
+    public final RoutingExp experiment;
+    /**
+     * Simulated time in milliseconds when latency is modelled.
+     */
+    public final double clock;
+    /**
+     * Graph statistics from before routing started.
+     */
+    public final String beforeStats;
+    /**
+     * Length of the windowed routing output when the checkpoint was written,
+     * or -1 if there was none.
+     */
+    public final long windowLength;
+    /**
+     * Options which affect routing results, from
+     * {@link Arguments#routingSettings()}.
+     */
+    private final Map<String, String> settings;
+    private final long requestID;
+    private final byte[] windowState;
+
+    /**
+     * Read a checkpoint written by {@link #write}. The request counter is not
+     * restored until {@link #restoreRequestID()} is called.
+     * 
+     * @param file
+     *            File to read.
+     * @throws IOException
+     *             The file could not be read or is not a checkpoint.
+     */
+    public RoutingCheckpoint(File file) throws IOException {
+        final DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC)
+                throw new IOException(file + " is not a checkpoint.");
+            final int version = in.readInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported checkpoint version "
+                        + version + ".");
+            nextRequest = in.readInt();
+            settings = new TreeMap<String, String>();
+            for (int i = in.readInt(); i > 0; i--)
+                settings.put(in.readUTF(), in.readUTF());
+            windowLength = in.readLong();
+            requestID = in.readLong();
+            clock = in.readDouble();
+            beforeStats = in.readUTF();
+
+            final RandomGenerator graphRandom = readRandom(in);
+            routeRandom = readRandom(in);
+            latencyRandom = in.readBoolean() ? readRandom(in) : null;
+
+            graph = Graph.readCheckpoint(in, graphRandom);
+            experiment = RoutingExp.read(in);
+
+            if (in.readBoolean()) {
+                windowState = new byte[in.readInt()];
+                in.readFully(windowState);
+            } else {
+                windowState = null;
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Check that the checkpoint was written by a run with the same arguments
+     * that determine its results.
+     * 
+     * @throws IllegalArgumentException
+     *             The arguments differ. The message lists every difference.
+     */
+    public void check(Arguments arguments) {
+        final Map<String, String> current = arguments.routingSettings();
+        final StringBuilder b = new StringBuilder();
+        for (Map.Entry<String, String> setting : current.entrySet()) {
+            final String saved = settings.get(setting.getKey());
+            if (!setting.getValue().equals(saved))
+                b.append(" --").append(setting.getKey()).append(" was ")
+                        .append(saved).append(", not ")
+                        .append(setting.getValue()).append('.');
+        }
+        if (b.length() > 0)
+            throw new IllegalArgumentException(
+                    "Checkpoint does not match the arguments:" + b);
+    }
+
+    /**
+     * Continue request numbering from where the checkpoint was taken.
+     */
+    public void restoreRequestID() {
+        SimpleNode.setRequestID(requestID);
+    }
+
+    /**
+     * Continue the window the recorder was on when the checkpoint was taken.
+     */
+    public void restoreWindow(WindowRecorder window) throws IOException {
+        if (window != null && windowState != null)
+            window.readState(new DataInputStream(new ByteArrayInputStream(
+                    windowState)));
+    }
+
+    /**
+     * Write a checkpoint. It is written to a temporary file and then moved
+     * into place, so a crash while writing leaves the previous checkpoint.
+     * 
+     * @param file
+     *            File to write.
+     * @param nextRequest
+     *            Index of the first request not yet routed.
+     * @param latencyRandom
+     *            Source of latency jitter, or null.
+     * @param clock
+     *            Simulated time in milliseconds.
+     * @param window
+     *            Windowed output recorder, or null.
+     */
+    public static void write(File file, Arguments arguments, int nextRequest,
+            Graph graph, RandomGenerator routeRandom,
+            RandomGenerator latencyRandom, RoutingExp experiment,
+            double clock, String beforeStats, WindowRecorder window)
+            throws IOException {
+        final File temporary = new File(file.getPath() + ".tmp");
+        final DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temporary)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(nextRequest);
+            final Map<String, String> settings = arguments.routingSettings();
+            out.writeInt(settings.size());
+            for (Map.Entry<String, String> setting : settings.entrySet()) {
+                out.writeUTF(setting.getKey());
+                out.writeUTF(setting.getValue());
+            }
+            // Rows are flushed as they are written.
+            out.writeLong(arguments.routeWindowPath() == null ? -1 : new File(
+                    arguments.routeWindowPath()).length());
+            out.writeLong(SimpleNode.getRequestID());
+            out.writeDouble(clock);
+            out.writeUTF(beforeStats);
+
+            writeRandom(out, graph.getNode(0).getRandom());
+            writeRandom(out, routeRandom);
+            out.writeBoolean(latencyRandom != null);
+            if (latencyRandom != null)
+                writeRandom(out, latencyRandom);
+
+            graph.writeCheckpoint(out);
+            experiment.write(out);
+
+            out.writeBoolean(window != null);
+            if (window != null) {
+                final ByteArrayOutputStream state = new ByteArrayOutputStream();
+                window.writeState(new DataOutputStream(state));
+                out.writeInt(state.size());
+                state.writeTo(out);
+            }
+        } finally {
+            out.close();
+        }
+        if (!temporary.renameTo(file)) {
+            // Some platforms do not replace existing files when renaming.
+            if (!file.delete() || !temporary.renameTo(file))
+                throw new IOException("Could not move " + temporary + " to "
+                        + file);
+        }
+    }
+
+    private static void writeRandom(DataOutputStream out,
+            RandomGenerator random) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream objects = new ObjectOutputStream(bytes);
+        objects.writeObject(random);
+        objects.close();
+        out.writeInt(bytes.size());
+        bytes.writeTo(out);
+    }
+
+    private static RandomGenerator readRandom(DataInputStream in)
+            throws IOException {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        final ObjectInputStream objects = new ObjectInputStream(
+                new ByteArrayInputStream(bytes));
+        try {
+            return (RandomGenerator) objects.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unknown random generator class: "
+                    + e.getMessage());
+        } finally {
+            objects.close();
+        }
+    }
+}
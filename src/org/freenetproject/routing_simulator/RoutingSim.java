@@ -2,22 +2,56 @@ package org.freenetproject.routing_simulator;
 
 import org.apache.commons.math3.random.MersenneTwister;
 import org.apache.commons.math3.random.RandomGenerator;
+import org.freenetproject.routing_simulator.event.LatencyModel;
+import org.freenetproject.routing_simulator.event.LoadReplay;
+import org.freenetproject.routing_simulator.event.RouteReplay;
+import org.freenetproject.routing_simulator.event.Simulator;
+import org.freenetproject.routing_simulator.experiment.ExactProbeExp;
+import org.freenetproject.routing_simulator.experiment.LoadExp;
+import org.freenetproject.routing_simulator.experiment.ProbeExp;
+import org.freenetproject.routing_simulator.experiment.ProbeOutput;
+import org.freenetproject.routing_simulator.experiment.ResultsWriter;
+import org.freenetproject.routing_simulator.experiment.RouteTrace;
 import org.freenetproject.routing_simulator.experiment.RoutingExp;
+import org.freenetproject.routing_simulator.experiment.StoreExp;
+import org.freenetproject.routing_simulator.experiment.WindowRecorder;
 import org.freenetproject.routing_simulator.graph.Graph;
+import org.freenetproject.routing_simulator.graph.GraphCache;
+import org.freenetproject.routing_simulator.graph.TransitionMatrix;
+import org.freenetproject.routing_simulator.graph.TransitionTables;
+import org.freenetproject.routing_simulator.graph.churn.ChurnSchedule;
+import org.freenetproject.routing_simulator.graph.churn.OnlineSet;
+import org.freenetproject.routing_simulator.graph.churn.SessionSource;
 import org.freenetproject.routing_simulator.graph.linklength.LinkLengthSource;
+import org.freenetproject.routing_simulator.graph.node.RouteTarget;
 import org.freenetproject.routing_simulator.graph.node.SimpleNode;
+import org.freenetproject.routing_simulator.graph.store.FetchTarget;
+import org.freenetproject.routing_simulator.graph.store.InsertTarget;
+import org.freenetproject.routing_simulator.graph.store.KeyPopularity;
+import org.freenetproject.routing_simulator.graph.store.Keys;
+import org.freenetproject.routing_simulator.graph.swap.LocationSwapper;
 import org.freenetproject.routing_simulator.util.ArrayUtil;
+import org.freenetproject.routing_simulator.util.IntArrayList;
+import org.freenetproject.routing_simulator.util.LogHistogram;
 import org.freenetproject.routing_simulator.util.logging.SimLogger;
+import org.freenetproject.routing_simulator.util.metrics.Metrics;
 
 import frp.utils.Progresser;
 
+import java.io.BufferedWriter;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.io.Writer;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.Queue;
 import java.util.Scanner;
 import java.util.logging.Logger;
@@ -32,6 +66,11 @@ public final class RoutingSim {
     private static final Logger LOGGER = Logger.getLogger(RoutingSim.class
             .getName());
 
+    /**
+     * Resolution of the link length distribution output.
+     */
+    private static final int LINK_BINS_PER_DECADE = 50;
+
     /**
      * Main simulator program. Generate a set of graphs of different parameters,
      * run a set of requests on them, and print assorted stats.
@@ -68,6 +107,12 @@ public final class RoutingSim {
         SimLogger.setup(arguments.logLevel);
         LOGGER.info(arguments.toString());
 
+        // Register before pausing so that the counters can be found when
+        // attaching.
+        Metrics.register();
+        if (arguments.metricsInterval > 0)
+            Metrics.logEvery(arguments.metricsInterval);
+
         if (arguments.pause) {
             LOGGER.severe("Press enter to continue...");
             Scanner scan = new Scanner(System.in);
@@ -75,13 +120,38 @@ public final class RoutingSim {
             scan.close();
         }
 
+        if (arguments.sweepGrid != null) {
+            final long start = System.currentTimeMillis();
+            new Sweep(this, arguments).run();
+            LOGGER.info("Total time taken (ms): "
+                    + (System.currentTimeMillis() - start));
+            return;
+        }
+
         // Time tracking: report time taken for each graph setting upon
         // completion.
         long startTime = System.currentTimeMillis();
         long lastTime = startTime;
 
-        // Load the graph; otherwise generate.
-        Graph g = this.generateGraph(arguments);
+        /*
+         * Resume the routing simulation from a checkpoint, which includes the
+         * graph; otherwise load or generate the graph.
+         */
+        final RoutingCheckpoint resume;
+        Graph g;
+        if (arguments.resumeFile != null) {
+            resume = new RoutingCheckpoint(new File(arguments.resumeFile));
+            resume.check(arguments);
+            g = resume.graph;
+            LOGGER.warning("Resuming from request " + resume.nextRequest);
+        } else {
+            resume = null;
+            g = this.generateGraph(arguments);
+
+            if (arguments.swapShuffle || arguments.swapAttempts > 0) {
+                this.swapLocations(g, arguments);
+            }
+        }
 
         LOGGER.warning("Initial graph stats\n" + g.printGraphStats());
         memory = new ByteArrayOutputStream();
@@ -104,19 +174,36 @@ public final class RoutingSim {
             System.out.print(b.toString());
         }
 
-        if (arguments.runProbe) {
+        // Probes were run before the checkpoint was written.
+        if (arguments.runProbe && resume == null) {
             // Re-initialize random number source so behavior here does not
             // depend on previous usage, only the seed.
             RandomGenerator rand = new MersenneTwister(arguments.seed);
             // Uniform probes if --metropolis-hastings is not specified.
             // TODO: Pass in checked directory.
-            this.probeDistribution(g, rand, arguments.maxHopsProbe,
-                    arguments.outputProbe, !arguments.metropolisHastings);
+            this.probeDistribution(g, rand, arguments);
         }
 
+        RoutingExp experiment = null;
         if (arguments.runRoute) {
+            RandomGenerator rand = resume == null ? new MersenneTwister(
+                    arguments.seed) : resume.routeRandom;
+            experiment = this.simulate(g, rand, arguments, resume, System.err);
+        }
+
+        if (arguments.runChurn) {
             RandomGenerator rand = new MersenneTwister(arguments.seed);
-            this.simulate(g, rand, arguments);
+            this.simulateChurn(g, rand, arguments);
+        }
+
+        if (arguments.runLoad) {
+            RandomGenerator rand = new MersenneTwister(arguments.seed);
+            this.simulateLoad(g, rand, arguments);
+        }
+
+        if (arguments.runStore) {
+            RandomGenerator rand = new MersenneTwister(arguments.seed);
+            this.simulateStore(g, rand, arguments);
         }
 
         LOGGER.warning("Final graph stats\n" + g.printGraphStats());
@@ -127,7 +214,8 @@ public final class RoutingSim {
         LOGGER.info("Final degree distribution\nDegree Count\n"
                 + memory.toString());
 
-        this.writeLinkOutput(g, arguments.linkOutput, arguments.excludeLattice);
+        this.writeLinkOutput(g, arguments.linkOutput, arguments.excludeLattice,
+                arguments.linkRaw);
 
         if (arguments.graphOutput != null) {
             g.write(arguments.graphOutput);
@@ -137,12 +225,136 @@ public final class RoutingSim {
             g.writeDot_Wait(arguments.graphOutputText);
         }
 
+        if (arguments.resultsOutput != null) {
+            writeResults(arguments, g, experiment);
+        }
+
         LOGGER.info("Route/Probe time taken (ms): "
                 + (System.currentTimeMillis() - lastTime));
         LOGGER.info("Total time taken (ms): "
                 + (System.currentTimeMillis() - startTime));
     }
 
+    /**
+     * Collect the configuration and results of a run into a record.
+     *
+     * @param arguments
+     *            The CLI arguments of the run.
+     * @param graph
+     *            The graph after the run.
+     * @param experiment
+     *            Routing results, or null if the run did not route.
+     * @return the record, with the configuration, graph statistics, and
+     *         routing results if any nested under "config", "graph" and
+     *         "routing".
+     * @throws Exception
+     *             Error computing the graph statistics.
+     */
+    static Map<String, Object> results(final Arguments arguments,
+            final Graph graph, final RoutingExp experiment) throws Exception {
+        final Map<String, Object> record = new LinkedHashMap<String, Object>();
+        record.put("config", arguments.toResults());
+        final Map<String, Object> graphResults = new LinkedHashMap<String, Object>();
+        graph.addResults(graphResults);
+        record.put("graph", graphResults);
+        if (experiment != null) {
+            final Map<String, Object> routing = new LinkedHashMap<String, Object>();
+            experiment.addResults(routing);
+            record.put("routing", routing);
+        }
+        return record;
+    }
+
+    /**
+     * Write the results of the run to the results output: the columns of
+     * --script-output for the text format, or a record otherwise.
+     */
+    private static void writeResults(final Arguments arguments,
+            final Graph graph, final RoutingExp experiment) throws Exception {
+        if (arguments.resultsFormat == ResultsFormat.TEXT) {
+            StringBuilder b = new StringBuilder();
+            b.append(graph.toStringHeaders());
+            if (experiment != null)
+                b.append(experiment.toStringHeaders());
+            b.append('\n');
+            b.append(graph.toStringValues());
+            if (experiment != null)
+                b.append(experiment.toStringValues());
+            b.append('\n');
+            arguments.resultsOutput.write(b.toString().getBytes("UTF-8"));
+            arguments.resultsOutput.close();
+            return;
+        }
+
+        final ResultsWriter writer = new ResultsWriter(
+                arguments.resultsOutput, arguments.resultsFormat);
+        try {
+            writer.write(results(arguments, graph, experiment));
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Swap node locations as a darknet does, optionally after randomly
+     * permuting them.
+     * 
+     * @param graph
+     *            The graph.
+     * @param arguments
+     *            The CLI arguments.
+     * @throws Exception
+     *             Error swapping locations.
+     */
+    void swapLocations(final Graph graph, final Arguments arguments)
+            throws Exception {
+        // Separate from the generation seed so that swapping does not change
+        // the graph.
+        final RandomGenerator rand = new MersenneTwister(arguments.seed + 3);
+        if (arguments.swapShuffle) {
+            graph.shuffleLocations(rand);
+        }
+        if (arguments.swapAttempts == 0) {
+            return;
+        }
+
+        final double before = meanLinkLength(graph);
+        final LocationSwapper swapper = new LocationSwapper(graph,
+                arguments.swapWalk, arguments.swapThreads);
+        final long start = System.currentTimeMillis();
+        swapper.run(arguments.swapAttempts, rand);
+        final long taken = Math.max(1, System.currentTimeMillis() - start);
+
+        StringBuilder b = new StringBuilder("Location swapping\n");
+        b.append("Attempts :                        \t").append(
+                swapper.getAttempts());
+        b.append("\n");
+        b.append("Swaps :                           \t").append(
+                swapper.getSwaps());
+        b.append("\n");
+        b.append("Abandoned due to contention :     \t").append(
+                swapper.getContended());
+        b.append("\n");
+        b.append("Attempts per second :             \t").append(
+                swapper.getAttempts() * 1000 / taken);
+        b.append("\n");
+        b.append("Mean link length before :         \t").append(before);
+        b.append("\n");
+        b.append("Mean link length after :          \t").append(
+                meanLinkLength(graph));
+        b.append("\n");
+        LOGGER.warning(b.toString());
+    }
+
+    private static double meanLinkLength(final Graph graph) {
+        double sum = 0;
+        final double[] lengths = graph.edgeLengthArray(false);
+        for (double length : lengths) {
+            sum += length;
+        }
+        return sum / lengths.length;
+    }
+
     /**
      * Write the graph's link length distribution to an output stream.
      * 
@@ -152,24 +364,42 @@ public final class RoutingSim {
      *            The output stream to write link lengths to.
      * @param excludeLattice
      *            If true don't write links that are part of the lattice.
+     * @param raw
+     *            If true write every link length; otherwise write the
+     *            cumulative distribution of lengths in log-scale bins.
      * @throws IOException
      *             Error writing to the output stream.
      */
     private void writeLinkOutput(final Graph graph,
-            final OutputStream linkOutputStream, final boolean excludeLattice)
-            throws IOException {
+            final OutputStream linkOutputStream, final boolean excludeLattice,
+            final boolean raw) throws IOException {
         if (linkOutputStream == null) {
             return;
         }
 
-        ArrayList<Double> lengths = graph.edgeLengths(excludeLattice);
-        // Output is intended for gnuplot CDF - second value is Y and should
-        // sum to 1.
-        double normalized = 1.0 / lengths.size();
-        for (double length : lengths) {
-            linkOutputStream.write((length + " " + normalized + "\n")
-                    .getBytes("UTF-8"));
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(
+                linkOutputStream, "UTF-8"), 1 << 16);
+        if (raw) {
+            final double[] lengths = graph.edgeLengthArray(excludeLattice);
+            // Output is intended for gnuplot CDF - second value is Y and
+            // should sum to 1.
+            final String normalized = " " + (1.0 / lengths.length) + "\n";
+            for (double length : lengths) {
+                writer.write(Double.toString(length));
+                writer.write(normalized);
+            }
+        } else {
+            /*
+             * As location is circular and [0,1), the largest difference is
+             * 0.5. Below a millionth of the circle lengths are counted
+             * together.
+             */
+            final LogHistogram lengths = new LogHistogram(1e-6, 0.5,
+                    LINK_BINS_PER_DECADE);
+            graph.edgeLengths(excludeLattice, lengths);
+            lengths.writeCDF(writer);
         }
+        writer.flush();
     }
 
     /**
@@ -197,6 +427,8 @@ public final class RoutingSim {
 
     /**
      * Generate a graph by either loading it from file or creating it randomly.
+     * Generated graphs are loaded from and added to the graph cache if one is
+     * given.
      * 
      * @param arguments
      *            The CLI program arguments.
@@ -204,7 +436,7 @@ public final class RoutingSim {
      * @throws Exception
      *             Error creating the graph object.
      */
-    private Graph generateGraph(final Arguments arguments) throws Exception {
+    Graph generateGraph(final Arguments arguments) throws Exception {
         RandomGenerator rand = new MersenneTwister(arguments.seed);
         Graph g = null;
 
@@ -215,6 +447,23 @@ public final class RoutingSim {
         } else if (arguments.graphGenerator == GraphGenerator.LOAD_GML) {
             g = Graph.readGml(arguments.graphInput, rand);
         } else {
+            final GraphCache cache = arguments.graphCache == null ? null
+                    : new GraphCache(new File(arguments.graphCache));
+            final String key = cache == null ? null : arguments
+                    .generationKey();
+            if (cache != null) {
+                try {
+                    g = cache.load(key);
+                } catch (IOException e) {
+                    LOGGER.warning("Generating graph again: " + e.getMessage());
+                }
+                if (g != null) {
+                    LOGGER.info("Loaded cached graph "
+                            + cache.file(key).getName());
+                    return g;
+                }
+            }
+
             final ArrayList<SimpleNode> nodes = Graph.generateNodes(
                     arguments.networkSize, rand, arguments.fastGeneration,
                     arguments.getDegreeSource(rand));
@@ -239,6 +488,10 @@ public final class RoutingSim {
                 b.append(arguments.graphGenerator.name());
                 throw new IllegalStateException(b.toString());
             }
+
+            if (cache != null) {
+                cache.store(key, g);
+            }
         }
         // g.updateGraphStats();
         return g;
@@ -251,19 +504,20 @@ public final class RoutingSim {
      *            The graph.
      * @param rand
      *            Random generator.
-     * @param maxHops
-     *            Maximum hops.
-     * @param containingPath
-     *            Output directory.
-     * @param uniform
-     *            Metropolis Hastings.
+     * @param arguments
+     *            The CLI arguments.
      * @throws IOException
      *             Error writing results to the output.
+     * @throws InterruptedException
+     *             Interrupted while waiting for the probe threads.
      */
     private void probeDistribution(final Graph graph,
-            final RandomGenerator rand, final int maxHops,
-            final String containingPath, final boolean uniform)
-            throws IOException {
+            final RandomGenerator rand, final Arguments arguments)
+            throws IOException, InterruptedException {
+        final int maxHops = arguments.maxHopsProbe;
+        final String containingPath = arguments.outputProbe;
+        final boolean uniform = !arguments.metropolisHastings;
+        final int threads = arguments.probeThreads;
         File output = new File(containingPath);
         assert output.isDirectory();
         if (!output.exists()) {
@@ -275,68 +529,68 @@ public final class RoutingSim {
             }
         }
 
-        // TODO: nTrials and nProbes configurable on command line.
-        final int nTrials = 100;
-        final int nProbes = graph.size() * 30;
-        LOGGER.warning("Determining baseline");
-        int[] baselineOccurrences = new int[graph.size()];
-        /*
-         * Find baseline for visibility by selecting the same number of nodes
-         * from the entire network at random as endpoints at each HTL. Sort
-         * occurrences each run, then add to final result array to represent
-         * actual spread from each run and avoid node index influence.
-         */
-        for (int i = 0; i < nTrials; i++) {
-            int[] trialOccurrences = new int[graph.size()];
-            for (int walk = 0; walk < nProbes; walk++) {
-                trialOccurrences[graph.getNode(rand.nextInt(graph.size())).index]++;
-            }
-            Arrays.sort(trialOccurrences);
-            assert baselineOccurrences.length == trialOccurrences.length;
-            for (int j = 0; j < trialOccurrences.length; j++) {
-                baselineOccurrences[j] += trialOccurrences[j];
+        final int nTrials = arguments.probeTrials;
+        final int nProbes = graph.size() * arguments.probesPerNode;
+
+        if (arguments.probeExact) {
+            LOGGER.warning("Propagating HTL on " + threads + " threads");
+            final int[] sources = new int[nTrials];
+            for (int i = 0; i < nTrials; i++)
+                sources[i] = rand.nextInt(graph.size());
+            final ExactProbeExp probes = new ExactProbeExp(
+                    new TransitionMatrix(graph, uniform), maxHops, threads);
+            probes.run(sources);
+
+            /*
+             * Scale to the occurrences expected from sampled probes so the
+             * output is comparable with theirs.
+             */
+            final StringBuilder distances = new StringBuilder();
+            for (int hops = 0; hops <= maxHops; hops++) {
+                final double[] expected = probes.getTotals(hops).clone();
+                for (int i = 0; i < expected.length; i++)
+                    expected[i] *= nProbes;
+                output = new File(containingPath + File.separator + "exact-"
+                        + hops + ".dat");
+                ArrayUtil.writeArray(expected, output);
+                distances.append(hops).append('\t')
+                        .append(probes.getMeanDistance(hops)).append('\t')
+                        .append(probes.getMaxDistance(hops)).append('\n');
             }
+            final FileOutputStream distanceOutput = new FileOutputStream(
+                    new File(containingPath + File.separator
+                            + "exact-distance.dat"));
+            distanceOutput.write(distances.toString().getBytes("UTF-8"));
+            distanceOutput.close();
+            return;
         }
 
-        output = new File(containingPath + File.separator + "reference.dat");
-        ArrayUtil.writeArray(baselineOccurrences, output);
-
-        LOGGER.warning("Simulating HTL");
-        // Find distribution of nodes reached with random walk for increasing
-        // hops from all nodes.
-        // maxHops + 1 is because the starting node is at zero hops.
-        int[][] hopOccurrences = new int[maxHops + 1][graph.size()];
-        ArrayList<SimpleNode> trace;
-        for (int nodeIndex = 0; nodeIndex < nTrials; nodeIndex++) {
-            SimpleNode source = graph.getNode(rand.nextInt(graph.size()));
-            SimpleNode alongTrace;
-            int[][] trialOccurrences = new int[maxHops + 1][graph.size()];
-            for (int walk = 0; walk < nProbes; walk++) {
-                trace = source.randomWalkList(maxHops, uniform, rand);
-                // Traces: starting point (zero hops), then maxHops hops from
-                // there.
-                assert trace.size() == maxHops + 1;
-                for (int fromEnd = 0; fromEnd <= maxHops; fromEnd++) {
-                    // fromEnd of trace: hops along. 0 is starting node.
-                    alongTrace = trace.get(fromEnd);
-                    trialOccurrences[fromEnd][alongTrace.index]++;
-                }
-            }
-            assert hopOccurrences.length == trialOccurrences.length;
-            for (int i = 0; i < trialOccurrences.length; i++) {
-                assert hopOccurrences[i].length == trialOccurrences[i].length;
-                Arrays.sort(trialOccurrences[i]);
-                for (int j = 0; j < trialOccurrences[i].length; j++) {
-                    hopOccurrences[i][j] += trialOccurrences[i][j];
-                }
-            }
+        LOGGER.warning("Simulating HTL on " + threads + " threads");
+        final ProbeExp probes = new ProbeExp(graph, maxHops, uniform, nTrials,
+                nProbes, threads, arguments.probeAlias ? new TransitionTables(
+                        graph) : null, arguments.probeTolerance);
+        probes.run(rand);
+        LOGGER.warning("Ran " + probes.getTrials() + " of " + nTrials
+                + " trials. Kolmogorov-Smirnov distance from reference at "
+                + maxHops + " hops: " + probes.getDistance(maxHops));
+
+        if (arguments.probeFormat != ProbeFormat.TEXT) {
+            final int[][] occurrences = new int[maxHops + 1][];
+            for (int hops = 0; hops <= maxHops; hops++)
+                occurrences[hops] = probes.getOccurrences(hops);
+            new ProbeOutput(probes.getBaseline(), occurrences).write(new File(
+                    containingPath, ProbeOutput.FILE_NAME),
+                    arguments.probeFormat == ProbeFormat.COMPRESSED);
+            return;
         }
 
-        LOGGER.warning("Sorting results.");
+        output = new File(containingPath + File.separator + "reference.dat");
+        ArrayUtil.writeArray(probes.getBaseline(), output);
+
         for (int hops = 0; hops <= maxHops; hops++) {
             output = new File(containingPath + File.separator + "probe-" + hops
                     + ".dat");
-            ArrayUtil.writeArray(hopOccurrences[hops], output);
+            ArrayUtil.writeArray(probes.getOccurrences(hops), output);
         }
     }
 
@@ -349,11 +603,18 @@ public final class RoutingSim {
      *            Random generator.
      * @param arguments
      *            The CLI arguments.
+     * @param resume
+     *            Checkpoint to continue from, or null to start from the first
+     *            request.
+     * @param progress
+     *            Destination of progress updates.
+     * @return the results.
      * @throws Exception
      *             Error running the routing simulation.
      */
-    private void simulate(final Graph graph, final RandomGenerator rand,
-            final Arguments arguments) throws Exception {
+    RoutingExp simulate(final Graph graph, final RandomGenerator rand,
+            final Arguments arguments, final RoutingCheckpoint resume,
+            final PrintStream progress) throws Exception {
         final int nRequests = arguments.nRouteRequests;
         final int maxHTL = arguments.maxHopsRoute;
         final RoutingPolicy routingPolicy = arguments.routingPolicy;
@@ -367,15 +628,79 @@ public final class RoutingSim {
         final int significantBits = arguments.significantBitsLookAhead;
         final double randomRoutingChance = arguments.routingRandomChance;
 
+        final int start = resume == null ? 0 : resume.nextRequest;
+        final File checkpoint = arguments.checkpointFile == null ? null
+                : new File(arguments.checkpointFile);
+
         // Print out current run progress for users benefit
-        System.err.println("\n\tRouting Simulation");
-        Progresser prog = new Progresser(System.err, nRequests);
+        progress.println("\n\tRouting Simulation");
+        Progresser prog = new Progresser(progress, nRequests - start);
 
-        String beforeStats = "\nGraph initial stats\n"
-                + graph.printGraphStats();
+        String beforeStats = resume == null ? "\nGraph initial stats\n"
+                + graph.printGraphStats() : resume.beforeStats;
 
-        RoutingExp experiment = new RoutingExp(maxHTL, nRequests);
-        for (int i = 0; i < nRequests; i++) {
+        RoutingExp experiment = resume == null ? new RoutingExp(maxHTL,
+                nRequests) : resume.experiment;
+
+        /*
+         * When modelling latency each routed request is replayed hop by hop
+         * on the event simulator. Jitter has its own randomness source so that
+         * routing decisions are the same as without latency.
+         */
+        final RandomGenerator latencyRandom = resume == null
+                || resume.latencyRandom == null ? new MersenneTwister(
+                arguments.seed + 1) : resume.latencyRandom;
+        final LatencyModel latencyModel = arguments
+                .getLatencyModel(latencyRandom);
+        final Simulator simulator = new Simulator();
+        final RouteReplay replay = latencyModel == null ? null
+                : new RouteReplay(simulator, graph, latencyModel, experiment);
+        final RouteTrace trace = arguments.routeTraceOutput == null ? null
+                : new RouteTrace(arguments.routeTraceOutput,
+                        arguments.routeTraceCompress);
+        final IntArrayList travel = replay == null && trace == null ? null
+                : new IntArrayList();
+
+        /*
+         * A resumed run appends to the windowed output. Rows written after
+         * the checkpoint are dropped, as they will be written again.
+         */
+        final String windowPath = arguments.routeWindowPath();
+        if (windowPath != null && resume != null && resume.windowLength >= 0) {
+            final RandomAccessFile file = new RandomAccessFile(windowPath,
+                    "rw");
+            try {
+                if (file.length() > resume.windowLength)
+                    file.setLength(resume.windowLength);
+            } finally {
+                file.close();
+            }
+        }
+        final boolean windowHeader = windowPath == null
+                || new File(windowPath).length() == 0;
+
+        final WindowRecorder window;
+        if (arguments.routeWindowOutput == null) {
+            window = null;
+        } else if (arguments.resultsFormat == ResultsFormat.TEXT) {
+            window = new WindowRecorder(arguments.routeWindow, maxHTL,
+                    arguments.routeWindowOutput,
+                    arguments.routeWindowGraph ? graph : null, windowHeader);
+        } else {
+            window = new WindowRecorder(arguments.routeWindow, maxHTL,
+                    new ResultsWriter(arguments.routeWindowOutput,
+                            arguments.resultsFormat, windowHeader),
+                    arguments.toResults(), arguments.routeWindowGraph ? graph
+                            : null);
+        }
+
+        if (resume != null) {
+            resume.restoreRequestID();
+            resume.restoreWindow(window);
+            simulator.advanceTo(resume.clock);
+        }
+
+        for (int i = start; i < nRequests; i++) {
 
             prog.hit();
 
@@ -388,13 +713,22 @@ public final class RoutingSim {
              */
             final SimpleNode destination = graph.getNode(rand.nextInt(graph
                     .size()));
+            if (travel != null) {
+                travel.clear();
+            }
             final RouteResult result = origin.route(destination, maxHTL, maxHTL,
                     routingPolicy, foldingPolicy, nLookAhead, nLookBack, newFoldingMethod,
-                    significantBits, randomRoutingChance);
+                    significantBits, randomRoutingChance, travel);
 
             experiment.record(result.isSuccess(), result.getPathLength(),
                     result.getTravelLength());
 
+            if (replay != null) {
+                replay.start(travel, result.getRoutingPath(),
+                        result.isSuccess());
+                simulator.run(replay);
+            }
+
             /*
              * Bootstrap all nodes which became disconnected during path
              * folding. Bootstrapping will not connect to disconnected nodes.
@@ -407,14 +741,54 @@ public final class RoutingSim {
             experiment.disconnectedFolding(disconnected.size());
             experiment.foldingOperations(result.getFoldingResult()
                     .getFoldingOperations());
+            if (trace != null) {
+                trace.record(i, origin.index, destination.index,
+                        result.isSuccess(), Math.max(0,
+                                result.getTravelLength()
+                                        - result.getPathLength()), result
+                                .getFoldingResult().getFoldingOperations(),
+                        travel);
+            }
+            if (window != null) {
+                window.record(result.isSuccess(), result.getPathLength(),
+                        result.getTravelLength(), result.getFoldingResult()
+                                .getFoldingOperations(), disconnected.size());
+            }
 
             while (bootstrap && !disconnected.isEmpty()) {
                 for (SimpleNode additional : graph.bootstrap(
                         disconnected.remove(), rand)) {
                     disconnected.offer(additional);
                     experiment.disconnectBootStrap();
+                    if (window != null) {
+                        window.disconnectBootstrap();
+                    }
                 }
             }
+
+            if (window != null) {
+                window.endRequest();
+            }
+
+            if (arguments.routeTolerance > 0
+                    && experiment.successHalfWidth() <= arguments.routeTolerance) {
+                LOGGER.warning("Success rate converged after " + (i + 1)
+                        + " requests.");
+                break;
+            }
+
+            if (checkpoint != null && (i + 1) % arguments.checkpointInterval == 0
+                    && i + 1 < nRequests) {
+                RoutingCheckpoint.write(checkpoint, arguments, i + 1, graph,
+                        rand, latencyModel == null ? null : latencyRandom,
+                        experiment, simulator.now(), beforeStats, window);
+            }
+        }
+        if (window != null) {
+            window.finish();
+        }
+        if (trace != null) {
+            trace.close();
         }
 
         graph.updateGraphStats();
@@ -444,5 +818,398 @@ public final class RoutingSim {
             System.out.print(b.toString());
         }
         LOGGER.info(experiment.toString());
+        return experiment;
+    }
+
+    /**
+     * Simulate routing in the graph while nodes leave and rejoin it. Each node
+     * alternates between sessions online and downtimes offline with lengths
+     * drawn from the configured distribution. A leaving node drops all its
+     * connections; a rejoining one is bootstrapped. Requests are made between
+     * online nodes at a constant rate, and hourly statistics are written as a
+     * time series.
+     * 
+     * @param graph
+     *            The graph.
+     * @param rand
+     *            Random generator.
+     * @param arguments
+     *            The CLI arguments.
+     * @throws Exception
+     *             Error running the churn simulation.
+     */
+    private void simulateChurn(final Graph graph, final RandomGenerator rand,
+            final Arguments arguments) throws Exception {
+        final int maxHTL = arguments.maxHopsRoute;
+        final int requestRate = arguments.churnRequestRate;
+        final int nRequests = (int) Math.ceil(arguments.churnHours
+                * requestRate);
+        final OutputStream outputChurn = arguments.churnOutput;
+        final SessionSource sessions = arguments.getSessionSource(rand,
+                arguments.churnSession);
+        final SessionSource downtimes = arguments.getSessionSource(rand,
+                arguments.churnDowntime);
+
+        // Every node starts online with a session underway.
+        final OnlineSet online = new OnlineSet(graph.size());
+        final ChurnSchedule schedule = new ChurnSchedule(graph.size());
+        for (int i = 0; i < graph.size(); i++) {
+            online.add(i);
+            schedule.schedule(i, sessions.getLength());
+        }
+
+        System.err.println("\n\tChurn Simulation");
+        Progresser prog = new Progresser(System.err, nRequests);
+
+        if (outputChurn != null) {
+            outputChurn.write(("# hour online leaves joins requests "
+                    + "successRate meanSuccessfulPathLength "
+                    + "meanSuccessfulTravelLength foldingOperations\n")
+                    .getBytes("UTF-8"));
+        }
+
+        final Queue<SimpleNode> disconnected = new LinkedList<SimpleNode>();
+        int hour = 0;
+        int leaves = 0, joins = 0, requests = 0, successes = 0;
+        long totalPathLength = 0, totalTravelLength = 0, foldingOperations = 0;
+        for (int i = 0; i < nRequests; i++) {
+            prog.hit();
+
+            final double now = (double) i / requestRate;
+            while (now >= hour + 1) {
+                writeChurnWindow(outputChurn, hour, online.size(), leaves,
+                        joins, requests, successes, totalPathLength,
+                        totalTravelLength, foldingOperations);
+                hour++;
+                leaves = joins = requests = successes = 0;
+                totalPathLength = totalTravelLength = foldingOperations = 0;
+            }
+
+            // Apply all joins and leaves which happened before this request.
+            while (!schedule.isEmpty() && schedule.peekTime() <= now) {
+                final double time = schedule.peekTime();
+                final int index = schedule.poll();
+                final SimpleNode node = graph.getNode(index);
+                if (online.remove(index)) {
+                    leaves++;
+                    disconnected.addAll(graph.leave(node));
+                    schedule.schedule(index, time + downtimes.getLength());
+                } else {
+                    online.add(index);
+                    joins++;
+                    disconnected.offer(node);
+                    schedule.schedule(index, time + sessions.getLength());
+                }
+                bootstrapOnline(graph, online, disconnected, rand);
+            }
+
+            if (online.size() < 2) {
+                continue;
+            }
+
+            final SimpleNode origin = graph.getNode(online.random(rand));
+            final SimpleNode destination = graph.getNode(online.random(rand));
+            final RouteResult result = origin.route(destination, maxHTL,
+                    maxHTL, arguments.routingPolicy, arguments.foldingPolicy,
+                    arguments.nLookAhead, arguments.lookBack,
+                    !arguments.oldPathFolding,
+                    arguments.significantBitsLookAhead,
+                    arguments.routingRandomChance);
+
+            requests++;
+            if (result.isSuccess()) {
+                successes++;
+                totalPathLength += result.getPathLength();
+                totalTravelLength += result.getTravelLength();
+            }
+            foldingOperations += result.getFoldingResult()
+                    .getFoldingOperations();
+
+            disconnected.addAll(result.getFoldingResult().getDisconnected());
+            bootstrapOnline(graph, online, disconnected, rand);
+        }
+        writeChurnWindow(outputChurn, hour, online.size(), leaves, joins,
+                requests, successes, totalPathLength, totalTravelLength,
+                foldingOperations);
+    }
+
+    /**
+     * Simulate routing requests concurrently at each configured offered load.
+     * Requests start as a Poisson process at the offered rate, and are
+     * replayed on the event simulator against nodes with limited request
+     * slots and queues. Each offered load starts with idle nodes and runs
+     * until all its requests have completed or been rejected.
+     * 
+     * @param graph
+     *            The graph.
+     * @param rand
+     *            Random generator.
+     * @param arguments
+     *            The CLI arguments.
+     * @throws Exception
+     *             Error running the load simulation.
+     */
+    private void simulateLoad(final Graph graph, final RandomGenerator rand,
+            final Arguments arguments) throws Exception {
+        final int maxHTL = arguments.maxHopsRoute;
+        final int nRequests = arguments.loadRequests;
+        final OutputStream outputLoad = arguments.loadOutput;
+        final boolean bootstrap = arguments.bootstrap;
+
+        /*
+         * Latency jitter, arrivals and service times have their own
+         * randomness sources so that routing decisions are the same as in the
+         * routing simulation.
+         */
+        final LatencyModel latencyModel = arguments
+                .getLatencyModel(new MersenneTwister(arguments.seed + 1));
+        final RandomGenerator loadRand = new MersenneTwister(
+                arguments.seed + 2);
+        final IntArrayList travel = new IntArrayList();
+
+        System.err.println("\n\tLoad Simulation");
+        Progresser prog = new Progresser(System.err, nRequests
+                * arguments.loadRates.length);
+
+        boolean headers = true;
+        for (double rate : arguments.loadRates) {
+            final LoadExp experiment = new LoadExp(rate);
+            final Simulator simulator = new Simulator();
+            final LoadReplay replay = new LoadReplay(simulator, graph,
+                    latencyModel, loadRand, arguments.loadCapacity,
+                    arguments.loadQueue, arguments.loadServiceTime,
+                    arguments.loadBackoff);
+            replay.setExperiment(experiment);
+
+            // Mean milliseconds between requests.
+            final double interval = 1000.0 / rate;
+            double arrival = 0;
+            for (int i = 0; i < nRequests; i++) {
+                prog.hit();
+
+                arrival += -interval * Math.log(1.0 - loadRand.nextDouble());
+                simulator.runUntil(replay, arrival);
+                simulator.advanceTo(arrival);
+
+                final SimpleNode origin = graph.getNode(rand.nextInt(graph
+                        .size()));
+                final SimpleNode destination = graph.getNode(rand
+                        .nextInt(graph.size()));
+                travel.clear();
+                final RouteResult result = origin.route(destination, maxHTL,
+                        maxHTL, arguments.routingPolicy,
+                        arguments.foldingPolicy, arguments.nLookAhead,
+                        arguments.lookBack, !arguments.oldPathFolding,
+                        arguments.significantBitsLookAhead,
+                        arguments.routingRandomChance, travel);
+                replay.start(travel, result.getRoutingPath(),
+                        result.isSuccess());
+
+                Queue<SimpleNode> disconnected = new LinkedList<SimpleNode>(
+                        result.getFoldingResult().getDisconnected());
+                while (bootstrap && !disconnected.isEmpty()) {
+                    disconnected.addAll(graph.bootstrap(disconnected.remove(),
+                            rand));
+                }
+            }
+            simulator.run(replay);
+            assert replay.isIdle();
+
+            if (outputLoad != null) {
+                StringBuilder b = new StringBuilder();
+                if (headers) {
+                    b.append("# ").append(experiment.toStringHeaders())
+                            .append('\n');
+                    headers = false;
+                }
+                b.append(experiment.toStringValues()).append('\n');
+                outputLoad.write(b.toString().getBytes("UTF-8"));
+            }
+            LOGGER.info(experiment.toString());
+        }
+    }
+
+    /**
+     * Simulate an insert and fetch workload. Every node is given an empty
+     * store and cache, then each key is inserted once from a random origin in
+     * random order, so that popularity is unrelated to age, then keys are
+     * fetched from random origins with Zipf distributed
+     * popularity. Requests are routed towards the location of their key:
+     * inserts cache the key everywhere they pass and store it at nodes closer
+     * to it than all their peers, and fetches succeed at the first node
+     * holding the key and cache it on the way back.
+     * 
+     * @param graph
+     *            The graph.
+     * @param rand
+     *            Random generator.
+     * @param arguments
+     *            The CLI arguments.
+     * @throws Exception
+     *             Error running the datastore simulation.
+     */
+    private void simulateStore(final Graph graph, final RandomGenerator rand,
+            final Arguments arguments) throws Exception {
+        final int maxHTL = arguments.maxHopsRoute;
+        final int nKeys = arguments.storeKeys;
+        final int nFetches = arguments.storeFetches;
+        final boolean bootstrap = arguments.bootstrap;
+
+        for (int i = 0; i < graph.size(); i++) {
+            final long salt = (long) arguments.seed << 32 | i;
+            graph.getNode(i).setStores(
+                    arguments.newStore(arguments.storeSize, salt),
+                    arguments.newStore(arguments.storeCacheSize, ~salt));
+        }
+
+        System.err.println("\n\tDatastore Simulation");
+        Progresser prog = new Progresser(System.err, nKeys + nFetches);
+
+        final StoreExp experiment = new StoreExp(maxHTL);
+        final InsertTarget insert = new InsertTarget();
+        final FetchTarget fetch = new FetchTarget();
+        final KeyPopularity popularity = new KeyPopularity(nKeys,
+                arguments.storeZipf, rand);
+        final int[] insertOrder = new int[nKeys];
+        for (int i = 0; i < nKeys; i++) {
+            final int j = rand.nextInt(i + 1);
+            insertOrder[i] = insertOrder[j];
+            insertOrder[j] = i;
+        }
+
+        for (int i = 0; i < nKeys + nFetches; i++) {
+            prog.hit();
+
+            final boolean inserting = i < nKeys;
+            final long key = Keys.key(arguments.seed,
+                    inserting ? insertOrder[i] : popularity.next());
+            final RouteTarget target;
+            if (inserting) {
+                insert.setKey(key);
+                target = insert;
+            } else {
+                fetch.setKey(key);
+                target = fetch;
+            }
+
+            final SimpleNode origin = graph.getNode(rand.nextInt(graph.size()));
+            final RouteResult result = origin.route(Keys.location(key),
+                    target, maxHTL, maxHTL, arguments.routingPolicy,
+                    arguments.foldingPolicy, arguments.nLookAhead,
+                    arguments.lookBack, !arguments.oldPathFolding,
+                    arguments.significantBitsLookAhead,
+                    arguments.routingRandomChance, null);
+
+            if (inserting) {
+                experiment.recordInsert(insert.getStored());
+            } else {
+                experiment.recordFetch(result.isSuccess(), fetch.fromStore(),
+                        result.getPathLength(), result.getTravelLength());
+                if (result.isSuccess()) {
+                    fetch.cacheReply(result.getRoutingPath());
+                }
+            }
+
+            Queue<SimpleNode> disconnected = new LinkedList<SimpleNode>(result
+                    .getFoldingResult().getDisconnected());
+            while (bootstrap && !disconnected.isEmpty()) {
+                disconnected.addAll(graph.bootstrap(disconnected.remove(),
+                        rand));
+            }
+        }
+        experiment.recordUtilisation(graph);
+
+        if (arguments.storeOutput != null) {
+            arguments.storeOutput.write(experiment.toString().getBytes(
+                    "UTF-8"));
+        }
+        if (arguments.scriptOutput) {
+            StringBuilder b = new StringBuilder();
+            b.append(graph.toStringHeaders());
+            b.append(experiment.toStringHeaders());
+            b.append('\n');
+
+            b.append(graph.toStringValues());
+            b.append(experiment.toStringValues());
+            b.append('\n');
+
+            // Only use System.out for script outputs
+            System.out.print(b.toString());
+        }
+        LOGGER.info(experiment.toString());
+    }
+
+    /**
+     * Bootstrap queued nodes which are online, along with any nodes that
+     * become disconnected in the process. Offline nodes are dropped from the
+     * queue. Nodes are not bootstrapped if too few peers are eligible for them
+     * to reach their desired degree, as bootstrapping would never finish.
+     * Peers with room accept connections outright; otherwise connections
+     * departing nodes take with them would never be replaced. Peers are drawn
+     * from the online set, so offline nodes cost nothing however many there
+     * are.
+     */
+    private static void bootstrapOnline(final Graph graph,
+            final OnlineSet online, final Queue<SimpleNode> disconnected,
+            final RandomGenerator rand) {
+        while (!disconnected.isEmpty()) {
+            final SimpleNode node = disconnected.remove();
+            if (!online.contains(node.index) || node.atDegree()
+                    || !hasEligiblePeers(graph, online, node)) {
+                continue;
+            }
+            disconnected.addAll(graph.bootstrap(node, rand, false, online));
+        }
+    }
+
+    /**
+     * @return true if there are enough nodes which {@link Graph#bootstrap}
+     *         would connect the node to for it to reach its desired degree:
+     *         online nodes other than it which have connections and are not
+     *         already its peers. Stops counting once there are enough, so
+     *         this visits little more than the missing number of peers unless
+     *         most online nodes are ineligible. It visits every online node
+     *         only when there are too few eligible ones, which needs the
+     *         online set to be about as small as the desired degree.
+     */
+    private static boolean hasEligiblePeers(final Graph graph,
+            final OnlineSet online, final SimpleNode node) {
+        final int needed = node.getDesiredDegree() - node.degree();
+        int eligible = 0;
+        for (int i = 0; i < online.size() && eligible < needed; i++) {
+            final SimpleNode peer = graph.getNode(online.get(i));
+            if (peer != node && peer.degree() > 0 && !node.isConnected(peer))
+                eligible++;
+        }
+        return eligible >= needed;
+    }
+
+    /**
+     * Write one row of the churn time series. The success rate is 0 for an
+     * hour without requests, and the mean path lengths are 0 for an hour
+     * without successful requests.
+     */
+    private static void writeChurnWindow(final OutputStream output,
+            final int hour, final int online, final int leaves,
+            final int joins, final int requests, final int successes,
+            final long totalPathLength, final long totalTravelLength,
+            final long foldingOperations) throws IOException {
+        if (output == null) {
+            return;
+        }
+        StringBuilder b = new StringBuilder();
+        b.append(hour).append(' ');
+        b.append(online).append(' ');
+        b.append(leaves).append(' ');
+        b.append(joins).append(' ');
+        b.append(requests).append(' ');
+        b.append(requests == 0 ? 0.0 : (double) successes / requests * 100)
+                .append(' ');
+        b.append(successes == 0 ? 0.0 : (double) totalPathLength / successes)
+                .append(' ');
+        b.append(successes == 0 ? 0.0 : (double) totalTravelLength / successes)
+                .append(' ');
+        b.append(foldingOperations).append('\n');
+        output.write(b.toString().getBytes("UTF-8"));
     }
 }
\ No newline at end of file
@@ -0,0 +1,22 @@
+package org.freenetproject.routing_simulator;
+
+/**
+ * Distributions which session and downtime lengths can be drawn from when
+ * simulating churn.
+ */
+public enum SessionDistribution {
+    /**
+     * Exponentially distributed lengths with the given mean. Memoryless: the
+     * chance of a node leaving does not depend on how long it has been online.
+     */
+    EXPONENTIAL,
+    /**
+     * Weibull distributed lengths with the given mean. A shape below one gives
+     * the heavy tail observed in measured peer-to-peer session lengths.
+     */
+    WEIBULL,
+    /**
+     * Every length is exactly the mean.
+     */
+    FIXED
+}
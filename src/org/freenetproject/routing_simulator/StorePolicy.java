@@ -0,0 +1,17 @@
+package org.freenetproject.routing_simulator;
+
+/**
+ * Replacement policies for node datastores and caches.
+ */
+public enum StorePolicy {
+    /**
+     * Replace the least recently stored or found key.
+     */
+    LRU,
+    /**
+     * Each key can only be held in a few slots given by a hash of the key and
+     * a per-store salt, as in Freenet's salted hash store. A new key
+     * overwrites one of its slots if all are taken.
+     */
+    SALTED_HASH
+}
@@ -0,0 +1,348 @@
+package org.freenetproject.routing_simulator;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.freenetproject.routing_simulator.experiment.ResultsWriter;
+import org.freenetproject.routing_simulator.experiment.RoutingExp;
+import org.freenetproject.routing_simulator.graph.Graph;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Simulates routing for every combination of option values in a grid file
+ * within one process, and writes a table with a line of results for each run.
+ *
+ * Each line of the grid file which is not empty or a comment starting with #
+ * is a long option followed by the values to try. Runs are numbered through
+ * the combinations with the last option varying fastest, and take turns on a
+ * pool of threads. Runs with the same graph options share a template graph
+ * which is generated once and never routed on; each run routes on a copy, as
+ * routing changes node state even without path folding. A template is
+ * dropped once its last run has copied it.
+ */
+final class Sweep {
+    private static final Logger LOGGER = Logger.getLogger(Sweep.class
+            .getName());
+
+    /**
+     * Discards the routing progress of individual runs.
+     */
+    private static final PrintStream NO_PROGRESS = new PrintStream(
+            new OutputStream() {
+                @Override
+                public void write(int b) {
+                    // DO NOTHING
+                }
+            });
+
+    private final RoutingSim sim;
+    private final Arguments arguments;
+    /**
+     * Long name of each swept option, in grid file order.
+     */
+    private final String[] names;
+    /**
+     * Values to try for each swept option.
+     */
+    private final String[][] values;
+
+    /**
+     * Read the grid file of the arguments.
+     *
+     * @param sim
+     *            Simulator to generate graphs and route with.
+     * @param arguments
+     *            Arguments with a sweep grid, which apply to every run unless
+     *            the grid gives the same option.
+     * @throws IOException
+     *             Error reading the grid file.
+     * @throws IllegalArgumentException
+     *             The grid file is invalid.
+     */
+    Sweep(final RoutingSim sim, final Arguments arguments) throws IOException {
+        this.sim = sim;
+        this.arguments = arguments;
+
+        final ArrayList<String> names = new ArrayList<String>();
+        final ArrayList<String[]> values = new ArrayList<String[]>();
+        final BufferedReader reader = new BufferedReader(new FileReader(
+                arguments.sweepGrid));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                final String[] fields = line.split("\\s+");
+                final String name = fields[0].startsWith("--") ? fields[0]
+                        .substring(2) : fields[0];
+                if (!Arguments.sweepable(name) || names.contains(name)) {
+                    throw new IllegalArgumentException("Cannot sweep \""
+                            + fields[0]
+                            + "\": unknown, excluded from sweeps, or repeated.");
+                }
+                if (fields.length < 2) {
+                    throw new IllegalArgumentException("No values to sweep for "
+                            + fields[0] + ".");
+                }
+                final String[] options = new String[fields.length - 1];
+                System.arraycopy(fields, 1, options, 0, options.length);
+                if (!Arguments.takesValue(name)) {
+                    for (String value : options) {
+                        if (!value.equals("true") && !value.equals("false")) {
+                            throw new IllegalArgumentException(fields[0]
+                                    + " is a flag; sweep it with true or false.");
+                        }
+                    }
+                }
+                names.add(name);
+                values.add(options);
+            }
+        } finally {
+            reader.close();
+        }
+
+        this.names = names.toArray(new String[names.size()]);
+        this.values = values.toArray(new String[values.size()][]);
+    }
+
+    /**
+     * Simulate every run and write the table: a header line, then a line for
+     * each run of its option values followed by the columns of
+     * --script-output. With a CSV or JSON results format, a record is written
+     * for each run instead, with the swept option values, the configuration
+     * and the results.
+     *
+     * @throws Exception
+     *             Error in a run or writing the table.
+     */
+    void run() throws Exception {
+        int count = 1;
+        for (String[] options : values) {
+            count *= options.length;
+        }
+
+        // Parse every run first so that invalid arguments fail early.
+        final Arguments[] runs = new Arguments[count];
+        final Template[] templates = new Template[count];
+        final HashMap<String, Template> byGraph = new HashMap<String, Template>();
+        for (int i = 0; i < count; i++) {
+            runs[i] = arguments.forSweepRun(names, point(i));
+            if (runs[i] == null) {
+                throw new IllegalArgumentException(
+                        "Invalid arguments for sweep run " + describe(i));
+            }
+            templates[i] = byGraph.get(runs[i].graphKey());
+            if (templates[i] == null) {
+                templates[i] = new Template(runs[i]);
+                byGraph.put(runs[i].graphKey(), templates[i]);
+            } else {
+                // Only the run which generates the template reads inputs.
+                runs[i].closeInputs();
+            }
+            templates[i].remaining++;
+        }
+        LOGGER.warning("Sweeping " + count + " runs on " + byGraph.size()
+                + " graphs.");
+
+        final AtomicInteger next = new AtomicInteger();
+        final String[] rows = new String[count];
+        final List<Map<String, Object>> records = new ArrayList<Map<String, Object>>(
+                Collections.nCopies(count, (Map<String, Object>) null));
+        final Worker[] workers = new Worker[Math.min(arguments.sweepThreads,
+                count)];
+        final Thread[] threads = new Thread[workers.length];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(runs, templates, rows, records, next);
+            threads[i] = new Thread(workers[i], "Sweep" + i);
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        String header = null;
+        for (Worker worker : workers) {
+            if (worker.failure != null) {
+                throw worker.failure;
+            }
+            if (worker.header != null) {
+                header = worker.header;
+            }
+        }
+
+        if (arguments.resultsFormat != ResultsFormat.TEXT) {
+            final ResultsWriter writer = new ResultsWriter(
+                    arguments.sweepOutput, arguments.resultsFormat);
+            try {
+                for (Map<String, Object> record : records) {
+                    writer.write(record);
+                }
+            } finally {
+                writer.close();
+            }
+            return;
+        }
+
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(
+                arguments.sweepOutput, "UTF-8"));
+        try {
+            for (String name : names) {
+                writer.write(name);
+                writer.write(' ');
+            }
+            writer.write(header);
+            writer.write('\n');
+            for (String row : rows) {
+                writer.write(row);
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * @param run
+     *            Index of a run.
+     * @return the value of each swept option in the run.
+     */
+    private String[] point(int run) {
+        final String[] point = new String[names.length];
+        for (int i = names.length - 1; i >= 0; i--) {
+            point[i] = values[i][run % values[i].length];
+            run /= values[i].length;
+        }
+        return point;
+    }
+
+    private String describe(final int run) {
+        final StringBuilder b = new StringBuilder();
+        final String[] point = point(run);
+        for (int i = 0; i < names.length; i++) {
+            b.append(" --").append(names[i]).append(' ').append(point[i]);
+        }
+        return b.toString();
+    }
+
+    /**
+     * Graph shared by the runs with the same graph options.
+     */
+    private final class Template {
+        private final Arguments arguments;
+        /**
+         * Number of runs which have not yet copied the graph.
+         */
+        int remaining = 0;
+        private Graph graph = null;
+
+        Template(final Arguments arguments) {
+            this.arguments = arguments;
+        }
+
+        /**
+         * Generate the graph if this is the first run to need it.
+         *
+         * @return a copy of the graph for a run to route on.
+         */
+        synchronized Graph copy() throws Exception {
+            if (graph == null) {
+                graph = sim.generateGraph(arguments);
+                if (arguments.swapShuffle || arguments.swapAttempts > 0) {
+                    sim.swapLocations(graph, arguments);
+                }
+            }
+            final Graph copy = graph.copy();
+            if (--remaining == 0) {
+                graph = null;
+            }
+            return copy;
+        }
+    }
+
+    /**
+     * Takes runs in turn until there are none left or one fails.
+     */
+    private final class Worker implements Runnable {
+        private final Arguments[] runs;
+        private final Template[] templates;
+        private final String[] rows;
+        private final List<Map<String, Object>> records;
+        private final AtomicInteger next;
+        /**
+         * Column names after the swept options.
+         */
+        String header;
+        /**
+         * First error of this worker, which stops all of them.
+         */
+        Exception failure;
+
+        Worker(final Arguments[] runs, final Template[] templates,
+                final String[] rows, final List<Map<String, Object>> records,
+                final AtomicInteger next) {
+            this.runs = runs;
+            this.templates = templates;
+            this.rows = rows;
+            this.records = records;
+            this.next = next;
+        }
+
+        @Override
+        public void run() {
+            int i;
+            while ((i = next.getAndIncrement()) < runs.length) {
+                try {
+                    final Graph graph = templates[i].copy();
+                    final RoutingExp experiment = sim.simulate(graph,
+                            new MersenneTwister(runs[i].seed), runs[i], null,
+                            NO_PROGRESS);
+
+                    if (runs[i].resultsFormat != ResultsFormat.TEXT) {
+                        final Map<String, Object> swept = new LinkedHashMap<String, Object>();
+                        final String[] point = point(i);
+                        for (int j = 0; j < names.length; j++) {
+                            swept.put(names[j], point[j]);
+                        }
+                        final Map<String, Object> record = new LinkedHashMap<String, Object>();
+                        record.put("sweep", swept);
+                        record.putAll(RoutingSim.results(runs[i], graph,
+                                experiment));
+                        records.set(i, record);
+                    }
+
+                    final StringBuilder b = new StringBuilder();
+                    for (String value : point(i)) {
+                        b.append(value).append(' ');
+                    }
+                    b.append(graph.toStringValues());
+                    b.append(experiment.toStringValues());
+                    rows[i] = b.toString();
+                    header = graph.toStringHeaders()
+                            + experiment.toStringHeaders();
+                } catch (Exception e) {
+                    failure = e;
+                    // Leave no runs for the other workers.
+                    next.set(runs.length);
+                    return;
+                }
+                LOGGER.warning("Finished sweep run " + (i + 1) + " of "
+                        + runs.length + ":" + describe(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package org.freenetproject.routing_simulator.event;
+
+/**
+ * Receives events as the simulated clock reaches them.
+ */
+public interface EventHandler {
+    /**
+     * Handle an event. The simulator clock is at the event time.
+     * 
+     * @param type
+     *            Event type, as given when scheduled.
+     * @param a
+     *            First payload value.
+     * @param b
+     *            Second payload value.
+     */
+    public void handle(int type, int a, int b);
+}
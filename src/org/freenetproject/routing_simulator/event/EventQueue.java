@@ -0,0 +1,180 @@
+package org.freenetproject.routing_simulator.event;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of events ordered by time. Events are not objects: each is
+ * a time, a type and two int payload values stored in parallel primitive
+ * arrays, so scheduling and polling never allocate once the arrays have grown
+ * to the peak number of pending events. Events at the same time are polled in
+ * the order they were scheduled, which keeps runs repeatable.
+ */
+public class EventQueue {
+    private double[] times;
+    private long[] sequences;
+    private int[] types;
+    private int[] as;
+    private int[] bs;
+    private int size = 0;
+    private long nextSequence = 0;
+
+    /*
+     * Values of the most recently polled event.
+     */
+    private double polledTime;
+    private int polledType, polledA, polledB;
+
+    public EventQueue() {
+        this(1024);
+    }
+
+    public EventQueue(int capacity) {
+        capacity = Math.max(capacity, 1);
+        times = new double[capacity];
+        sequences = new long[capacity];
+        types = new int[capacity];
+        as = new int[capacity];
+        bs = new int[capacity];
+    }
+
+    /**
+     * Add an event.
+     * 
+     * @param time
+     *            Absolute time of the event.
+     * @param type
+     *            Event type.
+     * @param a
+     *            First payload value.
+     * @param b
+     *            Second payload value.
+     */
+    public void schedule(double time, int type, int a, int b) {
+        if (size == times.length)
+            grow();
+        int position = size++;
+        final long sequence = nextSequence++;
+        // Sift up: move parents down until the new event's place is found.
+        while (position > 0) {
+            final int parent = (position - 1) >>> 1;
+            if (!precedes(time, sequence, times[parent], sequences[parent]))
+                break;
+            move(parent, position);
+            position = parent;
+        }
+        set(position, time, sequence, type, a, b);
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return time of the earliest event.
+     */
+    public double peekTime() {
+        if (size == 0)
+            throw new IllegalStateException("No events are scheduled.");
+        return times[0];
+    }
+
+    /**
+     * Remove the earliest event. Its values are then available from
+     * {@link #polledTime()}, {@link #polledType()}, {@link #polledA()} and
+     * {@link #polledB()} until the next poll.
+     */
+    public void poll() {
+        if (size == 0)
+            throw new IllegalStateException("No events are scheduled.");
+        polledTime = times[0];
+        polledType = types[0];
+        polledA = as[0];
+        polledB = bs[0];
+
+        size--;
+        if (size == 0)
+            return;
+
+        // Sift the last event down from the root.
+        final double time = times[size];
+        final long sequence = sequences[size];
+        final int type = types[size], a = as[size], b = bs[size];
+        int position = 0;
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= size)
+                break;
+            if (child + 1 < size
+                    && precedes(times[child + 1], sequences[child + 1],
+                            times[child], sequences[child]))
+                child++;
+            if (!precedes(times[child], sequences[child], time, sequence))
+                break;
+            move(child, position);
+            position = child;
+        }
+        set(position, time, sequence, type, a, b);
+    }
+
+    public double polledTime() {
+        return polledTime;
+    }
+
+    public int polledType() {
+        return polledType;
+    }
+
+    public int polledA() {
+        return polledA;
+    }
+
+    public int polledB() {
+        return polledB;
+    }
+
+    /**
+     * Remove all events.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return true if the first event comes before the other.
+     */
+    private static boolean precedes(double time, long sequence,
+            double otherTime, long otherSequence) {
+        return time < otherTime || time == otherTime
+                && sequence < otherSequence;
+    }
+
+    private void move(int from, int to) {
+        times[to] = times[from];
+        sequences[to] = sequences[from];
+        types[to] = types[from];
+        as[to] = as[from];
+        bs[to] = bs[from];
+    }
+
+    private void set(int position, double time, long sequence, int type,
+            int a, int b) {
+        times[position] = time;
+        sequences[position] = sequence;
+        types[position] = type;
+        as[position] = a;
+        bs[position] = b;
+    }
+
+    private void grow() {
+        final int capacity = times.length * 2;
+        times = Arrays.copyOf(times, capacity);
+        sequences = Arrays.copyOf(sequences, capacity);
+        types = Arrays.copyOf(types, capacity);
+        as = Arrays.copyOf(as, capacity);
+        bs = Arrays.copyOf(bs, capacity);
+    }
+}
@@ -0,0 +1,17 @@
+package org.freenetproject.routing_simulator.event;
+
+import org.freenetproject.routing_simulator.graph.node.SimpleNode;
+
+/**
+ * Provides the time taken for a message to cross a link.
+ */
+public interface LatencyModel {
+    /**
+     * @param from
+     *            node sending the message.
+     * @param to
+     *            node receiving the message.
+     * @return latency of this crossing in milliseconds.
+     */
+    public double latency(SimpleNode from, SimpleNode to);
+}
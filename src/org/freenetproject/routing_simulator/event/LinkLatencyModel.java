@@ -0,0 +1,66 @@
+package org.freenetproject.routing_simulator.event;
+
+import org.apache.commons.math3.random.RandomGenerator;
+import org.freenetproject.routing_simulator.graph.node.SimpleNode;
+import org.freenetproject.routing_simulator.util.SplitMix;
+
+/**
+ * Each link has a fixed base latency drawn uniformly from
+ * [mean * (1 - spread), mean * (1 + spread)], plus exponentially distributed
+ * jitter on every crossing. The base latency is derived by hashing the link's
+ * endpoints with a seed, so it is the same in both directions and for every
+ * crossing without storing anything per link.
+ */
+public class LinkLatencyModel implements LatencyModel {
+    private final double mean;
+    private final double spread;
+    private final double jitter;
+    private final long seed;
+    private final RandomGenerator random;
+
+    /**
+     * @param mean
+     *            Mean base link latency in milliseconds.
+     * @param spread
+     *            Relative spread of base latencies around the mean, in [0, 1].
+     * @param jitter
+     *            Mean additional latency in milliseconds per crossing. Zero
+     *            disables jitter.
+     * @param seed
+     *            Seed which determines each link's base latency.
+     * @param random
+     *            Source of jitter.
+     */
+    public LinkLatencyModel(double mean, double spread, double jitter,
+            long seed, RandomGenerator random) {
+        if (mean < 0.0)
+            throw new IllegalArgumentException("Mean must not be negative.");
+        if (spread < 0.0 || spread > 1.0)
+            throw new IllegalArgumentException("Spread must be in [0, 1].");
+        if (jitter < 0.0)
+            throw new IllegalArgumentException("Jitter must not be negative.");
+        this.mean = mean;
+        this.spread = spread;
+        this.jitter = jitter;
+        this.seed = seed;
+        this.random = random;
+    }
+
+    @Override
+    public double latency(SimpleNode from, SimpleNode to) {
+        double latency = baseLatency(from.index, to.index);
+        if (jitter > 0.0)
+            latency -= jitter * Math.log(1.0 - random.nextDouble());
+        return latency;
+    }
+
+    /**
+     * @return base latency of the link between the two node indexes.
+     */
+    public double baseLatency(int a, int b) {
+        final long low = Math.min(a, b), high = Math.max(a, b);
+        final double uniform = (SplitMix.mix(seed ^ (low << 32 | high)) >>> 11)
+                * 0x1.0p-53;
+        return mean * (1.0 + spread * (2.0 * uniform - 1.0));
+    }
+}
@@ -0,0 +1,271 @@
+package org.freenetproject.routing_simulator.event;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.math3.random.RandomGenerator;
+import org.freenetproject.routing_simulator.experiment.LoadExp;
+import org.freenetproject.routing_simulator.graph.Graph;
+import org.freenetproject.routing_simulator.graph.node.SimpleNode;
+import org.freenetproject.routing_simulator.util.IntArrayList;
+
+/**
+ * Replays routed requests concurrently against nodes of limited capacity.
+ * Each node has a number of request slots and a bounded queue. A request
+ * arriving at a node takes a free slot for an exponentially distributed
+ * service time, waits in the queue if all slots are taken, and is rejected if
+ * the queue is also full. After the service time it crosses the link to the
+ * next node of its trace.
+ * 
+ * A node which rejects a request is backed off: until the backoff expires
+ * requests are not sent to it, and fail as though rejected. The backoff
+ * length doubles with every rejection up to a maximum, and returns to the
+ * base length once the node accepts a request.
+ * 
+ * The route of a request is decided when it starts, so load changes when
+ * requests arrive but not where they go. Node state is kept in primitive
+ * arrays indexed by node and requests in flight occupy pooled slots.
+ */
+public class LoadReplay implements EventHandler {
+    /**
+     * Event type of a request arriving at the next node of its trace. The
+     * first payload value is the request slot.
+     */
+    public static final int HOP = 0;
+
+    /**
+     * Event type of a node finishing with a request. The first payload value
+     * is the request slot and the second the node.
+     */
+    public static final int SERVICE_DONE = 1;
+
+    /**
+     * Longest backoff as a multiple of the base backoff.
+     */
+    private static final int MAX_BACKOFF_FACTOR = 64;
+
+    private final Simulator simulator;
+    private final Graph graph;
+    private final LatencyModel latencyModel;
+    private final RandomGenerator random;
+    private final int capacity;
+    private final int queueLength;
+    private final double serviceTime;
+    private final double backoff;
+
+    private LoadExp experiment;
+
+    /*
+     * Per node state.
+     */
+    private final int[] busy;
+    private final int[] queued;
+    private final int[] queueHead;
+    private final int[] queueTail;
+    private final double[] backoffUntil;
+    private final double[] backoffLength;
+
+    /*
+     * Per request slot state.
+     */
+    private IntArrayList[] traces = new IntArrayList[0];
+    private int[] steps = new int[0];
+    private double[] starts = new double[0];
+    private boolean[] successes = new boolean[0];
+    /**
+     * Next slot in the same node queue, or -1.
+     */
+    private int[] nextQueued = new int[0];
+    private int[] free = new int[0];
+    private int nFree = 0;
+
+    /**
+     * @param simulator
+     *            Simulator to schedule events with.
+     * @param graph
+     *            Graph the requests are routed on.
+     * @param latencyModel
+     *            Link latencies, or null for none.
+     * @param random
+     *            Randomness for service times.
+     * @param capacity
+     *            Requests each node serves at once.
+     * @param queueLength
+     *            Requests each node queues while its slots are taken.
+     * @param serviceTime
+     *            Mean time in milliseconds a node spends on a request.
+     * @param backoff
+     *            Milliseconds a node is first backed off for after rejecting.
+     */
+    public LoadReplay(Simulator simulator, Graph graph,
+            LatencyModel latencyModel, RandomGenerator random, int capacity,
+            int queueLength, double serviceTime, double backoff) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Capacity must be at least 1.");
+        if (queueLength < 0)
+            throw new IllegalArgumentException(
+                    "Queue length must be non-negative.");
+        this.simulator = simulator;
+        this.graph = graph;
+        this.latencyModel = latencyModel;
+        this.random = random;
+        this.capacity = capacity;
+        this.queueLength = queueLength;
+        this.serviceTime = serviceTime;
+        this.backoff = backoff;
+
+        final int size = graph.size();
+        busy = new int[size];
+        queued = new int[size];
+        queueHead = new int[size];
+        queueTail = new int[size];
+        backoffUntil = new double[size];
+        backoffLength = new double[size];
+        Arrays.fill(queueHead, -1);
+        Arrays.fill(queueTail, -1);
+        Arrays.fill(backoffLength, backoff);
+    }
+
+    /**
+     * Set the experiment further requests are recorded in.
+     */
+    public void setExperiment(LoadExp experiment) {
+        this.experiment = experiment;
+    }
+
+    /**
+     * @return whether no requests are in flight.
+     */
+    public boolean isIdle() {
+        return nFree == traces.length;
+    }
+
+    /**
+     * Start a routed request at the current time.
+     * 
+     * @param travel
+     *            Nodes the request arrived at, as recorded by routing.
+     * @param routingPath
+     *            Final routing path. A successful request's reply is sent
+     *            back along it.
+     * @param success
+     *            Whether the request reached its target.
+     */
+    public void start(IntArrayList travel, List<SimpleNode> routingPath,
+            boolean success) {
+        final int slot = allocate();
+        final IntArrayList trace = traces[slot];
+        trace.clear();
+        for (int i = 0; i < travel.size(); i++)
+            trace.add(travel.get(i));
+        // Failed requests have already returned to the origin.
+        if (success) {
+            for (int i = routingPath.size() - 2; i >= 0; i--)
+                trace.add(routingPath.get(i).index);
+        }
+        steps[slot] = 0;
+        starts[slot] = simulator.now();
+        successes[slot] = success;
+        experiment.offered(simulator.now());
+        arrive(slot);
+    }
+
+    @Override
+    public void handle(int type, int a, int b) {
+        switch (type) {
+        case HOP:
+            steps[a]++;
+            arrive(a);
+            break;
+        case SERVICE_DONE:
+            serviceDone(a, b);
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown event type " + type);
+        }
+    }
+
+    /**
+     * The request in the slot arrives at the node at its current step.
+     */
+    private void arrive(int slot) {
+        final int node = traces[slot].get(steps[slot]);
+        final double now = simulator.now();
+
+        // The origin does not back itself off.
+        if (steps[slot] > 0 && backoffUntil[node] > now) {
+            experiment.backedOff();
+            release(slot);
+        } else if (busy[node] < capacity) {
+            backoffLength[node] = backoff;
+            serve(slot, node);
+        } else if (queued[node] < queueLength) {
+            nextQueued[slot] = -1;
+            if (queueTail[node] == -1)
+                queueHead[node] = slot;
+            else
+                nextQueued[queueTail[node]] = slot;
+            queueTail[node] = slot;
+            queued[node]++;
+        } else {
+            backoffUntil[node] = now + backoffLength[node];
+            backoffLength[node] = Math.min(backoffLength[node] * 2, backoff
+                    * MAX_BACKOFF_FACTOR);
+            experiment.rejected();
+            release(slot);
+        }
+    }
+
+    private void serve(int slot, int node) {
+        busy[node]++;
+        final double time = -serviceTime * Math.log(1.0 - random.nextDouble());
+        simulator.schedule(time, SERVICE_DONE, slot, node);
+    }
+
+    private void serviceDone(int slot, int node) {
+        busy[node]--;
+        if (queued[node] > 0) {
+            final int waiting = queueHead[node];
+            queueHead[node] = nextQueued[waiting];
+            if (queueHead[node] == -1)
+                queueTail[node] = -1;
+            queued[node]--;
+            serve(waiting, node);
+        }
+
+        final IntArrayList trace = traces[slot];
+        final int step = steps[slot];
+        if (step >= trace.size() - 1) {
+            experiment.completed(successes[slot], simulator.now()
+                    - starts[slot]);
+            release(slot);
+            return;
+        }
+        final double latency = latencyModel == null ? 0.0 : latencyModel
+                .latency(graph.getNode(trace.get(step)),
+                        graph.getNode(trace.get(step + 1)));
+        simulator.schedule(latency, HOP, slot, 0);
+    }
+
+    private void release(int slot) {
+        free[nFree++] = slot;
+    }
+
+    private int allocate() {
+        if (nFree == 0) {
+            final int previous = traces.length;
+            final int size = Math.max(16, previous * 2);
+            traces = Arrays.copyOf(traces, size);
+            steps = Arrays.copyOf(steps, size);
+            starts = Arrays.copyOf(starts, size);
+            successes = Arrays.copyOf(successes, size);
+            nextQueued = Arrays.copyOf(nextQueued, size);
+            free = Arrays.copyOf(free, size);
+            for (int i = size - 1; i >= previous; i--) {
+                traces[i] = new IntArrayList();
+                free[nFree++] = i;
+            }
+        }
+        return free[--nFree];
+    }
+}
@@ -0,0 +1,118 @@
+package org.freenetproject.routing_simulator.event;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.freenetproject.routing_simulator.experiment.RoutingExp;
+import org.freenetproject.routing_simulator.graph.Graph;
+import org.freenetproject.routing_simulator.graph.node.SimpleNode;
+import org.freenetproject.routing_simulator.util.IntArrayList;
+
+/**
+ * Times routed requests by replaying the links they crossed as events. Every
+ * hop, backtrack and hop of the reply back to the origin is an event after
+ * the latency of the link it crosses. When the reply reaches the origin the
+ * time since the request started is recorded as its latency.
+ * 
+ * Requests in flight occupy pooled slots whose traces are reused, so starting
+ * a request does not allocate once enough slots exist.
+ */
+public class RouteReplay implements EventHandler {
+    /**
+     * Event type of a request arriving at the next node of its trace. The
+     * first payload value is the request slot.
+     */
+    public static final int HOP = 0;
+
+    private final Simulator simulator;
+    private final Graph graph;
+    private final LatencyModel latencyModel;
+    private final RoutingExp experiment;
+
+    private IntArrayList[] traces = new IntArrayList[0];
+    private int[] steps = new int[0];
+    private double[] starts = new double[0];
+    /**
+     * Stack of unused slots.
+     */
+    private int[] free = new int[0];
+    private int nFree = 0;
+
+    public RouteReplay(Simulator simulator, Graph graph,
+            LatencyModel latencyModel, RoutingExp experiment) {
+        this.simulator = simulator;
+        this.graph = graph;
+        this.latencyModel = latencyModel;
+        this.experiment = experiment;
+    }
+
+    /**
+     * Start replaying a routed request at the current time.
+     * 
+     * @param travel
+     *            Nodes the request arrived at, as recorded by routing.
+     * @param routingPath
+     *            Final routing path. A successful request's reply is sent
+     *            back along it.
+     * @param success
+     *            Whether the request reached its target.
+     */
+    public void start(IntArrayList travel, List<SimpleNode> routingPath,
+            boolean success) {
+        final int slot = allocate();
+        final IntArrayList trace = traces[slot];
+        trace.clear();
+        for (int i = 0; i < travel.size(); i++)
+            trace.add(travel.get(i));
+        // Failed requests have already returned to the origin.
+        if (success) {
+            for (int i = routingPath.size() - 2; i >= 0; i--)
+                trace.add(routingPath.get(i).index);
+        }
+        steps[slot] = 0;
+        starts[slot] = simulator.now();
+        next(slot);
+    }
+
+    @Override
+    public void handle(int type, int a, int b) {
+        if (type != HOP)
+            throw new IllegalArgumentException("Unknown event type " + type);
+        steps[a]++;
+        next(a);
+    }
+
+    /**
+     * Schedule the next hop of the request in the slot, or record its latency
+     * if it has reached the end of its trace.
+     */
+    private void next(int slot) {
+        final IntArrayList trace = traces[slot];
+        final int step = steps[slot];
+        if (step >= trace.size() - 1) {
+            experiment.recordLatency(simulator.now() - starts[slot]);
+            free[nFree++] = slot;
+            return;
+        }
+        final double latency = latencyModel.latency(
+                graph.getNode(trace.get(step)),
+                graph.getNode(trace.get(step + 1)));
+        simulator.schedule(latency, HOP, slot, 0);
+    }
+
+    private int allocate() {
+        if (nFree == 0) {
+            final int previous = traces.length;
+            final int capacity = Math.max(16, previous * 2);
+            traces = Arrays.copyOf(traces, capacity);
+            steps = Arrays.copyOf(steps, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            free = Arrays.copyOf(free, capacity);
+            for (int i = capacity - 1; i >= previous; i--) {
+                traces[i] = new IntArrayList();
+                free[nFree++] = i;
+            }
+        }
+        return free[--nFree];
+    }
+}
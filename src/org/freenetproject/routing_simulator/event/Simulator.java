@@ -0,0 +1,94 @@
+package org.freenetproject.routing_simulator.event;
+
+/**
+ * Discrete-event simulation core: a simulated clock and the queue of pending
+ * events. Running the simulator advances the clock to each event in time order
+ * and passes it to the handler, which may schedule further events.
+ */
+public class Simulator {
+    private final EventQueue queue;
+    private double now = 0.0;
+
+    public Simulator() {
+        this.queue = new EventQueue();
+    }
+
+    /**
+     * @return current simulated time.
+     */
+    public double now() {
+        return now;
+    }
+
+    /**
+     * Move the clock forward to the given time without handling events. Any
+     * events before the time should be handled first.
+     * 
+     * @param time
+     *            Time to move the clock to. Must not be before the current
+     *            time or after the next pending event.
+     */
+    public void advanceTo(double time) {
+        if (time < now)
+            throw new IllegalArgumentException("Cannot move the clock back to "
+                    + time + " from " + now);
+        if (!queue.isEmpty() && queue.peekTime() < time)
+            throw new IllegalStateException(
+                    "Cannot move the clock past a pending event.");
+        now = time;
+    }
+
+    /**
+     * Schedule an event relative to the current time.
+     * 
+     * @param delay
+     *            Time from now until the event. Must not be negative.
+     * @param type
+     *            Event type.
+     * @param a
+     *            First payload value.
+     * @param b
+     *            Second payload value.
+     */
+    public void schedule(double delay, int type, int a, int b) {
+        if (delay < 0.0)
+            throw new IllegalArgumentException("Cannot schedule in the past: "
+                    + delay);
+        queue.schedule(now + delay, type, a, b);
+    }
+
+    /**
+     * @return number of pending events.
+     */
+    public int pending() {
+        return queue.size();
+    }
+
+    /**
+     * Handle events until none remain.
+     * 
+     * @param handler
+     *            handler to pass events to.
+     */
+    public void run(EventHandler handler) {
+        runUntil(handler, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Handle events until none remain or the next is after the given time.
+     * The clock is left at the last event handled.
+     * 
+     * @param handler
+     *            handler to pass events to.
+     * @param end
+     *            time after which to stop.
+     */
+    public void runUntil(EventHandler handler, double end) {
+        while (!queue.isEmpty() && queue.peekTime() <= end) {
+            queue.poll();
+            now = queue.polledTime();
+            handler.handle(queue.polledType(), queue.polledA(),
+                    queue.polledB());
+        }
+    }
+}
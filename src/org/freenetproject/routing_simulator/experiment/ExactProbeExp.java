@@ -0,0 +1,176 @@
+package org.freenetproject.routing_simulator.experiment;
+
+import org.freenetproject.routing_simulator.graph.TransitionMatrix;
+
+import java.util.Arrays;
+
+/**
+ * Exact distribution of random walk probes at each hop, found by propagating
+ * the probability of being at each node through the transition matrix rather
+ * than by sampling walks.
+ * <p>
+ * Each source's distribution at each hop is sorted before being added to the
+ * totals, like the occurrences of a sampled trial, so the totals describe the
+ * spread of the distributions rather than which nodes are reached. Sources
+ * are propagated together in blocks, and each step of a block is split by
+ * rows between threads.
+ */
+public class ExactProbeExp {
+    /**
+     * Number of sources propagated together.
+     */
+    private static final int BLOCK = 16;
+
+    private final TransitionMatrix matrix;
+    private final int maxHops;
+    private final int threads;
+
+    private final double[][] totals;
+    private final double[] meanDistance;
+    private final double[] maxDistance;
+
+    /**
+     * @param matrix
+     *            Transition matrix of the walk.
+     * @param maxHops
+     *            Hops to propagate for.
+     * @param threads
+     *            Number of threads to compute each step on.
+     */
+    public ExactProbeExp(TransitionMatrix matrix, int maxHops, int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("Must have at least one thread.");
+        this.matrix = matrix;
+        this.maxHops = maxHops;
+        this.threads = threads;
+        // maxHops + 1 is because the starting node is at zero hops.
+        this.totals = new double[maxHops + 1][matrix.size()];
+        this.meanDistance = new double[maxHops + 1];
+        this.maxDistance = new double[maxHops + 1];
+    }
+
+    /**
+     * Propagate walks from each source and wait for the threads to finish.
+     *
+     * @param sources
+     *            Index of the node each walk starts from.
+     * @throws InterruptedException
+     *             Interrupted while waiting for the threads.
+     */
+    public void run(int[] sources) throws InterruptedException {
+        final int n = matrix.size();
+        final double[][] sorted = new double[Math.min(BLOCK, sources.length)][n];
+        final double[] distances = new double[sorted.length];
+        for (int start = 0; start < sources.length; start += BLOCK) {
+            final int width = Math.min(BLOCK, sources.length - start);
+            double[] from = new double[n * width];
+            double[] to = new double[n * width];
+            for (int k = 0; k < width; k++)
+                from[sources[start + k] * width + k] = 1.0;
+
+            for (int hop = 0; hop <= maxHops; hop++) {
+                if (hop > 0) {
+                    final double[] before = from, after = to;
+                    split(n, new Split() {
+                        @Override
+                        public void run(int first, int last) {
+                            matrix.step(before, after, width, first, last);
+                        }
+                    });
+                    from = after;
+                    to = before;
+                }
+
+                final double[] current = from;
+                split(width, new Split() {
+                    @Override
+                    public void run(int first, int last) {
+                        for (int k = first; k < last; k++) {
+                            double distance = 0;
+                            for (int i = 0; i < n; i++) {
+                                sorted[k][i] = current[i * width + k];
+                                distance += Math.abs(sorted[k][i] - 1.0 / n);
+                            }
+                            // Total variation distance is half the L1
+                            // distance.
+                            distances[k] = distance / 2;
+                            Arrays.sort(sorted[k]);
+                        }
+                    }
+                });
+
+                // Sum in order of source so results do not depend on threads.
+                for (int k = 0; k < width; k++) {
+                    meanDistance[hop] += distances[k] / sources.length;
+                    maxDistance[hop] = Math.max(maxDistance[hop], distances[k]);
+                    for (int i = 0; i < n; i++)
+                        totals[hop][i] += sorted[k][i];
+                }
+            }
+        }
+    }
+
+    /**
+     * @param hops
+     *            Hops along the walks; zero is the source.
+     * @return probability of each node at the given hop, sorted for each
+     *         source and summed over sources.
+     */
+    public double[] getTotals(int hops) {
+        return totals[hops];
+    }
+
+    /**
+     * @param hops
+     *            Hops along the walks.
+     * @return mean over sources of the total variation distance from the
+     *         uniform distribution at the given hop.
+     */
+    public double getMeanDistance(int hops) {
+        return meanDistance[hops];
+    }
+
+    /**
+     * @param hops
+     *            Hops along the walks.
+     * @return greatest total variation distance from the uniform distribution
+     *         of any source at the given hop.
+     */
+    public double getMaxDistance(int hops) {
+        return maxDistance[hops];
+    }
+
+    /**
+     * Work on a range of rows or sources.
+     */
+    private interface Split {
+        void run(int first, int last);
+    }
+
+    /**
+     * Split count items into a contiguous share for each thread and wait for
+     * the threads to finish.
+     */
+    private void split(final int count, final Split split)
+            throws InterruptedException {
+        final int nThreads = Math.min(threads, count);
+        if (nThreads <= 1) {
+            split.run(0, count);
+            return;
+        }
+        final Thread[] running = new Thread[nThreads];
+        for (int t = 0; t < nThreads; t++) {
+            final int first = (int) ((long) count * t / nThreads);
+            final int last = (int) ((long) count * (t + 1) / nThreads);
+            running[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    split.run(first, last);
+                }
+            }, "exact-probe-" + t);
+            running[t].start();
+        }
+        for (Thread thread : running)
+            thread.join();
+    }
+}
@@ -0,0 +1,160 @@
+package org.freenetproject.routing_simulator.experiment;
+
+import org.freenetproject.routing_simulator.util.Histogram;
+
+/**
+ * Results of routing requests under concurrent load at one offered rate.
+ */
+public class LoadExp {
+    private final double offeredRate;
+    private long offered = 0, completed = 0, successes = 0, rejected = 0,
+            backedOff = 0;
+    private double firstStart = Double.NaN, lastStart = Double.NaN;
+    /**
+     * Requests completed before the latest request started.
+     */
+    private long completedWhileOffered = 0;
+    private final Histogram latencies = new Histogram(1.0);
+
+    /**
+     * @param offeredRate
+     *            Requests offered per second.
+     */
+    public LoadExp(double offeredRate) {
+        this.offeredRate = offeredRate;
+    }
+
+    /**
+     * A request was started.
+     * 
+     * @param time
+     *            Simulated time in milliseconds.
+     */
+    public void offered(double time) {
+        if (offered == 0)
+            firstStart = time;
+        offered++;
+        lastStart = time;
+        completedWhileOffered = completed;
+    }
+
+    /**
+     * A request's reply reached its origin.
+     * 
+     * @param success
+     *            Whether the request reached its target.
+     * @param latency
+     *            Milliseconds since the request started.
+     */
+    public void completed(boolean success, double latency) {
+        completed++;
+        if (success)
+            successes++;
+        latencies.record(latency);
+    }
+
+    /**
+     * A node rejected a request because its slots and queue were full.
+     */
+    public void rejected() {
+        rejected++;
+    }
+
+    /**
+     * A request was not sent to a node because it was backed off.
+     */
+    public void backedOff() {
+        backedOff++;
+    }
+
+    /**
+     * @return requests completed per second while requests were being
+     *         offered. Requests completing after the last one started are
+     *         left out so that draining does not lower the rate. Zero if
+     *         all requests started at the same time, as there is then no
+     *         span to measure over.
+     */
+    public double throughput() {
+        if (offered < 2 || lastStart == firstStart)
+            return 0.0;
+        return completedWhileOffered / ((lastStart - firstStart) / 1000.0);
+    }
+
+    /**
+     * @return fraction of offered requests which were rejected or not sent
+     *         because of backoff.
+     */
+    public double rejectionRate() {
+        return (double) (rejected + backedOff) / offered;
+    }
+
+    public Histogram getLatencies() {
+        return latencies;
+    }
+
+    public String toStringHeaders() {
+        StringBuilder b = new StringBuilder();
+        b.append("offeredRate ");
+        b.append("offered ");
+        b.append("completed ");
+        b.append("throughput ");
+        b.append("successRate ");
+        b.append("rejectionRate ");
+        b.append("rejected ");
+        b.append("backedOff ");
+        b.append("meanLatency ");
+        b.append("latencyP50 ");
+        b.append("latencyP90 ");
+        b.append("latencyP99 ");
+        return b.toString();
+    }
+
+    public String toStringValues() {
+        StringBuilder b = new StringBuilder();
+        b.append(offeredRate).append(' ');
+        b.append(offered).append(' ');
+        b.append(completed).append(' ');
+        b.append(throughput()).append(' ');
+        b.append((double) successes / completed * 100).append(' ');
+        b.append(rejectionRate() * 100).append(' ');
+        b.append(rejected).append(' ');
+        b.append(backedOff).append(' ');
+        b.append(latencies.mean()).append(' ');
+        b.append(latencies.percentile(0.5)).append(' ');
+        b.append(latencies.percentile(0.9)).append(' ');
+        b.append(latencies.percentile(0.99)).append(' ');
+        return b.toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder("Load simulation results\n\n");
+        b.append("Offered load (requests/s) :       \t").append(offeredRate);
+        b.append("\n");
+        b.append("Requests offered :                \t").append(offered);
+        b.append("\n");
+        b.append("Requests completed :              \t").append(completed);
+        b.append("\n");
+        b.append("Throughput (requests/s) :         \t").append(throughput());
+        b.append("\n");
+        b.append("Success rate of completed :       \t").append(
+                (double) successes / completed * 100);
+        b.append("%\n");
+        b.append("Rejection rate :                  \t").append(
+                rejectionRate() * 100);
+        b.append("%\n");
+        b.append("\tRejected when overloaded :     \t").append(rejected);
+        b.append("\n");
+        b.append("\tNot sent due to backoff :      \t").append(backedOff);
+        b.append("\n");
+        b.append("Mean latency (ms) :               \t").append(
+                latencies.mean());
+        b.append("\n");
+        b.append("Latency p50 / p90 / p99 (ms) :    \t").append(
+                latencies.percentile(0.5));
+        b.append(" / ").append(latencies.percentile(0.9));
+        b.append(" / ").append(latencies.percentile(0.99));
+        b.append("\n");
+        return b.toString();
+    }
+}
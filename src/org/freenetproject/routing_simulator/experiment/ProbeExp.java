@@ -0,0 +1,306 @@
+package org.freenetproject.routing_simulator.experiment;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.freenetproject.routing_simulator.graph.Graph;
+import org.freenetproject.routing_simulator.graph.TransitionTables;
+import org.freenetproject.routing_simulator.graph.node.SimpleNode;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Distribution of nodes reached by random walk probes at each hop, and a
+ * baseline of selecting nodes from the whole network at random.
+ * <p>
+ * Trials are spread across threads. Each trial has its own random generator
+ * seeded in order from the generator given to {@link #run}, and occurrences
+ * of each trial are sorted before being added to the totals, so the results
+ * depend only on the seed and not on the number of threads.
+ * <p>
+ * Given a tolerance, trials run in batches and stop early once the
+ * Kolmogorov-Smirnov distance between the occurrences at the final hop and
+ * the baseline changes by less than the tolerance from one batch to the next.
+ * Batches do not depend on the number of threads either.
+ */
+public class ProbeExp {
+    /**
+     * Number of trials between convergence checks.
+     */
+    private static final int BATCH = 10;
+
+    private final Graph graph;
+    private final int maxHops;
+    private final boolean uniform;
+    private final int nTrials;
+    private final int nProbes;
+    private final int threads;
+    private final TransitionTables transitions;
+    private final double tolerance;
+    private int trialsRun = 0;
+
+    private final int[] baseline;
+    private final int[][] hopOccurrences;
+
+    /**
+     * @param graph
+     *            Graph to probe. Not modified.
+     * @param maxHops
+     *            Hops each probe walks.
+     * @param uniform
+     *            Whether walks are uniform or use Metropolis-Hastings
+     *            correction.
+     * @param nTrials
+     *            Number of trials, each from a randomly selected source.
+     * @param nProbes
+     *            Number of probes in each trial.
+     * @param threads
+     *            Number of threads to run trials on.
+     * @param transitions
+     *            If not null, corrected walks take hops by sampling these
+     *            tables rather than by accepting or rejecting neighbors.
+     * @param tolerance
+     *            Stop once the Kolmogorov-Smirnov distance from the baseline
+     *            changes by less than this between batches of trials. Zero
+     *            to always run all trials.
+     */
+    public ProbeExp(Graph graph, int maxHops, boolean uniform, int nTrials,
+            int nProbes, int threads, TransitionTables transitions,
+            double tolerance) {
+        if (threads < 1)
+            throw new IllegalArgumentException("Must have at least one thread.");
+        this.graph = graph;
+        this.maxHops = maxHops;
+        this.uniform = uniform;
+        this.nTrials = nTrials;
+        this.nProbes = nProbes;
+        this.threads = threads;
+        this.transitions = uniform ? null : transitions;
+        this.tolerance = tolerance;
+        this.baseline = new int[graph.size()];
+        // maxHops + 1 is because the starting node is at zero hops.
+        this.hopOccurrences = new int[maxHops + 1][graph.size()];
+    }
+
+    /**
+     * Run the baseline and probe trials, or until they converge, and wait for
+     * them to finish.
+     *
+     * @param rand
+     *            Provides the seed of each trial's random generator.
+     * @throws InterruptedException
+     *             Interrupted while waiting for the threads.
+     */
+    public void run(RandomGenerator rand) throws InterruptedException {
+        final long[] baselineSeeds = new long[nTrials];
+        final long[] probeSeeds = new long[nTrials];
+        for (int i = 0; i < nTrials; i++)
+            baselineSeeds[i] = rand.nextLong();
+        for (int i = 0; i < nTrials; i++)
+            probeSeeds[i] = rand.nextLong();
+
+        final int batch = tolerance > 0 ? BATCH : Math.max(nTrials, 1);
+        final Worker[] workers = new Worker[Math.min(threads, 2 * batch)];
+        final AtomicInteger nextTrial = new AtomicInteger();
+        for (int i = 0; i < workers.length; i++)
+            workers[i] = new Worker(baselineSeeds, probeSeeds, nextTrial);
+
+        double previous = Double.NaN;
+        while (trialsRun < nTrials) {
+            final int count = Math.min(batch, nTrials - trialsRun);
+            nextTrial.set(0);
+            for (Worker worker : workers) {
+                worker.first = trialsRun;
+                worker.count = count;
+            }
+            runAll(workers, "probe-");
+            trialsRun += count;
+
+            if (tolerance > 0) {
+                final int[] probes = new int[graph.size()];
+                final int[] reference = new int[graph.size()];
+                for (Worker worker : workers) {
+                    add(probes, worker.hopTotals[maxHops]);
+                    add(reference, worker.baselineTotals);
+                }
+                final double distance = ksDistance(probes, reference);
+                if (Math.abs(distance - previous) < tolerance)
+                    break;
+                previous = distance;
+            }
+        }
+
+        // Sum the totals of each worker, each thread taking a share of hops.
+        final Runnable[] sums = new Runnable[workers.length];
+        for (int i = 0; i < sums.length; i++) {
+            final int first = (maxHops + 1) * i / sums.length;
+            final int last = (maxHops + 1) * (i + 1) / sums.length;
+            sums[i] = new Runnable() {
+                @Override
+                public void run() {
+                    for (int hop = first; hop < last; hop++) {
+                        for (Worker worker : workers)
+                            add(hopOccurrences[hop], worker.hopTotals[hop]);
+                    }
+                }
+            };
+        }
+        runAll(sums, "probe-sum-");
+        for (Worker worker : workers)
+            add(baseline, worker.baselineTotals);
+    }
+
+    /**
+     * @return number of trials run, which is less than requested if they
+     *         converged.
+     */
+    public int getTrials() {
+        return trialsRun;
+    }
+
+    /**
+     * @param hops
+     *            Hops along the probes.
+     * @return Kolmogorov-Smirnov distance between the occurrences at the given
+     *         hop and the baseline.
+     */
+    public double getDistance(int hops) {
+        return ksDistance(hopOccurrences[hops], baseline);
+    }
+
+    /**
+     * @return greatest difference between the cumulative distributions of two
+     *         arrays of sorted occurrences, each taken as weights of their
+     *         ranks. Zero if both are empty and one if only one is.
+     */
+    public static double ksDistance(int[] a, int[] b) {
+        assert a.length == b.length;
+        long totalA = 0, totalB = 0;
+        for (int i = 0; i < a.length; i++) {
+            totalA += a[i];
+            totalB += b[i];
+        }
+        if (totalA == 0 || totalB == 0)
+            return totalA == totalB ? 0.0 : 1.0;
+        long sumA = 0, sumB = 0;
+        double distance = 0;
+        for (int i = 0; i < a.length; i++) {
+            sumA += a[i];
+            sumB += b[i];
+            distance = Math.max(distance, Math.abs((double) sumA / totalA
+                    - (double) sumB / totalB));
+        }
+        return distance;
+    }
+
+    /**
+     * @return occurrences of nodes selected from the whole network at random,
+     *         summed over trials after sorting each trial.
+     */
+    public int[] getBaseline() {
+        return baseline;
+    }
+
+    /**
+     * @param hops
+     *            Hops along the probes; zero is the source.
+     * @return occurrences of nodes at the given hop, summed over trials after
+     *         sorting each trial.
+     */
+    public int[] getOccurrences(int hops) {
+        return hopOccurrences[hops];
+    }
+
+    private static void add(int[] total, int[] values) {
+        assert total.length == values.length;
+        for (int i = 0; i < total.length; i++)
+            total[i] += values[i];
+    }
+
+    private static void runAll(Runnable[] tasks, String name)
+            throws InterruptedException {
+        if (tasks.length == 1) {
+            tasks[0].run();
+            return;
+        }
+        final Thread[] running = new Thread[tasks.length];
+        for (int i = 0; i < tasks.length; i++) {
+            running[i] = new Thread(tasks[i], name + i);
+            running[i].start();
+        }
+        for (Thread thread : running)
+            thread.join();
+    }
+
+    /**
+     * Takes trials of the current batch in turn until there are none left.
+     * Baseline trials come first.
+     */
+    private class Worker implements Runnable {
+        private final long[] baselineSeeds, probeSeeds;
+        private final AtomicInteger nextTrial;
+        final int[] baselineTotals = new int[graph.size()];
+        final int[][] hopTotals = new int[maxHops + 1][graph.size()];
+        /**
+         * First trial of the current batch, and the number of trials in it.
+         */
+        int first, count;
+
+        Worker(long[] baselineSeeds, long[] probeSeeds, AtomicInteger nextTrial) {
+            this.baselineSeeds = baselineSeeds;
+            this.probeSeeds = probeSeeds;
+            this.nextTrial = nextTrial;
+        }
+
+        private final int[][] trialOccurrences = new int[maxHops + 1][graph
+                .size()];
+        private final int[] trace = new int[maxHops + 1];
+
+        @Override
+        public void run() {
+            int trial;
+            while ((trial = nextTrial.getAndIncrement()) < 2 * count) {
+                if (trial < count)
+                    baselineTrial(new MersenneTwister(baselineSeeds[first
+                            + trial]), trialOccurrences[0]);
+                else
+                    probeTrial(new MersenneTwister(probeSeeds[first + trial
+                            - count]), trialOccurrences, trace);
+            }
+        }
+
+        /*
+         * Find baseline for visibility by selecting the same number of nodes
+         * from the entire network at random as endpoints at each HTL. Sort
+         * occurrences each run, then add to final result array to represent
+         * actual spread from each run and avoid node index influence.
+         */
+        private void baselineTrial(RandomGenerator rand, int[] occurrences) {
+            Arrays.fill(occurrences, 0);
+            for (int walk = 0; walk < nProbes; walk++)
+                occurrences[rand.nextInt(graph.size())]++;
+            Arrays.sort(occurrences);
+            add(baselineTotals, occurrences);
+        }
+
+        private void probeTrial(RandomGenerator rand, int[][] occurrences,
+                int[] trace) {
+            for (int[] hop : occurrences)
+                Arrays.fill(hop, 0);
+            final SimpleNode source = graph.getNode(rand.nextInt(graph.size()));
+            for (int walk = 0; walk < nProbes; walk++) {
+                if (transitions == null)
+                    source.randomWalk(maxHops, uniform, rand, trace);
+                else
+                    transitions.randomWalk(source, maxHops, rand, trace);
+                // fromEnd of trace: hops along. 0 is starting node.
+                for (int fromEnd = 0; fromEnd <= maxHops; fromEnd++)
+                    occurrences[fromEnd][trace[fromEnd]]++;
+            }
+            for (int hop = 0; hop <= maxHops; hop++) {
+                Arrays.sort(occurrences[hop]);
+                add(hopTotals[hop], occurrences[hop]);
+            }
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package org.freenetproject.routing_simulator.experiment;
+
+import org.freenetproject.routing_simulator.util.ArrayUtil;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Probe distributions in a single binary file of columns: the reference
+ * occurrences, then the occurrences at each hop from zero. The header is the
+ * magic number, format version, flags, number of nodes and number of hops,
+ * each a big-endian int.
+ * <p>
+ * Columns are big-endian ints. When compressed, each column is instead its
+ * length in bytes as an int followed by the difference of each value from the
+ * previous one, zigzag encoded as an unsigned variable-length integer of seven
+ * bits a byte, least significant first. Occurrences are sorted, so the
+ * differences are small.
+ * <p>
+ * {@link #main} exports a file as the text files written without it.
+ */
+public class ProbeOutput {
+    private static final int MAGIC = 0x46525042;
+    private static final int VERSION = 1;
+    private static final int FLAG_COMPRESSED = 1;
+    private static final int BUFFER = 1 << 16;
+
+    /**
+     * File name in the probe output directory.
+     */
+    public static final String FILE_NAME = "probes.bin";
+
+    private final int[] reference;
+    private final int[][] hops;
+
+    /**
+     * @param reference
+     *            Reference occurrences.
+     * @param hops
+     *            Occurrences at each hop from zero; each the length of the
+     *            reference.
+     */
+    public ProbeOutput(int[] reference, int[][] hops) {
+        for (int[] column : hops) {
+            if (column.length != reference.length)
+                throw new IllegalArgumentException(
+                        "Columns must have one value for each node.");
+        }
+        this.reference = reference;
+        this.hops = hops;
+    }
+
+    /**
+     * @return reference occurrences.
+     */
+    public int[] getReference() {
+        return reference;
+    }
+
+    /**
+     * @return the largest number of hops with occurrences.
+     */
+    public int getMaxHops() {
+        return hops.length - 1;
+    }
+
+    /**
+     * @param hops
+     *            Hops along the probes; zero is the source.
+     * @return occurrences at the given hop.
+     */
+    public int[] getOccurrences(int hops) {
+        return this.hops[hops];
+    }
+
+    /**
+     * Write the file.
+     *
+     * @param target
+     *            File to write.
+     * @param compress
+     *            Whether to delta and variable-length encode columns.
+     * @throws IOException
+     *             Error writing the file.
+     */
+    public void write(File target, boolean compress) throws IOException {
+        final FileOutputStream stream = new FileOutputStream(target);
+        try {
+            final FileChannel channel = stream.getChannel();
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER);
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putInt(compress ? FLAG_COMPRESSED : 0);
+            buffer.putInt(reference.length);
+            buffer.putInt(hops.length - 1);
+            writeColumn(channel, buffer, reference, compress);
+            for (int[] column : hops)
+                writeColumn(channel, buffer, column, compress);
+            drain(channel, buffer);
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Read a file written by {@link #write}.
+     *
+     * @param source
+     *            File to read.
+     * @return the distributions in the file.
+     * @throws IOException
+     *             Error reading the file, or it is not a probe file.
+     */
+    public static ProbeOutput read(File source) throws IOException {
+        final FileInputStream stream = new FileInputStream(source);
+        try {
+            final FileChannel channel = stream.getChannel();
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER);
+            buffer.flip();
+            if (require(channel, buffer, 20).getInt() != MAGIC)
+                throw new IOException(source + " is not a probe output file.");
+            final int version = buffer.getInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported probe output version "
+                        + version);
+            final boolean compressed = (buffer.getInt() & FLAG_COMPRESSED) != 0;
+            final int nodes = buffer.getInt();
+            final int maxHops = buffer.getInt();
+            if (nodes < 0 || maxHops < 0)
+                throw new IOException("Corrupt probe output header.");
+
+            final int[] reference = readColumn(channel, buffer, nodes,
+                    compressed);
+            final int[][] hops = new int[maxHops + 1][];
+            for (int i = 0; i <= maxHops; i++)
+                hops[i] = readColumn(channel, buffer, nodes, compressed);
+            return new ProbeOutput(reference, hops);
+        } finally {
+            stream.close();
+        }
+    }
+
+    private static void writeColumn(FileChannel channel, ByteBuffer buffer,
+            int[] column, boolean compress) throws IOException {
+        if (!compress) {
+            for (int value : column) {
+                if (buffer.remaining() < 4)
+                    drain(channel, buffer);
+                buffer.putInt(value);
+            }
+            return;
+        }
+
+        int length = 0;
+        int previous = 0;
+        for (int value : column) {
+            length += varintLength(zigzag(value - previous));
+            previous = value;
+        }
+        if (buffer.remaining() < 4)
+            drain(channel, buffer);
+        buffer.putInt(length);
+        previous = 0;
+        for (int value : column) {
+            if (buffer.remaining() < 5)
+                drain(channel, buffer);
+            int encoded = zigzag(value - previous);
+            previous = value;
+            while ((encoded & ~0x7F) != 0) {
+                buffer.put((byte) ((encoded & 0x7F) | 0x80));
+                encoded >>>= 7;
+            }
+            buffer.put((byte) encoded);
+        }
+    }
+
+    private static int[] readColumn(FileChannel channel, ByteBuffer buffer,
+            int nodes, boolean compressed) throws IOException {
+        final int[] column = new int[nodes];
+        if (!compressed) {
+            for (int i = 0; i < nodes; i++)
+                column[i] = require(channel, buffer, 4).getInt();
+            return column;
+        }
+
+        int remaining = require(channel, buffer, 4).getInt();
+        int previous = 0;
+        for (int i = 0; i < nodes; i++) {
+            int encoded = 0;
+            for (int shift = 0;; shift += 7) {
+                if (remaining-- <= 0 || shift > 28)
+                    throw new IOException("Corrupt probe output column.");
+                final byte b = require(channel, buffer, 1).get();
+                encoded |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    break;
+            }
+            previous += (encoded >>> 1) ^ -(encoded & 1);
+            column[i] = previous;
+        }
+        if (remaining != 0)
+            throw new IOException("Corrupt probe output column.");
+        return column;
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int varintLength(int value) {
+        int length = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * Write out everything in the buffer and clear it.
+     */
+    private static void drain(FileChannel channel, ByteBuffer buffer)
+            throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Read from the channel until the buffer, which is ready for reading,
+     * has at least the given number of bytes.
+     */
+    private static ByteBuffer require(FileChannel channel, ByteBuffer buffer,
+            int bytes) throws IOException {
+        if (buffer.remaining() >= bytes)
+            return buffer;
+        buffer.compact();
+        while (buffer.position() < bytes) {
+            if (channel.read(buffer) < 0)
+                throw new IOException("Unexpected end of probe output.");
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Export a probe output file as text files in the format of
+     * "[node ID] [times seen]\n": reference.dat and probe-[hops].dat.
+     *
+     * @param args
+     *            Probe output file, then the directory to export to.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: ProbeOutput [probe file] [directory]");
+            System.exit(1);
+        }
+        final ProbeOutput probes = read(new File(args[0]));
+        final File directory = new File(args[1]);
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Unable to create directory " + directory);
+        ArrayUtil.writeArray(probes.getReference(), new File(directory,
+                "reference.dat"));
+        for (int hops = 0; hops <= probes.getMaxHops(); hops++) {
+            ArrayUtil.writeArray(probes.getOccurrences(hops), new File(
+                    directory, "probe-" + hops + ".dat"));
+        }
+    }
+}
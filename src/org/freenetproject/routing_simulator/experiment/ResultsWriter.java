@@ -0,0 +1,208 @@
+package org.freenetproject.routing_simulator.experiment;
+
+import org.freenetproject.routing_simulator.ResultsFormat;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes records of typed results as JSON lines or CSV, so that they can be
+ * loaded by analysis tools without custom parsing. A record maps field names
+ * in order to numbers, booleans, strings, enums, arrays of those, nested
+ * records, or null.
+ * <p>
+ * In JSON each record is an object on its own line; non-finite numbers are
+ * null. In CSV the first record's fields give the header, with nested fields
+ * named by their path joined with dots, and every record must have the same
+ * fields. Arrays are written as a JSON array in a quoted cell.
+ */
+public class ResultsWriter {
+    private final Writer output;
+    private final ResultsFormat format;
+    /**
+     * CSV columns, or null until the first record.
+     */
+    private List<String> columns;
+    /**
+     * Whether to write the CSV header before the first record.
+     */
+    private final boolean header;
+
+    /**
+     * @param output
+     *            Stream to write records to. It is closed with the writer.
+     * @param format
+     *            CSV or JSON.
+     */
+    public ResultsWriter(OutputStream output, ResultsFormat format)
+            throws IOException {
+        this(output, format, true);
+    }
+
+    /**
+     * @param header
+     *            Whether to write the CSV header, which is not wanted when
+     *            appending to earlier records.
+     */
+    public ResultsWriter(OutputStream output, ResultsFormat format,
+            boolean header) throws IOException {
+        if (format == ResultsFormat.TEXT)
+            throw new IllegalArgumentException("Records are CSV or JSON.");
+        this.output = new BufferedWriter(new OutputStreamWriter(output,
+                "UTF-8"));
+        this.format = format;
+        this.header = header;
+    }
+
+    /**
+     * Write a record and flush it.
+     *
+     * @param record
+     *            Fields of the record in order.
+     * @throws IllegalArgumentException
+     *             A CSV record has different fields than the first.
+     */
+    public void write(Map<String, ?> record) throws IOException {
+        final StringBuilder b = new StringBuilder();
+        if (format == ResultsFormat.JSON) {
+            appendJson(b, record);
+        } else {
+            final List<String> names = new ArrayList<String>();
+            final List<Object> values = new ArrayList<Object>();
+            flatten("", record, names, values);
+            if (columns == null) {
+                columns = names;
+                if (header) {
+                    for (int i = 0; i < names.size(); i++) {
+                        if (i > 0)
+                            b.append(',');
+                        appendCsv(b, names.get(i));
+                    }
+                    b.append('\n');
+                }
+            } else if (!columns.equals(names)) {
+                throw new IllegalArgumentException(
+                        "CSV records must all have the same fields.");
+            }
+            for (int i = 0; i < values.size(); i++) {
+                if (i > 0)
+                    b.append(',');
+                appendCsv(b, values.get(i));
+            }
+        }
+        b.append('\n');
+        output.write(b.toString());
+        output.flush();
+    }
+
+    public void close() throws IOException {
+        output.close();
+    }
+
+    private static void flatten(String prefix, Map<String, ?> record,
+            List<String> names, List<Object> values) {
+        for (Map.Entry<String, ?> field : record.entrySet()) {
+            if (field.getValue() instanceof Map) {
+                @SuppressWarnings("unchecked")
+                final Map<String, ?> nested = (Map<String, ?>) field.getValue();
+                flatten(prefix + field.getKey() + ".", nested, names, values);
+            } else {
+                names.add(prefix + field.getKey());
+                values.add(field.getValue());
+            }
+        }
+    }
+
+    private static void appendCsv(StringBuilder b, Object value) {
+        if (value == null)
+            return;
+        if (value.getClass().isArray()) {
+            final StringBuilder array = new StringBuilder();
+            appendJson(array, value);
+            value = array;
+        } else if (value instanceof Number || value instanceof Boolean) {
+            b.append(value);
+            return;
+        }
+        final String text = value.toString();
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0
+                && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            b.append(text);
+            return;
+        }
+        b.append('"').append(text.replace("\"", "\"\"")).append('"');
+    }
+
+    private static void appendJson(StringBuilder b, Object value) {
+        if (value == null) {
+            b.append("null");
+        } else if (value instanceof Map) {
+            b.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> field : ((Map<?, ?>) value).entrySet()) {
+                if (!first)
+                    b.append(',');
+                first = false;
+                appendJsonString(b, field.getKey().toString());
+                b.append(':');
+                appendJson(b, field.getValue());
+            }
+            b.append('}');
+        } else if (value.getClass().isArray()) {
+            b.append('[');
+            for (int i = 0; i < Array.getLength(value); i++) {
+                if (i > 0)
+                    b.append(',');
+                appendJson(b, Array.get(value, i));
+            }
+            b.append(']');
+        } else if (value instanceof Double || value instanceof Float) {
+            final double number = ((Number) value).doubleValue();
+            if (Double.isNaN(number) || Double.isInfinite(number))
+                b.append("null");
+            else
+                b.append(value);
+        } else if (value instanceof Number || value instanceof Boolean) {
+            b.append(value);
+        } else {
+            appendJsonString(b, value.toString());
+        }
+    }
+
+    private static void appendJsonString(StringBuilder b, String text) {
+        b.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            switch (c) {
+            case '"':
+                b.append("\\\"");
+                break;
+            case '\\':
+                b.append("\\\\");
+                break;
+            case '\n':
+                b.append("\\n");
+                break;
+            case '\r':
+                b.append("\\r");
+                break;
+            case '\t':
+                b.append("\\t");
+                break;
+            default:
+                if (c < 0x20)
+                    b.append(String.format("\\u%04x", (int) c));
+                else
+                    b.append(c);
+            }
+        }
+        b.append('"');
+    }
+}
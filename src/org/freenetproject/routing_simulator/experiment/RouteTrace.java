@@ -0,0 +1,460 @@
+package org.freenetproject.routing_simulator.experiment;
+
+import org.freenetproject.routing_simulator.util.IntArrayList;
+
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Writes a record of every routed request: the request number, origin and
+ * target node indexes, whether it succeeded, hops travelled beyond the final
+ * path as in {@link RoutingExp}, path folding operations, and the index of
+ * every node it arrived at in order, including returns after failing further
+ * on.
+ * <p>
+ * The header is the magic number, format version and flags, each a
+ * big-endian int. Records are then written in blocks, each the number of
+ * bytes of records as an int, then the number of bytes stored as an int,
+ * then those bytes: deflated when compressed, otherwise the records
+ * themselves. A record may continue into the next block. Each record is its
+ * length in bytes followed by its fields, each an unsigned variable-length
+ * integer of seven bits a byte, least significant first, with the hops
+ * preceded by their number.
+ * <p>
+ * Blocks are compressed and written by a background thread, so routing only
+ * waits for it when it falls a few blocks behind. {@link #main} exports a
+ * file as text.
+ */
+public class RouteTrace {
+    private static final int MAGIC = 0x46525254;
+    private static final int VERSION = 1;
+    private static final int FLAG_COMPRESSED = 1;
+    private static final int BLOCK = 1 << 16;
+    /**
+     * Number of blocks, including the one being filled.
+     */
+    private static final int BLOCKS = 4;
+
+    private final BlockingQueue<Block> free = new ArrayBlockingQueue<Block>(
+            BLOCKS);
+    private final BlockingQueue<Block> full = new ArrayBlockingQueue<Block>(
+            BLOCKS);
+    private final Thread writer;
+    /**
+     * First error writing, which is thrown by the next record or close.
+     */
+    private volatile IOException failure;
+
+    /**
+     * Block being filled with records.
+     */
+    private Block current;
+    /**
+     * Encoding of the record being added.
+     */
+    private byte[] record = new byte[256];
+    private int recordLength;
+
+    /**
+     * A block of record bytes. The writer thread takes one with a negative
+     * length as the end of the trace.
+     */
+    private static final class Block {
+        final byte[] data = new byte[BLOCK];
+        int length;
+    }
+
+    /**
+     * @param output
+     *            Stream to write the trace to. It is closed with the trace.
+     * @param compress
+     *            Whether to deflate blocks.
+     * @throws IOException
+     *             Error writing the header.
+     */
+    public RouteTrace(OutputStream output, final boolean compress)
+            throws IOException {
+        final DataOutputStream out = new DataOutputStream(output);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(compress ? FLAG_COMPRESSED : 0);
+
+        for (int i = 0; i < BLOCKS; i++)
+            free.add(new Block());
+        current = free.remove();
+
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                write(out, compress);
+            }
+        }, "RouteTrace");
+        // Do not keep a simulation which failed from exiting.
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Write blocks as they fill until the end of the trace. After an error
+     * blocks are still taken, so that routing does not wait on them, but
+     * discarded.
+     */
+    private void write(DataOutputStream out, boolean compress) {
+        final Deflater deflater = compress ? new Deflater(Deflater.BEST_SPEED)
+                : null;
+        byte[] deflated = new byte[BLOCK];
+        try {
+            while (true) {
+                final Block block = full.take();
+                if (block.length < 0)
+                    break;
+                if (failure == null) {
+                    try {
+                        out.writeInt(block.length);
+                        if (deflater == null) {
+                            out.writeInt(block.length);
+                            out.write(block.data, 0, block.length);
+                        } else {
+                            deflater.reset();
+                            deflater.setInput(block.data, 0, block.length);
+                            deflater.finish();
+                            int stored = 0;
+                            while (!deflater.finished()) {
+                                if (stored == deflated.length)
+                                    deflated = Arrays.copyOf(deflated,
+                                            2 * deflated.length);
+                                stored += deflater.deflate(deflated, stored,
+                                        deflated.length - stored);
+                            }
+                            out.writeInt(stored);
+                            out.write(deflated, 0, stored);
+                        }
+                    } catch (IOException e) {
+                        failure = e;
+                    }
+                }
+                free.add(block);
+            }
+            out.close();
+        } catch (InterruptedException e) {
+            failure = new IOException("Interrupted writing route trace.");
+        } catch (IOException e) {
+            if (failure == null)
+                failure = e;
+        } finally {
+            if (deflater != null)
+                deflater.end();
+        }
+    }
+
+    /**
+     * Record a routed request.
+     *
+     * @param request
+     *            Number of the request, from zero.
+     * @param origin
+     *            Index of the node the request started at.
+     * @param target
+     *            Index of the node the request was routed towards.
+     * @param success
+     *            Whether the request reached its target.
+     * @param backtracking
+     *            Hops travelled beyond the final path. A failed request has
+     *            no final path, so this is every hop it travelled.
+     * @param folds
+     *            Path folding operations.
+     * @param hops
+     *            Index of every node the request arrived at in order.
+     * @throws IOException
+     *             Error writing an earlier block.
+     */
+    public void record(int request, int origin, int target, boolean success,
+            int backtracking, int folds, IntArrayList hops) throws IOException {
+        recordLength = 0;
+        // Each field is at most five bytes.
+        ensure(5 * (7 + hops.size()));
+        put(request);
+        put(origin);
+        put(target);
+        put(success ? 1 : 0);
+        put(backtracking);
+        put(folds);
+        put(hops.size());
+        for (int i = 0; i < hops.size(); i++)
+            put(hops.get(i));
+
+        int length = recordLength;
+        while ((length & ~0x7F) != 0) {
+            putBlock((byte) ((length & 0x7F) | 0x80));
+            length >>>= 7;
+        }
+        putBlock((byte) length);
+        for (int written = 0; written < recordLength;) {
+            if (current.length == BLOCK)
+                handOff(current);
+            final int bytes = Math.min(recordLength - written, BLOCK
+                    - current.length);
+            System.arraycopy(record, written, current.data, current.length,
+                    bytes);
+            current.length += bytes;
+            written += bytes;
+        }
+    }
+
+    /**
+     * Write the records in the last block, wait for everything to be
+     * written, and close the stream.
+     *
+     * @throws IOException
+     *             Error writing the trace.
+     */
+    public void close() throws IOException {
+        if (current.length > 0)
+            handOff(current);
+        final Block end = new Block();
+        end.length = -1;
+        try {
+            full.put(end);
+            writer.join();
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted closing route trace.");
+        }
+        if (failure != null)
+            throw failure;
+    }
+
+    private void handOff(Block block) throws IOException {
+        if (failure != null)
+            throw failure;
+        try {
+            full.put(block);
+            current = free.take();
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted writing route trace.");
+        }
+        current.length = 0;
+    }
+
+    private void ensure(int bytes) {
+        if (record.length < bytes)
+            record = new byte[Math.max(bytes, 2 * record.length)];
+    }
+
+    private void put(int value) {
+        while ((value & ~0x7F) != 0) {
+            record[recordLength++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        record[recordLength++] = (byte) value;
+    }
+
+    private void putBlock(byte b) throws IOException {
+        if (current.length == BLOCK)
+            handOff(current);
+        current.data[current.length++] = b;
+    }
+
+    /**
+     * A request read from a trace.
+     */
+    public static final class Entry {
+        public final int request, origin, target;
+        public final boolean success;
+        public final int backtracking, folds;
+        public final int[] hops;
+
+        Entry(int request, int origin, int target, boolean success,
+                int backtracking, int folds, int[] hops) {
+            this.request = request;
+            this.origin = origin;
+            this.target = target;
+            this.success = success;
+            this.backtracking = backtracking;
+            this.folds = folds;
+            this.hops = hops;
+        }
+
+        /**
+         * @return the fields separated by spaces, ending with the hops.
+         */
+        @Override
+        public String toString() {
+            final StringBuilder b = new StringBuilder();
+            b.append(request).append(' ').append(origin).append(' ')
+                    .append(target).append(' ').append(success).append(' ')
+                    .append(backtracking).append(' ').append(folds);
+            for (int hop : hops)
+                b.append(' ').append(hop);
+            return b.toString();
+        }
+    }
+
+    /**
+     * Reads the requests of a trace in order.
+     */
+    public static final class Reader {
+        private final DataInputStream in;
+        private final Inflater inflater;
+        private byte[] stored = new byte[BLOCK];
+        private byte[] block = new byte[BLOCK];
+        private int length = 0, position = 0;
+        /**
+         * Bytes of the current record left to read.
+         */
+        private int remaining;
+
+        /**
+         * @param input
+         *            Stream of a trace.
+         * @throws IOException
+         *             Error reading the header, or it is not a trace.
+         */
+        public Reader(InputStream input) throws IOException {
+            in = new DataInputStream(input);
+            if (in.readInt() != MAGIC)
+                throw new IOException("Not a route trace.");
+            final int version = in.readInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported route trace version "
+                        + version);
+            inflater = (in.readInt() & FLAG_COMPRESSED) != 0 ? new Inflater()
+                    : null;
+        }
+
+        /**
+         * @return the next request, or null at the end of the trace.
+         * @throws IOException
+         *             Error reading, or the trace is corrupt.
+         */
+        public Entry next() throws IOException {
+            if (position == length && !nextBlock())
+                return null;
+
+            // The length is read within a budget of its own five bytes.
+            remaining = 5;
+            remaining = readVarint();
+            final int request = readVarint();
+            final int origin = readVarint();
+            final int target = readVarint();
+            final boolean success = readVarint() != 0;
+            final int backtracking = readVarint();
+            final int folds = readVarint();
+            final int count = readVarint();
+            if (count > remaining)
+                throw new IOException("Corrupt route trace record.");
+            final int[] hops = new int[count];
+            for (int i = 0; i < count; i++)
+                hops[i] = readVarint();
+            if (remaining != 0)
+                throw new IOException("Corrupt route trace record.");
+
+            return new Entry(request, origin, target, success, backtracking,
+                    folds, hops);
+        }
+
+        private int readVarint() throws IOException {
+            int value = 0;
+            for (int shift = 0;; shift += 7) {
+                if (remaining-- <= 0 || shift > 28)
+                    throw new IOException("Corrupt route trace record.");
+                if (position == length && !nextBlock())
+                    throw new EOFException("Route trace ends within a record.");
+                final byte b = block[position++];
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return value;
+            }
+        }
+
+        /**
+         * @return whether there was another block to read.
+         */
+        private boolean nextBlock() throws IOException {
+            final int raw;
+            try {
+                raw = in.readInt();
+            } catch (EOFException e) {
+                return false;
+            }
+            final int size = in.readInt();
+            if (raw < 0 || size < 0 || inflater == null && raw != size)
+                throw new IOException("Corrupt route trace block.");
+            if (block.length < raw)
+                block = new byte[raw];
+            if (inflater == null) {
+                in.readFully(block, 0, raw);
+            } else {
+                if (stored.length < size)
+                    stored = new byte[size];
+                in.readFully(stored, 0, size);
+                inflater.reset();
+                inflater.setInput(stored, 0, size);
+                try {
+                    int inflated = 0;
+                    while (!inflater.finished() && inflated < raw) {
+                        final int bytes = inflater.inflate(block, inflated,
+                                raw - inflated);
+                        if (bytes == 0 && inflater.needsInput())
+                            break;
+                        inflated += bytes;
+                    }
+                    if (inflated != raw || !inflater.finished())
+                        throw new IOException("Corrupt route trace block.");
+                } catch (DataFormatException e) {
+                    throw new IOException("Corrupt route trace block.", e);
+                }
+            }
+            length = raw;
+            position = 0;
+            return raw > 0 || nextBlock();
+        }
+
+        public void close() throws IOException {
+            if (inflater != null)
+                inflater.end();
+            in.close();
+        }
+    }
+
+    /**
+     * Export a route trace as text with a line for each request of
+     * "[request] [origin] [target] [success] [backtracking] [folds] [hops]...".
+     *
+     * @param args
+     *            Route trace file, then the text file to export to.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: RouteTrace [trace file] [text file]");
+            System.exit(1);
+        }
+        final Reader reader = new Reader(new FileInputStream(args[0]));
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(args[1]), "UTF-8"));
+        try {
+            Entry entry;
+            while ((entry = reader.next()) != null) {
+                writer.write(entry.toString());
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+            reader.close();
+        }
+    }
+}
@@ -1,31 +1,176 @@
 package org.freenetproject.routing_simulator.experiment;
 
-import org.freenetproject.routing_simulator.graph.node.SimpleNode;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import org.freenetproject.routing_simulator.util.ArrayUtil;
+import org.freenetproject.routing_simulator.util.Histogram;
 
+/**
+ * Results of routing requests. Path lengths of successful requests and travel
+ * lengths of all requests are kept in histograms, so results can be merged
+ * across threads or runs and percentiles reported. A failed request has no
+ * final path, so only its travel is kept.
+ */
 public class RoutingExp {
-    private int successes = 0, disconnectedFolding = 0,
-            disconnectedBootstrap = 0, totalSuccessPathLength = 0,
-            totalSuccessTravelPathLength = 0, nRequests = 0,
-            foldingOperations = 0, maxHTL = 0;
-    private int[] pathLengthDist;
+    private long disconnectedFolding = 0, disconnectedBootstrap = 0,
+            foldingOperations = 0;
+    private int maxHTL = 0;
+    /**
+     * Requested number of requests; the recorded number can be fewer if the
+     * run stopped early.
+     */
+    private int nRequests = 0;
+    /**
+     * Hops on the final routing path of successful requests.
+     */
+    private Histogram successPaths = new Histogram(1.0);
+    /**
+     * Hops travelled including backtracking, of successful and failed
+     * requests.
+     */
+    private Histogram successTravel = new Histogram(1.0),
+            failTravel = new Histogram(1.0);
+    /**
+     * Hops travelled beyond the final path by successful requests.
+     */
+    private Histogram backtracking = new Histogram(1.0);
+    /**
+     * Request latencies in milliseconds, if they are being modelled.
+     */
+    private Histogram latencies = new Histogram(LATENCY_RESOLUTION);
+
+    /**
+     * Resolution in milliseconds to which latency percentiles are reported.
+     */
+    private static final double LATENCY_RESOLUTION = 1.0;
 
     public RoutingExp(int maxHTL, int nRequests) {
         this.maxHTL = maxHTL;
-        this.pathLengthDist = new int[maxHTL + 1];
         this.nRequests = nRequests;
     }
 
+    /**
+     * Write all accumulated results, so that {@link #read} continues exactly
+     * where this left off.
+     */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(maxHTL);
+        out.writeInt(nRequests);
+        out.writeLong(disconnectedFolding);
+        out.writeLong(disconnectedBootstrap);
+        out.writeLong(foldingOperations);
+        successPaths.write(out);
+        successTravel.write(out);
+        failTravel.write(out);
+        backtracking.write(out);
+        latencies.write(out);
+    }
+
+    /**
+     * Read results written by {@link #write}.
+     */
+    public static RoutingExp read(DataInputStream in) throws IOException {
+        final RoutingExp exp = new RoutingExp(in.readInt(), in.readInt());
+        exp.disconnectedFolding = in.readLong();
+        exp.disconnectedBootstrap = in.readLong();
+        exp.foldingOperations = in.readLong();
+        exp.successPaths = Histogram.read(in);
+        exp.successTravel = Histogram.read(in);
+        exp.failTravel = Histogram.read(in);
+        exp.backtracking = Histogram.read(in);
+        exp.latencies = Histogram.read(in);
+        return exp;
+    }
+
+    /**
+     * Add all results of another experiment to this one, as if its requests
+     * had been recorded here.
+     *
+     * @param other
+     *            Experiment to add.
+     */
+    public void merge(RoutingExp other) {
+        maxHTL = Math.max(maxHTL, other.maxHTL);
+        nRequests += other.nRequests;
+        disconnectedFolding += other.disconnectedFolding;
+        disconnectedBootstrap += other.disconnectedBootstrap;
+        foldingOperations += other.foldingOperations;
+        successPaths.merge(other.successPaths);
+        successTravel.merge(other.successTravel);
+        failTravel.merge(other.failTravel);
+        backtracking.merge(other.backtracking);
+        latencies.merge(other.latencies);
+    }
+
+    /**
+     * Record a routed request.
+     *
+     * @param successful
+     *            Whether the request reached its target.
+     * @param pathLength
+     *            Hops on the final routing path. Unused for failed requests,
+     *            which have none.
+     * @param traveledPathLength
+     *            Hops travelled including backtracking.
+     */
     public void record(boolean successful, int pathLength,
             int traveledPathLength) {
         if (successful) {
-            this.successes++;
-            this.pathLengthDist[pathLength]++;
-            this.totalSuccessPathLength += pathLength;
-            this.totalSuccessTravelPathLength += traveledPathLength;
+            successPaths.record(pathLength);
+            successTravel.record(traveledPathLength);
+            backtracking.record(Math.max(0, traveledPathLength - pathLength));
+        } else {
+            failTravel.record(traveledPathLength);
         }
     }
 
+    /**
+     * Record the time from a request starting to its reply reaching the
+     * origin.
+     *
+     * @param milliseconds
+     *            Latency of the request.
+     */
+    public void recordLatency(double milliseconds) {
+        this.latencies.record(milliseconds);
+    }
+
+    public Histogram getLatencies() {
+        return this.latencies;
+    }
+
+    /**
+     * @return final path lengths of successful requests.
+     */
+    public Histogram getSuccessPaths() {
+        return successPaths;
+    }
+
+    /**
+     * @return hops travelled by successful requests, including backtracking.
+     */
+    public Histogram getSuccessTravel() {
+        return successTravel;
+    }
+
+    /**
+     * @return hops travelled by failed requests, including backtracking.
+     */
+    public Histogram getFailTravel() {
+        return failTravel;
+    }
+
+    /**
+     * @return hops travelled beyond the final path by successful requests.
+     */
+    public Histogram getBacktracking() {
+        return backtracking;
+    }
+
     public void disconnectedFolding(int count) {
         this.disconnectedFolding += count;
     }
@@ -50,16 +195,54 @@ public class RoutingExp {
 
     public String toStringValues() {
         StringBuilder b = new StringBuilder();
-        b.append((double) successes / nRequests * 100).append(' ');
-        b.append((double) totalSuccessTravelPathLength / successes).append(' ');
-        b.append((double) totalSuccessPathLength / successes).append(' ');
+        b.append(successRate()).append(' ');
+        b.append(successTravel.mean()).append(' ');
+        b.append(successPaths.mean()).append(' ');
         b.append(this.stdDevPathLengths()).append(' ');
-        b.append(ArrayUtil.stringArrayPair(this.pathLengthDist)).append(' ');
+        b.append(ArrayUtil.stringArrayPair(pathLengthDist())).append(' ');
         return b.toString();
     }
 
+    /**
+     * Add the results to a record: the columns of {@link #toStringValues}
+     * with the path length distribution as an array indexed by length, then
+     * counts, percentiles and the count in each bin of every histogram.
+     * Latency fields are present but empty unless it was modelled.
+     */
+    public void addResults(Map<String, Object> record) {
+        record.put("routingSuccessRate", successRate());
+        record.put("meanSuccessfulDiscoveryRoutingPathLength",
+                successTravel.mean());
+        record.put("meanSuccessfulRoutingPathLength", successPaths.mean());
+        record.put("successfulRoutingPathLengthStdDev", stdDevPathLengths());
+        record.put("successfulRoutingPathLengthDistribution", pathLengthDist());
+        record.put("requests", getRequests());
+        record.put("maxHTL", maxHTL);
+        record.put("foldingOperations", foldingOperations);
+        record.put("disconnectedFolding", disconnectedFolding);
+        record.put("disconnectedBootstrap", disconnectedBootstrap);
+        record.put("successPaths", results(successPaths));
+        record.put("successTravel", results(successTravel));
+        record.put("backtracking", results(backtracking));
+        record.put("failTravel", results(failTravel));
+        record.put("latencies", results(latencies));
+    }
+
+    private static Map<String, Object> results(Histogram histogram) {
+        final Map<String, Object> record = new LinkedHashMap<String, Object>();
+        record.put("count", histogram.count());
+        record.put("mean", histogram.mean());
+        record.put("p50", histogram.percentile(0.5));
+        record.put("p90", histogram.percentile(0.9));
+        record.put("p99", histogram.percentile(0.99));
+        record.put("binWidth", histogram.getBinWidth());
+        record.put("counts", histogram.getCounts());
+        return record;
+    }
+
     @Override
     public String toString() {
+        final long successes = successPaths.count();
         StringBuilder b = new StringBuilder("Routing simulation results\n\n");
 
         b.append("Disconnected from folding :     \t ").append(
@@ -71,15 +254,14 @@ public class RoutingExp {
         b.append("Path folding operations :         \t").append(
                 this.foldingOperations);
         b.append("\n");
-        b.append("Routing success rate :            \t").append(
-                (double) successes / nRequests * 100);
+        b.append("Routing success rate :            \t").append(successRate());
         b.append("%\n");
-        b.append("Routing requests count :          \t").append(nRequests);
+        b.append("Routing requests count :          \t").append(getRequests());
         b.append("\n");
         b.append("\tSuccessful routing request count : \t").append(successes);
         b.append("\n");
         b.append("\tFailed routing request count :     \t").append(
-                nRequests - successes);
+                failTravel.count());
         b.append("\n");
 
         b.append("\n* Note failed requests are not included in the stats below *\n\n");
@@ -87,10 +269,10 @@ public class RoutingExp {
         b.append("\n");
         b.append(
                 "Mean successful discovery routing path length (back-tracking):    \t")
-                .append((double) totalSuccessTravelPathLength / successes);
+                .append(successTravel.mean());
         b.append("\n");
         b.append("Mean successful routing path length :    \t").append(
-                (double) totalSuccessPathLength / successes);
+                successPaths.mean());
         b.append("\n");
         b.append("Successful routing path length std-dev :    \t").append(
                 this.stdDevPathLengths());
@@ -98,23 +280,90 @@ public class RoutingExp {
         b.append("\n");
 
         b.append("Successful Routing Path Length Distribution (Length:Count)\n");
-        b.append(ArrayUtil.stringArrayPair(this.pathLengthDist));
+        b.append(ArrayUtil.stringArrayPair(pathLengthDist()));
+
+        b.append("\n\nPercentiles (p50 p90 p99)\n");
+        appendPercentiles(b, "Successful routing path length :  ", successPaths);
+        appendPercentiles(b, "Successful discovery path length :", successTravel);
+        appendPercentiles(b, "Successful backtracking hops :    ", backtracking);
+        appendPercentiles(b, "Failed discovery path length :    ", failTravel);
+
+        if (latencies.count() > 0) {
+            b.append("\n\n* Latency includes failed requests *\n\n");
+            b.append("Mean request latency (ms) :       \t").append(
+                    latencies.mean());
+            b.append("\n");
+            b.append("Request latency p50 (ms) :        \t").append(
+                    latencies.percentile(0.5));
+            b.append("\n");
+            b.append("Request latency p90 (ms) :        \t").append(
+                    latencies.percentile(0.9));
+            b.append("\n");
+            b.append("Request latency p99 (ms) :        \t").append(
+                    latencies.percentile(0.99));
+            b.append("\n");
+        }
 
         return b.toString();
     }
-    
+
+    private static void appendPercentiles(StringBuilder b, String label,
+            Histogram histogram) {
+        b.append(label).append('\t').append(histogram.percentile(0.5))
+                .append(' ').append(histogram.percentile(0.9)).append(' ')
+                .append(histogram.percentile(0.99)).append('\n');
+    }
+
+    /**
+     * @return successful requests by path length, for every length up to at
+     *         least the maximum HTL.
+     */
+    private int[] pathLengthDist() {
+        final int[] dist = new int[Math.max(maxHTL + 1, successPaths.bins())];
+        for (int length = 0; length < dist.length; length++)
+            dist[length] = (int) successPaths.getCount(length);
+        return dist;
+    }
+
+    private double successRate() {
+        return (double) successPaths.count() / getRequests() * 100;
+    }
+
+    /**
+     * @return the number of requests recorded.
+     */
+    public int getRequests() {
+        return (int) (successPaths.count() + failTravel.count());
+    }
+
+    /**
+     * @return half the width, in percentage points, of the 95% Wilson score
+     *         interval of the success rate. It is positive even when all or no
+     *         requests have succeeded.
+     */
+    public double successHalfWidth() {
+        final int requests = getRequests();
+        if (requests == 0)
+            return 100.0;
+        final double z = 1.96;
+        final double n = requests;
+        final double p = successPaths.count() / n;
+        return 100.0 * z / (1 + z * z / n)
+                * Math.sqrt(p * (1 - p) / n + z * z / (4 * n * n));
+    }
+
     public double stdDevPathLengths() {
         long sumLengths = 0;
         long sumSquareLengths = 0;
         long n = 0;
-        
-        for (int length = 0; length < this.pathLengthDist.length; length++) {
-            int count = this.pathLengthDist[length];
+
+        for (int length = 0; length < successPaths.bins(); length++) {
+            long count = successPaths.getCount(length);
             n += count;
             sumLengths += (length * count);
-            sumSquareLengths += (length * length) * count;
+            sumSquareLengths += ((long) length * length) * count;
         }
-        
+
         if (n == 0)
             return 0;
 
@@ -0,0 +1,164 @@
+package org.freenetproject.routing_simulator.experiment;
+
+import org.freenetproject.routing_simulator.graph.Graph;
+import org.freenetproject.routing_simulator.graph.node.SimpleNode;
+import org.freenetproject.routing_simulator.graph.store.KeyStore;
+
+/**
+ * Results of an insert and fetch workload.
+ */
+public class StoreExp {
+    private long inserts = 0, insertsStored = 0, insertsUnstored = 0;
+    private long fetches = 0, storeHits = 0, cacheHits = 0, localHits = 0;
+    private long totalHitHops = 0, totalHitTravel = 0;
+    private final long[] hopDist;
+
+    private double storeUtilisation = Double.NaN,
+            cacheUtilisation = Double.NaN, nodesStoring = Double.NaN;
+
+    public StoreExp(int maxHTL) {
+        this.hopDist = new long[maxHTL + 1];
+    }
+
+    /**
+     * @param stored
+     *            Number of nodes which stored the key.
+     */
+    public void recordInsert(int stored) {
+        inserts++;
+        insertsStored += stored;
+        if (stored == 0)
+            insertsUnstored++;
+    }
+
+    /**
+     * @param success
+     *            Whether the key was found.
+     * @param fromStore
+     *            Whether a found key was in a store rather than a cache.
+     * @param pathLength
+     *            Number of nodes on the routing path, including the origin.
+     * @param travelLength
+     *            Total hops including backtracking.
+     */
+    public void recordFetch(boolean success, boolean fromStore,
+            int pathLength, int travelLength) {
+        fetches++;
+        if (!success)
+            return;
+        if (fromStore)
+            storeHits++;
+        else
+            cacheHits++;
+        final int hops = pathLength - 1;
+        if (hops == 0)
+            localHits++;
+        hopDist[hops]++;
+        totalHitHops += hops;
+        totalHitTravel += travelLength;
+    }
+
+    /**
+     * Record how full the stores and caches of the graph's nodes are.
+     */
+    public void recordUtilisation(Graph graph) {
+        double store = 0, cache = 0;
+        int storing = 0;
+        for (int i = 0; i < graph.size(); i++) {
+            final SimpleNode node = graph.getNode(i);
+            store += fill(node.getStore());
+            cache += fill(node.getCache());
+            if (node.getStore().size() > 0)
+                storing++;
+        }
+        storeUtilisation = store / graph.size();
+        cacheUtilisation = cache / graph.size();
+        nodesStoring = (double) storing / graph.size();
+    }
+
+    private static double fill(KeyStore store) {
+        return (double) store.size() / store.capacity();
+    }
+
+    public double hitRate() {
+        return (double) (storeHits + cacheHits) / fetches;
+    }
+
+    public String toStringHeaders() {
+        StringBuilder b = new StringBuilder();
+        b.append("inserts ");
+        b.append("meanNodesStoring ");
+        b.append("fetches ");
+        b.append("hitRate ");
+        b.append("storeHitRate ");
+        b.append("cacheHitRate ");
+        b.append("meanFetchHops ");
+        b.append("meanFetchTravel ");
+        b.append("storeUtilisation ");
+        b.append("cacheUtilisation ");
+        return b.toString();
+    }
+
+    public String toStringValues() {
+        final long hits = storeHits + cacheHits;
+        StringBuilder b = new StringBuilder();
+        b.append(inserts).append(' ');
+        b.append((double) insertsStored / inserts).append(' ');
+        b.append(fetches).append(' ');
+        b.append(hitRate() * 100).append(' ');
+        b.append((double) storeHits / fetches * 100).append(' ');
+        b.append((double) cacheHits / fetches * 100).append(' ');
+        b.append((double) totalHitHops / hits).append(' ');
+        b.append((double) totalHitTravel / hits).append(' ');
+        b.append(storeUtilisation * 100).append(' ');
+        b.append(cacheUtilisation * 100).append(' ');
+        return b.toString();
+    }
+
+    @Override
+    public String toString() {
+        final long hits = storeHits + cacheHits;
+        StringBuilder b = new StringBuilder("Datastore simulation results\n\n");
+        b.append("Inserts :                         \t").append(inserts);
+        b.append("\n");
+        b.append("\tMean nodes storing each key :  \t").append(
+                (double) insertsStored / inserts);
+        b.append("\n");
+        b.append("\tInserts not stored anywhere :  \t").append(
+                insertsUnstored);
+        b.append("\n");
+        b.append("Fetches :                         \t").append(fetches);
+        b.append("\n");
+        b.append("Hit rate :                        \t").append(
+                hitRate() * 100);
+        b.append("%\n");
+        b.append("\tFound in a store :             \t").append(
+                (double) storeHits / fetches * 100);
+        b.append("%\n");
+        b.append("\tFound in a cache :             \t").append(
+                (double) cacheHits / fetches * 100);
+        b.append("%\n");
+        b.append("\tFound at the origin :          \t").append(
+                (double) localHits / fetches * 100);
+        b.append("%\n");
+        b.append("Mean hops of found fetches :      \t").append(
+                (double) totalHitHops / hits);
+        b.append("\n");
+        b.append("Mean travel of found fetches :    \t").append(
+                (double) totalHitTravel / hits);
+        b.append("\n");
+        b.append("Store utilisation :               \t").append(
+                storeUtilisation * 100);
+        b.append("%\n");
+        b.append("Cache utilisation :               \t").append(
+                cacheUtilisation * 100);
+        b.append("%\n");
+        b.append("Nodes with a non-empty store :    \t").append(
+                nodesStoring * 100);
+        b.append("%\n");
+        b.append("\nFetch hop distribution\n");
+        for (int i = 0; i < hopDist.length; i++)
+            b.append(i).append('\t').append(hopDist[i]).append('\n');
+        return b.toString();
+    }
+}
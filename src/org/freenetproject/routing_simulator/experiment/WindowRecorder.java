@@ -0,0 +1,281 @@
+package org.freenetproject.routing_simulator.experiment;
+
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.freenetproject.routing_simulator.graph.Graph;
+import org.freenetproject.routing_simulator.graph.node.SimpleNode;
+import org.freenetproject.routing_simulator.util.Histogram;
+
+/**
+ * Writes routing statistics for every window of requests as a row of CSV, so
+ * that the progress of a long run, such as path folding converging, can be
+ * followed. Only the current window is held in memory, and each row is
+ * flushed as it is written. Rows can instead be written as records of a
+ * {@link ResultsWriter}, along with the configuration of the run and the
+ * path length distribution of the window. In a window without successful
+ * requests the mean lengths are 0 and the percentiles -1.
+ */
+public class WindowRecorder {
+    private static final String HEADER = "requests,successRate,"
+            + "meanPathLength,pathLengthP50,pathLengthP90,pathLengthP99,"
+            + "meanTravelLength,foldingOperations,disconnectedFolding,"
+            + "disconnectedBootstrap";
+    private static final String GRAPH_HEADER = ",meanDegree,minDegree,maxDegree,"
+            + "degreeStddev,meanLinkLength";
+
+    private final int window;
+    private final int maxHTL;
+    /**
+     * Stream of CSV rows, or null if writing records.
+     */
+    private final Writer output;
+    /**
+     * Records to write, or null if writing CSV rows.
+     */
+    private final ResultsWriter results;
+    private final Map<String, Object> config;
+    /**
+     * Graph to write statistics of, or null to not write them.
+     */
+    private final Graph graph;
+
+    private long requests = 0;
+    private int successes = 0, windowRequests = 0;
+    private long totalTravelLength = 0;
+    private long foldingOperations = 0;
+    private int disconnectedFolding = 0, disconnectedBootstrap = 0;
+    /**
+     * Path lengths of successful requests in the window.
+     */
+    private Histogram pathLengths = new Histogram(1);
+
+    /**
+     * @param window
+     *            Number of requests in each row.
+     * @param maxHTL
+     *            Maximum path length.
+     * @param output
+     *            Stream to write rows to.
+     * @param graph
+     *            Graph to add degree and link length statistics of to each
+     *            row, or null to not add them. These take time linear in the
+     *            number of edges.
+     * @param header
+     *            Whether to write the header, which is not wanted when
+     *            appending to earlier rows.
+     */
+    public WindowRecorder(int window, int maxHTL, OutputStream output,
+            Graph graph, boolean header) throws IOException {
+        if (window < 1)
+            throw new IllegalArgumentException("Window must be at least 1.");
+        this.window = window;
+        this.maxHTL = maxHTL;
+        this.graph = graph;
+        this.output = new BufferedWriter(new OutputStreamWriter(output,
+                "UTF-8"));
+        this.results = null;
+        this.config = null;
+        if (header) {
+            this.output.write(HEADER);
+            if (graph != null)
+                this.output.write(GRAPH_HEADER);
+            this.output.write('\n');
+        }
+    }
+
+    /**
+     * @param window
+     *            Number of requests in each record.
+     * @param maxHTL
+     *            Maximum path length.
+     * @param results
+     *            Writer to write a record to for each window.
+     * @param config
+     *            Configuration of the run to include in each record.
+     * @param graph
+     *            Graph to add degree and link length statistics of to each
+     *            record, or null to not add them.
+     */
+    public WindowRecorder(int window, int maxHTL, ResultsWriter results,
+            Map<String, Object> config, Graph graph) {
+        if (window < 1)
+            throw new IllegalArgumentException("Window must be at least 1.");
+        this.window = window;
+        this.maxHTL = maxHTL;
+        this.graph = graph;
+        this.output = null;
+        this.results = results;
+        this.config = config;
+    }
+
+    /**
+     * Record the result of a request.
+     * 
+     * @param success
+     *            Whether the request reached its target.
+     * @param pathLength
+     *            Length of the routing path.
+     * @param travelLength
+     *            Hops taken including backtracking.
+     * @param foldingOperations
+     *            Path folding operations caused by the request.
+     * @param disconnected
+     *            Nodes disconnected by its path folding.
+     */
+    public void record(boolean success, int pathLength, int travelLength,
+            int foldingOperations, int disconnected) {
+        windowRequests++;
+        if (success) {
+            successes++;
+            totalTravelLength += travelLength;
+            pathLengths.record(pathLength);
+        }
+        this.foldingOperations += foldingOperations;
+        this.disconnectedFolding += disconnected;
+    }
+
+    /**
+     * Record a node disconnected by bootstrapping.
+     */
+    public void disconnectBootstrap() {
+        disconnectedBootstrap++;
+    }
+
+    /**
+     * Finish recording a request, writing a row if it completes a window.
+     */
+    public void endRequest() throws IOException {
+        requests++;
+        if (windowRequests == window)
+            writeWindow();
+    }
+
+    /**
+     * Write a row for any remaining requests and flush.
+     */
+    public void finish() throws IOException {
+        if (windowRequests > 0)
+            writeWindow();
+        if (output != null)
+            output.flush();
+    }
+
+    /**
+     * Write the counts of the current window, so that a resumed run can
+     * continue it with {@link #readState}.
+     */
+    public void writeState(DataOutputStream out) throws IOException {
+        out.writeLong(requests);
+        out.writeInt(successes);
+        out.writeInt(windowRequests);
+        out.writeLong(totalTravelLength);
+        out.writeLong(foldingOperations);
+        out.writeInt(disconnectedFolding);
+        out.writeInt(disconnectedBootstrap);
+        pathLengths.write(out);
+    }
+
+    /**
+     * Continue the window written by {@link #writeState}.
+     */
+    public void readState(DataInputStream in) throws IOException {
+        requests = in.readLong();
+        successes = in.readInt();
+        windowRequests = in.readInt();
+        totalTravelLength = in.readLong();
+        foldingOperations = in.readLong();
+        disconnectedFolding = in.readInt();
+        disconnectedBootstrap = in.readInt();
+        pathLengths = Histogram.read(in);
+        if (pathLengths.bins() > maxHTL + 1)
+            throw new IOException("Window was written with a larger HTL.");
+    }
+
+    private void writeWindow() throws IOException {
+        final Map<String, Object> row = new LinkedHashMap<String, Object>();
+        row.put("requests", requests);
+        row.put("successRate", (double) successes / windowRequests * 100);
+        row.put("meanPathLength", successes == 0 ? 0.0 : pathLengths.mean());
+        row.put("pathLengthP50", percentile(0.5));
+        row.put("pathLengthP90", percentile(0.9));
+        row.put("pathLengthP99", percentile(0.99));
+        row.put("meanTravelLength", successes == 0 ? 0.0
+                : (double) totalTravelLength / successes);
+        row.put("foldingOperations", foldingOperations);
+        row.put("disconnectedFolding", disconnectedFolding);
+        row.put("disconnectedBootstrap", disconnectedBootstrap);
+        if (graph != null)
+            addGraphStats(row);
+
+        if (results != null) {
+            final long[] distribution = new long[maxHTL + 1];
+            for (int i = 0; i < distribution.length; i++)
+                distribution[i] = pathLengths.getCount(i);
+            row.put("pathLengthDistribution", distribution);
+            final Map<String, Object> record = new LinkedHashMap<String, Object>();
+            record.put("config", config);
+            record.put("window", row);
+            results.write(record);
+        } else {
+            StringBuilder b = new StringBuilder();
+            for (Object value : row.values()) {
+                if (b.length() > 0)
+                    b.append(',');
+                b.append(value);
+            }
+            b.append('\n');
+            output.write(b.toString());
+            output.flush();
+        }
+
+        successes = windowRequests = 0;
+        totalTravelLength = foldingOperations = 0;
+        disconnectedFolding = disconnectedBootstrap = 0;
+        pathLengths = new Histogram(1);
+    }
+
+    /**
+     * @return the smallest path length at or below which the fraction of
+     *         successful requests in the window lies, or -1 if none succeeded.
+     */
+    private int percentile(double fraction) {
+        if (successes == 0)
+            return -1;
+        return (int) pathLengths.percentile(fraction);
+    }
+
+    /**
+     * Add degree and link length statistics in a single pass over the edges.
+     */
+    private void addGraphStats(Map<String, Object> row) {
+        long degrees = 0, squares = 0;
+        int min = Integer.MAX_VALUE, max = 0;
+        double totalLength = 0;
+        for (int i = 0; i < graph.size(); i++) {
+            final SimpleNode node = graph.getNode(i);
+            final int degree = node.degree();
+            degrees += degree;
+            squares += (long) degree * degree;
+            min = Math.min(min, degree);
+            max = Math.max(max, degree);
+            for (int j = 0; j < degree; j++)
+                totalLength += node.distanceTo(node.getConnections().get(j));
+        }
+        final double mean = (double) degrees / graph.size();
+        row.put("meanDegree", mean);
+        row.put("minDegree", min);
+        row.put("maxDegree", max);
+        row.put("degreeStddev", Math.sqrt(Math.max(0.0, (double) squares
+                / graph.size() - mean * mean)));
+        row.put("meanLinkLength", degrees == 0 ? 0.0 : totalLength
+                / degrees);
+    }
+}
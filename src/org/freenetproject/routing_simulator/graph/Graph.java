@@ -2,13 +2,17 @@ package org.freenetproject.routing_simulator.graph;
 
 import org.apache.commons.math3.random.MersenneTwister;
 import org.apache.commons.math3.random.RandomGenerator;
-import org.apache.commons.math3.util.Pair;
+import org.freenetproject.routing_simulator.graph.churn.OnlineSet;
 import org.freenetproject.routing_simulator.graph.degree.DegreeSource;
 import org.freenetproject.routing_simulator.graph.degree.PoissonDegreeSource;
 import org.freenetproject.routing_simulator.graph.linklength.KleinbergLinkSource;
 import org.freenetproject.routing_simulator.graph.linklength.LinkLengthSource;
 import org.freenetproject.routing_simulator.graph.node.SimpleNode;
+import org.freenetproject.routing_simulator.util.LogHistogram;
+import org.freenetproject.routing_simulator.util.jfr.BootstrapEvent;
+import org.freenetproject.routing_simulator.util.jfr.GraphStatsEvent;
 import org.freenetproject.routing_simulator.util.logging.SimLogger;
+import org.freenetproject.routing_simulator.util.metrics.Metrics;
 import org.gephi.data.attributes.api.AttributeController;
 import org.gephi.data.attributes.api.AttributeModel;
 import org.gephi.graph.api.DirectedGraph;
@@ -29,12 +33,15 @@ import java.io.DataOutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 
 /**
@@ -57,13 +64,13 @@ public class Graph {
     private double avgPathLength = -1;
 
     /**
-     * Private constructor; call one of the generator functions instead.
+     * Call one of the generator functions or a {@link GraphBuilder} instead.
      * 
      * @param nodes
      *            The nodes which make up the network.
      * @see
      */
-    private Graph(ArrayList<SimpleNode> nodes) {
+    Graph(ArrayList<SimpleNode> nodes) {
         this.nodes = nodes;
     }
 
@@ -105,61 +112,73 @@ public class Graph {
      */
     public static Graph connectSandberg(ArrayList<SimpleNode> nodes,
             int shortcuts, LinkLengthSource linkLengthSource) {
-        Graph g = new Graph(nodes);
+        final GraphBuilder builder = new GraphBuilder(nodes, nodes.size()
+                * (shortcuts + 1));
 
         // Base graph of lattice edges: Edge from X to X - 1 mod N for all nodes
         // 0 to N - 1.
-        g.addLatticeLinks(true);
-
-        // Shortcuts: Edges from each node to an endpoint.
-        for (SimpleNode origin : g.nodes) {
-            SimpleNode endpoint;
-            // -1 to account for the single lattice edge.
-            while (origin.degree() - 1 < shortcuts) {
+        builder.addLatticeLinks(true);
+
+        // Shortcuts: Edges from each node to an endpoint. Only the origin's
+        // own edges are checked for duplicates, so track them here.
+        final SimpleNode[] connected = new SimpleNode[shortcuts + 1];
+        for (int i = 0; i < nodes.size(); i++) {
+            final SimpleNode origin = nodes.get(i);
+            connected[0] = nodes.get((i + nodes.size() - 1) % nodes.size());
+            // Starts at 1 to account for the single lattice edge.
+            for (int degree = 1; degree <= shortcuts; degree++) {
+                SimpleNode endpoint;
                 do {
                     endpoint = linkLengthSource.getPeer(origin);
-                } while (origin.isConnected(endpoint));
-                origin.connectOutgoing(endpoint);
+                } while (contains(connected, degree, endpoint));
+                connected[degree] = endpoint;
+                builder.addOutgoing(i, endpoint.index);
             }
         }
 
-        return g;
+        return builder.build(false);
+    }
+
+    private static boolean contains(SimpleNode[] array, int length,
+            SimpleNode node) {
+        for (int i = 0; i < length; i++) {
+            if (array[i] == node)
+                return true;
+        }
+        return false;
     }
 
     /**
-     * Adds lattice links. Should be the first thing to add edges to a network.
-     * 
-     * Connects node X to X - 1 mod N for all X, where X is node index and N is
-     * the network size.
+     * Gives the node in question random connections until it meets its desired
+     * degree. Does not add disconnected peers.
      * 
-     * @param directed
-     *            If true, the lattice links will be directed. If false,
-     *            undirected.
+     * @param node
+     *            node to add connections to.
+     * @param random
+     *            source of entropy for selecting which nodes to connect to.
      */
-    private void addLatticeLinks(final boolean directed) {
-        assert nEdges() == 0;
-
-        for (int i = 0; i < size(); i++) {
-            /*
-             * From X to X - 1, wrapped to the network size. Java implements
-             * modulus such that it produces -1 for -1 % N, not N - 1 as it does
-             * in the definition of the lattice links. Going from X + 1 to X is
-             * equivalent.
-             */
-            final SimpleNode from = getNode((i + 1) % size());
-            final SimpleNode to = getNode(i);
-            if (from.isConnected(to) || to.isConnected(from)) {
-                throw new IllegalStateException("Connection already existed.");
-            }
-
-            if (directed)
-                from.connectOutgoing(to);
-            else
-                from.connect(to);
-        }
+    public List<SimpleNode> bootstrap(final SimpleNode node,
+            final RandomGenerator random) {
+        return bootstrap(node, random, true);
+    }
 
-        // There is an edge between every node in a circle.
-        assert nEdges() == size();
+    /**
+     * Gives the node in question random connections until it meets its desired
+     * degree. Does not add disconnected peers.
+     * 
+     * @param node
+     *            node to add connections to.
+     * @param random
+     *            source of entropy for selecting which nodes to connect to.
+     * @param invariantEdges
+     *            If true, every peer drops a random connection to make room so
+     *            that the total connection count remains the same. If false,
+     *            peers below their desired degree accept the connection
+     *            without dropping one, as when a node joins the network.
+     */
+    public List<SimpleNode> bootstrap(final SimpleNode node,
+            final RandomGenerator random, final boolean invariantEdges) {
+        return bootstrap(node, random, invariantEdges, null);
     }
 
     /**
@@ -170,25 +189,46 @@ public class Graph {
      *            node to add connections to.
      * @param random
      *            source of entropy for selecting which nodes to connect to.
+     * @param invariantEdges
+     *            If true, every peer drops a random connection to make room so
+     *            that the total connection count remains the same. If false,
+     *            peers below their desired degree accept the connection
+     *            without dropping one, as when a node joins the network.
+     * @param candidates
+     *            Nodes to draw peers from, or null to draw from the whole
+     *            graph. Under churn, drawing only online nodes avoids retries
+     *            on offline ones, which can be most of the graph.
      */
     public List<SimpleNode> bootstrap(final SimpleNode node,
-            final RandomGenerator random) {
+            final RandomGenerator random, final boolean invariantEdges,
+            final OnlineSet candidates) {
+        final BootstrapEvent event = new BootstrapEvent();
+        event.begin();
         List<SimpleNode> disconnectedNodes = new ArrayList<SimpleNode>();
         SimpleNode peer;
+        int retries = 0;
         do {
-            peer = getNode(random.nextInt(size()));
+            peer = getNode(candidates == null ? random.nextInt(size())
+                    : candidates.random(random));
 
             /*
              * Do not connect to self - reference comparison should be
              * sufficient, or make a duplicate connection. Avoid connecting to
              * disconnected nodes lest it fragment the network.
              */
-            if (node == peer || node.isConnected(peer) || peer.degree() == 0)
+            if (node == peer || node.isConnected(peer) || peer.degree() == 0) {
+                retries++;
                 continue;
+            }
 
             // Reference comparison should be sufficient.
             assert !node.equals(peer);
 
+            if (!invariantEdges && !peer.atDegree()) {
+                peer.connect(node);
+                continue;
+            }
+
             /*
              * If the peer is already at its degree, connect only if not
              * rejected. Drop a random connection to keep the connection count
@@ -199,9 +239,52 @@ public class Graph {
                 SimpleNode disconnected = peer.swapConnections(node);
                 if (disconnected.degree() == 0)
                     disconnectedNodes.add(disconnected);
+            } else {
+                retries++;
             }
         } while (!node.atDegree());
 
+        Metrics.BOOTSTRAP_RETRIES.add(retries);
+        if (event.shouldCommit()) {
+            event.node = node.index;
+            event.degree = node.degree();
+            event.retries = retries;
+            event.disconnected = disconnectedNodes.size();
+            event.commit();
+        }
+
+        return disconnectedNodes;
+    }
+
+    /**
+     * Removes every connection to and from the node in question, as happens
+     * when it leaves the network. Only its peers are visited, so the cost does
+     * not depend on the size of the graph.
+     * <p>
+     * Nodes do not track incoming edges, so a directed edge to this node from
+     * a node it has no edge to remains. Finding those would mean visiting
+     * every node on each leave. Undirected graphs have no such edges, as
+     * every edge to a node is paired with one from it; only directed lattices,
+     * SANDBERG_DIRECTED folding and loaded directed graphs make them.
+     *
+     * @param node
+     *            node which is leaving the network.
+     * @return peers which were left without any connections.
+     */
+    public List<SimpleNode> leave(final SimpleNode node) {
+        List<SimpleNode> disconnectedNodes = new ArrayList<SimpleNode>();
+        // Copy: disconnecting modifies the connection list.
+        for (SimpleNode peer : new ArrayList<SimpleNode>(
+                node.getConnections())) {
+            if (peer.isConnected(node))
+                node.disconnect(peer);
+            else
+                node.disconnectOutgoing(peer);
+            if (peer.degree() == 0)
+                disconnectedNodes.add(peer);
+        }
+
+        assert node.degree() == 0;
         return disconnectedNodes;
     }
 
@@ -219,19 +302,16 @@ public class Graph {
      */
     public static Graph connectSuperNode(ArrayList<SimpleNode> nodes,
             boolean lattice) {
-        Graph graph = new Graph(nodes);
         assert nodes.size() > 1;
+        final GraphBuilder builder = new GraphBuilder(nodes, 4 * nodes.size());
         if (lattice)
-            graph.addLatticeLinks(false);
+            builder.addLatticeLinks(false);
 
-        final SimpleNode superNode = graph.getNode(0);
-        for (int i = 1; i < graph.size(); i++) {
-            SimpleNode peer = graph.getNode(i);
-            if (!superNode.isConnected(peer))
-                superNode.connect(peer);
-        }
+        // Lattice edges to the super node are added again; skip them.
+        for (int i = 1; i < nodes.size(); i++)
+            builder.add(0, i);
 
-        return graph;
+        return builder.build(true);
     }
 
     /**
@@ -278,10 +358,10 @@ public class Graph {
     public static Graph connectGraph(ArrayList<SimpleNode> nodes,
             RandomGenerator rand, LinkLengthSource linkLengthSource,
             boolean lattice) {
-        Graph graph = new Graph(nodes);
+        final GraphBuilder builder = new GraphBuilder(nodes, 2 * nodes.size());
         if (lattice)
-            graph.addLatticeLinks(false);
-        return Graph.connectGraph(graph, rand, linkLengthSource);
+            builder.addLatticeLinks(false);
+        return Graph.connectGraph(builder.build(false), rand, linkLengthSource);
     }
 
     /**
@@ -442,7 +522,8 @@ public class Graph {
         // Number of nodes.
         final List<Node> topNodes = top.getAllNodes();
         final int networkSize = topNodes.size();
-        final Graph graph = new Graph(new ArrayList<SimpleNode>(networkSize));
+        final ArrayList<SimpleNode> nodes = new ArrayList<SimpleNode>(
+                networkSize);
 
         int largestDegree = 0;
         for (Node n : topNodes) {
@@ -452,23 +533,26 @@ public class Graph {
             }
         }
 
-        // Nodes.
+        // Nodes, and the index of each so that peers need not be searched for.
+        final IdentityHashMap<Node, Integer> indexes = new IdentityHashMap<Node, Integer>(
+                networkSize);
         for (int i = 0; i < networkSize; i++) {
             Node n = topNodes.get(i);
-            graph.nodes.add(new SimpleNode(n.getLocation(), random,
-                    largestDegree, i));
+            nodes.add(new SimpleNode(n.getLocation(), random, largestDegree, i));
+            if (!indexes.containsKey(n))
+                indexes.put(n, i);
         }
 
         // Connections
+        final GraphBuilder builder = new GraphBuilder(nodes);
         for (int i = 0; i < networkSize; i++) {
             Node n = topNodes.get(i);
             for (Node peer : n.getDirectNeighbors()) {
-                int peerIndex = topNodes.indexOf(peer);
-                graph.nodes.get(i).connectOutgoing(graph.nodes.get(peerIndex));
+                builder.addOutgoing(i, indexes.get(peer));
             }
         }
 
-        return graph;
+        return builder.build(false);
     }
 
     /**
@@ -486,29 +570,128 @@ public class Graph {
         try {
             // Number of nodes.
             final int networkSize = input.readInt();
-            final Graph graph = new Graph(
-                    new ArrayList<SimpleNode>(networkSize));
+            final ArrayList<SimpleNode> nodes = new ArrayList<SimpleNode>(
+                    networkSize);
 
             // Nodes.
             for (int i = 0; i < networkSize; i++) {
-                graph.nodes.add(new SimpleNode(input, i, random));
+                nodes.add(new SimpleNode(input, i, random));
             }
 
             final int writtenConnections = input.readInt();
             LOGGER.info("Reading " + writtenConnections + " connections.");
             // Each connection consists of two indexes in a pair.
+            final GraphBuilder builder = new GraphBuilder(nodes,
+                    writtenConnections);
             for (int i = 0; i < writtenConnections; i++) {
                 final int from = input.readInt();
                 final int to = input.readInt();
-                graph.nodes.get(from).connectOutgoing(graph.nodes.get(to));
+                builder.addOutgoing(from, to);
             }
 
-            return graph;
+            return builder.build(false);
         } catch (IOException e) {
             throw new Exception("Could not read graph from input stream:");
         }
     }
 
+    /**
+     * Write the complete routing state of the graph: node locations and
+     * desired degrees, then every node's connections in order, LRU order,
+     * counters and routing cache. Unlike {@link #write} this is enough to
+     * continue a simulation identically. The shared random generator of the
+     * nodes is not included.
+     * 
+     * @param output
+     *            stream to write the state to.
+     */
+    public void writeCheckpoint(DataOutputStream output) throws IOException {
+        output.writeInt(nodes.size());
+        for (SimpleNode node : nodes)
+            node.write(output);
+        for (SimpleNode node : nodes)
+            node.writeState(output);
+    }
+
+    /**
+     * Read a graph written by {@link #writeCheckpoint}.
+     * 
+     * @param input
+     *            stream to read the state from.
+     * @param random
+     *            random generator shared by the nodes, in the state it was in
+     *            when the checkpoint was written.
+     */
+    public static Graph readCheckpoint(DataInputStream input,
+            RandomGenerator random) throws IOException {
+        final int networkSize = input.readInt();
+        final Graph graph = new Graph(new ArrayList<SimpleNode>(networkSize));
+        for (int i = 0; i < networkSize; i++)
+            graph.nodes.add(new SimpleNode(input, i, random));
+        for (SimpleNode node : graph.nodes)
+            node.readState(input, graph.nodes);
+        return graph;
+    }
+
+    /**
+     * Write the graph as {@link #writeCheckpoint} does, preceded by the random
+     * generator shared by the nodes in its current state.
+     * 
+     * @param output
+     *            stream to write to.
+     */
+    public void writeSnapshot(DataOutputStream output) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream objects = new ObjectOutputStream(bytes);
+        objects.writeObject(nodes.get(0).getRandom());
+        objects.close();
+        output.writeInt(bytes.size());
+        bytes.writeTo(output);
+        writeCheckpoint(output);
+    }
+
+    /**
+     * Read a graph written by {@link #writeSnapshot}. Routing on it gives the
+     * same results as routing on the graph written would have.
+     * 
+     * @param input
+     *            stream to read from.
+     */
+    public static Graph readSnapshot(DataInputStream input)
+            throws IOException {
+        final byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        final RandomGenerator random;
+        final ObjectInputStream objects = new ObjectInputStream(
+                new ByteArrayInputStream(bytes));
+        try {
+            random = (RandomGenerator) objects.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unknown random generator class: "
+                    + e.getMessage());
+        } finally {
+            objects.close();
+        }
+        return readCheckpoint(input, random);
+    }
+
+    /**
+     * Copy the graph with all routing state, and a copy of the random
+     * generator shared by the nodes in its current state. Routing on the copy
+     * gives the same results as routing on this graph would, and leaves this
+     * one unchanged.
+     * 
+     * @return an independent copy of this graph.
+     * @throws IOException
+     *             The random generator could not be copied.
+     */
+    public Graph copy() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        writeSnapshot(new DataOutputStream(bytes));
+        return readSnapshot(new DataInputStream(new ByteArrayInputStream(
+                bytes.toByteArray())));
+    }
+
     /**
      * Get a node by index.
      * 
@@ -580,6 +763,23 @@ public class Graph {
         return b.toString();
     }
 
+    /**
+     * Add the columns of {@link #toStringValues} to a record.
+     */
+    public void addResults(Map<String, Object> record) throws Exception {
+        record.put("size", this.size());
+        record.put("edges", this.nEdges());
+        record.put("minDegree", this.minDegree());
+        record.put("maxDegree", this.maxDegree());
+        record.put("meanDegree", this.getMeanDegree());
+        record.put("degreeStddev", Math.sqrt(degreeVariance()));
+        record.put("networkDiameter", this.getNetworkDiameter());
+        record.put("averagePathLength", this.getAveragePathLength());
+        record.put("meanLocalClusteringCoefficient",
+                this.meanLocalClusterCoeff());
+        record.put("globalClusteringCoefficient", this.globalClusterCoeff());
+    }
+
     /**
      * Edge length distribution. Treats edges as directed.
      * 
@@ -589,19 +789,81 @@ public class Graph {
      */
     public ArrayList<Double> edgeLengths(final boolean excludeLatticeLinks) {
         ArrayList<Double> lengths = new ArrayList<Double>();
+        for (double length : edgeLengthArray(excludeLatticeLinks))
+            lengths.add(length);
+        return lengths;
+    }
+
+    /**
+     * Edge length distribution without boxing. Treats edges as directed.
+     * 
+     * @param excludeLatticeLinks
+     *            If true, links between nodes with adjacent indexes are left
+     *            out.
+     * @return length of each edge.
+     */
+    public double[] edgeLengthArray(final boolean excludeLatticeLinks) {
+        int count = 0;
         for (SimpleNode node : nodes) {
             for (SimpleNode peer : node.getConnections()) {
-                if (excludeLatticeLinks) {
-                    if (node.index == (peer.index + 1) % size()
-                            || peer.index == (node.index + 1) % size())
-                        continue;
-                }
-                lengths.add(node.distanceToLoc(peer.getLocation()));
+                if (!excludeLatticeLinks || !isLatticeLink(node, peer))
+                    count++;
+            }
+        }
+        final double[] lengths = new double[count];
+        int i = 0;
+        for (SimpleNode node : nodes) {
+            for (SimpleNode peer : node.getConnections()) {
+                if (!excludeLatticeLinks || !isLatticeLink(node, peer))
+                    lengths[i++] = node.distanceToLoc(peer.getLocation());
             }
         }
         return lengths;
     }
 
+    /**
+     * Record the length of each edge without storing them. Treats edges as
+     * directed.
+     * 
+     * @param excludeLatticeLinks
+     *            If true, links between nodes with adjacent indexes are left
+     *            out.
+     * @param histogram
+     *            Records each length.
+     */
+    public void edgeLengths(final boolean excludeLatticeLinks,
+            final LogHistogram histogram) {
+        for (SimpleNode node : nodes) {
+            for (SimpleNode peer : node.getConnections()) {
+                if (!excludeLatticeLinks || !isLatticeLink(node, peer))
+                    histogram.record(node.distanceToLoc(peer.getLocation()));
+            }
+        }
+    }
+
+    private boolean isLatticeLink(final SimpleNode node, final SimpleNode peer) {
+        return node.index == (peer.index + 1) % size()
+                || peer.index == (node.index + 1) % size();
+    }
+
+    /**
+     * Randomly permute node locations, leaving the topology unchanged. This
+     * gives a network whose links are unrelated to its locations, as a
+     * darknet has before swapping.
+     * 
+     * @param random
+     *            Source of the permutation.
+     */
+    public void shuffleLocations(final RandomGenerator random) {
+        for (int i = size() - 1; i > 0; i--) {
+            final SimpleNode a = nodes.get(i);
+            final SimpleNode b = nodes.get(random.nextInt(i + 1));
+            final double location = a.getLocation();
+            a.setLocation(b.getLocation());
+            b.setLocation(location);
+        }
+    }
+
     /**
      * Get the number of nodes in this graph.
      * 
@@ -612,6 +874,16 @@ public class Graph {
     }
 
     public void updateGraphStats() throws Exception {
+        // Gephi's models and the System.out swap below are global.
+        synchronized (Graph.class) {
+            final GraphStatsEvent event = new GraphStatsEvent();
+            event.begin();
+            updateGephiStats();
+            commit(event, GraphStatsEvent.GEPHI);
+        }
+    }
+
+    private void updateGephiStats() throws Exception {
         /*
          * Hack to hide system.out prints from Gephi library
          */
@@ -656,31 +928,20 @@ public class Graph {
      * @return Total number of edges
      */
     public int nEdges() {
-        // Indexes in <lesser, greater> order of a connection.
-        HashSet<Pair<Integer, Integer>> connections = new HashSet<Pair<Integer, Integer>>();
-        int undirected = 0;
-
+        /*
+         * Two mutual directed edges are considered one edge. Count each edge
+         * towards a greater index, and each edge towards a lesser index with
+         * no edge back.
+         */
+        int edges = 0;
         for (SimpleNode origin : nodes) {
             for (SimpleNode peer : origin.getConnections()) {
-                /*
-                 * If the set already contained the element the connection is
-                 * two mutual directed edges, which in this case is considered
-                 * one directed edge.
-                 */
-                if (origin.index < peer.index) {
-                    if (!connections.add(new Pair<Integer, Integer>(
-                            origin.index, peer.index)))
-                        undirected++;
-                } else {
-                    if (!connections.add(new Pair<Integer, Integer>(peer.index,
-                            origin.index)))
-                        undirected++;
-                }
+                if (origin.index < peer.index || !peer.isConnected(origin))
+                    edges++;
             }
         }
 
-        // LOGGER.fine("Out of the edges " + undirected + " are undirected.");
-        return connections.size();
+        return edges;
     }
 
     /**
@@ -750,9 +1011,12 @@ public class Graph {
         int n = nodes.size();
         if (n == 0)
             return 0;
+        final GraphStatsEvent event = new GraphStatsEvent();
+        event.begin();
         for (SimpleNode node : nodes) {
             sumCoeff += node.localClusterCoeff();
         }
+        commit(event, GraphStatsEvent.LOCAL_CLUSTERING);
         double mean = sumCoeff / n;
         assert mean >= 0.0 && mean <= 1.0;
         return mean;
@@ -772,19 +1036,30 @@ public class Graph {
      * 
      * @return Global clustering coefficient
      */
-    private double globalClusterCoeff() {
+    public double globalClusterCoeff() {
         int nClosed = 0;
         int nTotal = 0;
 
+        final GraphStatsEvent event = new GraphStatsEvent();
+        event.begin();
         for (SimpleNode n : nodes) {
             int degree = n.degree();
             nClosed += n.closedTriplets();
             nTotal += (degree * (degree - 1)) / 2;
         }
+        commit(event, GraphStatsEvent.GLOBAL_CLUSTERING);
 
         return ((double) (nClosed)) / ((double) (nTotal));
     }
 
+    private void commit(final GraphStatsEvent event, final String phase) {
+        if (event.shouldCommit()) {
+            event.phase = phase;
+            event.nodes = nodes.size();
+            event.commit();
+        }
+    }
+
     private int[] randomWalkDistTest(int nWalks, int hopsPerWalk,
             boolean uniform, RandomGenerator rand) {
         int[] choiceFreq = new int[size()];
@@ -0,0 +1,188 @@
+package org.freenetproject.routing_simulator.graph;
+
+import org.freenetproject.routing_simulator.graph.node.SimpleNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Collects the edges of a graph as pairs of node indexes in primitive arrays,
+ * and connects the nodes all at once when built. Adding an edge does not
+ * check for an existing one; duplicates are found in a single pass over the
+ * edges grouped by origin. Each node ends up with the connections and LRU
+ * order it would have had from connecting the edges one at a time in the
+ * order they were added.
+ */
+public class GraphBuilder {
+    private final ArrayList<SimpleNode> nodes;
+
+    /**
+     * Origin and endpoint indexes of each edge, in the order they were added.
+     */
+    private int[] from, to;
+    private int edges = 0;
+
+    /**
+     * @param nodes
+     *            Unconnected nodes of the graph, by index.
+     */
+    public GraphBuilder(ArrayList<SimpleNode> nodes) {
+        this(nodes, nodes.size());
+    }
+
+    /**
+     * @param nodes
+     *            Unconnected nodes of the graph, by index.
+     * @param expectedEdges
+     *            Number of directed edges to allocate space for initially.
+     */
+    public GraphBuilder(ArrayList<SimpleNode> nodes, int expectedEdges) {
+        this.nodes = nodes;
+        from = new int[Math.max(expectedEdges, 16)];
+        to = new int[from.length];
+    }
+
+    /**
+     * @return Number of nodes in the graph.
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * @return Number of directed edges added, including duplicates.
+     */
+    public int edges() {
+        return edges;
+    }
+
+    /**
+     * Add an edge from one node to another.
+     *
+     * @param origin
+     *            Index of the node the edge is from.
+     * @param endpoint
+     *            Index of the node the edge is to.
+     * @throws IllegalArgumentException
+     *             An index is out of range, or the edge is to its origin.
+     */
+    public void addOutgoing(int origin, int endpoint) {
+        if (origin < 0 || origin >= nodes.size() || endpoint < 0
+                || endpoint >= nodes.size())
+            throw new IllegalArgumentException("No node for edge " + origin
+                    + " -> " + endpoint + " in a graph of " + nodes.size()
+                    + " nodes.");
+        if (origin == endpoint)
+            throw new IllegalArgumentException("Cannot connect to self.");
+
+        if (edges == from.length) {
+            final int length = from.length + (from.length >> 1);
+            from = Arrays.copyOf(from, length);
+            to = Arrays.copyOf(to, length);
+        }
+        from[edges] = origin;
+        to[edges] = endpoint;
+        edges++;
+    }
+
+    /**
+     * Add edges in both directions between two nodes, as
+     * {@link SimpleNode#connect} does.
+     */
+    public void add(int a, int b) {
+        addOutgoing(a, b);
+        addOutgoing(b, a);
+    }
+
+    /**
+     * Add lattice edges from node X to X - 1 mod N for all X, where N is the
+     * network size.
+     *
+     * @param directed
+     *            If true, the edges are directed. If false, undirected.
+     */
+    public void addLatticeLinks(final boolean directed) {
+        for (int i = 0; i < nodes.size(); i++) {
+            // From X + 1 to X is equivalent, and avoids a negative modulus.
+            final int origin = (i + 1) % nodes.size();
+            if (directed)
+                addOutgoing(origin, i);
+            else
+                add(origin, i);
+        }
+    }
+
+    /**
+     * Connect the nodes by the edges added. Duplicates of an edge added
+     * earlier are skipped.
+     *
+     * @return Number of duplicate edges skipped.
+     * @throws IllegalStateException
+     *             A node already has connections.
+     */
+    public int connect() {
+        final int size = nodes.size();
+        for (SimpleNode node : nodes) {
+            if (node.degree() != 0)
+                throw new IllegalStateException("Node " + node.index
+                        + " is already connected.");
+        }
+
+        /*
+         * Counting sort of the endpoints by origin. It is stable, so each
+         * node's endpoints stay in the order they were added.
+         */
+        final int[] start = new int[size + 1];
+        for (int i = 0; i < edges; i++)
+            start[from[i] + 1]++;
+        for (int i = 0; i < size; i++)
+            start[i + 1] += start[i];
+        final int[] next = Arrays.copyOf(start, size);
+        final int[] sorted = new int[edges];
+        for (int i = 0; i < edges; i++)
+            sorted[next[from[i]]++] = to[i];
+
+        /*
+         * An endpoint is a duplicate if it was already seen for the same
+         * origin, which marks it with the origin's index plus one.
+         */
+        final int[] seen = new int[size];
+        SimpleNode[] peers = new SimpleNode[16];
+        int duplicates = 0;
+        for (int origin = 0; origin < size; origin++) {
+            final int degree = start[origin + 1] - start[origin];
+            if (peers.length < degree)
+                peers = new SimpleNode[degree];
+            int distinct = 0;
+            for (int i = start[origin]; i < start[origin + 1]; i++) {
+                if (seen[sorted[i]] == origin + 1) {
+                    duplicates++;
+                    continue;
+                }
+                seen[sorted[i]] = origin + 1;
+                peers[distinct++] = nodes.get(sorted[i]);
+            }
+            nodes.get(origin).initializeConnections(peers, distinct);
+        }
+
+        return duplicates;
+    }
+
+    /**
+     * Connect the nodes by the edges added, and make a graph of them.
+     *
+     * @param allowDuplicates
+     *            If false, an edge added more than once is an error.
+     * @return the connected graph.
+     * @throws IllegalArgumentException
+     *             An edge was added more than once and duplicates are not
+     *             allowed.
+     */
+    public Graph build(boolean allowDuplicates) {
+        final int duplicates = connect();
+        if (!allowDuplicates && duplicates != 0)
+            throw new IllegalArgumentException("Cannot connect: " + duplicates
+                    + " edges were already connected.");
+        return new Graph(nodes);
+    }
+}
@@ -0,0 +1,161 @@
+package org.freenetproject.routing_simulator.graph;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Directory of generated graphs. Each is stored in a file named by the SHA-1
+ * hash of the generation version and a key describing everything the graph
+ * was generated from, so a graph is only loaded by runs which would have
+ * generated the same one. Files are snapshots including the random generator
+ * shared by the nodes, so loading a graph continues exactly as generating it
+ * would have.
+ */
+public class GraphCache {
+    private static final int MAGIC = 0x46524743;
+    private static final int BUFFER = 1 << 16;
+
+    /**
+     * Version of graph generation. Increment it whenever generating with the
+     * same arguments gives a different graph, so that graphs generated by
+     * earlier code are not used.
+     */
+    public static final int GENERATION_VERSION = 1;
+
+    private final File directory;
+
+    /**
+     * @param directory
+     *            Existing directory to keep graphs in.
+     */
+    public GraphCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @param key
+     *            Description of everything the graph is generated from.
+     * @return the file the graph is cached in.
+     */
+    public File file(String key) {
+        return new File(directory, sha1(GENERATION_VERSION + "\n" + key)
+                + ".graph");
+    }
+
+    /**
+     * Load a cached graph.
+     *
+     * @param key
+     *            Description of everything the graph is generated from.
+     * @return the graph, or null if it is not cached.
+     * @throws IOException
+     *             The cached file could not be read or is not for the key.
+     */
+    public Graph load(String key) throws IOException {
+        final File file = file(key);
+        if (!file.isFile())
+            return null;
+        final DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file), BUFFER));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != GENERATION_VERSION
+                    || !in.readUTF().equals(key))
+                throw new IOException(file + " is not a cached graph for "
+                        + key);
+            return Graph.readSnapshot(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Cache a newly generated graph. It is written to a temporary file and
+     * then moved into place, so that other runs never load part of one.
+     *
+     * @param key
+     *            Description of everything the graph is generated from.
+     * @param graph
+     *            The graph, before anything else has changed it.
+     * @throws IOException
+     *             Error writing the file.
+     */
+    public void store(String key, Graph graph) throws IOException {
+        final File file = file(key);
+        final File temporary = File.createTempFile(file.getName(), ".tmp",
+                directory);
+        final DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temporary),
+                        BUFFER));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(GENERATION_VERSION);
+            out.writeUTF(key);
+            graph.writeSnapshot(out);
+        } finally {
+            out.close();
+        }
+        // Another run may have cached the same graph meanwhile.
+        if (!temporary.renameTo(file) && !file.isFile()) {
+            temporary.delete();
+            throw new IOException("Could not move " + temporary + " to "
+                    + file);
+        }
+        temporary.delete();
+    }
+
+    /**
+     * @param file
+     *            File to hash.
+     * @return the hexadecimal SHA-1 hash of the file's contents.
+     * @throws IOException
+     *             Error reading the file.
+     */
+    public static String hash(File file) throws IOException {
+        final MessageDigest digest = sha1();
+        final InputStream in = new FileInputStream(file);
+        try {
+            final byte[] buffer = new byte[BUFFER];
+            int read;
+            while ((read = in.read(buffer)) > 0)
+                digest.update(buffer, 0, read);
+        } finally {
+            in.close();
+        }
+        return hex(digest.digest());
+    }
+
+    private static String sha1(String text) {
+        final MessageDigest digest = sha1();
+        try {
+            return hex(digest.digest(text.getBytes("UTF-8")));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-1.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        final StringBuilder b = new StringBuilder(bytes.length * 2);
+        for (byte value : bytes)
+            b.append(String.format("%02x", value));
+        return b.toString();
+    }
+}
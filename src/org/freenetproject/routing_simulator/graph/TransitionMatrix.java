@@ -0,0 +1,124 @@
+package org.freenetproject.routing_simulator.graph;
+
+import org.freenetproject.routing_simulator.graph.node.SimpleNode;
+
+import java.util.ArrayList;
+
+/**
+ * Sparse random walk transition matrix of a graph in compressed rows of
+ * primitive arrays, for propagating walk probabilities exactly rather than
+ * sampling walks.
+ * <p>
+ * Row i holds the probability of stepping into node i from each node with an
+ * outgoing connection to it, so rows can be computed independently:
+ * probability arrives at i along its incoming connections and from staying in
+ * place. The rows are the transpose of the outgoing connections the sampled
+ * walk follows, so directed graphs are handled as well as undirected ones.
+ * The matrix reflects the graph when it was built. Immutable once built.
+ */
+public class TransitionMatrix {
+    /**
+     * Entries of row i are rowStart[i] up to but not including rowStart[i +
+     * 1].
+     */
+    private final int[] rowStart;
+    /**
+     * Index of the node each entry comes from.
+     */
+    private final int[] columns;
+    /**
+     * Probability of each entry's step.
+     */
+    private final double[] weights;
+    /**
+     * Probability of each node staying in place for a step.
+     */
+    private final double[] stay;
+
+    /**
+     * @param graph
+     *            Graph to walk.
+     * @param uniform
+     *            Whether walks are uniform, or use Metropolis-Hastings
+     *            correction for high-degree bias. A node without connections
+     *            stays in place either way.
+     */
+    public TransitionMatrix(Graph graph, boolean uniform) {
+        final int n = graph.size();
+        rowStart = new int[n + 1];
+        for (int j = 0; j < n; j++) {
+            for (SimpleNode peer : graph.getNode(j).getConnections())
+                rowStart[peer.index + 1]++;
+        }
+        for (int i = 0; i < n; i++)
+            rowStart[i + 1] += rowStart[i];
+        columns = new int[rowStart[n]];
+        weights = new double[rowStart[n]];
+        stay = new double[n];
+
+        // Next free entry of each row.
+        final int[] fill = new int[n];
+        System.arraycopy(rowStart, 0, fill, 0, n);
+        for (int j = 0; j < n; j++) {
+            final SimpleNode node = graph.getNode(j);
+            assert node.index == j;
+            final ArrayList<SimpleNode> connections = node.getConnections();
+            final int degree = connections.size();
+            double leaving = 0;
+            for (SimpleNode peer : connections) {
+                final int entry = fill[peer.index]++;
+                columns[entry] = j;
+                if (uniform)
+                    weights[entry] = 1.0 / degree;
+                else
+                    weights[entry] = Math.min(1.0 / degree,
+                            1.0 / peer.degree());
+                leaving += weights[entry];
+            }
+            if (degree == 0)
+                stay[j] = 1.0;
+            else if (!uniform)
+                stay[j] = Math.max(1.0 - leaving, 0.0);
+        }
+    }
+
+    /**
+     * @return number of nodes.
+     */
+    public int size() {
+        return stay.length;
+    }
+
+    /**
+     * Take one step of the walk for a block of distributions, for rows first
+     * up to but not including last. Distributions are interleaved: element
+     * node * width + k belongs to distribution k.
+     *
+     * @param from
+     *            Probability of being at each node before the step.
+     * @param to
+     *            Receives the probability of being at each node after the
+     *            step. Must not be from.
+     * @param width
+     *            Number of interleaved distributions.
+     * @param first
+     *            First row to compute.
+     * @param last
+     *            Row after the last to compute.
+     */
+    public void step(double[] from, double[] to, int width, int first,
+            int last) {
+        for (int i = first; i < last; i++) {
+            final int row = i * width;
+            final double self = stay[i];
+            for (int k = 0; k < width; k++)
+                to[row + k] = self * from[row + k];
+            for (int entry = rowStart[i]; entry < rowStart[i + 1]; entry++) {
+                final int column = columns[entry] * width;
+                final double weight = weights[entry];
+                for (int k = 0; k < width; k++)
+                    to[row + k] += weight * from[column + k];
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.freenetproject.routing_simulator.graph;
+
+import org.apache.commons.math3.random.RandomGenerator;
+import org.freenetproject.routing_simulator.graph.node.SimpleNode;
+import org.freenetproject.routing_simulator.util.AliasTable;
+
+import java.util.ArrayList;
+
+/**
+ * Per-node alias tables of Metropolis-Hastings transition probabilities, so a
+ * corrected random walk takes each hop with one constant-time sample instead
+ * of choosing a neighbor and then accepting or rejecting it.
+ * <p>
+ * From a node of degree d the walk moves to neighbor j with probability
+ * min(1 / d, 1 / degree(j)) and otherwise stays, which is the distribution of
+ * {@link SimpleNode#randomWalk(int, boolean, RandomGenerator, int[])} with
+ * correction. It consumes randomness differently, so walks are not the same
+ * for a given seed. The tables reflect the graph when they were built; they
+ * must be rebuilt if connections change. Safe to share between threads once
+ * built.
+ */
+public class TransitionTables {
+    private final Graph graph;
+    private final AliasTable[] tables;
+    /**
+     * Index of the neighbor of each outcome of each node's table. The last
+     * outcome is staying in place.
+     */
+    private final int[][] neighbors;
+
+    /**
+     * @param graph
+     *            Graph to walk.
+     */
+    public TransitionTables(Graph graph) {
+        this.graph = graph;
+        this.tables = new AliasTable[graph.size()];
+        this.neighbors = new int[graph.size()][];
+        for (int i = 0; i < graph.size(); i++) {
+            final SimpleNode node = graph.getNode(i);
+            assert node.index == i;
+            final ArrayList<SimpleNode> connections = node.getConnections();
+            final int degree = connections.size();
+            final double[] weights = new double[degree + 1];
+            final int[] outcomes = new int[degree + 1];
+            double stay = 1.0;
+            for (int j = 0; j < degree; j++) {
+                final SimpleNode peer = connections.get(j);
+                weights[j] = Math.min(1.0 / degree, 1.0 / peer.degree());
+                outcomes[j] = peer.index;
+                stay -= weights[j];
+            }
+            weights[degree] = Math.max(stay, 0.0);
+            outcomes[degree] = i;
+            tables[i] = new AliasTable(weights);
+            neighbors[i] = outcomes;
+        }
+    }
+
+    /**
+     * Perform a corrected random walk, recording the index of the node at each
+     * hop.
+     *
+     * @param from
+     *            Node to start at.
+     * @param hops
+     *            Number of hops to walk.
+     * @param rand
+     *            Randomness source to use.
+     * @param trace
+     *            Receives the node indexes along the way: the first element is
+     *            the start, element hops is the endpoint. Must have room for at
+     *            least hops + 1 elements.
+     * @return The final node of the walk.
+     */
+    public SimpleNode randomWalk(SimpleNode from, int hops,
+            RandomGenerator rand, int[] trace) {
+        if (hops < 0)
+            throw new IllegalArgumentException("Must have positive hops.");
+        int current = from.index;
+        trace[0] = current;
+        for (int hop = 1; hop <= hops; hop++) {
+            current = neighbors[current][tables[current].sample(rand)];
+            trace[hop] = current;
+        }
+        return graph.getNode(current);
+    }
+}
@@ -0,0 +1,127 @@
+package org.freenetproject.routing_simulator.graph.churn;
+
+/**
+ * Pending join or leave time of every node, ordered so that the next event is
+ * available in constant time. Each node has at most one pending event, so this
+ * is an indexed binary min-heap over primitive arrays: scheduling and taking
+ * the next event are logarithmic in the network size and do not allocate.
+ */
+public class ChurnSchedule {
+    /**
+     * Node indexes in heap order.
+     */
+    private final int[] heap;
+    /**
+     * Position of each node index in the heap, or -1 if it has no event.
+     */
+    private final int[] positions;
+    /**
+     * Event time of each node index.
+     */
+    private final double[] times;
+    private int size = 0;
+
+    /**
+     * @param capacity
+     *            Number of nodes in the network; indexes must be below this.
+     */
+    public ChurnSchedule(int capacity) {
+        heap = new int[capacity];
+        positions = new int[capacity];
+        times = new double[capacity];
+        for (int i = 0; i < capacity; i++)
+            positions[i] = -1;
+    }
+
+    /**
+     * Schedule the next event for a node, replacing any already pending.
+     * 
+     * @param index
+     *            Node index.
+     * @param time
+     *            Time of the event in hours.
+     */
+    public void schedule(int index, double time) {
+        int position = positions[index];
+        if (position == -1) {
+            position = size++;
+            heap[position] = index;
+            positions[index] = position;
+            times[index] = time;
+            siftUp(position);
+        } else {
+            final double previous = times[index];
+            times[index] = time;
+            if (time < previous)
+                siftUp(position);
+            else
+                siftDown(position);
+        }
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return time of the earliest pending event.
+     */
+    public double peekTime() {
+        if (size == 0)
+            throw new IllegalStateException("No events are scheduled.");
+        return times[heap[0]];
+    }
+
+    /**
+     * Remove the earliest pending event.
+     * 
+     * @return index of the node the event is for.
+     */
+    public int poll() {
+        if (size == 0)
+            throw new IllegalStateException("No events are scheduled.");
+        final int index = heap[0];
+        size--;
+        if (size > 0) {
+            heap[0] = heap[size];
+            positions[heap[0]] = 0;
+            siftDown(0);
+        }
+        positions[index] = -1;
+        return index;
+    }
+
+    private void siftUp(int position) {
+        final int index = heap[position];
+        final double time = times[index];
+        while (position > 0) {
+            final int parent = (position - 1) >>> 1;
+            if (times[heap[parent]] <= time)
+                break;
+            heap[position] = heap[parent];
+            positions[heap[position]] = position;
+            position = parent;
+        }
+        heap[position] = index;
+        positions[index] = position;
+    }
+
+    private void siftDown(int position) {
+        final int index = heap[position];
+        final double time = times[index];
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= size)
+                break;
+            if (child + 1 < size && times[heap[child + 1]] < times[heap[child]])
+                child++;
+            if (times[heap[child]] >= time)
+                break;
+            heap[position] = heap[child];
+            positions[heap[position]] = position;
+            position = child;
+        }
+        heap[position] = index;
+        positions[index] = position;
+    }
+}
@@ -0,0 +1,26 @@
+package org.freenetproject.routing_simulator.graph.churn;
+
+import org.apache.commons.math3.random.RandomGenerator;
+
+/**
+ * Provides lengths conforming to an exponential distribution with the given
+ * mean. Sampled by inversion so that only the given randomness source is used
+ * and runs are repeatable from the seed.
+ */
+public class ExponentialSessionSource implements SessionSource {
+    private final double mean;
+    private final RandomGenerator random;
+
+    public ExponentialSessionSource(double mean, RandomGenerator random) {
+        if (mean <= 0.0)
+            throw new IllegalArgumentException("Mean must be positive.");
+        this.mean = mean;
+        this.random = random;
+    }
+
+    @Override
+    public double getLength() {
+        // nextDouble() is [0, 1) so 1 - u is never zero.
+        return -mean * Math.log(1.0 - random.nextDouble());
+    }
+}
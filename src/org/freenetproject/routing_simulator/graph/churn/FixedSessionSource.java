@@ -0,0 +1,19 @@
+package org.freenetproject.routing_simulator.graph.churn;
+
+/**
+ * Session source which provides a single constant length.
+ */
+public class FixedSessionSource implements SessionSource {
+    private final double length;
+
+    public FixedSessionSource(double length) {
+        if (length <= 0.0)
+            throw new IllegalArgumentException("Length must be positive.");
+        this.length = length;
+    }
+
+    @Override
+    public double getLength() {
+        return length;
+    }
+}
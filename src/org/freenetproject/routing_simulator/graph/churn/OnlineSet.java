@@ -0,0 +1,85 @@
+package org.freenetproject.routing_simulator.graph.churn;
+
+import org.apache.commons.math3.random.RandomGenerator;
+
+/**
+ * Set of node indexes which are currently online. Adding, removing, membership
+ * checks and selecting a random member are all constant time: members are
+ * kept densely packed and a removed member is replaced by the last one.
+ */
+public class OnlineSet {
+    private final int[] members;
+    /**
+     * Position of each node index in members, or -1 if it is not a member.
+     */
+    private final int[] positions;
+    private int size = 0;
+
+    /**
+     * @param capacity
+     *            Number of nodes in the network; indexes must be below this.
+     */
+    public OnlineSet(int capacity) {
+        members = new int[capacity];
+        positions = new int[capacity];
+        for (int i = 0; i < capacity; i++)
+            positions[i] = -1;
+    }
+
+    public boolean contains(int index) {
+        return positions[index] != -1;
+    }
+
+    /**
+     * @return true if the index was added; false if it was already a member.
+     */
+    public boolean add(int index) {
+        if (contains(index))
+            return false;
+        members[size] = index;
+        positions[index] = size;
+        size++;
+        return true;
+    }
+
+    /**
+     * @return true if the index was removed; false if it was not a member.
+     */
+    public boolean remove(int index) {
+        final int position = positions[index];
+        if (position == -1)
+            return false;
+        size--;
+        final int last = members[size];
+        members[position] = last;
+        positions[last] = position;
+        positions[index] = -1;
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param position
+     *            Position in [0, size()). Positions change as members are
+     *            removed.
+     * @return index of the member at the position.
+     */
+    public int get(int position) {
+        if (position >= size)
+            throw new IndexOutOfBoundsException("Position " + position
+                    + " with size " + size);
+        return members[position];
+    }
+
+    /**
+     * @return index of a member selected uniformly at random.
+     */
+    public int random(RandomGenerator random) {
+        if (size == 0)
+            throw new IllegalStateException("No nodes are online.");
+        return members[random.nextInt(size)];
+    }
+}
@@ -0,0 +1,8 @@
+package org.freenetproject.routing_simulator.graph.churn;
+
+public interface SessionSource {
+    /**
+     * @return length of time, in hours, conforming to the distribution.
+     */
+    public double getLength();
+}
@@ -0,0 +1,33 @@
+package org.freenetproject.routing_simulator.graph.churn;
+
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.special.Gamma;
+
+/**
+ * Provides lengths conforming to a Weibull distribution with the given mean
+ * and shape. Sampled by inversion so that only the given randomness source is
+ * used and runs are repeatable from the seed.
+ */
+public class WeibullSessionSource implements SessionSource {
+    private final double scale;
+    private final double inverseShape;
+    private final RandomGenerator random;
+
+    public WeibullSessionSource(double mean, double shape,
+            RandomGenerator random) {
+        if (mean <= 0.0)
+            throw new IllegalArgumentException("Mean must be positive.");
+        if (shape <= 0.0)
+            throw new IllegalArgumentException("Shape must be positive.");
+        this.inverseShape = 1.0 / shape;
+        // The mean of a Weibull distribution is scale * Gamma(1 + 1 / shape).
+        this.scale = mean / Math.exp(Gamma.logGamma(1.0 + inverseShape));
+        this.random = random;
+    }
+
+    @Override
+    public double getLength() {
+        return scale
+                * Math.pow(-Math.log(1.0 - random.nextDouble()), inverseShape);
+    }
+}
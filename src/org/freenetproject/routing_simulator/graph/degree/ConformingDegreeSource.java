@@ -4,6 +4,7 @@ import org.apache.commons.math3.random.RandomGenerator;
 import org.freenetproject.routing_simulator.util.WeightedDistribution;
 
 import java.io.DataInputStream;
+import java.io.IOException;
 
 /**
  * Provides link lengths conforming with the distribution described by a list of
@@ -12,7 +13,12 @@ import java.io.DataInputStream;
 public class ConformingDegreeSource implements DegreeSource {
     private final WeightedDistribution distribution;
 
-    public ConformingDegreeSource(DataInputStream input, RandomGenerator random) {
+    /**
+     * @see WeightedDistribution#WeightedDistribution(DataInputStream,
+     *      RandomGenerator)
+     */
+    public ConformingDegreeSource(DataInputStream input, RandomGenerator random)
+            throws IOException {
         this.distribution = new WeightedDistribution(input, random);
     }
 
@@ -3,48 +3,41 @@ package org.freenetproject.routing_simulator.graph.linklength;
 import org.apache.commons.math3.random.RandomGenerator;
 import org.freenetproject.routing_simulator.graph.node.SimpleNode;
 
-import java.io.BufferedReader;
+import org.freenetproject.routing_simulator.util.DoubleArrayList;
+import org.freenetproject.routing_simulator.util.NumberReader;
+
 import java.io.DataInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
-import java.util.logging.Logger;
 
 public class ConformingLinkSource extends LinkLengthSource {
-    private static final Logger LOGGER = Logger
-            .getLogger(ConformingLinkSource.class.getName());
-    private final ArrayList<Double> lengths;
+    private final double[] lengths;
 
     /**
+     * @param input
+     *            stream of link lengths to read, which may be compressed with
+     *            gzip. Each line has a link length as its first field; any
+     *            others are ignored.
+     * @throws IOException
+     *             Error reading the stream, or a line is malformed.
      * @see LinkLengthSource#LinkLengthSource(org.apache.commons.math3.random.
      *      RandomGenerator, java.util.ArrayList
      */
     public ConformingLinkSource(DataInputStream input, RandomGenerator random,
-            ArrayList<SimpleNode> nodes) {
+            ArrayList<SimpleNode> nodes) throws IOException {
         super(random, nodes);
 
-        lengths = new ArrayList<Double>();
-        try {
-            BufferedReader reader = new BufferedReader(new InputStreamReader(
-                    input));
-            // TODO: Read all, put into ArrayList, get a link length selects
-            // from that.
-            String line;
-            // TODO: This seems like a C++ way of doing things. What's the Java
-            // way?
-            while ((line = reader.readLine()) != null) {
-                // File format has link length as first value, separated by a
-                // space.
-                lengths.add(Double.valueOf(line.split(" ")[0]));
-            }
-        } catch (IOException e) {
-            LOGGER.severe(e.toString());
-            System.exit(2);
-        }
+        final DoubleArrayList lengths = new DoubleArrayList();
+        final NumberReader reader = new NumberReader(input);
+        while (reader.nextLine())
+            lengths.add(reader.nextDouble());
+        if (lengths.isEmpty())
+            throw new IOException("No link lengths to conform to.");
+        this.lengths = lengths.toArray();
     }
 
     @Override
     public SimpleNode getPeer(SimpleNode from) {
-        return closestTo(from, lengths.get(random.nextInt(lengths.size())));
+        return closestTo(from, lengths[random.nextInt(lengths.length)]);
     }
 }
@@ -0,0 +1,16 @@
+package org.freenetproject.routing_simulator.graph.node;
+
+/**
+ * Decides whether a request routed towards a location has been answered at a
+ * node, such as by the node holding the requested key.
+ */
+public interface RouteTarget {
+	/**
+	 * Called when a request arrives at a node.
+	 * 
+	 * @param node
+	 *            Node the request arrived at.
+	 * @return True if the request succeeds at this node.
+	 */
+	boolean reached(SimpleNode node);
+}
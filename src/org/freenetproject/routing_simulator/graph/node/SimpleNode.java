@@ -7,8 +7,13 @@ import org.freenetproject.routing_simulator.RoutingPolicy;
 import org.freenetproject.routing_simulator.graph.Location;
 import org.freenetproject.routing_simulator.graph.folding.PathFoldingResult;
 import org.freenetproject.routing_simulator.graph.node.peer.*;
+import org.freenetproject.routing_simulator.graph.store.KeyStore;
 import org.freenetproject.routing_simulator.util.DistanceEntry;
+import org.freenetproject.routing_simulator.util.IntArrayList;
+import org.freenetproject.routing_simulator.util.jfr.FoldEvent;
+import org.freenetproject.routing_simulator.util.jfr.RequestEvent;
 import org.freenetproject.routing_simulator.util.lru.LRUQueue;
+import org.freenetproject.routing_simulator.util.metrics.Metrics;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
@@ -19,12 +24,17 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A simple node model. Has a location and a set of connections.
  */
 public class SimpleNode {
-	private final double location;
+	/*
+	 * Changes only when locations are swapped. Volatile so that swaps on other
+	 * threads are seen by routing and by other swaps.
+	 */
+	private volatile double location;
 	private final ArrayList<SimpleNode> connections;
 	private final int desiredDegree;
 	private int successfulRequestCount = 0;
@@ -37,6 +47,13 @@ public class SimpleNode {
 
 	private final RandomGenerator rand;
 
+	/*
+	 * Keys held by this node for the datastore simulation, or null when not
+	 * simulating storage.
+	 */
+	private KeyStore store = null;
+	private KeyStore cache = null;
+
 	private final int SUCCESSFUL_REQUEST_THREASHOLD = 10;
 
 	/**
@@ -56,6 +73,92 @@ public class SimpleNode {
 		out.writeInt(desiredDegree);
 	}
 
+	/**
+	 * Write the state which changes while routing: success count, last
+	 * request routed, connections, LRU order and routing cache. Together with
+	 * the location and desired degree written by {@link #write} this is
+	 * everything needed to continue identically.
+	 */
+	public void writeState(DataOutputStream out) throws IOException {
+		out.writeInt(successfulRequestCount);
+		out.writeLong(lastRouted);
+
+		out.writeInt(connections.size());
+		for (SimpleNode peer : connections)
+			out.writeInt(peer.index);
+
+		// Least recently used first.
+		final Object[] lru = lruQueue.toArrayOrdered();
+		out.writeInt(lru.length);
+		for (Object peer : lru)
+			out.writeInt(((SimpleNode) peer).index);
+
+		out.writeInt(routingCacheLookAhead);
+		if (routingCache == null) {
+			out.writeInt(-1);
+		} else {
+			out.writeInt(routingCache.size());
+			for (DistanceEntry entry : routingCache) {
+				out.writeDouble(entry.getDistance());
+				out.writeInt(entry.getNextNode().index);
+				out.writeInt(entry.getFinalNode().index);
+				out.writeInt(entry.getLookAheadLevel());
+			}
+		}
+	}
+
+	/**
+	 * Restore state written by {@link #writeState}. Connections are restored
+	 * in their original order without the side effects of connecting.
+	 * 
+	 * @param nodes
+	 *            All nodes of the graph, by index.
+	 */
+	public void readState(DataInputStream in, List<SimpleNode> nodes)
+			throws IOException {
+		successfulRequestCount = in.readInt();
+		lastRouted = in.readLong();
+
+		connections.clear();
+		final int degree = in.readInt();
+		for (int i = 0; i < degree; i++)
+			connections.add(nodes.get(in.readInt()));
+
+		lruQueue.clear();
+		final int lruSize = in.readInt();
+		for (int i = 0; i < lruSize; i++)
+			lruQueue.push(nodes.get(in.readInt()));
+
+		routingCacheLookAhead = in.readInt();
+		final int cacheSize = in.readInt();
+		if (cacheSize < 0) {
+			routingCache = null;
+		} else {
+			routingCache = new ArrayList<DistanceEntry>(cacheSize);
+			for (int i = 0; i < cacheSize; i++) {
+				final double distance = in.readDouble();
+				final SimpleNode next = nodes.get(in.readInt());
+				final SimpleNode last = nodes.get(in.readInt());
+				routingCache.add(new DistanceEntry(distance, next, last, in
+						.readInt()));
+			}
+		}
+	}
+
+	/**
+	 * @return the ID of the last request routed by any node.
+	 */
+	public static long getRequestID() {
+		return requestID.get();
+	}
+
+	/**
+	 * Continue numbering requests from the given ID, as when resuming.
+	 */
+	public static void setRequestID(long id) {
+		requestID.set(id);
+	}
+
 	public void setRoutingCache(ArrayList<DistanceEntry> distances,
 			int nLookAhead) {
 		if (this.routingCache != null
@@ -96,9 +199,11 @@ public class SimpleNode {
 	 */
 	private long lastRouted = -1;
 	/**
-	 * The current request ID.
+	 * The ID of the last request started by any node. Shared by every graph
+	 * so that requests routed concurrently on different graphs still have
+	 * distinct IDs.
 	 */
-	static long requestID = 0;
+	private static final AtomicLong requestID = new AtomicLong();
 
 	@Override
 	public boolean equals(Object o) {
@@ -191,6 +296,32 @@ public class SimpleNode {
 		this.lastRouted = lastRouted;
 	}
 
+	/**
+	 * @return the long term store, or null if none is set.
+	 */
+	public KeyStore getStore() {
+		return store;
+	}
+
+	/**
+	 * @return the short term cache, or null if none is set.
+	 */
+	public KeyStore getCache() {
+		return cache;
+	}
+
+	/**
+	 * @param store
+	 *            Long term store for keys inserted to this node as the
+	 *            closest to them.
+	 * @param cache
+	 *            Short term cache for keys passing through this node.
+	 */
+	public void setStores(KeyStore store, KeyStore cache) {
+		this.store = store;
+		this.cache = cache;
+	}
+
 	/**
 	 * @return True if the node is at (or above) its desired degree.
 	 */
@@ -235,6 +366,22 @@ public class SimpleNode {
 		return location;
 	}
 
+	/**
+	 * Change the location of this node, as when swapping locations with
+	 * another. Routing caches need not be cleared: they hold only which peers
+	 * are reachable, and distances are recomputed from current locations
+	 * whenever they are used. Once locations change, increasing index no
+	 * longer means increasing location; only graph generation relies on that.
+	 * 
+	 * @param location
+	 *            New location in [0,1).
+	 */
+	public void setLocation(double location) {
+		if (location < 0.0 || location >= 1.0)
+			throw new IllegalArgumentException("Location must be in [0,1).");
+		this.location = location;
+	}
+
 	/**
 	 * @return a peer which can be disconnected when path folding.
 	 */
@@ -260,6 +407,7 @@ public class SimpleNode {
 	}
 
 	private List<SimpleNode> offerPathFold_New(final SimpleNode peer) {
+		Metrics.FOLDS_ATTEMPTED.increment();
 		List<SimpleNode> foldedOut = new ArrayList<SimpleNode>();
 		if (!hasOpenPeer() || !peer.hasOpenPeer())
 			return foldedOut;
@@ -280,6 +428,7 @@ public class SimpleNode {
 		lruQueue.pushLeast(peer);
 		peer.lruQueue.remove(this);
 		peer.lruQueue.pushLeast(this);
+		Metrics.FOLDS_ACCEPTED.increment();
 		return foldedOut;
 	}
 
@@ -295,6 +444,7 @@ public class SimpleNode {
 	 * @return whether the offered connection was accepted.
 	 */
 	private boolean offerPathFold(final SimpleNode peer, double acceptanceRate) {
+		Metrics.FOLDS_ATTEMPTED.increment();
 		// If already at degree, don't fold if not accepted.
 		if (atDegree() && rand.nextDouble() > acceptanceRate)
 			return false;
@@ -318,6 +468,7 @@ public class SimpleNode {
 		// Path folding should not change the total connection count.
 		assert initialDegree == degree() + least.degree() + peer.degree();
 
+		Metrics.FOLDS_ACCEPTED.increment();
 		return true;
 	}
 
@@ -463,6 +614,7 @@ public class SimpleNode {
 					"Attempted to use shortcut folding with policy "
 							+ foldingPolicy);
 		}
+		Metrics.FOLDS_ATTEMPTED.increment();
 		// Do not path fold to self.
 		if (endpoint == this)
 			return null;
@@ -530,6 +682,7 @@ public class SimpleNode {
 		assert initialDegree == degree() + disconnected.degree()
 				+ endpoint.degree();
 
+		Metrics.FOLDS_ACCEPTED.increment();
 		return disconnected;
 	}
 
@@ -604,22 +757,33 @@ public class SimpleNode {
 			boolean newFoldingMethod) {
 		// Can't fold if no nodes involved, (local node was closest right off)
 		// or if one node nowhere to fold to.
-		if (nodeChain.size() < 2)
+		if (nodeChain.size() < 2 || policy == FoldingPolicy.NONE)
 			return new PathFoldingResult();
+		final FoldEvent event = new FoldEvent();
+		event.begin();
+		final PathFoldingResult result;
 		switch (policy) {
-		case NONE:
-			return new PathFoldingResult();
 		case FREENET:
-			return successFreenet(nodeChain, newFoldingMethod);
+			result = successFreenet(nodeChain, newFoldingMethod);
+			break;
 		case SANDBERG_NO_LATTICE:
 		case SANDBERG:
 		case SANDBERG_DIRECTED:
-			return successSandberg(nodeChain, policy);
+			result = successSandberg(nodeChain, policy);
+			break;
 		default:
 			throw new IllegalStateException(
 					"Missing folding implementation for policy "
 							+ policy.name());
 		}
+		if (event.shouldCommit()) {
+			event.foldingPolicy = policy.name();
+			event.pathLength = nodeChain.size();
+			event.folds = result.getFoldingOperations();
+			event.disconnected = result.getDisconnected().size();
+			event.commit();
+		}
+		return result;
 	}
 
 	/**
@@ -642,44 +806,106 @@ public class SimpleNode {
 			final FoldingPolicy foldingPolicy, final int nLookAhead,
 			final int nLookBack, final boolean newFoldingMethod,
 			final int significantBitsLookAhead, final double randomRoutingChance) {
-		/*
-		 * NOTE: This is static and package-local: not thread-safe! The
-		 * simulator is as of this writing strictly single-threaded. The request
-		 * ID could be an argument otherwise.
-		 */
-		requestID++;
+		return route(target, hopsToLive, maxHTL, routingPolicy, foldingPolicy,
+				nLookAhead, nLookBack, newFoldingMethod,
+				significantBitsLookAhead, randomRoutingChance, null);
+	}
+
+	/**
+	 * Routes as above, and records every node the request arrives at in
+	 * order. A node appears again when a request returns to it after failing
+	 * further on, whether to backtrack or to pass the failure back, so each
+	 * consecutive pair of indexes is one crossing of a link. Successful
+	 * requests end at the target; failed ones end at this node.
+	 * 
+	 * @param travel
+	 *            List to append node indexes to, or null to not record them.
+	 */
+	public RouteResult route(final SimpleNode target, final int hopsToLive,
+			final int maxHTL, final RoutingPolicy routingPolicy,
+			final FoldingPolicy foldingPolicy, final int nLookAhead,
+			final int nLookBack, final boolean newFoldingMethod,
+			final int significantBitsLookAhead,
+			final double randomRoutingChance, final IntArrayList travel) {
+		return route(target.getLocation(), null, hopsToLive, maxHTL,
+				routingPolicy, foldingPolicy, nLookAhead, nLookBack,
+				newFoldingMethod, significantBitsLookAhead,
+				randomRoutingChance, travel);
+	}
+
+	/**
+	 * Routes as above towards a location, such as that of a key, which need
+	 * not be the location of any node.
+	 * 
+	 * @param target
+	 *            Location to route towards.
+	 * @param reached
+	 *            Decides whether the request succeeds at each node it
+	 *            arrives at, or null to succeed only at a node with the target
+	 *            location.
+	 */
+	public RouteResult route(final double target, final RouteTarget reached,
+			final int hopsToLive, final int maxHTL,
+			final RoutingPolicy routingPolicy,
+			final FoldingPolicy foldingPolicy, final int nLookAhead,
+			final int nLookBack, final boolean newFoldingMethod,
+			final int significantBitsLookAhead,
+			final double randomRoutingChance, final IntArrayList travel) {
+		final long request = requestID.incrementAndGet();
+		Metrics.REQUESTS.increment();
+		final RequestEvent event = new RequestEvent();
+		event.begin();
+		final RouteResult result;
 		// TODO: Duplicate argument value determination between these methods:
 		// chain and target.
 		switch (routingPolicy) {
 		case GREEDY:
-			return greedyRoute(target.getLocation(), hopsToLive, maxHTL,
+			result = greedyRoute(target, reached, hopsToLive, maxHTL,
 					nLookAhead, false, newFoldingMethod, new Greedy(
 							foldingPolicy, this.getRandom(),
 							randomRoutingChance), foldingPolicy,
-					new ArrayList<SimpleNode>());
+					new ArrayList<SimpleNode>(), travel, request);
+			break;
 		case LOOP_DETECTION:
-			return greedyRoute(target.getLocation(), hopsToLive, maxHTL,
+			result = greedyRoute(target, reached, hopsToLive, maxHTL,
 					nLookAhead, false, newFoldingMethod, new LoopDetection(
 							foldingPolicy, this.getRandom(),
-							randomRoutingChance, nLookBack, requestID),
-					foldingPolicy, new ArrayList<SimpleNode>());
+							randomRoutingChance, nLookBack, request),
+					foldingPolicy, new ArrayList<SimpleNode>(), travel,
+					request);
+			break;
 		case BACKTRACKING:
-			return greedyRoute(target.getLocation(), hopsToLive, maxHTL,
+			result = greedyRoute(target, reached, hopsToLive, maxHTL,
 					nLookAhead, true, newFoldingMethod, new LoopDetection(
 							foldingPolicy, this.getRandom(),
-							randomRoutingChance, nLookBack, requestID),
-					foldingPolicy, new ArrayList<SimpleNode>());
+							randomRoutingChance, nLookBack, request),
+					foldingPolicy, new ArrayList<SimpleNode>(), travel,
+					request);
+			break;
 		case PRECISION_LOSS:
-			return greedyRoute(target.getLocation(), hopsToLive, maxHTL,
+			result = greedyRoute(target, reached, hopsToLive, maxHTL,
 					nLookAhead, true, newFoldingMethod, new PrecisionLoss(
 							foldingPolicy, this.getRandom(),
-							randomRoutingChance, nLookBack, requestID,
+							randomRoutingChance, nLookBack, request,
 							significantBitsLookAhead), foldingPolicy,
-					new ArrayList<SimpleNode>());
+					new ArrayList<SimpleNode>(), travel, request);
+			break;
 		default:
 			throw new IllegalStateException("Routing for policy "
 					+ routingPolicy.name() + " not implemented.");
 		}
+		if (event.shouldCommit()) {
+			event.origin = index;
+			event.target = target;
+			event.routingPolicy = routingPolicy.name();
+			event.foldingPolicy = foldingPolicy.name();
+			event.lookAhead = nLookAhead;
+			event.success = result.isSuccess();
+			event.hops = result.getPathLength();
+			event.travelLength = result.getTravelLength();
+			event.commit();
+		}
+		return result;
 	}
 
 	/*
@@ -687,25 +913,30 @@ public class SimpleNode {
 	 * local minimum. If hops ran out it was still considered a success. Changes
 	 * this so if hops runs out the routing failed (if it didn't reach target).
 	 */
-	private RouteResult greedyRoute(final double target, int hopsToLive,
+	private RouteResult greedyRoute(final double target,
+			final RouteTarget reached, int hopsToLive,
 			final int maxHTL, final int nLookAhead, final boolean backtracking,
 			final boolean newFoldingMethod, final PeerSelector peerSelector,
 			final FoldingPolicy foldingPolicy,
-			final ArrayList<SimpleNode> routingPath) {
+			final ArrayList<SimpleNode> routingPath, final IntArrayList travel,
+			final long request) {
 
 		if (hopsToLive <= 0)
 			throw new IllegalStateException(
 					"hopsToLive must be positive. It is " + hopsToLive);
 
 		if (backtracking)
-			setLastRouted(requestID);
+			setLastRouted(request);
 		routingPath.add(this);
+		if (travel != null)
+			travel.add(index);
 
 		/*
 		 * Check whether the request reached its destination, which was selected
-		 * from among node locations.
+		 * from among node locations unless the caller decides.
 		 */
-		if (this.getLocation() == target) {
+		if (reached == null ? this.getLocation() == target : reached
+				.reached(this)) {
 			return new RouteResult(true, success(routingPath, foldingPolicy,
 					newFoldingMethod), routingPath, maxHTL - hopsToLive + 1);
 		}
@@ -729,14 +960,21 @@ public class SimpleNode {
 				return new RouteResult(maxHTL - hopsToLive);
 			}
 			
-			final RouteResult result = next.greedyRoute(target, hopsToLive,
-					maxHTL, nLookAhead, backtracking, newFoldingMethod,
-					peerSelector, foldingPolicy, routingPath);
+			Metrics.HOPS.increment();
+			final RouteResult result = next.greedyRoute(target, reached,
+					hopsToLive, maxHTL, nLookAhead, backtracking,
+					newFoldingMethod, peerSelector, foldingPolicy,
+					routingPath, travel, request);
 			
+			// The request comes back here after failing further on.
+			if (!result.isSuccess() && travel != null)
+				travel.add(index);
+
 			if(result.isSuccess() || !backtracking) {
 				return result;
 			}
 			
+			Metrics.BACKTRACKS.increment();
 			hopsToLive = maxHTL - result.getTravelLength() + 1;
 		}
 	}
@@ -776,7 +1014,15 @@ public class SimpleNode {
 	 * @return Whether a connection exists
 	 */
 	public boolean isConnected(SimpleNode other) {
-		return connections.contains(other);
+		/*
+		 * Nodes of a graph have distinct indexes, so reference comparison is
+		 * equivalent to equals() here, which compares the peers of both nodes.
+		 */
+		for (int i = 0; i < connections.size(); i++) {
+			if (connections.get(i) == other)
+				return true;
+		}
+		return false;
 	}
 
 	/**
@@ -809,6 +1055,26 @@ public class SimpleNode {
 		this.peerChanged(this.routingCacheLookAhead);
 	}
 
+	/**
+	 * Give an unconnected node all of its connections at once, as if each
+	 * were connected in turn with {@link #connectOutgoing}. The caller is
+	 * responsible for the peers being distinct nodes other than this one.
+	 * 
+	 * @param peers
+	 *            Nodes to connect to, in order of connection.
+	 * @param count
+	 *            Number of peers to take from the start of the array.
+	 */
+	public void initializeConnections(SimpleNode[] peers, int count) {
+		assert connections.isEmpty();
+		connections.ensureCapacity(count);
+		for (int i = 0; i < count; i++) {
+			connections.add(peers[i]);
+			lruQueue.push(peers[i]);
+		}
+		this.peerChanged(this.routingCacheLookAhead);
+	}
+
 	/**
 	 * Disconnect in both directions from a node which is already connected to
 	 * this one.
@@ -835,7 +1101,12 @@ public class SimpleNode {
 			throw new IllegalArgumentException(
 					"Cannot disconnect: not connected.");
 
-		connections.remove(other);
+		for (int i = 0; i < connections.size(); i++) {
+			if (connections.get(i) == other) {
+				connections.remove(i);
+				break;
+			}
+		}
 		lruQueue.remove(other);
 		this.peerChanged(this.routingCacheLookAhead);
 	}
@@ -888,6 +1159,69 @@ public class SimpleNode {
 				/ ((double) ((degree * (degree - 1)) / 2));
 	}
 
+	/**
+	 * Take one hop of a random walk from this node.
+	 * 
+	 * @param uniform
+	 *            Whether to perform a uniform (normal) walk, or attempt to
+	 *            correct for high-degree bias
+	 * @param rand
+	 *            Randomness source to use
+	 * @return the node the walk is at after the hop. For a corrected walk
+	 *         which did not accept the chosen neighbor this is this node.
+	 */
+	private SimpleNode walkStep(boolean uniform, RandomGenerator rand) {
+		// Choose a neighbor with uniform probability.
+		final SimpleNode next = connections.get(rand.nextInt(connections
+				.size()));
+		if (uniform)
+			return next;
+
+		/*
+		 * Non-uniform walk: attempt to correct for high-degree node bias with
+		 * the Metropolis-Hastings approach. Accept with probability beta;
+		 * otherwise the hop is spent staying on this node, which is then the
+		 * endpoint if the walk ends here.
+		 */
+		double beta = ((double) (degree())) / ((double) (next.degree()));
+		if (rand.nextDouble() > beta)
+			return this;
+		return next;
+	}
+
+	/**
+	 * Perform a random walk starting here, recording the index of the node at
+	 * each hop.
+	 * 
+	 * @param hops
+	 *            Number of hops to walk
+	 * @param uniform
+	 *            Whether to perform a uniform (normal) walk, or attempt to
+	 *            correct for high-degree bias
+	 * @param rand
+	 *            Randomness source to use
+	 * @param trace
+	 *            Receives the node indexes along the way: the first element is
+	 *            this node, element hops is the endpoint. Must have room for
+	 *            at least hops + 1 elements.
+	 * @return The final node of the walk
+	 */
+	public SimpleNode randomWalk(int hops, boolean uniform,
+			RandomGenerator rand, int[] trace) {
+		if (hops < 0)
+			throw new IllegalArgumentException("Must have positive hops.");
+		if (trace.length <= hops)
+			throw new IllegalArgumentException("Trace has room for "
+					+ trace.length + " nodes; " + (hops + 1) + " needed.");
+		SimpleNode current = this;
+		trace[0] = current.index;
+		for (int hop = 1; hop <= hops; hop++) {
+			current = current.walkStep(uniform, rand);
+			trace[hop] = current.index;
+		}
+		return current;
+	}
+
 	/**
 	 * Get a trace of a random walk starting here.
 	 * 
@@ -905,49 +1239,13 @@ public class SimpleNode {
 			RandomGenerator rand) {
 		if (hops < 0)
 			throw new IllegalArgumentException("Must have positive hops.");
-		ArrayList<SimpleNode> list = new ArrayList<SimpleNode>();
-		list.add(this);
-		if (hops == 0)
-			return list;
-
-		SimpleNode next;
-		if (uniform) {
-			// uniform walk: choose a neighbor with uniform probability
-			next = connections.get(rand.nextInt(connections.size()));
-		} else {
-			// non-uniform walk: attempt to correct for high-degree node bias
-			// Metroplis-Hastings approach
-			next = this;
-			while (hops > 0 && next == this) {
-				next = connections.get(rand.nextInt(degree()));
-				double beta = ((double) (degree()))
-						/ ((double) (next.degree()));
-				// accept with probability beta
-				if (rand.nextDouble() > beta) {
-					// not accepted; decrement hops and try again
-					next = this;
-					hops--;
-					/*
-					 * Walk stayed on this node; had it ended here it would be
-					 * the endpoint. Don't add extra if this is the last in the
-					 * chain case though; will be added in the call for zero
-					 * hops.
-					 */
-					if (hops > 0)
-						list.add(this);
-				}
-			}
-			// HTL ran out while looking for somewhere to route to: current node
-			// is endpoint.
-			// It was already added above.
-			if (hops == 0) {
-				assert next == this;
-				// Hops is currently zero - can't be negative so make it zero
-				// for the recursive call.
-				hops = 1;
-			}
+		ArrayList<SimpleNode> list = new ArrayList<SimpleNode>(hops + 1);
+		SimpleNode current = this;
+		list.add(current);
+		for (int hop = 1; hop <= hops; hop++) {
+			current = current.walkStep(uniform, rand);
+			list.add(current);
 		}
-		list.addAll(next.randomWalkList(hops - 1, uniform, rand));
 		return list;
 	}
 
@@ -964,6 +1262,11 @@ public class SimpleNode {
 	 * @return The final node of the walk
 	 */
 	public SimpleNode randomWalk(int hops, boolean uniform, RandomGenerator rand) {
-		return randomWalkList(hops, uniform, rand).get(hops);
+		if (hops < 0)
+			throw new IllegalArgumentException("Must have positive hops.");
+		SimpleNode current = this;
+		for (int hop = 0; hop < hops; hop++)
+			current = current.walkStep(uniform, rand);
+		return current;
 	}
 }
@@ -11,6 +11,7 @@ import org.freenetproject.routing_simulator.FoldingPolicy;
 import org.freenetproject.routing_simulator.graph.Location;
 import org.freenetproject.routing_simulator.graph.node.SimpleNode;
 import org.freenetproject.routing_simulator.util.DistanceEntry;
+import org.freenetproject.routing_simulator.util.metrics.Metrics;
 
 public abstract class PeerSelector {
     protected final FoldingPolicy foldingPolicy;
@@ -35,15 +36,19 @@ public abstract class PeerSelector {
         // only use caching if NONE path folding policy is used.
         if (this.foldingPolicy == FoldingPolicy.NONE
                 && node.getRoutingCache(nLookAhead) != null) {
+            Metrics.ROUTING_CACHE_HITS.increment();
             peers.addAll(node.getRoutingCache(nLookAhead));
             updateDistances(peers, target);
             return peers;
         }
+        if (this.foldingPolicy == FoldingPolicy.NONE)
+            Metrics.ROUTING_CACHE_MISSES.increment();
 
         for (SimpleNode peer : node.getConnections()) {
             peers.add(new DistanceEntry(peer.distanceToLoc(target), peer, peer,
                     1));
         }
+        Metrics.LOOK_AHEAD_CANDIDATES.add(node.degree());
 
         peers = getDistances(peers, target, nLookAhead, 1);
 
@@ -63,6 +68,7 @@ public abstract class PeerSelector {
     }
 
     private void updateDistances(ArrayList<DistanceEntry> nodes, double target) {
+        Metrics.LOOK_AHEAD_CANDIDATES.add(nodes.size());
         for (DistanceEntry e : nodes) {
             e.setDistance(this.calculateDifference(e.getFinalNode(),
                     e.getLookAheadLevel(), target));
@@ -86,6 +92,7 @@ public abstract class PeerSelector {
         for (DistanceEntry dist : nodes) {
             if (dist.getLookAheadLevel() != nLevel)
                 continue;
+            Metrics.LOOK_AHEAD_CANDIDATES.add(dist.getFinalNode().degree());
             for (SimpleNode p : dist.getFinalNode().getConnections()) {
                 if (!nextLevelPeers.containsKey(p))
                     nextLevelPeers.put(p, new ArrayList<DistanceEntry>());
@@ -0,0 +1,55 @@
+package org.freenetproject.routing_simulator.graph.store;
+
+import java.util.List;
+
+import org.freenetproject.routing_simulator.graph.node.RouteTarget;
+import org.freenetproject.routing_simulator.graph.node.SimpleNode;
+
+/**
+ * Answers a fetch at the first node holding the key in its store or cache.
+ */
+public class FetchTarget implements RouteTarget {
+    private long key;
+    private boolean fromStore;
+
+    /**
+     * Set the key of the next fetch.
+     */
+    public void setKey(long key) {
+        this.key = key;
+    }
+
+    /**
+     * @return whether the last successful fetch was answered from a store
+     *         rather than a cache.
+     */
+    public boolean fromStore() {
+        return fromStore;
+    }
+
+    @Override
+    public boolean reached(SimpleNode node) {
+        if (node.getStore().contains(key)) {
+            fromStore = true;
+            return true;
+        }
+        if (node.getCache().contains(key)) {
+            fromStore = false;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Cache the key at every node the reply to a successful fetch passes
+     * through on its way back to the origin.
+     * 
+     * @param routingPath
+     *            Path of the successful fetch, ending at the node which
+     *            answered it.
+     */
+    public void cacheReply(List<SimpleNode> routingPath) {
+        for (int i = routingPath.size() - 2; i >= 0; i--)
+            routingPath.get(i).getCache().put(key);
+    }
+}
@@ -0,0 +1,46 @@
+package org.freenetproject.routing_simulator.graph.store;
+
+import org.freenetproject.routing_simulator.graph.Location;
+import org.freenetproject.routing_simulator.graph.node.RouteTarget;
+import org.freenetproject.routing_simulator.graph.node.SimpleNode;
+
+/**
+ * Stores a key at the nodes an insert passes through. Every node caches the
+ * key, and nodes closer to the key than all their peers also store it. An
+ * insert is never answered, so it continues until it runs out of hops or
+ * nowhere closer remains.
+ */
+public class InsertTarget implements RouteTarget {
+    private long key;
+    private double location;
+    private int stored;
+
+    /**
+     * Set the key of the next insert.
+     */
+    public void setKey(long key) {
+        this.key = key;
+        this.location = Keys.location(key);
+        this.stored = 0;
+    }
+
+    /**
+     * @return number of nodes which stored the key during the last insert.
+     */
+    public int getStored() {
+        return stored;
+    }
+
+    @Override
+    public boolean reached(SimpleNode node) {
+        node.getCache().put(key);
+        final double distance = node.distanceToLoc(location);
+        for (SimpleNode peer : node.getConnections()) {
+            if (Location.distance(peer.getLocation(), location) < distance)
+                return false;
+        }
+        node.getStore().put(key);
+        stored++;
+        return false;
+    }
+}
@@ -0,0 +1,49 @@
+package org.freenetproject.routing_simulator.graph.store;
+
+import java.util.Arrays;
+
+import org.apache.commons.math3.random.RandomGenerator;
+
+/**
+ * Selects key indexes with Zipf distributed popularity: index i in [0, n) is
+ * selected with probability proportional to 1 / (i + 1)^exponent. An exponent
+ * of zero is uniform. Sampling is a binary search of the cumulative weights.
+ */
+public class KeyPopularity {
+    private final double[] cumulative;
+    private final RandomGenerator random;
+
+    /**
+     * @param keys
+     *            Number of keys.
+     * @param exponent
+     *            Zipf exponent. Must not be negative.
+     * @param random
+     *            Random generator.
+     */
+    public KeyPopularity(int keys, double exponent, RandomGenerator random) {
+        if (keys < 1)
+            throw new IllegalArgumentException("Must have at least one key.");
+        if (exponent < 0.0)
+            throw new IllegalArgumentException("Exponent must not be negative.");
+        this.random = random;
+        cumulative = new double[keys];
+        double sum = 0;
+        for (int i = 0; i < keys; i++) {
+            sum += Math.pow(i + 1, -exponent);
+            cumulative[i] = sum;
+        }
+    }
+
+    /**
+     * @return randomly selected key index.
+     */
+    public int next() {
+        final double target = random.nextDouble()
+                * cumulative[cumulative.length - 1];
+        final int i = Arrays.binarySearch(cumulative, target);
+        // Not found gives -(insertion point) - 1; the insertion point is the
+        // first cumulative weight above the target.
+        return i >= 0 ? Math.min(i + 1, cumulative.length - 1) : -i - 1;
+    }
+}
@@ -0,0 +1,34 @@
+package org.freenetproject.routing_simulator.graph.store;
+
+/**
+ * Bounded set of keys held by a node. Keys are non-zero longs.
+ */
+public interface KeyStore {
+    /**
+     * Check whether the key is held. Counts as a use of the key for
+     * replacement purposes.
+     * 
+     * @param key
+     *            Key to look up.
+     * @return whether the key is held.
+     */
+    boolean contains(long key);
+
+    /**
+     * Store the key, replacing another if the store is full.
+     * 
+     * @param key
+     *            Key to store.
+     */
+    void put(long key);
+
+    /**
+     * @return number of keys held.
+     */
+    int size();
+
+    /**
+     * @return maximum number of keys held.
+     */
+    int capacity();
+}
@@ -0,0 +1,36 @@
+package org.freenetproject.routing_simulator.graph.store;
+
+import static org.freenetproject.routing_simulator.util.SplitMix.mix;
+
+/**
+ * Derives keys and their locations. The key of an index is a hash of the index
+ * and a seed, so keys are spread evenly over the keyspace and need not be
+ * stored anywhere.
+ */
+public final class Keys {
+
+    /**
+     * Private constructor.
+     */
+    private Keys() {
+    }
+
+    /**
+     * @param seed
+     *            Seed shared by all keys of a workload.
+     * @param index
+     *            Index of the key in the workload.
+     * @return non-zero key.
+     */
+    public static long key(long seed, long index) {
+        final long key = mix(seed ^ mix(index));
+        return key == 0 ? 1 : key;
+    }
+
+    /**
+     * @return location of the key in [0, 1).
+     */
+    public static double location(long key) {
+        return (key >>> 11) * 0x1.0p-53;
+    }
+}
@@ -0,0 +1,159 @@
+package org.freenetproject.routing_simulator.graph.store;
+
+import org.freenetproject.routing_simulator.util.SplitMix;
+
+import java.util.Arrays;
+
+/**
+ * Store which replaces the least recently used key when full. Keys are held
+ * in slots linked in order of use, and found by an open addressing table of
+ * slot numbers.
+ * 
+ * All state is in primitive arrays which grow as keys are stored, up to about
+ * 24 bytes per slot when full.
+ */
+public class LRUStore implements KeyStore {
+    private static final int INITIAL_SLOTS = 16;
+    private static final int NONE = -1;
+
+    private final int capacity;
+    private long[] keys = new long[0];
+    /**
+     * Slots used less and more recently than each slot.
+     */
+    private int[] older = new int[0], newer = new int[0];
+    private int oldest = NONE, newest = NONE;
+    /**
+     * Open addressing table of slot + 1, or zero for empty entries. Its
+     * length is a power of two at least twice the number of slots.
+     */
+    private int[] table = new int[0];
+    private int size = 0;
+
+    /**
+     * @param capacity
+     *            Maximum number of keys held.
+     */
+    public LRUStore(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Capacity must be at least 1.");
+        this.capacity = capacity;
+    }
+
+    @Override
+    public boolean contains(long key) {
+        final int slot = find(key);
+        if (slot == NONE)
+            return false;
+        unlink(slot);
+        linkNewest(slot);
+        return true;
+    }
+
+    @Override
+    public void put(long key) {
+        if (contains(key))
+            return;
+
+        final int slot;
+        if (size < capacity) {
+            if (size == keys.length)
+                grow();
+            slot = size++;
+        } else {
+            slot = oldest;
+            unlink(slot);
+            remove(keys[slot]);
+        }
+        keys[slot] = key;
+        linkNewest(slot);
+        insert(key, slot);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    private void unlink(int slot) {
+        if (older[slot] == NONE)
+            oldest = newer[slot];
+        else
+            newer[older[slot]] = newer[slot];
+        if (newer[slot] == NONE)
+            newest = older[slot];
+        else
+            older[newer[slot]] = older[slot];
+    }
+
+    private void linkNewest(int slot) {
+        older[slot] = newest;
+        newer[slot] = NONE;
+        if (newest == NONE)
+            oldest = slot;
+        else
+            newer[newest] = slot;
+        newest = slot;
+    }
+
+    private int index(long key) {
+        return (int) SplitMix.mix(key) & (table.length - 1);
+    }
+
+    private int find(long key) {
+        if (size == 0)
+            return NONE;
+        final int mask = table.length - 1;
+        for (int i = index(key);; i = (i + 1) & mask) {
+            if (table[i] == 0)
+                return NONE;
+            if (keys[table[i] - 1] == key)
+                return table[i] - 1;
+        }
+    }
+
+    private void insert(long key, int slot) {
+        final int mask = table.length - 1;
+        int i = index(key);
+        while (table[i] != 0)
+            i = (i + 1) & mask;
+        table[i] = slot + 1;
+    }
+
+    /**
+     * Remove a key from the table, shifting back later entries of its probe
+     * sequence so that lookups need no tombstones.
+     */
+    private void remove(long key) {
+        final int mask = table.length - 1;
+        int i = index(key);
+        while (keys[table[i] - 1] != key)
+            i = (i + 1) & mask;
+        int gap = i;
+        for (int j = (i + 1) & mask; table[j] != 0; j = (j + 1) & mask) {
+            final int home = index(keys[table[j] - 1]);
+            // Move the entry if its home is not cyclically in (gap, j].
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                table[gap] = table[j];
+                gap = j;
+            }
+        }
+        table[gap] = 0;
+    }
+
+    private void grow() {
+        final int slots = Math.min(capacity,
+                Math.max(INITIAL_SLOTS, keys.length * 2));
+        keys = Arrays.copyOf(keys, slots);
+        older = Arrays.copyOf(older, slots);
+        newer = Arrays.copyOf(newer, slots);
+        table = new int[Integer.highestOneBit(slots * 2 - 1) << 1];
+        for (int slot = 0; slot < size; slot++)
+            insert(keys[slot], slot);
+    }
+}
@@ -0,0 +1,90 @@
+package org.freenetproject.routing_simulator.graph.store;
+
+import org.freenetproject.routing_simulator.util.SplitMix;
+
+/**
+ * Store in the style of Freenet's salted hash store. A key can only be held in
+ * one of a few slots derived from a hash of the key and the store's salt.
+ * Storing a key takes the first empty one of its slots, or overwrites the
+ * first if all are taken. There is no recency information, so keys are
+ * replaced in effectively random order.
+ * 
+ * The only state is one long per slot, allocated when the first key is
+ * stored.
+ */
+public class SaltedHashStore implements KeyStore {
+    /**
+     * Number of slots a key can be held in.
+     */
+    private static final int PROBES = 4;
+
+    private final int capacity;
+    private final long salt;
+    private long[] keys = null;
+    private int size = 0;
+
+    /**
+     * @param capacity
+     *            Number of slots.
+     * @param salt
+     *            Salt which varies the slots of keys between stores.
+     */
+    public SaltedHashStore(int capacity, long salt) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Capacity must be at least 1.");
+        this.capacity = capacity;
+        this.salt = salt;
+    }
+
+    @Override
+    public boolean contains(long key) {
+        if (keys == null)
+            return false;
+        final long hash = SplitMix.mix(key ^ salt);
+        for (int i = 0; i < PROBES; i++) {
+            if (keys[slot(hash, i)] == key)
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void put(long key) {
+        if (keys == null)
+            keys = new long[capacity];
+        final long hash = SplitMix.mix(key ^ salt);
+        int empty = -1;
+        for (int i = 0; i < PROBES; i++) {
+            final int slot = slot(hash, i);
+            if (keys[slot] == key)
+                return;
+            if (keys[slot] == 0 && empty == -1)
+                empty = slot;
+        }
+        if (empty == -1) {
+            keys[slot(hash, 0)] = key;
+        } else {
+            keys[empty] = key;
+            size++;
+        }
+    }
+
+    /**
+     * @return the slot for the given probe of a key hash.
+     */
+    private int slot(long hash, int probe) {
+        // Each probe takes different bits of the hash.
+        final long bits = Long.rotateLeft(hash, probe * 16) >>> 1;
+        return (int) (bits % capacity);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+}
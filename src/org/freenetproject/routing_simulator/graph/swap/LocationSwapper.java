@@ -0,0 +1,199 @@
+package org.freenetproject.routing_simulator.graph.swap;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.freenetproject.routing_simulator.graph.Graph;
+import org.freenetproject.routing_simulator.graph.Location;
+import org.freenetproject.routing_simulator.graph.node.SimpleNode;
+
+/**
+ * Freenet's darknet location swapping. A node starts a random walk, and the
+ * node the walk ends at considers swapping locations with it. Let D1 be the
+ * product of the distances between each of the two nodes and its peers, and
+ * D2 the same product if they swapped locations. The swap is made if D2 <= D1,
+ * and otherwise with probability D1 / D2. Over many swaps peers come to have
+ * close locations, which makes the network routable.
+ * 
+ * Swap attempts run on several threads. Each thread claims both nodes of an
+ * attempt before changing their locations, so concurrent swaps are between
+ * disjoint pairs and every location remains held by exactly one node. An
+ * attempt whose node is already claimed is abandoned. Peer locations read
+ * while deciding a swap may be changed concurrently by another swap, much as
+ * in a real network. Only locations change; the topology must not be changed
+ * while swapping.
+ */
+public class LocationSwapper {
+    private final Graph graph;
+    private final int walkLength;
+    private final int threads;
+    /**
+     * One for each node claimed by an attempt in progress, otherwise zero.
+     */
+    private final AtomicIntegerArray claimed;
+
+    private long attempts = 0, swaps = 0, contended = 0;
+
+    /**
+     * @param graph
+     *            Graph whose node locations to swap.
+     * @param walkLength
+     *            Hops of the random walk which selects the swap partner.
+     * @param threads
+     *            Number of threads to attempt swaps on.
+     */
+    public LocationSwapper(Graph graph, int walkLength, int threads) {
+        if (walkLength < 1)
+            throw new IllegalArgumentException(
+                    "Walk length must be at least 1.");
+        if (threads < 1)
+            throw new IllegalArgumentException(
+                    "Must use at least one thread.");
+        this.graph = graph;
+        this.walkLength = walkLength;
+        this.threads = threads;
+        this.claimed = new AtomicIntegerArray(graph.size());
+    }
+
+    /**
+     * Make swap attempts, split evenly between the threads, and wait for them
+     * to finish. With a single thread the result depends only on the seed.
+     * 
+     * @param nAttempts
+     *            Number of swap attempts to make.
+     * @param random
+     *            Provides the seed of each thread's random generator.
+     * @throws InterruptedException
+     *             Interrupted while waiting for the threads.
+     */
+    public void run(long nAttempts, RandomGenerator random)
+            throws InterruptedException {
+        final Worker[] workers = new Worker[threads];
+        final Thread[] running = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final long share = nAttempts / threads
+                    + (i < nAttempts % threads ? 1 : 0);
+            workers[i] = new Worker(share, new MersenneTwister(
+                    random.nextLong()));
+        }
+        if (threads == 1) {
+            workers[0].run();
+        } else {
+            for (int i = 0; i < threads; i++) {
+                running[i] = new Thread(workers[i], "swap-" + i);
+                running[i].start();
+            }
+            for (Thread thread : running)
+                thread.join();
+        }
+        for (Worker worker : workers) {
+            attempts += worker.attempts;
+            swaps += worker.swaps;
+            contended += worker.contended;
+        }
+    }
+
+    /**
+     * @return attempts made so far, including abandoned ones.
+     */
+    public long getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * @return attempts which swapped locations.
+     */
+    public long getSwaps() {
+        return swaps;
+    }
+
+    /**
+     * @return attempts abandoned because a node was claimed by another.
+     */
+    public long getContended() {
+        return contended;
+    }
+
+    /**
+     * @return the node a uniform random walk from the given node ends at.
+     */
+    private SimpleNode walk(SimpleNode node, RandomGenerator random) {
+        for (int i = 0; i < walkLength; i++) {
+            final int degree = node.degree();
+            if (degree == 0)
+                return node;
+            node = node.getConnections().get(random.nextInt(degree));
+        }
+        return node;
+    }
+
+    /**
+     * @return the factor by which the product of distances between the node
+     *         and its peers changes if its location moves. The other node of
+     *         the swap is skipped: the distance between the two does not
+     *         change.
+     */
+    private static double change(SimpleNode node, double from, double to,
+            SimpleNode other) {
+        double factor = 1.0;
+        for (int i = 0; i < node.degree(); i++) {
+            final SimpleNode peer = node.getConnections().get(i);
+            if (peer == other)
+                continue;
+            final double location = peer.getLocation();
+            factor *= Math.max(Location.distance(to, location),
+                    Double.MIN_NORMAL)
+                    / Math.max(Location.distance(from, location),
+                            Double.MIN_NORMAL);
+        }
+        return factor;
+    }
+
+    private class Worker implements Runnable {
+        private final long nAttempts;
+        private final RandomGenerator random;
+        private long attempts = 0, swaps = 0, contended = 0;
+
+        Worker(long nAttempts, RandomGenerator random) {
+            this.nAttempts = nAttempts;
+            this.random = random;
+        }
+
+        @Override
+        public void run() {
+            for (; attempts < nAttempts; attempts++) {
+                final SimpleNode a = graph.getNode(random.nextInt(graph
+                        .size()));
+                if (!claimed.compareAndSet(a.index, 0, 1)) {
+                    contended++;
+                    continue;
+                }
+                final SimpleNode b = walk(a, random);
+                if (b == a) {
+                    claimed.set(a.index, 0);
+                    continue;
+                }
+                if (!claimed.compareAndSet(b.index, 0, 1)) {
+                    claimed.set(a.index, 0);
+                    contended++;
+                    continue;
+                }
+
+                final double locationA = a.getLocation();
+                final double locationB = b.getLocation();
+                // D2 / D1
+                final double ratio = change(a, locationA, locationB, b)
+                        * change(b, locationB, locationA, a);
+                if (ratio <= 1.0 || random.nextDouble() * ratio < 1.0) {
+                    a.setLocation(locationB);
+                    b.setLocation(locationA);
+                    swaps++;
+                }
+
+                claimed.set(b.index, 0);
+                claimed.set(a.index, 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.freenetproject.routing_simulator.util;
+
+import org.apache.commons.math3.random.RandomGenerator;
+
+/**
+ * Samples indexes with probability proportional to their weights in constant
+ * time, using Vose's alias method. Construction is linear in the number of
+ * weights. Immutable, so it may be shared between threads given separate
+ * random generators.
+ */
+public class AliasTable {
+    /**
+     * Probability of keeping the column chosen uniformly rather than taking
+     * its alias.
+     */
+    private final double[] probability;
+    private final int[] alias;
+
+    /**
+     * @param weights
+     *            Non-negative weight of each index. At least one must be
+     *            positive.
+     */
+    public AliasTable(double[] weights) {
+        final int n = weights.length;
+        if (n == 0)
+            throw new IllegalArgumentException("Must have at least one weight.");
+        double total = 0;
+        for (double weight : weights) {
+            if (!(weight >= 0) || Double.isInfinite(weight))
+                throw new IllegalArgumentException("Invalid weight " + weight);
+            total += weight;
+        }
+        if (!(total > 0))
+            throw new IllegalArgumentException("Weights must not all be zero.");
+
+        probability = new double[n];
+        alias = new int[n];
+
+        // Scale so the average weight is one, then pair columns under and over.
+        final double[] scaled = new double[n];
+        final int[] small = new int[n];
+        final int[] large = new int[n];
+        int nSmall = 0, nLarge = 0;
+        for (int i = 0; i < n; i++) {
+            scaled[i] = weights[i] * n / total;
+            if (scaled[i] < 1.0)
+                small[nSmall++] = i;
+            else
+                large[nLarge++] = i;
+        }
+
+        while (nSmall > 0 && nLarge > 0) {
+            final int less = small[--nSmall];
+            final int more = large[--nLarge];
+            probability[less] = scaled[less];
+            alias[less] = more;
+            scaled[more] = (scaled[more] + scaled[less]) - 1.0;
+            if (scaled[more] < 1.0)
+                small[nSmall++] = more;
+            else
+                large[nLarge++] = more;
+        }
+
+        // What remains is one up to rounding error.
+        while (nLarge > 0) {
+            final int i = large[--nLarge];
+            probability[i] = 1.0;
+            alias[i] = i;
+        }
+        while (nSmall > 0) {
+            final int i = small[--nSmall];
+            probability[i] = 1.0;
+            alias[i] = i;
+        }
+    }
+
+    /**
+     * @param random
+     *            Randomness source to use.
+     * @return index selected with probability proportional to its weight.
+     */
+    public int sample(RandomGenerator random) {
+        final int column = random.nextInt(probability.length);
+        return random.nextDouble() < probability[column] ? column
+                : alias[column];
+    }
+
+    /**
+     * @return number of weights the table samples from.
+     */
+    public int size() {
+        return probability.length;
+    }
+}
@@ -1,8 +1,11 @@
 package org.freenetproject.routing_simulator.util;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 
 /**
  * Collection of generic array utility functions.
@@ -35,6 +38,21 @@ public final class ArrayUtil {
         return s.toString();
     }
 
+    /**
+     * To String an array's contents.
+     * 
+     * @param array
+     *            The array to convert to a string.
+     * @return String representations of the array.
+     */
+    public static String stringArray(final double[] array) {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < array.length; i++) {
+            s.append(i).append("\t").append(array[i]).append("\n");
+        }
+        return s.toString();
+    }
+
     /**
      * To String an array's contents.
      * 
@@ -65,8 +83,45 @@ public final class ArrayUtil {
      */
     public static void writeArray(final int[] array, final File target)
             throws IOException {
-        FileOutputStream outputStream = new FileOutputStream(target);
-        outputStream.write(stringArray(array).getBytes("UTF-8"));
-        outputStream.close();
+        // Written a line at a time so large arrays need not fit in a string.
+        Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(target), "UTF-8"), 1 << 16);
+        try {
+            for (int i = 0; i < array.length; i++) {
+                writer.write(Integer.toString(i));
+                writer.write('\t');
+                writer.write(String.valueOf(array[i]));
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Write an array's contents to a file.
+     * 
+     * @param array
+     *            Array to write to file.
+     * @param target
+     *            File to write array to.
+     * @throws IOException
+     *             Error writing the file.
+     */
+    public static void writeArray(final double[] array, final File target)
+            throws IOException {
+        // Written a line at a time so large arrays need not fit in a string.
+        Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(target), "UTF-8"), 1 << 16);
+        try {
+            for (int i = 0; i < array.length; i++) {
+                writer.write(Integer.toString(i));
+                writer.write('\t');
+                writer.write(String.valueOf(array[i]));
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
     }
 }
@@ -0,0 +1,48 @@
+package org.freenetproject.routing_simulator.util;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive doubles. Avoids boxing every element as an
+ * ArrayList&lt;Double&gt; would.
+ */
+public class DoubleArrayList {
+    private double[] values;
+    private int size = 0;
+
+    public DoubleArrayList() {
+        this(16);
+    }
+
+    public DoubleArrayList(int capacity) {
+        values = new double[Math.max(capacity, 1)];
+    }
+
+    public void add(double value) {
+        if (size == values.length)
+            values = Arrays.copyOf(values, values.length * 2);
+        values[size++] = value;
+    }
+
+    public double get(int i) {
+        if (i >= size)
+            throw new IndexOutOfBoundsException("Index " + i + " with size "
+                    + size);
+        return values[i];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return copy of the elements.
+     */
+    public double[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
@@ -1,6 +1,7 @@
 package org.freenetproject.routing_simulator.util;
 
 import org.apache.commons.cli.CommandLine;
+import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.FileInputStream;
@@ -72,7 +73,8 @@ public final class File {
         }
         final java.io.File file = new java.io.File(cmd.getOptionValue(option));
         try {
-            return new DataInputStream(new FileInputStream(file));
+            return new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(file)));
         } catch (FileNotFoundException e) {
             LOGGER.severe("Cannot read \"" + file.getAbsolutePath()
                     + "\" as a file.");
@@ -92,12 +94,24 @@ public final class File {
      */
     public static DataOutputStream writableFile(final String option,
             final CommandLine cmd) throws FileNotFoundException {
+        return writableFile(option, cmd, false);
+    }
+
+    /**
+     * As above, optionally appending to the file instead of replacing it.
+     * 
+     * @param append
+     *            whether to write after any existing contents of the file.
+     */
+    public static DataOutputStream writableFile(final String option,
+            final CommandLine cmd, final boolean append)
+            throws FileNotFoundException {
         if (!cmd.hasOption(option)) {
             return null;
         }
         final java.io.File file = new java.io.File(cmd.getOptionValue(option));
         try {
-            return new DataOutputStream(new FileOutputStream(file));
+            return new DataOutputStream(new FileOutputStream(file, append));
         } catch (FileNotFoundException e) {
             LOGGER.severe("Unable to open \"" + file.getAbsolutePath()
                     + "\" for output:");
@@ -0,0 +1,171 @@
+package org.freenetproject.routing_simulator.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Counts of non-negative values in fixed-width bins. Bins are added as larger
+ * values are recorded. The exact sum is kept alongside so the mean does not
+ * suffer from binning; percentiles are resolved to the bin width.
+ */
+public class Histogram {
+    private final double binWidth;
+    private long[] counts;
+    private long count = 0;
+    private double sum = 0.0;
+
+    /**
+     * @param binWidth
+     *            Width of each bin. A width of 1 counts integer values
+     *            exactly.
+     */
+    public Histogram(double binWidth) {
+        if (binWidth <= 0.0)
+            throw new IllegalArgumentException("Bin width must be positive.");
+        this.binWidth = binWidth;
+        this.counts = new long[16];
+    }
+
+    /**
+     * Record a value.
+     * 
+     * @param value
+     *            Value to record. Must not be negative.
+     */
+    public void record(double value) {
+        if (value < 0.0)
+            throw new IllegalArgumentException("Cannot record negative value "
+                    + value);
+        final int bin = (int) (value / binWidth);
+        ensureBins(bin + 1);
+        counts[bin]++;
+        count++;
+        sum += value;
+    }
+
+    /**
+     * Add all values recorded in another histogram with the same bin width.
+     * 
+     * @param other
+     *            Histogram to add to this one.
+     */
+    public void merge(Histogram other) {
+        if (other.binWidth != binWidth)
+            throw new IllegalArgumentException("Cannot merge bin width "
+                    + other.binWidth + " into " + binWidth);
+        ensureBins(other.counts.length);
+        for (int i = 0; i < other.counts.length; i++)
+            counts[i] += other.counts[i];
+        count += other.count;
+        sum += other.sum;
+    }
+
+    public double getBinWidth() {
+        return binWidth;
+    }
+
+    /**
+     * @return number of values recorded.
+     */
+    public long count() {
+        return count;
+    }
+
+    /**
+     * @return sum of the values recorded.
+     */
+    public double sum() {
+        return sum;
+    }
+
+    /**
+     * @return mean of the values recorded, or NaN if none were.
+     */
+    public double mean() {
+        return sum / count;
+    }
+
+    /**
+     * @return number of bins up to and including the highest non-empty one.
+     */
+    public int bins() {
+        int bins = counts.length;
+        while (bins > 0 && counts[bins - 1] == 0)
+            bins--;
+        return bins;
+    }
+
+    /**
+     * @return number of values recorded in the bin.
+     */
+    public long getCount(int bin) {
+        return bin < counts.length ? counts[bin] : 0;
+    }
+
+    /**
+     * @return count of each bin up to and including the highest non-empty
+     *         one.
+     */
+    public long[] getCounts() {
+        return Arrays.copyOf(counts, bins());
+    }
+
+    /**
+     * @param fraction
+     *            Percentile as a fraction in [0, 1]; 0.5 is the median.
+     * @return lower bound of the bin containing the percentile, or NaN if no
+     *         values were recorded.
+     */
+    public double percentile(double fraction) {
+        if (fraction < 0.0 || fraction > 1.0)
+            throw new IllegalArgumentException("Fraction must be in [0, 1].");
+        if (count == 0)
+            return Double.NaN;
+        // Rank of the value at the percentile; at least the first value.
+        final long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int bin = 0; bin < counts.length; bin++) {
+            seen += counts[bin];
+            if (seen >= rank)
+                return bin * binWidth;
+        }
+        throw new IllegalStateException("Counts do not sum to " + count);
+    }
+
+    private void ensureBins(int bins) {
+        if (bins > counts.length)
+            counts = Arrays.copyOf(counts, Math.max(bins, counts.length * 2));
+    }
+
+    /**
+     * Write the bin width, counts and sum so that {@link #read} gives an
+     * identical histogram.
+     */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeDouble(binWidth);
+        out.writeDouble(sum);
+        int bins = counts.length;
+        while (bins > 0 && counts[bins - 1] == 0)
+            bins--;
+        out.writeInt(bins);
+        for (int i = 0; i < bins; i++)
+            out.writeLong(counts[i]);
+    }
+
+    /**
+     * Read a histogram written by {@link #write}.
+     */
+    public static Histogram read(DataInputStream in) throws IOException {
+        final Histogram histogram = new Histogram(in.readDouble());
+        histogram.sum = in.readDouble();
+        final int bins = in.readInt();
+        histogram.ensureBins(bins);
+        for (int i = 0; i < bins; i++) {
+            histogram.counts[i] = in.readLong();
+            histogram.count += histogram.counts[i];
+        }
+        return histogram;
+    }
+}
@@ -0,0 +1,63 @@
+package org.freenetproject.routing_simulator.util;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive ints. Avoids boxing every element as an
+ * ArrayList&lt;Integer&gt; would, and can be cleared and reused without
+ * allocating.
+ */
+public class IntArrayList {
+    private int[] values;
+    private int size = 0;
+
+    public IntArrayList() {
+        this(16);
+    }
+
+    public IntArrayList(int capacity) {
+        values = new int[Math.max(capacity, 1)];
+    }
+
+    public void add(int value) {
+        if (size == values.length)
+            values = Arrays.copyOf(values, values.length * 2);
+        values[size++] = value;
+    }
+
+    public int get(int i) {
+        if (i >= size)
+            throw new IndexOutOfBoundsException("Index " + i + " with size "
+                    + size);
+        return values[i];
+    }
+
+    public void set(int i, int value) {
+        if (i >= size)
+            throw new IndexOutOfBoundsException("Index " + i + " with size "
+                    + size);
+        values[i] = value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Remove all elements, keeping the allocated capacity.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return copy of the elements.
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
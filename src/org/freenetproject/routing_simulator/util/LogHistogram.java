@@ -0,0 +1,96 @@
+package org.freenetproject.routing_simulator.util;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Counts of positive values in a fixed number of bins of equal width on a log
+ * scale, for distributions spanning several orders of magnitude such as link
+ * lengths. Values below the smallest bin are counted in it, and values above
+ * the largest in that.
+ */
+public class LogHistogram {
+    private final double min;
+    private final double binsPerDecade;
+    private final long[] counts;
+    private long count = 0;
+
+    /**
+     * @param min
+     *            Lower bound of the first bin. Must be positive.
+     * @param max
+     *            Upper bound of the last bin.
+     * @param binsPerDecade
+     *            Number of bins for each factor of ten.
+     */
+    public LogHistogram(double min, double max, int binsPerDecade) {
+        if (!(min > 0) || !(max > min) || binsPerDecade < 1)
+            throw new IllegalArgumentException(
+                    "Bounds must be positive and increasing with at least one bin per decade.");
+        this.min = min;
+        this.binsPerDecade = binsPerDecade;
+        this.counts = new long[(int) Math.ceil(Math.log10(max / min)
+                * binsPerDecade)];
+    }
+
+    /**
+     * Record a value.
+     *
+     * @param value
+     *            Value to record.
+     */
+    public void record(double value) {
+        int bin = value > min ? (int) (Math.log10(value / min) * binsPerDecade)
+                : 0;
+        if (bin >= counts.length)
+            bin = counts.length - 1;
+        counts[bin]++;
+        count++;
+    }
+
+    /**
+     * @return number of values recorded.
+     */
+    public long count() {
+        return count;
+    }
+
+    /**
+     * @return number of bins.
+     */
+    public int bins() {
+        return counts.length;
+    }
+
+    /**
+     * @param bin
+     *            Index of a bin.
+     * @return the upper bound of the bin.
+     */
+    public double upperBound(int bin) {
+        return min * Math.pow(10, (bin + 1) / binsPerDecade);
+    }
+
+    /**
+     * Write the cumulative distribution as lines of "[upper bound] [fraction
+     * of values in this bin or below]", from the first bin with values to the
+     * first bin which includes all of them.
+     *
+     * @param writer
+     *            Destination of the lines.
+     * @throws IOException
+     *             Error writing.
+     */
+    public void writeCDF(Writer writer) throws IOException {
+        long cumulative = 0;
+        for (int bin = 0; bin < counts.length && cumulative < count; bin++) {
+            cumulative += counts[bin];
+            if (cumulative == 0)
+                continue;
+            writer.write(Double.toString(upperBound(bin)));
+            writer.write(' ');
+            writer.write(Double.toString((double) cumulative / count));
+            writer.write('\n');
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package org.freenetproject.routing_simulator.util;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads lines of numbers separated by spaces or tabs directly from bytes,
+ * without making a String for each line or field. Input compressed with gzip
+ * is detected and decompressed. Blank lines are skipped, and lines may end in
+ * "\n" or "\r\n".
+ * <p>
+ * Numbers are parsed as {@link Long#parseLong} and {@link Double#parseDouble}
+ * would, with the same results. A field which is not a number, or a missing
+ * field, is an error which gives the line number.
+ */
+public class NumberReader implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Powers of ten which are exact as doubles.
+     */
+    private static final double[] POWERS = new double[23];
+
+    static {
+        POWERS[0] = 1;
+        for (int i = 1; i < POWERS.length; i++)
+            POWERS[i] = POWERS[i - 1] * 10;
+    }
+
+    private final InputStream input;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position = 0, limit = 0;
+
+    /**
+     * Bytes of the field being parsed.
+     */
+    private byte[] field = new byte[32];
+
+    /**
+     * Number of the current line, starting from 1, or 0 before the first.
+     */
+    private long line = 0;
+    /**
+     * Number of line endings read.
+     */
+    private long ends = 0;
+
+    /**
+     * @param input
+     *            Stream to read, which may be compressed with gzip. It is
+     *            closed with the reader.
+     * @throws IOException
+     *             Error reading the start of the stream.
+     */
+    public NumberReader(InputStream input) throws IOException {
+        if (!input.markSupported())
+            input = new BufferedInputStream(input);
+        input.mark(2);
+        final int first = input.read();
+        final int second = input.read();
+        input.reset();
+        if (first == (GZIPInputStream.GZIP_MAGIC & 0xff)
+                && second == GZIPInputStream.GZIP_MAGIC >>> 8)
+            input = new GZIPInputStream(input, BUFFER_SIZE);
+        this.input = input;
+    }
+
+    /**
+     * @return Number of the current line, starting from 1.
+     */
+    public long line() {
+        return line;
+    }
+
+    /**
+     * Advance to the next line which is not blank, skipping any fields left
+     * on the current line.
+     *
+     * @return false if there are no more lines.
+     */
+    public boolean nextLine() throws IOException {
+        int c;
+        while ((c = peek()) != -1 && ends < line) {
+            position++;
+            if (c == '\n')
+                ends++;
+        }
+        while (true) {
+            skipSpace();
+            c = peek();
+            if (c == -1)
+                return false;
+            if (c != '\n')
+                break;
+            position++;
+            ends++;
+        }
+        line = ends + 1;
+        return true;
+    }
+
+    /**
+     * @return true if there is another field on the current line.
+     */
+    public boolean hasField() throws IOException {
+        skipSpace();
+        final int c = peek();
+        return c != -1 && c != '\n';
+    }
+
+    /**
+     * Require that there are no more fields on the current line.
+     *
+     * @throws IOException
+     *             There is another field.
+     */
+    public void endLine() throws IOException {
+        if (hasField())
+            throw error("Unexpected field \"" + text(readField()) + "\"");
+    }
+
+    /**
+     * @return the next field on the line as a long.
+     * @throws IOException
+     *             There is no next field, or it is not an integer in range.
+     */
+    public long nextLong() throws IOException {
+        final int length = readField();
+        int i = 0;
+        final boolean negative = field[0] == '-';
+        if (negative || field[0] == '+')
+            i++;
+        if (i == length)
+            throw error("Expected an integer, not \"" + text(length) + "\"");
+
+        // Accumulate negatively so that Long.MIN_VALUE is in range.
+        long value = 0;
+        for (; i < length; i++) {
+            final int digit = field[i] - '0';
+            if (digit < 0 || digit > 9)
+                throw error("Expected an integer, not \"" + text(length) + "\"");
+            if (value < (Long.MIN_VALUE + digit) / 10)
+                throw error("Integer \"" + text(length) + "\" is out of range");
+            value = value * 10 - digit;
+        }
+        if (!negative) {
+            if (value == Long.MIN_VALUE)
+                throw error("Integer \"" + text(length) + "\" is out of range");
+            value = -value;
+        }
+        return value;
+    }
+
+    /**
+     * @return the next field on the line as an int.
+     * @throws IOException
+     *             There is no next field, or it is not an integer in range.
+     */
+    public int nextInt() throws IOException {
+        final long value = nextLong();
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+            throw error("Integer " + value + " is out of range");
+        return (int) value;
+    }
+
+    /**
+     * @return the next field on the line as a double.
+     * @throws IOException
+     *             There is no next field, or it is not a number.
+     */
+    public double nextDouble() throws IOException {
+        final int length = readField();
+
+        /*
+         * Decimal numbers with at most 15 significant digits and a small
+         * exponent are exactly a double multiplied or divided by an exact
+         * power of ten, so one correctly rounded operation gives the same
+         * result as parseDouble(). Anything else is left to it.
+         */
+        int i = 0;
+        final boolean negative = field[0] == '-';
+        if (negative || field[0] == '+')
+            i++;
+        long mantissa = 0;
+        int digits = 0, significant = 0, fraction = 0;
+        boolean point = false;
+        for (; i < length; i++) {
+            final byte c = field[i];
+            if (c == '.' && !point) {
+                point = true;
+                continue;
+            }
+            final int digit = c - '0';
+            if (digit < 0 || digit > 9)
+                break;
+            digits++;
+            if (point)
+                fraction++;
+            if (mantissa != 0 || digit != 0)
+                significant++;
+            mantissa = mantissa * 10 + digit;
+            if (significant > 15)
+                return parseDouble(length);
+        }
+        if (digits == 0)
+            return parseDouble(length);
+
+        int exponent = 0;
+        if (i < length) {
+            if (field[i] != 'e' && field[i] != 'E')
+                return parseDouble(length);
+            i++;
+            final boolean negativeExponent = i < length && field[i] == '-';
+            if (i < length && (field[i] == '-' || field[i] == '+'))
+                i++;
+            if (i == length || length - i > 3)
+                return parseDouble(length);
+            for (; i < length; i++) {
+                final int digit = field[i] - '0';
+                if (digit < 0 || digit > 9)
+                    return parseDouble(length);
+                exponent = exponent * 10 + digit;
+            }
+            if (negativeExponent)
+                exponent = -exponent;
+        }
+        exponent -= fraction;
+
+        double value = mantissa;
+        if (mantissa != 0) {
+            if (exponent < -POWERS.length + 1 || exponent >= POWERS.length)
+                return parseDouble(length);
+            value = exponent < 0 ? value / POWERS[-exponent] : value
+                    * POWERS[exponent];
+        }
+        return negative ? -value : value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    private double parseDouble(int length) throws IOException {
+        try {
+            return Double.parseDouble(text(length));
+        } catch (NumberFormatException e) {
+            throw error("Expected a number, not \"" + text(length) + "\"");
+        }
+    }
+
+    /**
+     * Copy the next field on the line into {@link #field}.
+     *
+     * @return length of the field.
+     * @throws IOException
+     *             There is no next field.
+     */
+    private int readField() throws IOException {
+        if (!hasField())
+            throw error("Missing field");
+        int length = 0;
+        int c;
+        while ((c = peek()) != -1 && c != ' ' && c != '\t' && c != '\r'
+                && c != '\n') {
+            if (length == field.length)
+                field = Arrays.copyOf(field, length * 2);
+            field[length++] = (byte) c;
+            position++;
+        }
+        return length;
+    }
+
+    private String text(int length) throws IOException {
+        return new String(field, 0, length, "UTF-8");
+    }
+
+    private IOException error(String message) {
+        return new IOException("Line " + line + ": " + message + ".");
+    }
+
+    private void skipSpace() throws IOException {
+        int c;
+        while ((c = peek()) == ' ' || c == '\t' || c == '\r')
+            position++;
+    }
+
+    /**
+     * @return the next byte without consuming it, or -1 at the end of input.
+     */
+    private int peek() throws IOException {
+        if (position == limit) {
+            limit = input.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position] & 0xff;
+    }
+}
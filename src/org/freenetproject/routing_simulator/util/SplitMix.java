@@ -0,0 +1,24 @@
+package org.freenetproject.routing_simulator.util;
+
+/**
+ * Hashing of 64-bit values for deriving keys, latencies and table slots from
+ * seeds and indexes without storing them.
+ */
+public final class SplitMix {
+
+    /**
+     * Private constructor.
+     */
+    private SplitMix() {
+    }
+
+    /**
+     * SplitMix64 finalizer: spreads every input bit over the whole output.
+     */
+    public static long mix(long z) {
+        z += 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
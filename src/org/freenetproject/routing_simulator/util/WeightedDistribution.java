@@ -2,72 +2,45 @@ package org.freenetproject.routing_simulator.util;
 
 import org.apache.commons.math3.random.RandomGenerator;
 
-import java.io.BufferedReader;
 import java.io.DataInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.ArrayList;
-import java.util.logging.Logger;
 
 /**
- * Selects from a weighted distribution.
+ * Selects from a weighted distribution in constant time with an
+ * {@link AliasTable}.
  */
 public class WeightedDistribution {
-    /**
-     * Message logger
-     */
-    private static final Logger LOGGER = Logger
-            .getLogger(WeightedDistribution.class.getName());
-
-    private class Event {
-        public final int value, occurrences;
-
-        public Event(int value, int occurrences) {
-            this.value = value;
-            this.occurrences = occurrences;
-        }
-    }
-
-    private final ArrayList<Event> events;
-    private final int totalOccurances;
+    private final int[] values;
     private final RandomGenerator random;
+    private final AliasTable table;
 
     /**
      * Replicates given distribution of values. TODO: Does Java have templating?
      * Limiting to returning integers.
      * 
      * @param input
-     *            stream to read from. Format
-     *            "[number] [number of occurrences]\n"
+     *            stream to read from, which may be compressed with gzip.
+     *            Format "[number] [number of occurrences]\n"
      * @param random
      *            Used for random values.
+     * @throws IOException
+     *             Error reading the stream, or a line is malformed.
      */
-    public WeightedDistribution(DataInputStream input, RandomGenerator random) {
-        this.events = new ArrayList<Event>();
+    public WeightedDistribution(DataInputStream input, RandomGenerator random)
+            throws IOException {
         this.random = random;
-        int tentativeTotal = 0;
-        try {
-            BufferedReader reader = new BufferedReader(new InputStreamReader(
-                    input));
 
-            String line;
-            // TODO: This seems like a C++ way of doing things. What's the Java
-            // way?
-            while ((line = reader.readLine()) != null) {
-                String[] tokens = line.split(" ");
-                assert tokens.length == 2;
-                events.add(new Event(Integer.valueOf(tokens[0]), Integer
-                        .valueOf(tokens[1])));
-            }
-
-            for (Event event : events)
-                tentativeTotal += event.occurrences;
-        } catch (IOException e) {
-            LOGGER.severe(e.toString());
-            // TODO: Should these be thrown upwards or what?
-            System.exit(2);
+        final IntArrayList values = new IntArrayList();
+        final DoubleArrayList occurrences = new DoubleArrayList();
+        final NumberReader reader = new NumberReader(input);
+        while (reader.nextLine()) {
+            values.add(reader.nextInt());
+            occurrences.add(reader.nextLong());
+            reader.endLine();
         }
-        this.totalOccurances = tentativeTotal;
+
+        this.values = values.toArray();
+        this.table = new AliasTable(occurrences.toArray());
     }
 
     /**
@@ -75,12 +48,6 @@ public class WeightedDistribution {
      *         occurrences relative the total number of occurrences.
      */
     public int randomValue() {
-        // totalOccurances is sum of all occurrences, and the random number can
-        // be up to but not including it,
-        int sum = 0, rand = random.nextInt(totalOccurances), i = 0;
-        for (; rand > sum; i++)
-            sum += events.get(i).occurrences;
-        // i could have been incremented past end of array if the loop executed.
-        return events.get(i == 0 ? 0 : i - 1).value;
+        return values[table.sample(random)];
     }
 }
@@ -0,0 +1,36 @@
+package org.freenetproject.routing_simulator.util.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Giving a node random connections until it reaches its desired degree.
+ */
+@Name("org.freenetproject.routing_simulator.Bootstrap")
+@Label("Bootstrap")
+@Description("Giving a node random connections until it reaches its desired degree.")
+@Category({ "Routing Simulator", "Graph" })
+@Enabled(false)
+@StackTrace(false)
+public class BootstrapEvent extends Event {
+    @Label("Node")
+    @Description("Index of the node bootstrapped.")
+    public int node;
+
+    @Label("Degree")
+    @Description("Degree of the node afterwards.")
+    public int degree;
+
+    @Label("Retries")
+    @Description("Peers picked which did not give a connection.")
+    public int retries;
+
+    @Label("Disconnected")
+    @Description("Number of nodes left without connections.")
+    public int disconnected;
+}
@@ -0,0 +1,35 @@
+package org.freenetproject.routing_simulator.util.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Path folding along the path of a successful request.
+ */
+@Name("org.freenetproject.routing_simulator.Fold")
+@Label("Path Fold")
+@Description("Path folding along the path of a successful request.")
+@Category({ "Routing Simulator", "Routing" })
+@Enabled(false)
+@StackTrace(false)
+public class FoldEvent extends Event {
+    @Label("Folding Policy")
+    public String foldingPolicy;
+
+    @Label("Path Length")
+    @Description("Number of nodes on the path folded along.")
+    public int pathLength;
+
+    @Label("Folds")
+    @Description("Number of connections made by folding.")
+    public int folds;
+
+    @Label("Disconnected")
+    @Description("Number of nodes left without connections.")
+    public int disconnected;
+}
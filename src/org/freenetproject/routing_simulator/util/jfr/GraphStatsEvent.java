@@ -0,0 +1,30 @@
+package org.freenetproject.routing_simulator.util.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A phase of computing graph statistics.
+ */
+@Name("org.freenetproject.routing_simulator.GraphStats")
+@Label("Graph Statistics")
+@Description("A phase of computing graph statistics.")
+@Category({ "Routing Simulator", "Graph" })
+@Enabled(false)
+@StackTrace(false)
+public class GraphStatsEvent extends Event {
+    public static final String GEPHI = "Gephi";
+    public static final String GLOBAL_CLUSTERING = "Global clustering";
+    public static final String LOCAL_CLUSTERING = "Mean local clustering";
+
+    @Label("Phase")
+    public String phase;
+
+    @Label("Nodes")
+    public int nodes;
+}
@@ -0,0 +1,53 @@
+package org.freenetproject.routing_simulator.util.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A request routed from its origin until it succeeds or fails, including
+ * any path folding on success.
+ * <p>
+ * Like the other simulator events, this is disabled unless a recording
+ * enables it, as test_scripts/simulator.jfc does. Fields are only filled in
+ * once shouldCommit() is true, so a disabled event costs one check.
+ */
+@Name("org.freenetproject.routing_simulator.Request")
+@Label("Request")
+@Description("A request routed from its origin until it succeeds or fails.")
+@Category({ "Routing Simulator", "Routing" })
+@Enabled(false)
+@StackTrace(false)
+public class RequestEvent extends Event {
+    @Label("Origin")
+    @Description("Index of the node the request started from.")
+    public int origin;
+
+    @Label("Target")
+    @Description("Location routed towards.")
+    public double target;
+
+    @Label("Routing Policy")
+    public String routingPolicy;
+
+    @Label("Folding Policy")
+    public String foldingPolicy;
+
+    @Label("Look-Ahead")
+    public int lookAhead;
+
+    @Label("Success")
+    public boolean success;
+
+    @Label("Hops")
+    @Description("Number of nodes on the path to the target, or 0 on failure.")
+    public int hops;
+
+    @Label("Travel Length")
+    @Description("Hops used, including backtracking.")
+    public int travelLength;
+}
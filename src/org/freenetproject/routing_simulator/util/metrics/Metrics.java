@@ -0,0 +1,218 @@
+package org.freenetproject.routing_simulator.util.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters of the routing hot paths, so that a long simulation can be
+ * watched while it runs. The counters are always kept; once registered they
+ * can be read over JMX as the MBean {@link #NAME}, for example with
+ * jconsole, and optionally logged periodically.
+ */
+public final class Metrics implements MetricsMBean {
+    private static final Logger LOGGER = Logger.getLogger(Metrics.class
+            .getName());
+
+    public static final String NAME = "org.freenetproject.routing_simulator:type=Metrics";
+
+    /**
+     * Milliseconds between samples of the request rate.
+     */
+    private static final long SAMPLE_INTERVAL = 1000;
+
+    /**
+     * Requests started.
+     */
+    public static final StripedCounter REQUESTS = new StripedCounter();
+    /**
+     * Requests forwarded from one node to another.
+     */
+    public static final StripedCounter HOPS = new StripedCounter();
+    /**
+     * Requests which returned to a node after failing further on and were
+     * routed again from it.
+     */
+    public static final StripedCounter BACKTRACKS = new StripedCounter();
+    /**
+     * Distances to the target computed for peers and look-ahead candidates.
+     */
+    public static final StripedCounter LOOK_AHEAD_CANDIDATES = new StripedCounter();
+    /**
+     * Peer selections which used or had to fill a node's routing cache.
+     */
+    public static final StripedCounter ROUTING_CACHE_HITS = new StripedCounter();
+    public static final StripedCounter ROUTING_CACHE_MISSES = new StripedCounter();
+    /**
+     * Path folds offered to a node, and those which made a connection.
+     */
+    public static final StripedCounter FOLDS_ATTEMPTED = new StripedCounter();
+    public static final StripedCounter FOLDS_ACCEPTED = new StripedCounter();
+    /**
+     * Peers picked while bootstrapping a node which did not give it a
+     * connection.
+     */
+    public static final StripedCounter BOOTSTRAP_RETRIES = new StripedCounter();
+
+    private static final Metrics INSTANCE = new Metrics();
+
+    private static Timer timer = null;
+
+    private long lastRequests = 0;
+    private long lastSample = System.currentTimeMillis();
+    private volatile double requestsPerSecond = 0;
+
+    private Metrics() {
+    }
+
+    /**
+     * Register the MBean and start sampling the request rate. Does nothing if
+     * already registered.
+     */
+    public static synchronized void register() {
+        if (timer != null)
+            return;
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(INSTANCE, new ObjectName(NAME));
+        } catch (JMException e) {
+            LOGGER.warning("Cannot register metrics over JMX: " + e);
+        }
+        timer = new Timer("Metrics", true);
+        timer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                INSTANCE.sample();
+            }
+        }, SAMPLE_INTERVAL, SAMPLE_INTERVAL);
+    }
+
+    /**
+     * Log the counters periodically until the simulator exits.
+     *
+     * @param seconds
+     *            Seconds between logging.
+     */
+    public static synchronized void logEvery(int seconds) {
+        register();
+        timer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                LOGGER.warning(INSTANCE.toString());
+            }
+        }, seconds * 1000L, seconds * 1000L);
+    }
+
+    private synchronized void sample() {
+        final long now = System.currentTimeMillis();
+        final long requests = REQUESTS.sum();
+        if (now > lastSample) {
+            requestsPerSecond = (requests - lastRequests) * 1000.0
+                    / (now - lastSample);
+        }
+        lastRequests = requests;
+        lastSample = now;
+    }
+
+    @Override
+    public long getRequestsRouted() {
+        return REQUESTS.sum();
+    }
+
+    @Override
+    public long getHops() {
+        return HOPS.sum();
+    }
+
+    @Override
+    public long getBacktracks() {
+        return BACKTRACKS.sum();
+    }
+
+    @Override
+    public long getLookAheadCandidates() {
+        return LOOK_AHEAD_CANDIDATES.sum();
+    }
+
+    @Override
+    public long getRoutingCacheHits() {
+        return ROUTING_CACHE_HITS.sum();
+    }
+
+    @Override
+    public long getRoutingCacheMisses() {
+        return ROUTING_CACHE_MISSES.sum();
+    }
+
+    @Override
+    public long getFoldsAttempted() {
+        return FOLDS_ATTEMPTED.sum();
+    }
+
+    @Override
+    public long getFoldsAccepted() {
+        return FOLDS_ACCEPTED.sum();
+    }
+
+    @Override
+    public long getBootstrapRetries() {
+        return BOOTSTRAP_RETRIES.sum();
+    }
+
+    @Override
+    public double getRequestsPerSecond() {
+        return requestsPerSecond;
+    }
+
+    @Override
+    public synchronized void reset() {
+        REQUESTS.reset();
+        HOPS.reset();
+        BACKTRACKS.reset();
+        LOOK_AHEAD_CANDIDATES.reset();
+        ROUTING_CACHE_HITS.reset();
+        ROUTING_CACHE_MISSES.reset();
+        FOLDS_ATTEMPTED.reset();
+        FOLDS_ACCEPTED.reset();
+        BOOTSTRAP_RETRIES.reset();
+        lastRequests = 0;
+        requestsPerSecond = 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder("Metrics");
+        b.append("\nRequests routed :                 \t").append(
+                getRequestsRouted());
+        b.append("\nRequests per second :             \t").append(
+                getRequestsPerSecond());
+        b.append("\nHops :                            \t").append(getHops());
+        b.append("\nBacktracks :                      \t").append(
+                getBacktracks());
+        b.append("\nLook-ahead candidates :           \t").append(
+                getLookAheadCandidates());
+        b.append("\nRouting cache hits :              \t").append(
+                getRoutingCacheHits());
+        b.append("\nRouting cache misses :            \t").append(
+                getRoutingCacheMisses());
+        b.append("\nFolds attempted :                 \t").append(
+                getFoldsAttempted());
+        b.append("\nFolds accepted :                  \t").append(
+                getFoldsAccepted());
+        b.append("\nBootstrap retries :               \t").append(
+                getBootstrapRetries());
+        return b.toString();
+    }
+
+    /**
+     * @return the registered instance.
+     */
+    public static Metrics get() {
+        return INSTANCE;
+    }
+}
@@ -0,0 +1,35 @@
+package org.freenetproject.routing_simulator.util.metrics;
+
+/**
+ * Counters of a running simulation as exposed over JMX. Counts are totals
+ * since the simulator started.
+ */
+public interface MetricsMBean {
+    long getRequestsRouted();
+
+    long getHops();
+
+    long getBacktracks();
+
+    long getLookAheadCandidates();
+
+    long getRoutingCacheHits();
+
+    long getRoutingCacheMisses();
+
+    long getFoldsAttempted();
+
+    long getFoldsAccepted();
+
+    long getBootstrapRetries();
+
+    /**
+     * @return requests routed per second over the last sampling interval.
+     */
+    double getRequestsPerSecond();
+
+    /**
+     * Set every counter to zero.
+     */
+    void reset();
+}
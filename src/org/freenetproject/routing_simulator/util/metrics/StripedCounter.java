@@ -0,0 +1,58 @@
+package org.freenetproject.routing_simulator.util.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter which threads can increment concurrently with little contention.
+ * Each thread adds to one of several cells, chosen by its ID and spaced a
+ * cache line apart, and reading the count sums them. The sum is not a
+ * snapshot: increments made while summing may or may not be included.
+ */
+public final class StripedCounter {
+    /**
+     * Number of cells; a power of two.
+     */
+    private static final int STRIPES;
+    /**
+     * Longs between cells so that each is on its own 64 byte cache line.
+     */
+    private static final int SPACING = 8;
+
+    static {
+        int stripes = 1;
+        while (stripes < 2 * Runtime.getRuntime().availableProcessors())
+            stripes <<= 1;
+        STRIPES = stripes;
+    }
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES
+            * SPACING);
+
+    public void increment() {
+        add(1);
+    }
+
+    public void add(long count) {
+        final int stripe = (int) Thread.currentThread().getId()
+                & (STRIPES - 1);
+        cells.getAndAdd(stripe * SPACING, count);
+    }
+
+    /**
+     * @return the total of everything added.
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++)
+            sum += cells.get(i * SPACING);
+        return sum;
+    }
+
+    /**
+     * Set the count to zero. Increments made concurrently may be lost.
+     */
+    public void reset() {
+        for (int i = 0; i < STRIPES; i++)
+            cells.set(i * SPACING, 0);
+    }
+}
@@ -0,0 +1,90 @@
+package test.org.freenetproject.routing_simulator;
+
+import static org.junit.Assert.*;
+
+import org.freenetproject.routing_simulator.Arguments;
+import org.freenetproject.routing_simulator.RoutingSim;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests resuming routing simulations from checkpoints.
+ */
+public class Test_RoutingCheckpoint extends TestingBase {
+
+    private static final int REQUESTS = 2000;
+
+    /**
+     * Route requests on a small graph with latency modelled and windowed
+     * output, writing outputs with the given prefix.
+     */
+    private static void route(File directory, String prefix,
+            String... extra) throws Exception {
+        final List<String> args = new ArrayList<String>(Arrays.asList(
+                "--seed", "7", "--graph-size", "300", "--degree-fixed", "8",
+                "--link-ideal", "--graph-lattice", "--route",
+                String.valueOf(REQUESTS), "--route-hops", "20",
+                "--route-bootstrap", "--route-latency", "50",
+                "--route-latency-jitter", "5", "--route-window", "100",
+                "--route-window-output", path(directory, prefix + ".csv"),
+                "--route-output", path(directory, prefix + ".txt"),
+                "--graph-save", path(directory, prefix + ".graph")));
+        args.addAll(Arrays.asList(extra));
+        new RoutingSim().run(Arguments.parse(args.toArray(new String[args
+                .size()])));
+    }
+
+    private static String path(File directory, String name) {
+        return new File(directory, name).getPath();
+    }
+
+    private static byte[] read(File directory, String name)
+            throws IOException {
+        final File file = new File(directory, name);
+        final byte[] bytes = new byte[(int) file.length()];
+        final InputStream in = new FileInputStream(file);
+        try {
+            int read = 0;
+            while (read < bytes.length)
+                read += in.read(bytes, read, bytes.length - read);
+        } finally {
+            in.close();
+        }
+        return bytes;
+    }
+
+    /**
+     * A run checkpointed half way and resumed gives the same window rows,
+     * results and final graph as one which routed straight through.
+     */
+    @Test
+    public void resume() throws Exception {
+        final File directory = File.createTempFile("test", "checkpoint");
+        assertTrue( directory.delete() && directory.mkdir());
+        try {
+            route(directory, "straight");
+            final String checkpoint = path(directory, "checkpoint");
+            route(directory, "resumed", "--checkpoint", checkpoint,
+                    "--checkpoint-interval", String.valueOf(REQUESTS / 2));
+            route(directory, "resumed", "--resume", checkpoint);
+
+            for (String suffix : new String[] { ".csv", ".txt", ".graph" }) {
+                final byte[] straight = read(directory, "straight" + suffix);
+                assertTrue( straight.length > 0);
+                assertTrue( Arrays.equals(straight, read(directory, "resumed"
+                        + suffix)));
+            }
+        } finally {
+            for (File file : directory.listFiles())
+                file.delete();
+            directory.delete();
+        }
+    }
+}
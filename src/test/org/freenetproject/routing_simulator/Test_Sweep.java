@@ -0,0 +1,111 @@
+package test.org.freenetproject.routing_simulator;
+
+import static org.junit.Assert.*;
+
+import org.freenetproject.routing_simulator.Arguments;
+import org.freenetproject.routing_simulator.RoutingSim;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests sweeping routing simulations over a grid of options.
+ */
+public class Test_Sweep extends TestingBase {
+
+    private static final String[] COMMON = { "--seed", "5", "--degree-fixed",
+            "8", "--link-ideal", "--graph-lattice", "--route", "1000",
+            "--route-hops", "20", "--route-bootstrap" };
+    private static final String[] SIZES = { "200", "300" };
+    private static final String[] POLICIES = { "GREEDY", "BACKTRACKING" };
+
+    private static String[] args(String... extra) {
+        final List<String> args = new ArrayList<String>(Arrays.asList(COMMON));
+        args.addAll(Arrays.asList(extra));
+        return args.toArray(new String[args.size()]);
+    }
+
+    private static String read(File file) throws IOException {
+        final byte[] bytes = new byte[(int) file.length()];
+        final InputStream in = new FileInputStream(file);
+        try {
+            int read = 0;
+            while (read < bytes.length)
+                read += in.read(bytes, read, bytes.length - read);
+        } finally {
+            in.close();
+        }
+        return new String(bytes, "UTF-8");
+    }
+
+    /**
+     * @return the values line of the script output of a standalone run.
+     */
+    private static String standalone(String size, String policy)
+            throws Exception {
+        final PrintStream out = System.out;
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(bytes, true, "UTF-8"));
+        try {
+            new RoutingSim().run(Arguments.parse(args("--graph-size", size,
+                    "--route-policy", policy, "--script-output")));
+        } finally {
+            System.setOut(out);
+        }
+        final String[] lines = bytes.toString("UTF-8").split("\n");
+        return lines[lines.length - 1];
+    }
+
+    /**
+     * Each row of a sweep, on one thread or several, matches a run with the
+     * same arguments on its own. Runs on the same graph share a template, so
+     * they must not see each other's path folding.
+     */
+    @Test
+    public void matchesStandalone() throws Exception {
+        final File directory = File.createTempFile("test", "sweep");
+        assertTrue( directory.delete() && directory.mkdir());
+        try {
+            final File grid = new File(directory, "grid");
+            final FileOutputStream gridOutput = new FileOutputStream(grid);
+            gridOutput.write(("--graph-size 200 300\n"
+                    + "--route-policy GREEDY BACKTRACKING\n")
+                    .getBytes("UTF-8"));
+            gridOutput.close();
+
+            final List<String> expected = new ArrayList<String>();
+            for (String size : SIZES) {
+                for (String policy : POLICIES)
+                    expected.add(size + " " + policy + " "
+                            + standalone(size, policy));
+            }
+
+            for (String threads : new String[] { "1", "3" }) {
+                final File output = new File(directory, "sweep" + threads);
+                // The grid overrides the graph size, which is required.
+                new RoutingSim().run(Arguments.parse(args("--graph-size",
+                        SIZES[0], "--sweep", grid.getPath(), "--sweep-output",
+                        output.getPath(), "--sweep-threads", threads)));
+
+                final String[] rows = read(output).split("\n");
+                assertTrue( rows.length == expected.size() + 1);
+                assertTrue( rows[0].startsWith("graph-size route-policy "));
+                for (int i = 0; i < expected.size(); i++)
+                    assertTrue( rows[i + 1].equals(expected.get(i)));
+            }
+        } finally {
+            for (File file : directory.listFiles())
+                file.delete();
+            directory.delete();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package test.org.freenetproject.routing_simulator.event;
+
+import static org.junit.Assert.*;
+
+import org.apache.commons.math3.random.RandomGenerator;
+import org.freenetproject.routing_simulator.event.EventQueue;
+import org.junit.Test;
+
+import test.org.freenetproject.routing_simulator.TestingBase;
+import test.org.freenetproject.routing_simulator.TestingHelper;
+
+/**
+ * Tests event ordering.
+ */
+public class Test_EventQueue extends TestingBase {
+
+    @Test
+    public void timeOrder() {
+        final RandomGenerator random = TestingHelper.getRandom();
+        final EventQueue queue = new EventQueue(4);
+
+        for (int i = 0; i < 10000; i++) {
+            queue.schedule(random.nextDouble(), 0, i, -i);
+        }
+        assertTrue(queue.size() == 10000);
+
+        double last = 0.0;
+        while (!queue.isEmpty()) {
+            queue.poll();
+            assertTrue(queue.polledTime() >= last);
+            assertTrue(queue.polledA() == -queue.polledB());
+            last = queue.polledTime();
+        }
+    }
+
+    @Test
+    public void ties() {
+        final EventQueue queue = new EventQueue();
+
+        // Events at the same time come out in the order they were scheduled.
+        for (int i = 0; i < 100; i++) {
+            queue.schedule(i % 3, i % 3, i, 0);
+        }
+        int lastA = -1;
+        int lastType = 0;
+        while (!queue.isEmpty()) {
+            queue.poll();
+            if (queue.polledType() == lastType) {
+                assertTrue(queue.polledA() > lastA);
+            }
+            lastType = queue.polledType();
+            lastA = queue.polledA();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package test.org.freenetproject.routing_simulator.event;
+
+import static org.junit.Assert.*;
+
+import org.freenetproject.routing_simulator.event.LoadReplay;
+import org.freenetproject.routing_simulator.event.Simulator;
+import org.freenetproject.routing_simulator.experiment.LoadExp;
+import org.freenetproject.routing_simulator.graph.node.SimpleNode;
+import org.freenetproject.routing_simulator.util.IntArrayList;
+import org.junit.Test;
+
+import test.org.freenetproject.routing_simulator.TestingBase;
+import test.org.freenetproject.routing_simulator.TestingHelper;
+import test.org.freenetproject.routing_simulator.graph.Test_Graph;
+
+import java.util.ArrayList;
+
+/**
+ * Tests requests replayed against nodes of limited capacity.
+ */
+public class Test_LoadReplay extends TestingBase {
+
+    /**
+     * Start requests at once from node 0 to node 1 and run them to completion.
+     * 
+     * @return results of the requests.
+     */
+    private static LoadExp replay(int requests, int capacity, int queueLength) {
+        final Simulator simulator = new Simulator();
+        final LoadReplay replay = new LoadReplay(simulator,
+                Test_Graph.generateKleinberg(), null,
+                TestingHelper.getRandom(), capacity, queueLength, 100.0,
+                1000.0);
+        final LoadExp experiment = new LoadExp(1.0);
+        replay.setExperiment(experiment);
+
+        final IntArrayList travel = new IntArrayList();
+        travel.add(0);
+        travel.add(1);
+        for (int i = 0; i < requests; i++)
+            replay.start(travel, new ArrayList<SimpleNode>(), false);
+        simulator.run(replay);
+        assertTrue( replay.isIdle());
+        return experiment;
+    }
+
+    @Test
+    public void withinCapacity() {
+        final LoadExp experiment = replay(3, 3, 0);
+        assertTrue( experiment.rejectionRate() == 0.0);
+        assertTrue( experiment.getLatencies().count() == 3);
+    }
+
+    @Test
+    public void queued() {
+        final LoadExp experiment = replay(3, 1, 2);
+        assertTrue( experiment.rejectionRate() == 0.0);
+        assertTrue( experiment.getLatencies().count() == 3);
+    }
+
+    /**
+     * Once the origin's slots and queue are full the remaining requests are
+     * rejected.
+     */
+    @Test
+    public void overCapacity() {
+        final LoadExp experiment = replay(5, 1, 1);
+        assertTrue( experiment.getLatencies().count() == 2);
+        assertTrue( experiment.rejectionRate() == 3.0 / 5);
+    }
+}
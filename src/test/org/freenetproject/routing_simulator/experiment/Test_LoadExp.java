@@ -0,0 +1,62 @@
+package test.org.freenetproject.routing_simulator.experiment;
+
+import static org.junit.Assert.*;
+
+import org.freenetproject.routing_simulator.experiment.LoadExp;
+import org.junit.Test;
+
+import test.org.freenetproject.routing_simulator.TestingBase;
+
+/**
+ * Tests throughput and rejection rate of load results.
+ */
+public class Test_LoadExp extends TestingBase {
+
+    /**
+     * Requests started a second apart with one completing between each start
+     * give one request per second. Completions after the last start do not
+     * count.
+     */
+    @Test
+    public void throughput() {
+        final LoadExp experiment = new LoadExp(1.0);
+        experiment.offered(0.0);
+        experiment.completed(true, 500.0);
+        experiment.offered(1000.0);
+        experiment.completed(true, 500.0);
+        experiment.offered(2000.0);
+        experiment.completed(false, 500.0);
+        assertTrue( experiment.throughput() == 1.0);
+    }
+
+    /**
+     * Without a span between the first and last start there is nothing to
+     * measure throughput over.
+     */
+    @Test
+    public void throughputWithoutSpan() {
+        final LoadExp none = new LoadExp(1.0);
+        assertTrue( none.throughput() == 0.0);
+
+        final LoadExp one = new LoadExp(1.0);
+        one.offered(100.0);
+        one.completed(true, 50.0);
+        assertTrue( one.throughput() == 0.0);
+
+        final LoadExp together = new LoadExp(1.0);
+        together.offered(100.0);
+        together.completed(true, 50.0);
+        together.offered(100.0);
+        assertTrue( together.throughput() == 0.0);
+    }
+
+    @Test
+    public void rejectionRate() {
+        final LoadExp experiment = new LoadExp(1.0);
+        for (int i = 0; i < 4; i++)
+            experiment.offered(i * 100.0);
+        experiment.rejected();
+        experiment.backedOff();
+        assertTrue( experiment.rejectionRate() == 0.5);
+    }
+}
@@ -0,0 +1,84 @@
+package test.org.freenetproject.routing_simulator.experiment;
+
+import static org.junit.Assert.*;
+
+import org.freenetproject.routing_simulator.experiment.ProbeExp;
+import org.freenetproject.routing_simulator.graph.Graph;
+import org.freenetproject.routing_simulator.graph.TransitionTables;
+import org.junit.Test;
+
+import test.org.freenetproject.routing_simulator.TestingBase;
+import test.org.freenetproject.routing_simulator.TestingHelper;
+import test.org.freenetproject.routing_simulator.graph.Test_Graph;
+
+import java.util.Arrays;
+
+/**
+ * Tests probe trials and the Kolmogorov-Smirnov distance between probe
+ * occurrences.
+ */
+public class Test_ProbeExp extends TestingBase {
+
+    @Test
+    public void ksDistance() {
+        // Only the shape matters, not the totals.
+        assertTrue( ProbeExp.ksDistance(new int[] { 2, 4, 2 }, new int[] { 1,
+                2, 1 }) == 0.0);
+        // All weight at opposite ends.
+        assertTrue( ProbeExp.ksDistance(new int[] { 3, 0, 0 }, new int[] { 0,
+                0, 5 }) == 1.0);
+        // Cumulative 1/2, 1, 1 against 0, 1/2, 1.
+        assertTrue( ProbeExp.ksDistance(new int[] { 1, 1, 0 }, new int[] { 0,
+                1, 1 }) == 0.5);
+        // Cumulative 1/4, 1/2, 1 against 1/2, 3/4, 1.
+        assertTrue( ProbeExp.ksDistance(new int[] { 1, 1, 2 }, new int[] { 2,
+                1, 1 }) == 0.25);
+    }
+
+    @Test
+    public void ksDistanceEmpty() {
+        assertTrue( ProbeExp.ksDistance(new int[3], new int[3]) == 0.0);
+        assertTrue( ProbeExp.ksDistance(new int[3], new int[] { 0, 1, 0 })
+                == 1.0);
+    }
+
+    private static ProbeExp probe(Graph graph, boolean uniform, int threads,
+            TransitionTables transitions, double tolerance)
+            throws InterruptedException {
+        final ProbeExp probes = new ProbeExp(graph, 10, uniform, 40, 200,
+                threads, transitions, tolerance);
+        probes.run(TestingHelper.getRandom());
+        return probes;
+    }
+
+    /**
+     * Results for a given seed are the same on any number of threads, whether
+     * or not trials stop early.
+     */
+    @Test
+    public void threadsIndependent() throws InterruptedException {
+        final Graph graph = Test_Graph.generateKleinberg();
+        final TransitionTables transitions = new TransitionTables(graph);
+        for (double tolerance : new double[] { 0.0, 0.05 }) {
+            for (int variant = 0; variant < 3; variant++) {
+                final boolean uniform = variant == 0;
+                final TransitionTables tables = variant == 2 ? transitions
+                        : null;
+                final ProbeExp one = probe(graph, uniform, 1, tables,
+                        tolerance);
+                final ProbeExp four = probe(graph, uniform, 4, tables,
+                        tolerance);
+
+                assertTrue( one.getTrials() == four.getTrials());
+                // The tolerance is loose enough to stop before all trials.
+                assertTrue( (one.getTrials() < 40) == (tolerance > 0));
+                assertTrue( Arrays.equals(one.getBaseline(), four
+                        .getBaseline()));
+                for (int hops = 0; hops <= 10; hops++) {
+                    assertTrue( Arrays.equals(one.getOccurrences(hops), four
+                            .getOccurrences(hops)));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package test.org.freenetproject.routing_simulator.experiment;
+
+import static org.junit.Assert.*;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.freenetproject.routing_simulator.experiment.ProbeOutput;
+import org.junit.Test;
+
+import test.org.freenetproject.routing_simulator.TestingBase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Tests the binary probe output format.
+ */
+public class Test_ProbeOutput extends TestingBase {
+
+    /**
+     * Columns must read back exactly, whether or not compressed, including
+     * unsorted and extreme values.
+     */
+    @Test
+    public void roundTrip() throws IOException {
+        final RandomGenerator random = new MersenneTwister(0);
+        final int nodes = 70000;
+        final int[] reference = new int[nodes];
+        final int[][] hops = new int[3][nodes];
+        for (int i = 0; i < nodes; i++) {
+            reference[i] = random.nextInt(100);
+            hops[1][i] = random.nextInt();
+            hops[2][i] = i * 3;
+        }
+        Arrays.sort(reference);
+        hops[0][0] = Integer.MIN_VALUE;
+        hops[0][1] = Integer.MAX_VALUE;
+        hops[0][2] = Integer.MIN_VALUE;
+
+        final File file = File.createTempFile("probes", ".bin");
+        try {
+            for (boolean compress : new boolean[] { false, true }) {
+                new ProbeOutput(reference, hops).write(file, compress);
+                final ProbeOutput read = ProbeOutput.read(file);
+                assertTrue( read.getMaxHops() == 2);
+                assertTrue( Arrays.equals(reference, read.getReference()));
+                for (int i = 0; i <= 2; i++)
+                    assertTrue( Arrays.equals(hops[i], read.getOccurrences(i)));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
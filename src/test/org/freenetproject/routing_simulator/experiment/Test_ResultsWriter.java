@@ -0,0 +1,78 @@
+package test.org.freenetproject.routing_simulator.experiment;
+
+import static org.junit.Assert.*;
+
+import org.freenetproject.routing_simulator.ResultsFormat;
+import org.freenetproject.routing_simulator.experiment.ResultsWriter;
+import org.junit.Test;
+
+import test.org.freenetproject.routing_simulator.TestingBase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Tests writing records of results.
+ */
+public class Test_ResultsWriter extends TestingBase {
+
+    private static Map<String, Object> record(int requests, double rate) {
+        final Map<String, Object> config = new LinkedHashMap<String, Object>();
+        config.put("policy", ResultsFormat.CSV);
+        config.put("name", "a,\"b\"");
+        final Map<String, Object> record = new LinkedHashMap<String, Object>();
+        record.put("config", config);
+        record.put("requests", requests);
+        record.put("rate", rate);
+        record.put("lengths", new long[] { 1, 2, 3 });
+        return record;
+    }
+
+    private static String write(ResultsFormat format) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ResultsWriter writer = new ResultsWriter(bytes, format);
+        writer.write(record(10, 0.5));
+        writer.write(record(20, Double.NaN));
+        writer.close();
+        return bytes.toString("UTF-8");
+    }
+
+    /**
+     * Each record is an object on one line, with nested records as objects,
+     * arrays as arrays, and non-finite numbers as null.
+     */
+    @Test
+    public void json() throws IOException {
+        assertTrue( write(ResultsFormat.JSON).equals(
+                "{\"config\":{\"policy\":\"CSV\",\"name\":\"a,\\\"b\\\"\"},"
+                        + "\"requests\":10,\"rate\":0.5,\"lengths\":[1,2,3]}\n"
+                        + "{\"config\":{\"policy\":\"CSV\",\"name\":\"a,\\\"b\\\"\"},"
+                        + "\"requests\":20,\"rate\":null,\"lengths\":[1,2,3]}\n"));
+    }
+
+    /**
+     * The header names nested fields by their path, and cells which need it
+     * are quoted.
+     */
+    @Test
+    public void csv() throws IOException {
+        assertTrue( write(ResultsFormat.CSV).equals(
+                "config.policy,config.name,requests,rate,lengths\n"
+                        + "CSV,\"a,\"\"b\"\"\",10,0.5,\"[1,2,3]\"\n"
+                        + "CSV,\"a,\"\"b\"\"\",20,NaN,\"[1,2,3]\"\n"));
+
+        final ResultsWriter writer = new ResultsWriter(
+                new ByteArrayOutputStream(), ResultsFormat.CSV);
+        writer.write(record(10, 0.5));
+        final Map<String, Object> other = record(20, 0.5);
+        other.remove("rate");
+        try {
+            writer.write(other);
+            fail("Records with different fields should not be allowed.");
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+}
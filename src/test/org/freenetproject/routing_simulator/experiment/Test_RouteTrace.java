@@ -0,0 +1,63 @@
+package test.org.freenetproject.routing_simulator.experiment;
+
+import static org.junit.Assert.*;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.freenetproject.routing_simulator.experiment.RouteTrace;
+import org.freenetproject.routing_simulator.util.IntArrayList;
+import org.junit.Test;
+
+import test.org.freenetproject.routing_simulator.TestingBase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Tests the binary route trace format.
+ */
+public class Test_RouteTrace extends TestingBase {
+
+    /**
+     * Requests must read back exactly and in order, whether or not
+     * compressed, including ones longer than a block and large indexes.
+     */
+    @Test
+    public void roundTrip() throws IOException {
+        final int requests = 20000;
+        for (boolean compress : new boolean[] { false, true }) {
+            final RandomGenerator random = new MersenneTwister(0);
+            final int[][] hops = new int[requests][];
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final RouteTrace trace = new RouteTrace(bytes, compress);
+            for (int i = 0; i < requests; i++) {
+                final IntArrayList travel = new IntArrayList();
+                final int length = i == 100 ? 50000 : random.nextInt(40);
+                for (int j = 0; j < length; j++)
+                    travel.add(j % 7 == 0 ? Integer.MAX_VALUE : random
+                            .nextInt(100000));
+                hops[i] = travel.toArray();
+                trace.record(i, i % 1000, Integer.MAX_VALUE - i, i % 3 != 0,
+                        i % 5, i % 2, travel);
+            }
+            trace.close();
+
+            final RouteTrace.Reader reader = new RouteTrace.Reader(
+                    new ByteArrayInputStream(bytes.toByteArray()));
+            for (int i = 0; i < requests; i++) {
+                final RouteTrace.Entry entry = reader.next();
+                assertTrue( entry.request == i);
+                assertTrue( entry.origin == i % 1000);
+                assertTrue( entry.target == Integer.MAX_VALUE - i);
+                assertTrue( entry.success == (i % 3 != 0));
+                assertTrue( entry.backtracking == i % 5);
+                assertTrue( entry.folds == i % 2);
+                assertTrue( Arrays.equals(hops[i], entry.hops));
+            }
+            assertTrue( reader.next() == null);
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package test.org.freenetproject.routing_simulator.experiment;
+
+import static org.junit.Assert.*;
+
+import org.freenetproject.routing_simulator.experiment.RoutingExp;
+import org.junit.Test;
+
+import test.org.freenetproject.routing_simulator.TestingBase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Tests merging and serialization of routing results.
+ */
+public class Test_RoutingExp extends TestingBase {
+
+    /**
+     * Results recorded in two halves and merged must match those recorded in
+     * one, and survive being written and read back.
+     */
+    @Test
+    public void mergeAndRead() throws IOException {
+        final RoutingExp whole = new RoutingExp(20, 100);
+        final RoutingExp first = new RoutingExp(20, 50);
+        final RoutingExp second = new RoutingExp(20, 50);
+        for (int i = 0; i < 100; i++) {
+            final boolean success = i % 3 != 0;
+            final int path = i % 17;
+            final int travel = path + i % 5;
+            whole.record(success, path, travel);
+            (i < 50 ? first : second).record(success, path, travel);
+        }
+        first.merge(second);
+        assertTrue( first.toString().equals(whole.toString()));
+        assertTrue( first.getRequests() == 100);
+        assertTrue( first.getBacktracking().count() == first
+                .getSuccessPaths().count());
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        first.write(new DataOutputStream(bytes));
+        final RoutingExp read = RoutingExp.read(new DataInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())));
+        assertTrue( read.toString().equals(whole.toString()));
+        assertTrue( read.toStringValues().equals(whole.toStringValues()));
+    }
+
+    /**
+     * 50 of 100 requests succeeding has a 95% Wilson interval of 40.38% to
+     * 59.62%.
+     */
+    @Test
+    public void successHalfWidth() {
+        final RoutingExp experiment = new RoutingExp(20, 100);
+        for (int i = 0; i < 100; i++)
+            experiment.record(i % 2 == 0, 5, 5);
+        assertTrue( Math.abs(experiment.successHalfWidth() - 9.617) < 0.001);
+    }
+
+    /**
+     * With every request succeeding the interval still has width: for 10 of
+     * 10 it runs from 72.25% to 100%.
+     */
+    @Test
+    public void successHalfWidthAllSucceeded() {
+        final RoutingExp experiment = new RoutingExp(20, 10);
+        for (int i = 0; i < 10; i++)
+            experiment.record(true, 5, 5);
+        assertTrue( Math.abs(experiment.successHalfWidth() - 13.877) < 0.001);
+        assertTrue( new RoutingExp(20, 10).successHalfWidth() == 100.0);
+    }
+}
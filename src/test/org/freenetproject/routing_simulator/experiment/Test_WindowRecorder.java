@@ -0,0 +1,72 @@
+package test.org.freenetproject.routing_simulator.experiment;
+
+import static org.junit.Assert.*;
+
+import org.freenetproject.routing_simulator.experiment.WindowRecorder;
+import org.junit.Test;
+
+import test.org.freenetproject.routing_simulator.TestingBase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Tests rows of windowed routing statistics.
+ */
+public class Test_WindowRecorder extends TestingBase {
+
+    private static void request(WindowRecorder window, boolean success,
+            int pathLength, int travelLength) throws IOException {
+        window.record(success, pathLength, travelLength, 1, 0);
+        window.endRequest();
+    }
+
+    /**
+     * A row is written after every window of requests and for the remainder,
+     * with counts starting again for each.
+     */
+    @Test
+    public void windows() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final WindowRecorder window = new WindowRecorder(6, 10, bytes, null,
+                true);
+
+        // Path lengths 1 to 5 with one failure.
+        for (int length = 1; length <= 5; length++)
+            request(window, true, length, length * 2);
+        request(window, false, 0, 10);
+
+        // No successes.
+        for (int i = 0; i < 6; i++)
+            request(window, false, 0, 10);
+
+        request(window, true, 7, 7);
+        window.finish();
+
+        final String[] rows = bytes.toString("UTF-8").split("\n");
+        assertTrue( rows.length == 4);
+        assertTrue( rows[0].startsWith("requests,successRate,meanPathLength,"));
+        // requests, successRate, meanPathLength, p50, p90, p99,
+        // meanTravelLength, foldingOperations, disconnectedFolding,
+        // disconnectedBootstrap
+        assertTrue( rows[1].equals("6," + 5.0 / 6 * 100
+                + ",3.0,3,5,5,6.0,6,0,0"));
+        assertTrue( rows[2].equals("12,0.0,0.0,-1,-1,-1,0.0,6,0,0"));
+        assertTrue( rows[3].equals("13,100.0,7.0,7,7,7,7.0,1,0,0"));
+    }
+
+    /**
+     * Appended rows have no header.
+     */
+    @Test
+    public void noHeader() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final WindowRecorder window = new WindowRecorder(2, 10, bytes, null,
+                false);
+        request(window, true, 2, 2);
+        request(window, true, 4, 4);
+        window.finish();
+        assertTrue( bytes.toString("UTF-8").equals(
+                "2,100.0,3.0,2,4,4,3.0,2,0,0\n"));
+    }
+}
@@ -4,6 +4,9 @@ import static org.junit.Assert.*;
 
 import org.apache.commons.math3.random.RandomGenerator;
 import org.freenetproject.routing_simulator.graph.Graph;
+import org.freenetproject.routing_simulator.graph.GraphBuilder;
+import org.freenetproject.routing_simulator.graph.GraphCache;
+import org.freenetproject.routing_simulator.graph.churn.OnlineSet;
 import org.freenetproject.routing_simulator.graph.degree.FixedDegreeSource;
 import org.freenetproject.routing_simulator.graph.linklength.KleinbergLinkSource;
 import org.freenetproject.routing_simulator.graph.linklength.LinkLengthSource;
@@ -16,6 +19,8 @@ import test.org.freenetproject.routing_simulator.TestingHelper;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Test graph generation, saving, and loading.
@@ -148,6 +153,32 @@ public class Test_Graph extends TestingBase {
         assertTrue( equal(written, read));
     }
 
+    /**
+     * A cached graph is loaded with the same connections, and with the random
+     * generator the nodes share in the same state, only for its own key.
+     */
+    @Test
+    public void cacheLoad() throws Exception {
+        final File directory = File.createTempFile("test", "cache");
+        assertTrue( directory.delete() && directory.mkdir());
+        try {
+            final GraphCache cache = new GraphCache(directory);
+            final Graph written = generateKleinberg();
+            assertTrue( cache.load("key") == null);
+            cache.store("key", written);
+            assertTrue( cache.load("other") == null);
+
+            final Graph read = cache.load("key");
+            assertTrue( equal(written, read));
+            assertTrue( written.getNode(0).getRandom().nextLong() == read
+                    .getNode(99).getRandom().nextLong());
+        } finally {
+            for (File file : directory.listFiles())
+                file.delete();
+            directory.delete();
+        }
+    }
+
     @Test
     public void saveLoadDot() throws Exception {
         final Graph written = generateKleinberg();
@@ -298,6 +329,116 @@ public class Test_Graph extends TestingBase {
         }
     }
 
+    /**
+     * Edges added to a builder more than once connect only once, in the order
+     * they were first added, and are rejected unless duplicates are allowed.
+     */
+    @Test
+    public void builderDuplicates() {
+        final Graph lattice = generateLattice(false);
+        final ArrayList<SimpleNode> nodes = Graph.generateNodes(100,
+                TestingHelper.getRandom(), false, new FixedDegreeSource(0));
+
+        final GraphBuilder builder = new GraphBuilder(nodes);
+        builder.addLatticeLinks(false);
+        builder.addLatticeLinks(false);
+        final Graph built = builder.build(true);
+
+        assertTrue( equal(lattice, built));
+        for (int i = 0; i < built.size(); i++) {
+            assertTrue( built.getNode(i).getConnections().equals(
+                    lattice.getNode(i).getConnections()));
+            assertTrue( Arrays.equals(built.getNode(i).getLRUQueue()
+                    .toArrayOrdered(), lattice.getNode(i).getLRUQueue()
+                    .toArrayOrdered()));
+        }
+
+        final GraphBuilder strict = new GraphBuilder(Graph.generateNodes(3,
+                TestingHelper.getRandom(), false, new FixedDegreeSource(0)));
+        strict.add(0, 1);
+        strict.addOutgoing(1, 0);
+        try {
+            strict.build(false);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+
+    /**
+     * A leaving node has no connections left in either direction, its peers
+     * lose only their connection to it, and peers left without connections
+     * are reported.
+     */
+    @Test
+    public void leave() {
+        final Graph graph = generateKleinberg();
+        final SimpleNode node = graph.getNode(0);
+        final ArrayList<SimpleNode> peers = new ArrayList<SimpleNode>(
+                node.getConnections());
+        final int[] degrees = new int[graph.size()];
+        for (int i = 0; i < graph.size(); i++)
+            degrees[i] = graph.getNode(i).degree();
+        final int edges = graph.nEdges();
+
+        final List<SimpleNode> disconnected = graph.leave(node);
+
+        assertTrue( node.degree() == 0);
+        assertTrue( graph.nEdges() == edges - peers.size());
+        for (int i = 0; i < graph.size(); i++) {
+            final SimpleNode other = graph.getNode(i);
+            assertTrue( !other.isConnected(node));
+            if (other == node)
+                continue;
+            final int lost = peers.contains(other) ? 1 : 0;
+            assertTrue( other.degree() == degrees[i] - lost);
+            assertTrue( disconnected.contains(other) == (lost == 1 && other
+                    .degree() == 0));
+        }
+    }
+
+    /**
+     * A joining node connects to peers below their desired degree without
+     * them dropping any connections, and only to the given candidates.
+     */
+    @Test
+    public void bootstrapJoining() {
+        final RandomGenerator random = TestingHelper.getRandom();
+        // Lattice links only, so every node is below its desired degree.
+        final ArrayList<SimpleNode> nodes = Graph.generateNodes(100, random,
+                false, new FixedDegreeSource(6));
+        final GraphBuilder builder = new GraphBuilder(nodes);
+        builder.addLatticeLinks(false);
+        final Graph graph = builder.build(false);
+        final OnlineSet online = new OnlineSet(graph.size());
+        for (int i = 0; i < graph.size(); i += 2)
+            online.add(i);
+
+        final SimpleNode node = graph.getNode(0);
+        final List<List<SimpleNode>> before = new ArrayList<List<SimpleNode>>();
+        for (int i = 0; i < graph.size(); i++) {
+            before.add(new ArrayList<SimpleNode>(graph.getNode(i)
+                    .getConnections()));
+        }
+
+        assertTrue( graph.bootstrap(node, random, false, online).isEmpty());
+
+        assertTrue( node.atDegree());
+        assertTrue( node.getConnections().containsAll(before.get(0)));
+        assertTrue( graph.nEdges() == graph.size() + node.getDesiredDegree()
+                - before.get(0).size());
+        for (int i = 1; i < graph.size(); i++) {
+            final SimpleNode other = graph.getNode(i);
+            assertTrue( other.getConnections().containsAll(before.get(i)));
+            final boolean added = node.isConnected(other)
+                    && !before.get(0).contains(other);
+            if (added)
+                assertTrue( online.contains(i));
+            assertTrue( other.degree() == before.get(i).size()
+                    + (added ? 1 : 0));
+        }
+    }
+
     @Test
     public void networkDiameter() throws Exception {
         File dotFile = new File(TestingHelper.getResourcePath("20node.dot"));
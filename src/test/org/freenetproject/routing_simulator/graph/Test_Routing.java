@@ -11,6 +11,7 @@ import org.freenetproject.routing_simulator.RoutingPolicy;
 import org.freenetproject.routing_simulator.RoutingSim;
 import org.freenetproject.routing_simulator.graph.Graph;
 import org.freenetproject.routing_simulator.graph.node.SimpleNode;
+import org.freenetproject.routing_simulator.util.IntArrayList;
 import org.junit.Test;
 
 import test.org.freenetproject.routing_simulator.TestingBase;
@@ -103,6 +104,39 @@ public class Test_Routing extends TestingBase {
 
     }
 
+    @Test
+    public void travelTrace() throws Exception {
+        File gmlFile = new File(TestingHelper.getResourcePath("gml-graph-1.gml"));
+        final Graph graph = TestingHelper.readFromFileGml(gmlFile);
+
+        SimpleNode nodeA = graph.getNode(0);
+        SimpleNode nodeC = graph.getNode(2);
+
+        int maxHTL = 6;
+        IntArrayList travel = new IntArrayList();
+        RouteResult result = nodeA.route(nodeC, maxHTL, maxHTL,
+                RoutingPolicy.BACKTRACKING, FoldingPolicy.NONE, 1, -1, true, 0,
+                0, travel);
+        // path 0.1 > 0.5 > 0.2 > 0.7 < 0.2 < 0.5 < 0.1 > 0.6 > 0.3
+        double[] expected = new double[] { 0.1, 0.5, 0.2, 0.7, 0.2, 0.5, 0.1,
+                0.6, 0.3 };
+        assertTrue(result.isSuccess());
+        assertTrue(travel.size() == expected.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertTrue(graph.getNode(travel.get(i)).getLocation() == expected[i]);
+        }
+
+        // A failed request ends back at the origin.
+        SimpleNode nodeH = graph.getNode(7);
+        maxHTL = 7;
+        travel.clear();
+        result = nodeA.route(nodeH, maxHTL, maxHTL, RoutingPolicy.BACKTRACKING,
+                FoldingPolicy.NONE, 1, -1, true, 0, 0, travel);
+        assertTrue(!result.isSuccess());
+        assertTrue(travel.get(0) == nodeA.index);
+        assertTrue(travel.get(travel.size() - 1) == nodeA.index);
+    }
+
     @Test
     public void routingPathLargeNetwork() throws Exception {
         File dotFile = new File(TestingHelper.getResourcePath("1000node.dot"));
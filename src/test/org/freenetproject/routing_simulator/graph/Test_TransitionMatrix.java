@@ -0,0 +1,110 @@
+package test.org.freenetproject.routing_simulator.graph;
+
+import static org.junit.Assert.*;
+
+import org.apache.commons.math3.random.RandomGenerator;
+import org.freenetproject.routing_simulator.graph.Graph;
+import org.freenetproject.routing_simulator.graph.TransitionMatrix;
+import org.freenetproject.routing_simulator.graph.degree.FixedDegreeSource;
+import org.freenetproject.routing_simulator.graph.linklength.KleinbergLinkSource;
+import org.freenetproject.routing_simulator.graph.node.SimpleNode;
+import org.junit.Test;
+
+import test.org.freenetproject.routing_simulator.TestingBase;
+import test.org.freenetproject.routing_simulator.TestingHelper;
+
+import java.util.ArrayList;
+
+/**
+ * Tests exact propagation of random walk probabilities.
+ */
+public class Test_TransitionMatrix extends TestingBase {
+
+    /**
+     * Steps must keep all probability, and the uniform distribution must be
+     * stationary for corrected walks.
+     */
+    @Test
+    public void conservesProbability() {
+        final Graph graph = Test_Graph.generateKleinberg();
+        final int n = graph.size();
+        for (boolean uniform : new boolean[] { true, false }) {
+            final TransitionMatrix matrix = new TransitionMatrix(graph,
+                    uniform);
+            // Two interleaved distributions: from node 0, and uniform.
+            double[] from = new double[2 * n];
+            double[] to = new double[2 * n];
+            from[0] = 1.0;
+            for (int i = 0; i < n; i++)
+                from[i * 2 + 1] = 1.0 / n;
+
+            for (int hop = 0; hop < 20; hop++) {
+                matrix.step(from, to, 2, 0, n);
+                final double[] swap = from;
+                from = to;
+                to = swap;
+
+                double total = 0;
+                for (int i = 0; i < n; i++)
+                    total += from[i * 2];
+                assertTrue( Math.abs(total - 1.0) < 1e-9);
+            }
+
+            if (!uniform) {
+                for (int i = 0; i < n; i++)
+                    assertTrue( Math.abs(from[i * 2 + 1] - 1.0 / n) < 1e-12);
+            }
+        }
+    }
+
+    /**
+     * On a directed graph probability must flow along outgoing connections
+     * only, and steps must still keep all of it.
+     */
+    @Test
+    public void directed() {
+        final RandomGenerator random = TestingHelper.getRandom();
+        final ArrayList<SimpleNode> nodes = Graph.generateNodes(100, random,
+                false, new FixedDegreeSource(0));
+        final Graph graph = Graph.connectSandberg(nodes, 2,
+                new KleinbergLinkSource(random, nodes));
+        final int n = graph.size();
+        final SimpleNode start = graph.getNode(0);
+        for (boolean uniform : new boolean[] { true, false }) {
+            final TransitionMatrix matrix = new TransitionMatrix(graph,
+                    uniform);
+            double[] from = new double[n];
+            double[] to = new double[n];
+            from[0] = 1.0;
+
+            // One step from node 0 reaches only its outgoing connections.
+            matrix.step(from, to, 1, 0, n);
+            double leaving = 0;
+            for (int i = 1; i < n; i++) {
+                final SimpleNode node = graph.getNode(i);
+                if (!start.isConnected(node)) {
+                    assertTrue( to[i] == 0.0);
+                } else if (uniform) {
+                    assertTrue( Math.abs(to[i] - 1.0 / start.degree()) < 1e-12);
+                } else {
+                    assertTrue( Math.abs(to[i] - Math.min(1.0 / start.degree(),
+                            1.0 / node.degree())) < 1e-12);
+                }
+                leaving += to[i];
+            }
+            assertTrue( Math.abs(to[0] + leaving - 1.0) < 1e-12);
+
+            for (int hop = 0; hop < 20; hop++) {
+                matrix.step(from, to, 1, 0, n);
+                final double[] swap = from;
+                from = to;
+                to = swap;
+
+                double total = 0;
+                for (int i = 0; i < n; i++)
+                    total += from[i];
+                assertTrue( Math.abs(total - 1.0) < 1e-9);
+            }
+        }
+    }
+}
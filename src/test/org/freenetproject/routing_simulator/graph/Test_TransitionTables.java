@@ -0,0 +1,50 @@
+package test.org.freenetproject.routing_simulator.graph;
+
+import static org.junit.Assert.*;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.freenetproject.routing_simulator.graph.Graph;
+import org.freenetproject.routing_simulator.graph.TransitionTables;
+import org.freenetproject.routing_simulator.graph.node.SimpleNode;
+import org.junit.Test;
+
+import test.org.freenetproject.routing_simulator.TestingBase;
+
+/**
+ * Tests sampling random walk hops from precomputed tables.
+ */
+public class Test_TransitionTables extends TestingBase {
+
+    /**
+     * A hop sampled from the transition tables must have the distribution of
+     * a corrected hop from the node.
+     */
+    @Test
+    public void transitions() {
+        final Graph graph = Test_Graph.generateKleinberg();
+        final TransitionTables tables = new TransitionTables(graph);
+        final RandomGenerator random = new MersenneTwister(1);
+        final int[] trace = new int[2];
+        final int samples = 200000;
+
+        for (int index = 0; index < 5; index++) {
+            final SimpleNode node = graph.getNode(index);
+            final int[] walked = new int[graph.size()];
+            final int[] sampled = new int[graph.size()];
+            for (int i = 0; i < samples; i++) {
+                walked[node.randomWalk(1, false, random).index]++;
+                tables.randomWalk(node, 1, random, trace);
+                assertTrue( trace[0] == index);
+                sampled[trace[1]]++;
+            }
+            for (int i = 0; i < graph.size(); i++) {
+                final double difference = (double) (walked[i] - sampled[i])
+                        / samples;
+                assertTrue( Math.abs(difference) < 0.01);
+                if (i != index && !node.isConnected(graph.getNode(i)))
+                    assertTrue( sampled[i] == 0);
+            }
+        }
+    }
+}
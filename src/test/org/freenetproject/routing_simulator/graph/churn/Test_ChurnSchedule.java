@@ -0,0 +1,80 @@
+package test.org.freenetproject.routing_simulator.graph.churn;
+
+import static org.junit.Assert.*;
+
+import org.apache.commons.math3.random.RandomGenerator;
+import org.freenetproject.routing_simulator.graph.churn.ChurnSchedule;
+import org.junit.Test;
+
+import test.org.freenetproject.routing_simulator.TestingBase;
+import test.org.freenetproject.routing_simulator.TestingHelper;
+
+import java.util.Arrays;
+
+/**
+ * Tests ordering of pending joins and leaves.
+ */
+public class Test_ChurnSchedule extends TestingBase {
+
+    /**
+     * Schedule every node at a random time, then move some of them earlier
+     * and later.
+     * 
+     * @return node indexes in the order they were taken from the schedule.
+     */
+    private static int[] pollAll(double[] times) {
+        final RandomGenerator random = TestingHelper.getRandom();
+        final ChurnSchedule schedule = new ChurnSchedule(times.length);
+        for (int i = 0; i < times.length; i++) {
+            times[i] = random.nextDouble() * 100;
+            schedule.schedule(i, times[i]);
+        }
+        for (int i = 0; i < times.length; i += 7) {
+            times[i] = random.nextDouble() * 200;
+            schedule.schedule(i, times[i]);
+        }
+
+        final int[] order = new int[times.length];
+        for (int i = 0; i < times.length; i++) {
+            assertTrue( !schedule.isEmpty());
+            final double time = schedule.peekTime();
+            order[i] = schedule.poll();
+            assertTrue( times[order[i]] == time);
+        }
+        assertTrue( schedule.isEmpty());
+        return order;
+    }
+
+    @Test
+    public void order() {
+        final double[] times = new double[1000];
+        final int[] order = pollAll(times);
+
+        final boolean[] polled = new boolean[times.length];
+        for (int i = 0; i < order.length; i++) {
+            assertTrue( !polled[order[i]]);
+            polled[order[i]] = true;
+            if (i > 0)
+                assertTrue( times[order[i - 1]] <= times[order[i]]);
+        }
+
+        // The same seed gives the same order.
+        assertTrue( Arrays.equals(order, pollAll(new double[times.length])));
+    }
+
+    @Test
+    public void reschedule() {
+        final ChurnSchedule schedule = new ChurnSchedule(3);
+        schedule.schedule(0, 1.0);
+        schedule.schedule(1, 2.0);
+        schedule.schedule(2, 3.0);
+        schedule.schedule(2, 0.5);
+        schedule.schedule(0, 4.0);
+
+        assertTrue( schedule.poll() == 2);
+        assertTrue( schedule.poll() == 1);
+        assertTrue( schedule.peekTime() == 4.0);
+        assertTrue( schedule.poll() == 0);
+        assertTrue( schedule.isEmpty());
+    }
+}
@@ -0,0 +1,65 @@
+package test.org.freenetproject.routing_simulator.graph.churn;
+
+import static org.junit.Assert.*;
+
+import org.apache.commons.math3.random.RandomGenerator;
+import org.freenetproject.routing_simulator.graph.churn.OnlineSet;
+import org.junit.Test;
+
+import test.org.freenetproject.routing_simulator.TestingBase;
+import test.org.freenetproject.routing_simulator.TestingHelper;
+
+/**
+ * Tests membership of the set of online nodes.
+ */
+public class Test_OnlineSet extends TestingBase {
+
+    @Test
+    public void addRemove() {
+        final OnlineSet online = new OnlineSet(10);
+        for (int i = 0; i < 10; i++)
+            assertTrue( online.add(i));
+        assertTrue( !online.add(4));
+        assertTrue( online.size() == 10);
+
+        // The last member takes the place of a removed one.
+        assertTrue( online.remove(3));
+        assertTrue( !online.contains(3));
+        assertTrue( online.size() == 9);
+        assertTrue( online.get(3) == 9);
+
+        // The moved member can itself be removed from its new position.
+        assertTrue( online.remove(9));
+        assertTrue( online.get(3) == 8);
+        assertTrue( online.size() == 8);
+
+        // Removing the last member moves nothing.
+        assertTrue( online.remove(7));
+        assertTrue( online.get(3) == 8);
+        assertTrue( !online.remove(7));
+
+        assertTrue( online.add(3));
+        assertTrue( online.get(online.size() - 1) == 3);
+        for (int i = 0; i < 10; i++)
+            assertTrue( online.contains(i) == (i != 7 && i != 9));
+        for (int position = 0; position < online.size(); position++)
+            assertTrue( online.contains(online.get(position)));
+    }
+
+    @Test
+    public void randomMember() {
+        final RandomGenerator random = TestingHelper.getRandom();
+        final OnlineSet online = new OnlineSet(100);
+        for (int i = 0; i < 100; i += 3)
+            online.add(i);
+
+        final boolean[] seen = new boolean[100];
+        for (int i = 0; i < 10000; i++) {
+            final int index = online.random(random);
+            assertTrue( online.contains(index));
+            seen[index] = true;
+        }
+        for (int i = 0; i < 100; i++)
+            assertTrue( seen[i] == online.contains(i));
+    }
+}
@@ -8,6 +8,8 @@ import org.freenetproject.routing_simulator.graph.Graph;
 import org.freenetproject.routing_simulator.graph.node.SimpleNode;
 import org.junit.Test;
 
+import java.util.ArrayList;
+
 import test.org.freenetproject.routing_simulator.TestingBase;
 import test.org.freenetproject.routing_simulator.graph.Test_Graph;
 
@@ -71,4 +73,76 @@ public class Test_Node extends TestingBase {
         for (int i = 0; i < before.length; i++)
             assertTrue( before[i].equals(after[i]));
     }
+
+    /**
+     * The recursive random walk the iterative walks replaced. Kept as a
+     * reference for the hop accounting of the corrected walk.
+     */
+    private static ArrayList<SimpleNode> recursiveWalk(SimpleNode node,
+            int hops, boolean uniform, RandomGenerator rand) {
+        ArrayList<SimpleNode> list = new ArrayList<SimpleNode>();
+        list.add(node);
+        if (hops == 0)
+            return list;
+
+        SimpleNode next;
+        if (uniform) {
+            next = node.getConnections().get(rand.nextInt(node.degree()));
+        } else {
+            next = node;
+            while (hops > 0 && next == node) {
+                next = node.getConnections().get(rand.nextInt(node.degree()));
+                double beta = ((double) (node.degree()))
+                        / ((double) (next.degree()));
+                if (rand.nextDouble() > beta) {
+                    next = node;
+                    hops--;
+                    if (hops > 0)
+                        list.add(node);
+                }
+            }
+            if (hops == 0)
+                hops = 1;
+        }
+        list.addAll(recursiveWalk(next, hops - 1, uniform, rand));
+        return list;
+    }
+
+    @Test
+    public void testRandomWalk() {
+        final Graph graph = Test_Graph.generateKleinberg();
+        final int hops = 25;
+        final int[] trace = new int[hops + 1];
+
+        for (boolean uniform : new boolean[] { true, false }) {
+            final RandomGenerator reference = new MersenneTwister(7);
+            final RandomGenerator list = new MersenneTwister(7);
+            final RandomGenerator array = new MersenneTwister(7);
+            final RandomGenerator endpoint = new MersenneTwister(7);
+
+            for (int walk = 0; walk < 1000; walk++) {
+                final SimpleNode origin = graph.getNode(walk % graph.size());
+                final ArrayList<SimpleNode> expected = recursiveWalk(origin,
+                        hops, uniform, reference);
+                assertTrue( expected.size() == hops + 1);
+
+                assertTrue( expected.equals(origin.randomWalkList(hops,
+                        uniform, list)));
+
+                final SimpleNode end = origin.randomWalk(hops, uniform,
+                        array, trace);
+                assertTrue( end == expected.get(hops));
+                for (int i = 0; i <= hops; i++)
+                    assertTrue( trace[i] == expected.get(i).index);
+
+                assertTrue( origin.randomWalk(hops, uniform, endpoint) == end);
+            }
+
+            // All walks consumed the same randomness.
+            final int next = reference.nextInt();
+            assertTrue( list.nextInt() == next);
+            assertTrue( array.nextInt() == next);
+            assertTrue( endpoint.nextInt() == next);
+        }
+    }
 }
@@ -0,0 +1,69 @@
+package test.org.freenetproject.routing_simulator.graph.store;
+
+import static org.junit.Assert.*;
+
+import org.apache.commons.math3.random.RandomGenerator;
+import org.freenetproject.routing_simulator.graph.store.KeyStore;
+import org.freenetproject.routing_simulator.graph.store.Keys;
+import org.freenetproject.routing_simulator.graph.store.LRUStore;
+import org.freenetproject.routing_simulator.graph.store.SaltedHashStore;
+import org.junit.Test;
+
+import test.org.freenetproject.routing_simulator.TestingBase;
+import test.org.freenetproject.routing_simulator.TestingHelper;
+
+/**
+ * Tests key store replacement.
+ */
+public class Test_Store extends TestingBase {
+
+    @Test
+    public void lruReplacement() {
+        final KeyStore store = new LRUStore(3);
+        store.put(1);
+        store.put(2);
+        store.put(3);
+        // Using 1 makes 2 the least recently used.
+        assertTrue(store.contains(1));
+        store.put(4);
+        assertTrue(store.size() == 3);
+        assertTrue(store.contains(1));
+        assertTrue(!store.contains(2));
+        assertTrue(store.contains(3));
+        assertTrue(store.contains(4));
+    }
+
+    @Test
+    public void lruGrowth() {
+        final RandomGenerator random = TestingHelper.getRandom();
+        final KeyStore store = new LRUStore(1000);
+        final long[] keys = new long[1000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = Keys.key(random.nextLong(), i);
+            store.put(keys[i]);
+        }
+        assertTrue(store.size() == 1000);
+        for (long key : keys)
+            assertTrue(store.contains(key));
+
+        // A further key replaces exactly the first.
+        store.put(Keys.key(random.nextLong(), -1));
+        assertTrue(store.size() == 1000);
+        assertTrue(!store.contains(keys[0]));
+        for (int i = 1; i < keys.length; i++)
+            assertTrue(store.contains(keys[i]));
+    }
+
+    @Test
+    public void saltedHashBounded() {
+        final KeyStore store = new SaltedHashStore(100, 42);
+        for (int i = 0; i < 1000; i++) {
+            final long key = Keys.key(7, i);
+            store.put(key);
+            // The latest key is always held.
+            assertTrue(store.contains(key));
+            assertTrue(store.size() <= store.capacity());
+        }
+        assertTrue(store.size() > 90);
+    }
+}
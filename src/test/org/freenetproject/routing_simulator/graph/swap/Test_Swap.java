@@ -0,0 +1,62 @@
+package test.org.freenetproject.routing_simulator.graph.swap;
+
+import static org.junit.Assert.*;
+
+import org.apache.commons.math3.random.RandomGenerator;
+import org.freenetproject.routing_simulator.graph.Graph;
+import org.freenetproject.routing_simulator.graph.swap.LocationSwapper;
+import org.junit.Test;
+
+import test.org.freenetproject.routing_simulator.TestingBase;
+import test.org.freenetproject.routing_simulator.TestingHelper;
+import test.org.freenetproject.routing_simulator.graph.Test_Graph;
+
+import java.util.Arrays;
+
+/**
+ * Tests darknet location swapping.
+ */
+public class Test_Swap extends TestingBase {
+
+    private static double[] locations(Graph graph) {
+        final double[] locations = new double[graph.size()];
+        for (int i = 0; i < graph.size(); i++)
+            locations[i] = graph.getNode(i).getLocation();
+        return locations;
+    }
+
+    private static double meanLinkLength(Graph graph) {
+        double sum = 0;
+        int count = 0;
+        for (double length : graph.edgeLengths(false)) {
+            sum += length;
+            count++;
+        }
+        return sum / count;
+    }
+
+    /**
+     * Swapping on several threads must only exchange locations, and should
+     * shorten links after they are shuffled.
+     */
+    @Test
+    public void parallelSwap() throws Exception {
+        final RandomGenerator random = TestingHelper.getRandom();
+        final Graph graph = Test_Graph.generateKleinberg();
+        final double[] original = locations(graph);
+
+        graph.shuffleLocations(random);
+        final double shuffled = meanLinkLength(graph);
+
+        final LocationSwapper swapper = new LocationSwapper(graph, 10, 4);
+        swapper.run(200000, random);
+        assertTrue(swapper.getAttempts() == 200000);
+        assertTrue(swapper.getSwaps() > 0);
+
+        final double[] swapped = locations(graph);
+        Arrays.sort(original);
+        Arrays.sort(swapped);
+        assertTrue(Arrays.equals(original, swapped));
+        assertTrue(meanLinkLength(graph) < shuffled);
+    }
+}
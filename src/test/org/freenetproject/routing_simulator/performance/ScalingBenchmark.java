@@ -0,0 +1,414 @@
+package test.org.freenetproject.routing_simulator.performance;
+
+import org.apache.commons.math3.random.RandomGenerator;
+import org.freenetproject.routing_simulator.FoldingPolicy;
+import org.freenetproject.routing_simulator.RoutingPolicy;
+import org.freenetproject.routing_simulator.experiment.ProbeExp;
+import org.freenetproject.routing_simulator.graph.Graph;
+import org.freenetproject.routing_simulator.graph.GraphBuilder;
+import org.freenetproject.routing_simulator.graph.degree.FixedDegreeSource;
+import org.freenetproject.routing_simulator.graph.linklength.KleinbergLinkSource;
+import org.freenetproject.routing_simulator.graph.node.SimpleNode;
+
+import test.org.freenetproject.routing_simulator.TestingBase;
+import test.org.freenetproject.routing_simulator.TestingHelper;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Measures how the simulator scales with network size: for each size it
+ * generates a graph, computes graph statistics, runs probes and routes
+ * requests, recording the wall time, peak heap and allocation of each phase.
+ * Results are printed as a table, and can be saved as a baseline and compared
+ * against one to find regressions.
+ * <p>
+ * The simulator's graph generation keeps distances between every pair of
+ * nodes, so it is only run at sizes where that fits in the heap. The other
+ * phases run on a small world graph built directly: a lattice plus shortcuts
+ * with the ideal 1/d distribution over evenly spaced locations, which takes
+ * time and memory linear in the size.
+ * <p>
+ * Usage: ScalingBenchmark [--sizes 1000,10000,...] [--requests N]
+ * [--probes N] [--baseline FILE] [--save FILE] [--tolerance FRACTION]
+ * <p>
+ * The exit status is 1 if any phase regressed from the baseline.
+ */
+public class ScalingBenchmark extends TestingBase {
+    public static final int[] SIZES = { 1000, 10000, 100000, 1000000 };
+    public static final int DEGREE = 10;
+    public static final int MAX_HTL = 50;
+    public static final int PROBE_HOPS = 18;
+
+    /**
+     * Phases which take less than this are never regressions, as their times
+     * are mostly noise.
+     */
+    public static final long NOISE_MILLIS = 100;
+
+    /**
+     * Estimated bytes per pair of nodes used by graph generation with ideal
+     * link lengths: a cumulative distribution and a list of distances.
+     */
+    private static final long GENERATION_PAIR_BYTES = 16;
+
+    /**
+     * Outcome of a phase at one network size.
+     */
+    public static class Result {
+        public final int size;
+        public final String phase;
+        /**
+         * "ok", "skipped" with a reason, or the error which stopped it.
+         */
+        public final String status;
+        public final long millis;
+        /**
+         * Bytes allocated by the phase, or -1 if the JVM does not report it.
+         */
+        public final long allocated;
+        public final long peakHeap;
+        /**
+         * Number of nodes, probes or requests handled.
+         */
+        public final long items;
+
+        public Result(int size, String phase, String status, long millis,
+                long allocated, long peakHeap, long items) {
+            this.size = size;
+            this.phase = phase;
+            this.status = status;
+            this.millis = millis;
+            this.allocated = allocated;
+            this.peakHeap = peakHeap;
+            this.items = items;
+        }
+
+        public boolean ok() {
+            return status.equals("ok");
+        }
+
+        String key() {
+            return size + "." + phase;
+        }
+    }
+
+    private final int requests;
+    private final int probes;
+
+    /**
+     * @param requests
+     *            Number of requests to route at each size.
+     * @param probes
+     *            Number of probes to run at each size.
+     */
+    public ScalingBenchmark(int requests, int probes) {
+        this.requests = requests;
+        this.probes = probes;
+    }
+
+    /**
+     * Run every phase at one network size. A phase which fails leaves the
+     * remaining ones that need its graph skipped.
+     *
+     * @return result of each phase in order.
+     */
+    public List<Result> run(final int size) {
+        final List<Result> results = new ArrayList<Result>();
+
+        final long needed = GENERATION_PAIR_BYTES * size * size;
+        if (needed > Runtime.getRuntime().maxMemory()) {
+            results.add(new Result(size, "generate", "skipped: needs "
+                    + needed / (1 << 20) + " MB", 0, 0, 0, 0));
+        } else {
+            results.add(measure(size, "generate", size, new Phase() {
+                @Override
+                void run() {
+                    final RandomGenerator random = TestingHelper.getRandom();
+                    final ArrayList<SimpleNode> nodes = Graph.generateNodes(
+                            size, random, false, new FixedDegreeSource(DEGREE));
+                    Graph.connectGraph(nodes, random, new KleinbergLinkSource(
+                            random, nodes), true);
+                }
+            }));
+        }
+
+        final Graph[] graph = new Graph[1];
+        results.add(measure(size, "build", size, new Phase() {
+            @Override
+            void run() {
+                graph[0] = smallWorld(size, TestingHelper.getRandom());
+            }
+        }));
+        if (graph[0] == null) {
+            results.add(skipped(size, "stats"));
+            results.add(skipped(size, "probe"));
+            results.add(skipped(size, "route"));
+            return results;
+        }
+
+        results.add(measure(size, "stats", size, new Phase() {
+            @Override
+            void run() {
+                graph[0].nEdges();
+                graph[0].minDegree();
+                graph[0].maxDegree();
+                graph[0].degreeVariance();
+                graph[0].meanLocalClusterCoeff();
+                graph[0].globalClusterCoeff();
+                graph[0].edgeLengthArray(false);
+            }
+        }));
+
+        results.add(measure(size, "probe", probes, new Phase() {
+            @Override
+            void run() throws Exception {
+                new ProbeExp(graph[0], PROBE_HOPS, false, 1, probes, 1, null,
+                        0).run(TestingHelper.getRandom());
+            }
+        }));
+
+        results.add(measure(size, "route", requests, new Phase() {
+            @Override
+            void run() {
+                final RandomGenerator random = TestingHelper.getRandom();
+                for (int i = 0; i < requests; i++) {
+                    final SimpleNode origin = graph[0].getNode(random
+                            .nextInt(size));
+                    final SimpleNode target = graph[0].getNode(random
+                            .nextInt(size));
+                    origin.route(target, MAX_HTL, MAX_HTL,
+                            RoutingPolicy.BACKTRACKING, FoldingPolicy.FREENET,
+                            1, -1, true, 0, 0);
+                }
+            }
+        }));
+
+        return results;
+    }
+
+    /**
+     * Build a small world graph in time linear in its size: nodes at evenly
+     * spaced locations connected in a lattice, and shortcuts from each node
+     * to offsets with probability proportional to 1/offset.
+     */
+    public static Graph smallWorld(int size, RandomGenerator random) {
+        final ArrayList<SimpleNode> nodes = Graph.generateNodes(size, random,
+                true, new FixedDegreeSource(DEGREE));
+        final GraphBuilder builder = new GraphBuilder(nodes, size * DEGREE);
+        builder.addLatticeLinks(false);
+        final double logHalf = Math.log(size / 2.0);
+        // The lattice gives each node two links, and each shortcut two ends.
+        for (int i = 0; i < size; i++) {
+            for (int j = 1; j < DEGREE / 2; j++) {
+                int offset = (int) Math.exp(random.nextDouble() * logHalf);
+                if (random.nextBoolean())
+                    offset = size - offset;
+                builder.add(i, (i + offset) % size);
+            }
+        }
+        return builder.build(true);
+    }
+
+    private abstract static class Phase {
+        abstract void run() throws Exception;
+    }
+
+    private static Result skipped(int size, String phase) {
+        return new Result(size, phase, "skipped: no graph", 0, 0, 0, 0);
+    }
+
+    private static Result measure(int size, String name, long items,
+            Phase phase) {
+        System.gc();
+        final List<MemoryPoolMXBean> pools = heapPools();
+        for (MemoryPoolMXBean pool : pools)
+            pool.resetPeakUsage();
+        final long allocatedBefore = allocatedBytes();
+        final long start = System.nanoTime();
+
+        String status = "ok";
+        try {
+            phase.run();
+        } catch (OutOfMemoryError e) {
+            status = "out of memory";
+        } catch (Exception e) {
+            status = e.toString();
+        }
+
+        final long millis = (System.nanoTime() - start) / 1000000;
+        final long allocatedAfter = allocatedBytes();
+        long peak = 0;
+        for (MemoryPoolMXBean pool : pools)
+            peak += pool.getPeakUsage().getUsed();
+        return new Result(size, name, status, millis,
+                allocatedBefore < 0 ? -1 : allocatedAfter - allocatedBefore,
+                peak, items);
+    }
+
+    private static List<MemoryPoolMXBean> heapPools() {
+        final List<MemoryPoolMXBean> pools = new ArrayList<MemoryPoolMXBean>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid())
+                pools.add(pool);
+        }
+        return pools;
+    }
+
+    /**
+     * @return bytes allocated by the current thread, or -1 if the JVM does
+     *         not report it. Every phase runs on the current thread.
+     */
+    private static long allocatedBytes() {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean))
+            return -1;
+        return ((com.sun.management.ThreadMXBean) threads)
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * @return the results as a table with a line for each phase.
+     */
+    public static String table(List<Result> results) {
+        final StringBuilder b = new StringBuilder();
+        b.append(String.format("%9s %-8s %10s %12s %12s %14s  %s%n", "size",
+                "phase", "time (ms)", "peak heap MB", "alloc MB/s",
+                "items/s", "status"));
+        for (Result result : results) {
+            final double seconds = Math.max(result.millis, 1) / 1000.0;
+            b.append(String.format("%9d %-8s %10d %12d %12s %14.0f  %s%n",
+                    result.size, result.phase, result.millis,
+                    result.peakHeap >> 20, result.allocated < 0 ? "n/a"
+                            : String.format("%.0f", result.allocated
+                                    / seconds / (1 << 20)), result.items
+                            / seconds, result.status));
+        }
+        return b.toString();
+    }
+
+    /**
+     * @return the times and peak heaps of the phases which succeeded, to
+     *         compare later results against.
+     */
+    public static Properties baseline(List<Result> results) {
+        final Properties baseline = new Properties();
+        for (Result result : results) {
+            if (!result.ok())
+                continue;
+            baseline.setProperty(result.key() + ".millis",
+                    Long.toString(result.millis));
+            baseline.setProperty(result.key() + ".peakHeap",
+                    Long.toString(result.peakHeap));
+        }
+        return baseline;
+    }
+
+    /**
+     * Compare results against a baseline. A phase regressed if it succeeded
+     * in the baseline but failed now, or if it took longer than the baseline
+     * by more than the tolerance and {@link #NOISE_MILLIS}. Phases missing
+     * from the baseline or skipped now, such as for a smaller heap, are not
+     * compared.
+     *
+     * @param tolerance
+     *            Fraction by which a phase may be slower than the baseline.
+     * @return a description of each regression; empty if there are none.
+     */
+    public static List<String> compare(List<Result> results,
+            Properties baseline, double tolerance) {
+        final List<String> regressions = new ArrayList<String>();
+        for (Result result : results) {
+            final String expected = baseline.getProperty(result.key()
+                    + ".millis");
+            if (expected == null || result.status.startsWith("skipped"))
+                continue;
+            if (!result.ok()) {
+                regressions.add(result.key() + ": " + result.status
+                        + ", but took " + expected + " ms in the baseline");
+                continue;
+            }
+            final long before = Long.parseLong(expected);
+            if (result.millis > before * (1 + tolerance)
+                    && result.millis - before > NOISE_MILLIS) {
+                regressions.add(result.key() + ": took " + result.millis
+                        + " ms, up from " + before + " ms");
+            }
+        }
+        return regressions;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = SIZES;
+        int requests = 20000;
+        int probes = 100000;
+        String baselineFile = null, saveFile = null;
+        double tolerance = 0.5;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].equals("--sizes")) {
+                final String[] fields = args[i + 1].split(",");
+                sizes = new int[fields.length];
+                for (int j = 0; j < fields.length; j++)
+                    sizes[j] = Integer.parseInt(fields[j].trim());
+            } else if (args[i].equals("--requests")) {
+                requests = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--probes")) {
+                probes = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--baseline")) {
+                baselineFile = args[i + 1];
+            } else if (args[i].equals("--save")) {
+                saveFile = args[i + 1];
+            } else if (args[i].equals("--tolerance")) {
+                tolerance = Double.parseDouble(args[i + 1]);
+            } else {
+                throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (args.length % 2 != 0)
+            throw new IllegalArgumentException("Missing value for "
+                    + args[args.length - 1]);
+
+        final ScalingBenchmark benchmark = new ScalingBenchmark(requests,
+                probes);
+        final List<Result> results = new ArrayList<Result>();
+        for (int size : sizes)
+            results.addAll(benchmark.run(size));
+        benchmark.restoreStdOut();
+        System.out.print(table(results));
+
+        if (saveFile != null) {
+            final OutputStream output = new FileOutputStream(saveFile);
+            try {
+                baseline(results).store(output, "ScalingBenchmark baseline");
+            } finally {
+                output.close();
+            }
+        }
+
+        if (baselineFile != null) {
+            final Properties baseline = new Properties();
+            final InputStream input = new FileInputStream(baselineFile);
+            try {
+                baseline.load(input);
+            } finally {
+                input.close();
+            }
+            final List<String> regressions = compare(results, baseline,
+                    tolerance);
+            for (String regression : regressions)
+                System.out.println("FAIL " + regression);
+            System.out.println(regressions.isEmpty() ? "PASS" : "FAIL");
+            if (!regressions.isEmpty())
+                System.exit(1);
+        }
+    }
+}
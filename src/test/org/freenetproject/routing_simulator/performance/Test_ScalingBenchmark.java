@@ -0,0 +1,60 @@
+package test.org.freenetproject.routing_simulator.performance;
+
+import static org.junit.Assert.*;
+
+import org.freenetproject.routing_simulator.graph.Graph;
+import org.junit.Test;
+
+import test.org.freenetproject.routing_simulator.TestingBase;
+import test.org.freenetproject.routing_simulator.TestingHelper;
+import test.org.freenetproject.routing_simulator.performance.ScalingBenchmark.Result;
+
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Tests the scaling benchmark at its smallest size.
+ */
+public class Test_ScalingBenchmark extends TestingBase {
+
+    /**
+     * Every phase must run, and results compared against their own baseline
+     * must pass, but fail against a faster one.
+     */
+    @Test
+    public void compareBaseline() {
+        final List<Result> results = new ScalingBenchmark(1000, 1000)
+                .run(1000);
+        assertTrue( results.size() == 5);
+        for (Result result : results)
+            assertTrue( result.ok());
+
+        final Properties baseline = ScalingBenchmark.baseline(results);
+        assertTrue( ScalingBenchmark.compare(results, baseline, 0.25)
+                .isEmpty());
+
+        for (String key : baseline.stringPropertyNames()) {
+            if (key.startsWith("1000.route.millis"))
+                baseline.setProperty(key, "-" + ScalingBenchmark.NOISE_MILLIS);
+        }
+        final List<String> regressions = ScalingBenchmark.compare(results,
+                baseline, 0.25);
+        assertTrue( regressions.size() == 1);
+        assertTrue( regressions.get(0).startsWith("1000.route: "));
+    }
+
+    /**
+     * The small world graph must be connected in a lattice, with about the
+     * intended degree: shortcuts which duplicate another link are dropped.
+     */
+    @Test
+    public void smallWorld() {
+        final int size = 5000;
+        final Graph graph = ScalingBenchmark.smallWorld(size,
+                TestingHelper.getRandom());
+        for (int i = 0; i < size; i++)
+            assertTrue( graph.getNode(i).isConnected(
+                    graph.getNode((i + 1) % size)));
+        assertTrue( Math.abs(graph.getMeanDegree() - ScalingBenchmark.DEGREE) < 1);
+    }
+}
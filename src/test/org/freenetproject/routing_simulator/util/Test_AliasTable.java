@@ -0,0 +1,34 @@
+package test.org.freenetproject.routing_simulator.util;
+
+import static org.junit.Assert.*;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.freenetproject.routing_simulator.util.AliasTable;
+import org.junit.Test;
+
+import test.org.freenetproject.routing_simulator.TestingBase;
+
+/**
+ * Tests alias-method sampling.
+ */
+public class Test_AliasTable extends TestingBase {
+
+    @Test
+    public void proportional() {
+        final double[] weights = { 0, 1, 2, 7, 0, 10 };
+        final AliasTable table = new AliasTable(weights);
+        final RandomGenerator random = new MersenneTwister(0);
+        final int samples = 1000000;
+        final int[] counts = new int[weights.length];
+        for (int i = 0; i < samples; i++)
+            counts[table.sample(random)]++;
+
+        assertTrue( counts[0] == 0);
+        assertTrue( counts[4] == 0);
+        for (int i = 0; i < weights.length; i++) {
+            final double expected = weights[i] / 20.0;
+            assertTrue( Math.abs((double) counts[i] / samples - expected) < 0.003);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package test.org.freenetproject.routing_simulator.util;
+
+import static org.junit.Assert.*;
+
+import org.freenetproject.routing_simulator.Arguments;
+import org.freenetproject.routing_simulator.RoutingSim;
+import org.freenetproject.routing_simulator.graph.Graph;
+import org.freenetproject.routing_simulator.util.LogHistogram;
+import org.junit.Test;
+
+import test.org.freenetproject.routing_simulator.TestingBase;
+import test.org.freenetproject.routing_simulator.TestingHelper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+
+/**
+ * Tests log-scale binning and the link length output.
+ */
+public class Test_LogHistogram extends TestingBase {
+
+    /**
+     * Three decades at ten bins each. Values outside the bounds are counted in
+     * the end bins.
+     */
+    @Test
+    public void bins() {
+        final LogHistogram histogram = new LogHistogram(1e-3, 1, 10);
+        assertTrue( histogram.bins() == 30);
+        assertTrue( Math.abs(histogram.upperBound(0) - 1e-3 * Math.pow(10,
+                0.1)) < 1e-15);
+        assertTrue( Math.abs(histogram.upperBound(9) - 1e-2) < 1e-15);
+        assertTrue( Math.abs(histogram.upperBound(29) - 1.0) < 1e-12);
+
+        histogram.record(1e-5);
+        histogram.record(1.1e-3);
+        histogram.record(0.05);
+        histogram.record(50);
+        assertTrue( histogram.count() == 4);
+
+        final String[] lines = cdf(histogram);
+        // From the first bin to the last, which holds 50.
+        assertTrue( lines.length == 30);
+        assertTrue( lines[0].equals(histogram.upperBound(0) + " 0.5"));
+        // 0.05 is in the bin ending just above it, at 10^-1.3.
+        assertTrue( lines[15].endsWith(" 0.5"));
+        assertTrue( lines[16].endsWith(" 0.75"));
+        assertTrue( lines[29].equals(histogram.upperBound(29) + " 1.0"));
+    }
+
+    /**
+     * The distribution starts at the first bin with values and stops at the
+     * first to include all of them, which is 1.
+     */
+    @Test
+    public void cdfEndpoints() {
+        final LogHistogram histogram = new LogHistogram(1e-6, 0.5, 50);
+        assertTrue( cdf(histogram).length == 0);
+
+        for (int i = 1; i <= 100; i++)
+            histogram.record(i * 1e-4);
+        // 1e-4 starts bin 100 and 1e-2 starts bin 200.
+        final String[] lines = cdf(histogram);
+        assertTrue( lines.length == 101);
+        assertTrue( lines[0].equals(histogram.upperBound(100) + " 0.01"));
+        assertTrue( lines[100].equals(histogram.upperBound(200) + " 1.0"));
+
+        double previous = 0;
+        for (String line : lines) {
+            final double fraction = Double.parseDouble(line.split(" ")[1]);
+            assertTrue( fraction > previous || fraction == previous);
+            previous = fraction;
+        }
+    }
+
+    private static String[] cdf(LogHistogram histogram) {
+        final StringWriter writer = new StringWriter();
+        try {
+            histogram.writeCDF(writer);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        final String text = writer.toString();
+        return text.isEmpty() ? new String[0] : text.split("\n");
+    }
+
+    /**
+     * --link-raw writes every edge length with an equal weight, as link
+     * output did before it was binned.
+     */
+    @Test
+    public void rawLinkOutput() throws Exception {
+        final File graphFile = File.createTempFile("test", "graph");
+        final File linkFile = File.createTempFile("test", "links");
+        try {
+            new RoutingSim().run(Arguments.parse(new String[] { "--seed", "3",
+                    "--graph-size", "200", "--degree-fixed", "6",
+                    "--link-ideal", "--graph-lattice", "--graph-save",
+                    graphFile.getPath(), "--link-output", linkFile.getPath(),
+                    "--link-raw" }));
+
+            final Graph graph = TestingHelper.readFromFile(graphFile);
+            final ArrayList<Double> lengths = graph.edgeLengths(false);
+            final double normalized = 1.0 / lengths.size();
+            final StringBuilder expected = new StringBuilder();
+            for (double length : lengths)
+                expected.append(length + " " + normalized + "\n");
+            assertTrue( read(linkFile).equals(expected.toString()));
+        } finally {
+            graphFile.delete();
+            linkFile.delete();
+        }
+    }
+
+    private static String read(File file) throws IOException {
+        final byte[] bytes = new byte[(int) file.length()];
+        final InputStream in = new FileInputStream(file);
+        try {
+            int read = 0;
+            while (read < bytes.length)
+                read += in.read(bytes, read, bytes.length - read);
+        } finally {
+            in.close();
+        }
+        return new String(bytes, "UTF-8");
+    }
+}
@@ -0,0 +1,142 @@
+package test.org.freenetproject.routing_simulator.util;
+
+import static org.junit.Assert.*;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.freenetproject.routing_simulator.util.NumberReader;
+import org.junit.Test;
+
+import test.org.freenetproject.routing_simulator.TestingBase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Tests parsing lines of numbers.
+ */
+public class Test_NumberReader extends TestingBase {
+
+    private static NumberReader reader(String text) throws IOException {
+        return new NumberReader(new ByteArrayInputStream(
+                text.getBytes("UTF-8")));
+    }
+
+    /**
+     * Doubles must parse exactly as Double.parseDouble() does, both in the
+     * common decimal forms and the ones it falls back to.
+     */
+    @Test
+    public void doubles() throws IOException {
+        final RandomGenerator random = new MersenneTwister(0);
+        final String[] fields = new String[100000];
+        for (int i = 0; i < fields.length; i++) {
+            final double value = random.nextDouble()
+                    * Math.pow(10, random.nextInt(40) - 20);
+            switch (i % 4) {
+            case 0:
+                fields[i] = Double.toString(value);
+                break;
+            case 1:
+                fields[i] = String.format("%.6f", value);
+                break;
+            case 2:
+                fields[i] = String.format("-%.17g", value);
+                break;
+            default:
+                fields[i] = Double.toString(-value);
+            }
+        }
+        final String[] special = { "0", "-0", "+1.5", "1.", ".5", "1e22",
+                "1e23", "4.9e-324", "1.7976931348623157E308", "NaN",
+                "-Infinity", "0.000000000000000000000000001",
+                "123456789012345678", "1.5d" };
+
+        final StringBuilder b = new StringBuilder();
+        for (String field : fields)
+            b.append(field).append('\n');
+        for (String field : special)
+            b.append(field).append(" \t");
+        final NumberReader reader = reader(b.toString());
+
+        for (String field : fields) {
+            assertTrue( reader.nextLine());
+            final double value = reader.nextDouble();
+            assertTrue( Double.doubleToRawLongBits(value) == Double
+                    .doubleToRawLongBits(Double.parseDouble(field)));
+        }
+        assertTrue( reader.nextLine());
+        for (String field : special) {
+            final double value = reader.nextDouble();
+            assertTrue( Double.doubleToRawLongBits(value) == Double
+                    .doubleToRawLongBits(Double.parseDouble(field)));
+        }
+        reader.endLine();
+        assertTrue( !reader.nextLine());
+    }
+
+    /**
+     * Gzipped input is decompressed, blank lines are skipped, fields left on
+     * a line are skipped, and integers at the limits of their range parse.
+     */
+    @Test
+    public void linesAndGzip() throws IOException {
+        final String text = "1 2 3\r\n\n   \n-9223372036854775808 9223372036854775807\n"
+                + "-2147483648 2147483647";
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+        gzip.write(text.getBytes("UTF-8"));
+        gzip.close();
+
+        final NumberReader reader = new NumberReader(new ByteArrayInputStream(
+                bytes.toByteArray()));
+        assertTrue( reader.nextLine());
+        assertTrue( reader.nextInt() == 1);
+        assertTrue( reader.nextLine());
+        assertTrue( reader.line() == 4);
+        assertTrue( reader.nextLong() == Long.MIN_VALUE);
+        assertTrue( reader.nextLong() == Long.MAX_VALUE);
+        assertTrue( !reader.hasField());
+        assertTrue( reader.nextLine());
+        assertTrue( reader.nextInt() == Integer.MIN_VALUE);
+        assertTrue( reader.nextInt() == Integer.MAX_VALUE);
+        reader.endLine();
+        assertTrue( !reader.nextLine());
+    }
+
+    /**
+     * Malformed lines are errors which give the line number.
+     */
+    @Test
+    public void malformed() throws IOException {
+        final String[] lines = { "1 x", "1", "1 2 3", "9223372036854775808 1",
+                "2147483648 1", "1 --1", "1 1.5" };
+        for (String line : lines) {
+            final NumberReader reader = reader("5 5\n\n" + line);
+            assertTrue( reader.nextLine());
+            reader.nextInt();
+            reader.nextInt();
+            reader.endLine();
+            assertTrue( reader.nextLine());
+            try {
+                reader.nextInt();
+                reader.nextInt();
+                reader.endLine();
+                fail("\"" + line + "\" should be malformed.");
+            } catch (IOException e) {
+                assertTrue( e.getMessage().startsWith("Line 3: "));
+            }
+        }
+
+        try {
+            final NumberReader reader = reader("1.5.5");
+            reader.nextLine();
+            reader.nextDouble();
+            fail("\"1.5.5\" should be malformed.");
+        } catch (IOException e) {
+            assertTrue( e.getMessage().startsWith("Line 1: "));
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package test.org.freenetproject.routing_simulator.util.metrics;
+
+import static org.junit.Assert.*;
+
+import org.freenetproject.routing_simulator.util.metrics.StripedCounter;
+import org.junit.Test;
+
+import test.org.freenetproject.routing_simulator.TestingBase;
+
+/**
+ * Tests counting from several threads at once.
+ */
+public class Test_StripedCounter extends TestingBase {
+
+    /**
+     * No increments are lost when threads count concurrently, and reset
+     * returns the count to zero.
+     */
+    @Test
+    public void concurrent() throws InterruptedException {
+        final StripedCounter counter = new StripedCounter();
+        final int threads = 8;
+        final int increments = 100000;
+        final Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < increments; j++)
+                        counter.increment();
+                    counter.add(5);
+                }
+            };
+            workers[i].start();
+        }
+        for (Thread worker : workers)
+            worker.join();
+
+        assertTrue( counter.sum() == (long) threads * (increments + 5));
+        counter.reset();
+        assertTrue( counter.sum() == 0);
+    }
+}
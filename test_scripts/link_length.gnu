@@ -9,7 +9,8 @@ set output "plot_link_length.png"
 #set logscale x
 
 #As location is circular and [0,1), largest difference is 0.5.
-plot [0.00001:0.5] [0:1] 'output-link.dat' s cumul title 'Ideal'
+#Link output is already cumulative; with --link-raw plot it with s cumul.
+plot [0.00001:0.5] [0:1] 'output-link.dat' with lines title 'Ideal'
 
 
 #As location is circular and [0,1), largest difference is 0.5.